@@ -22,6 +22,7 @@
 
 package org.pentaho.di.trans.dataservice;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
@@ -47,8 +48,11 @@ import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.dataservice.clients.TransMutators;
 import org.pentaho.di.trans.dataservice.execution.CopyParameters;
 import org.pentaho.di.trans.dataservice.execution.DefaultTransWiring;
+import org.pentaho.di.trans.dataservice.execution.PooledConnections;
 import org.pentaho.di.trans.dataservice.execution.PrepareExecution;
 import org.pentaho.di.trans.dataservice.execution.TransStarter;
+import org.pentaho.di.trans.dataservice.optimization.CostEstimating;
+import org.pentaho.di.trans.dataservice.optimization.OrderProviding;
 import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
 import org.pentaho.di.trans.dataservice.optimization.ValueMetaResolver;
 import org.pentaho.di.trans.step.RowAdapter;
@@ -58,8 +62,11 @@ import org.pentaho.metastore.api.IMetaStore;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -153,6 +160,7 @@ public class DataServiceExecutor {
       serviceTransMeta.setName( calculateTransname( sql, true ) );
       serviceTransMeta.activateParameters();
       transMutator.accept( service.getStepname(), serviceTransMeta );
+      PooledConnections.usePooledConnections( serviceTransMeta, service );
       return serviceTrans( new Trans( serviceTransMeta ) );
     }
 
@@ -214,6 +222,7 @@ public class DataServiceExecutor {
       int serviceRowLimit = getServiceRowLimit( service );
       if ( sqlTransGenerator == null ) {
         sqlTransGenerator = new SqlTransGenerator( sql, rowLimit, serviceRowLimit );
+        sqlTransGenerator.setPresorted( isPresorted() );
       }
       if ( genTrans == null ) {
         genTrans = new Trans( sqlTransGenerator.generateTransMeta() );
@@ -244,6 +253,24 @@ public class DataServiceExecutor {
       return dataServiceExecutor;
     }
 
+    /**
+     * Asks enabled optimizations whether service rows will arrive in the order of the query, before the generated
+     * transformation is built
+     */
+    private boolean isPresorted() {
+      if ( serviceTrans == null || sql.getOrderFields() == null || sql.getOrderFields().isEmpty() ) {
+        return false;
+      }
+      for ( PushDownOptimizationMeta optimizationMeta : service.getPushDownOptimizationMeta() ) {
+        if ( optimizationMeta.isEnabled() && optimizationMeta.getType() instanceof OrderProviding
+          && ( (OrderProviding) optimizationMeta.getType() )
+          .providesOrder( sql, service, serviceTrans.getTransMeta(), optimizationMeta ) ) {
+          return true;
+        }
+      }
+      return false;
+    }
+
     private int getServiceRowLimit( DataServiceMeta service ) throws KettleException {
       if ( service.getRowLimit() != null && service.getRowLimit() > 0 ) {
         return service.getRowLimit();
@@ -466,10 +493,8 @@ public class DataServiceExecutor {
 
   public DataServiceExecutor executeQuery() {
     // Apply Push Down Optimizations
-    for ( PushDownOptimizationMeta optimizationMeta : service.getPushDownOptimizationMeta() ) {
-      if ( optimizationMeta.isEnabled() ) {
-        optimizationMeta.activate( this );
-      }
+    for ( PushDownOptimizationMeta optimizationMeta : planOptimizations() ) {
+      optimizationMeta.activate( this );
     }
 
     // Run execution plan
@@ -478,6 +503,45 @@ public class DataServiceExecutor {
     return this;
   }
 
+  /**
+   * Selects the enabled optimizations to activate for this query.
+   * <p>
+   * Optimizations that can estimate their cost are alternatives to each other, only the cheapest is activated.
+   * </p>
+   *
+   * @return optimizations to activate, in the order they were defined
+   */
+  List<PushDownOptimizationMeta> planOptimizations() {
+    Map<PushDownOptimizationMeta, Double> estimates = new LinkedHashMap<>();
+    List<PushDownOptimizationMeta> plan = new ArrayList<>();
+    for ( PushDownOptimizationMeta optimizationMeta : service.getPushDownOptimizationMeta() ) {
+      if ( !optimizationMeta.isEnabled() ) {
+        continue;
+      }
+      if ( optimizationMeta.getType() instanceof CostEstimating ) {
+        Optional<Double> cost = ( (CostEstimating) optimizationMeta.getType() ).estimateCost( this, optimizationMeta );
+        if ( cost.isPresent() ) {
+          estimates.put( optimizationMeta, cost.get() );
+        }
+      }
+      plan.add( optimizationMeta );
+    }
+
+    if ( estimates.size() > 1 ) {
+      PushDownOptimizationMeta cheapest =
+        Collections.min( estimates.entrySet(), Map.Entry.comparingByValue() ).getKey();
+      for ( Map.Entry<PushDownOptimizationMeta, Double> estimate : estimates.entrySet() ) {
+        if ( estimate.getKey() != cheapest ) {
+          plan.remove( estimate.getKey() );
+          getGenTrans().getLogChannel().logDetailed(
+            "Skipping optimization {0}, estimated {1} ms against {2} ms for {3}",
+            estimate.getKey().getName(), estimate.getValue(), estimates.get( cheapest ), cheapest.getName() );
+        }
+      }
+    }
+    return plan;
+  }
+
   public void executeListeners( ExecutionPoint... stages ) {
     for ( ExecutionPoint stage : stages ) {
       // Copy stage tasks to a new list to prevent accidental concurrent modification
@@ -615,6 +679,13 @@ public class DataServiceExecutor {
     return sqlTransGenerator.getServiceRowLimit();
   }
 
+  /**
+   * @return <code>true</code> if the generated transformation relies on an optimization to order service rows
+   */
+  public boolean isPresorted() {
+    return sqlTransGenerator.isPresorted();
+  }
+
   public ListMultimap<ExecutionPoint, Runnable> getListenerMap() {
     return listenerMap;
   }
@@ -48,6 +48,8 @@ public class DataServiceMeta implements MetaStoreElement {
   public static final String PUSH_DOWN_OPT_META = "push_down_opt_meta";
   public static final String IS_USER_DEFINED = "is_user_defined";
   public static final String ROW_LIMIT = "row_limit";
+  public static final String CONNECTION_POOLING = "connection_pooling";
+  public static final String CONNECTION_POOL_SIZE = "connection_pool_size";
 
   protected String name;
 
@@ -65,6 +67,12 @@ public class DataServiceMeta implements MetaStoreElement {
   @MetaStoreAttribute( key = IS_USER_DEFINED )
   protected boolean userDefined = true;
 
+  @MetaStoreAttribute( key = CONNECTION_POOLING )
+  protected boolean connectionPooling = false;
+
+  @MetaStoreAttribute( key = CONNECTION_POOL_SIZE )
+  protected Integer connectionPoolSize;
+
   public DataServiceMeta( TransMeta serviceTrans ) {
     this.serviceTrans = serviceTrans;
   }
@@ -119,6 +127,18 @@ public class DataServiceMeta implements MetaStoreElement {
     this.pushDownOptimizationMeta = pushDownOptimizationMeta;
   }
 
+  /**
+   * @return true if an enabled optimization keeps the complete output of the service transformation
+   */
+  public boolean isServiceOutputCaptured() {
+    for ( PushDownOptimizationMeta optimizationMeta : pushDownOptimizationMeta ) {
+      if ( optimizationMeta.capturesServiceOutput() ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public boolean isUserDefined() {
     return userDefined;
   }
@@ -135,12 +155,35 @@ public class DataServiceMeta implements MetaStoreElement {
     this.rowLimit = rowLimit;
   }
 
+  /**
+   * @return true if the service's Table Input steps should use pooled connections
+   */
+  public boolean isConnectionPooling() {
+    return connectionPooling;
+  }
+
+  public void setConnectionPooling( boolean connectionPooling ) {
+    this.connectionPooling = connectionPooling;
+  }
+
+  /**
+   * @return maximum number of pooled connections for each database, or null if unbounded
+   */
+  public Integer getConnectionPoolSize() {
+    return connectionPoolSize;
+  }
+
+  public void setConnectionPoolSize( Integer connectionPoolSize ) {
+    this.connectionPoolSize = connectionPoolSize;
+  }
+
   @Override public String toString() {
     return Objects.toStringHelper( this )
       .add( "name", name )
       .add( "serviceTrans", serviceTrans )
       .add( "stepname", stepname )
       .add( "userDefined", userDefined )
+      .add( "connectionPooling", connectionPooling )
       .add( "pushDownOptimizationMeta", pushDownOptimizationMeta )
       .toString();
   }
@@ -70,6 +70,8 @@ public class SqlTransGenerator {
 
   private int serviceLimit;
 
+  private boolean presorted;
+
   public SqlTransGenerator( SQL sql, int rowLimit ) {
     this.sql = sql;
     this.rowLimit = rowLimit;
@@ -183,7 +185,7 @@ public class SqlTransGenerator {
 
     // We also may need to order the data...
     //
-    if ( sql.getOrderFields() != null && !sql.getOrderFields().isEmpty() ) {
+    if ( sql.getOrderFields() != null && !sql.getOrderFields().isEmpty() && !presorted ) {
       StepMeta sortStep = generateSortStep( transMeta.getStepFields( lastStep ) );
       lastStep = addToTrans( sortStep, transMeta, lastStep );
     }
@@ -671,4 +673,15 @@ public class SqlTransGenerator {
   public int getServiceRowLimit() {
     return serviceLimit;
   }
+
+  public boolean isPresorted() {
+    return presorted;
+  }
+
+  /**
+   * @param presorted <code>true</code> if service rows arrive in the order of the query, and need not be sorted
+   */
+  public void setPresorted( boolean presorted ) {
+    this.presorted = presorted;
+  }
 }
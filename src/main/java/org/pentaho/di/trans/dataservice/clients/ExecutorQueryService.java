@@ -52,9 +52,10 @@ public class ExecutorQueryService implements Query.Service {
     this.metastoreLocator = metastoreLocator;
   }
 
-  @Override public Query prepareQuery( String sqlString, int maxRows, Map<String, String> parameters ) throws KettleException {
+  @Override public ExecutorQuery prepareQuery( String sqlString, int maxRows, Map<String, String> parameters )
+    throws KettleException {
     SQL sql = new SQL( sqlString );
-    Query query;
+    ExecutorQuery query;
     try {
       IMetaStore metaStore = metastoreLocator != null ? metastoreLocator.getMetastore() : null;
       DataServiceExecutor executor = resolver.createBuilder( sql )
@@ -76,7 +77,10 @@ public class ExecutorQueryService implements Query.Service {
         : new DataOutputStream( outputStream );
   }
 
-  private static class ExecutorQuery implements Query {
+  /**
+   * Runs a data service query, reporting the service and generated transformations in its response
+   */
+  public static class ExecutorQuery implements Query {
 
     private final DataServiceExecutor executor;
 
@@ -84,6 +88,10 @@ public class ExecutorQueryService implements Query.Service {
       this.executor = executor;
     }
 
+    public DataServiceExecutor getExecutor() {
+      return executor;
+    }
+
     @Override
     public void writeTo( OutputStream outputStream ) throws IOException {
       executor.executeQuery( asDataOutputStream( outputStream ) ).waitUntilFinished();
@@ -0,0 +1,175 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.execution;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.pentaho.di.core.database.DatabaseInterface;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.H2DatabaseMeta;
+import org.pentaho.di.core.database.MSSQLServerDatabaseMeta;
+import org.pentaho.di.core.database.MySQLDatabaseMeta;
+import org.pentaho.di.core.database.OracleDatabaseMeta;
+import org.pentaho.di.core.database.PostgreSQLDatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.dataservice.DataServiceMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.tableinput.TableInputMeta;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Switches the Table Input steps of a service transformation to pooled connections, if enabled for the service.
+ * <p>
+ * Kettle keeps one pool per connection name, so each pooled copy is renamed after the full identity of its
+ * connection: URL, user, a password hash, the other connection settings and the pool size. Connections with the
+ * same name but different settings never share a pool, and edited settings start a new pool. The name is stable, so
+ * a long-running server keeps one pool per connection. Connections are closed once idle for
+ * {@link #MAX_IDLE_MILLIS} or open for {@link #MAX_LIFETIME_MILLIS}, and are validated before use where the database
+ * has a known test query.
+ * Connections that already use a pool or JNDI, or whose settings contain variables, are left unchanged.
+ * </p>
+ */
+public class PooledConnections {
+  static final int INITIAL_POOL_SIZE = 1;
+  static final int UNBOUNDED_POOL_SIZE = -1;
+  static final long EVICTION_INTERVAL_MILLIS = 60 * 1000L;
+  static final long MAX_IDLE_MILLIS = 10 * 60 * 1000L;
+  static final long MAX_LIFETIME_MILLIS = 60 * 60 * 1000L;
+  static final int MAX_OPEN_STATEMENTS = 100;
+
+  private PooledConnections() {
+  }
+
+  /**
+   * @param serviceTransMeta copy of a service transformation, its steps are updated with pooled connections
+   * @param service          data service, pooling is only used if enabled
+   */
+  public static void usePooledConnections( TransMeta serviceTransMeta, DataServiceMeta service ) {
+    if ( !service.isConnectionPooling() ) {
+      return;
+    }
+    int poolSize = getPoolSize( service );
+
+    // Steps sharing a connection share its pooled copy
+    Map<DatabaseMeta, DatabaseMeta> pooled = new IdentityHashMap<DatabaseMeta, DatabaseMeta>();
+    for ( StepMeta stepMeta : serviceTransMeta.getSteps() ) {
+      if ( !( stepMeta.getStepMetaInterface() instanceof TableInputMeta ) ) {
+        continue;
+      }
+      TableInputMeta tableInputMeta = (TableInputMeta) stepMeta.getStepMetaInterface();
+      DatabaseMeta databaseMeta = tableInputMeta.getDatabaseMeta();
+      if ( !isPoolable( databaseMeta ) ) {
+        continue;
+      }
+      if ( !pooled.containsKey( databaseMeta ) ) {
+        try {
+          pooled.put( databaseMeta, createPooled( databaseMeta, poolSize ) );
+        } catch ( KettleDatabaseException e ) {
+          // Without a URL the connection can not be identified, keep it unpooled
+          pooled.put( databaseMeta, databaseMeta );
+        }
+      }
+      tableInputMeta.setDatabaseMeta( pooled.get( databaseMeta ) );
+    }
+  }
+
+  private static int getPoolSize( DataServiceMeta service ) {
+    Integer poolSize = service.getConnectionPoolSize();
+    return poolSize != null && poolSize > 0 ? poolSize : UNBOUNDED_POOL_SIZE;
+  }
+
+  @VisibleForTesting
+  static boolean isPoolable( DatabaseMeta databaseMeta ) {
+    if ( databaseMeta == null || databaseMeta.isUsingConnectionPool()
+      || databaseMeta.getAccessType() == DatabaseMeta.TYPE_ACCESS_JNDI ) {
+      return false;
+    }
+    // Variables may resolve to a different database when the pool is created
+    String xml = databaseMeta.getXML();
+    return !xml.contains( "${" ) && !xml.contains( "%%" );
+  }
+
+  @VisibleForTesting
+  static DatabaseMeta createPooled( DatabaseMeta databaseMeta, int poolSize ) throws KettleDatabaseException {
+    String poolName = getPoolName( databaseMeta, poolSize );
+    DatabaseMeta pooled = (DatabaseMeta) databaseMeta.clone();
+    pooled.setName( poolName );
+    pooled.setUsingConnectionPool( true );
+    pooled.setInitialPoolSize( INITIAL_POOL_SIZE );
+    pooled.setMaximumPoolSize( poolSize );
+
+    Properties properties = new Properties();
+    if ( pooled.getConnectionPoolingProperties() != null ) {
+      properties.putAll( pooled.getConnectionPoolingProperties() );
+    }
+    properties.setProperty( "timeBetweenEvictionRunsMillis", String.valueOf( EVICTION_INTERVAL_MILLIS ) );
+    properties.setProperty( "minEvictableIdleTimeMillis", String.valueOf( MAX_IDLE_MILLIS ) );
+    // Connections are retired by age within the pool, instead of replacing the pool
+    properties.setProperty( "maxConnLifetimeMillis", String.valueOf( MAX_LIFETIME_MILLIS ) );
+    // Identical push down queries reuse their prepared statements
+    properties.setProperty( "poolPreparedStatements", "true" );
+    properties.setProperty( "maxOpenPreparedStatements", String.valueOf( MAX_OPEN_STATEMENTS ) );
+    String validationQuery = getValidationQuery( pooled.getDatabaseInterface() );
+    if ( validationQuery != null ) {
+      properties.setProperty( "validationQuery", validationQuery );
+      properties.setProperty( "testOnBorrow", "true" );
+    }
+    pooled.setConnectionPoolingProperties( properties );
+    return pooled;
+  }
+
+  /**
+   * Kettle registers pools by connection name. The name of a pooled copy identifies the database, the credentials and
+   * the pool settings.
+   */
+  @VisibleForTesting
+  static String getPoolName( DatabaseMeta databaseMeta, int poolSize ) throws KettleDatabaseException {
+    Hasher hasher = Hashing.sha256().newHasher();
+    String[] identity = {
+      databaseMeta.getURL(), databaseMeta.getUsername(), databaseMeta.getPassword(), databaseMeta.getXML()
+    };
+    for ( String value : identity ) {
+      hasher.putString( Strings.nullToEmpty( value ), Charsets.UTF_8 ).putByte( (byte) 0 );
+    }
+    hasher.putInt( poolSize );
+    return String.format( "%s [pool %s]", databaseMeta.getName(), hasher.hash().toString().substring( 0, 16 ) );
+  }
+
+  private static String getValidationQuery( DatabaseInterface databaseInterface ) {
+    if ( databaseInterface instanceof OracleDatabaseMeta ) {
+      return "SELECT 1 FROM DUAL";
+    }
+    if ( databaseInterface instanceof MySQLDatabaseMeta || databaseInterface instanceof PostgreSQLDatabaseMeta
+      || databaseInterface instanceof H2DatabaseMeta || databaseInterface instanceof MSSQLServerDatabaseMeta ) {
+      return "SELECT 1";
+    }
+    return null;
+  }
+}
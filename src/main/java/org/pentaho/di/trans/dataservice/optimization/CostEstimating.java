@@ -0,0 +1,44 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization;
+
+import com.google.common.base.Optional;
+import org.pentaho.di.trans.dataservice.DataServiceExecutor;
+
+/**
+ * Optimization that can estimate how long a query will take when it is applied.
+ * <p>
+ * When more than one enabled optimization of a data service provides an estimate for a query, the executor only
+ * activates the cheapest. Optimizations without an estimate are always activated.
+ * </p>
+ */
+public interface CostEstimating {
+
+  /**
+   * @param executor query being planned
+   * @param meta     optimization configuration
+   * @return estimated milliseconds to produce the service rows, or absent if the optimization does not apply to this
+   * query or its cost is unknown
+   */
+  Optional<Double> estimateCost( DataServiceExecutor executor, PushDownOptimizationMeta meta );
+}
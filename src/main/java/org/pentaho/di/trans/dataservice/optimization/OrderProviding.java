@@ -0,0 +1,47 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization;
+
+import org.pentaho.di.core.sql.SQL;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.dataservice.DataServiceMeta;
+
+/**
+ * Optimization that can deliver the rows of a service transformation in the order requested by a query.
+ * <p>
+ * The executor asks before the generated transformation is built. If an enabled optimization provides the order, the
+ * generated transformation does not sort rows again, and the optimization must order its source when activated.
+ * </p>
+ */
+public interface OrderProviding {
+
+  /**
+   * @param sql              parsed query
+   * @param service          data service
+   * @param serviceTransMeta service transformation of this query
+   * @param meta             optimization configuration
+   * @return <code>true</code> if the service rows will be in the order of the query once this optimization is
+   * activated
+   */
+  boolean providesOrder( SQL sql, DataServiceMeta service, TransMeta serviceTransMeta, PushDownOptimizationMeta meta );
+}
@@ -98,6 +98,10 @@ public class PushDownOptimizationMeta implements XulEventSource {
     this.enabled = enabled;
   }
 
+  public boolean capturesServiceOutput() {
+    return enabled && type != null && type.capturesServiceOutput();
+  }
+
   public ListenableFuture<Boolean> activate( DataServiceExecutor executor ) {
     return getType().activate( executor, this );
   }
@@ -37,4 +37,12 @@ public interface PushDownType {
   ListenableFuture<Boolean> activate( DataServiceExecutor executor, PushDownOptimizationMeta meta );
 
   OptimizationImpactInfo preview( DataServiceExecutor executor, PushDownOptimizationMeta meta );
+
+  /**
+   * @return <code>true</code> if this optimization keeps the complete output of the service transformation, which
+   * must then not be reduced at the source
+   */
+  default boolean capturesServiceOutput() {
+    return false;
+  }
 }
@@ -114,8 +114,7 @@ public class ValueMetaResolver {
    * org.pentaho.di.core.Condition
    */
   public Object[] inListToTypedObjectArray( String fieldName, String value ) throws PushDownOptimizationException {
-    String[] inList  = Const.splitString( value, ';', true );
-    unescapeList( inList );
+    String[] inList = splitInList( value );
     ValueMetaInterface valueMeta = getValueMeta( fieldName );
     if ( valueMeta.isString() ) {
       // no type conversion necessary
@@ -124,7 +123,16 @@ public class ValueMetaResolver {
     return convertArrayToType( inList, valueMeta );
   }
 
-  private void unescapeList( String[] inList ) {
+  /**
+   * Splits a semi-colon delimited in-list, where escaped semi-colons are part of a value.
+   */
+  public static String[] splitInList( String value ) {
+    String[] inList = Const.splitString( value, ';', true );
+    unescapeList( inList );
+    return inList;
+  }
+
+  private static void unescapeList( String[] inList ) {
     for ( int i = 0; i < inList.length; i++ ) {
       inList[ i ] = inList[ i ] == null ? null : inList[ i ].replace( "\\;", ";" );
     }
@@ -0,0 +1,112 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.net.MediaType;
+import org.pentaho.di.core.annotations.CarteServlet;
+import org.pentaho.di.www.BaseCartePlugin;
+
+import javax.cache.Cache;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * This servlet reports hit rates, sizes and entries of the data service caches
+ */
+@CarteServlet(
+  id = "ds_serviceCacheStatistics",
+  name = "PDI Data Service: ServiceCache statistics",
+  description = "Show data service cache statistics" )
+public class CacheStatisticsServlet extends BaseCartePlugin {
+  private static final String NAME_PARAMETER = "name";
+  private static final String ENTRIES_PARAMETER = "entries";
+  private static final String CONTEXT_PATH = "/dataServiceCacheStatistics";
+  private final ServiceCacheFactory factory;
+
+  public CacheStatisticsServlet( ServiceCacheFactory factory ) {
+    this.factory = factory;
+  }
+
+  public String getContextPath() {
+    return CONTEXT_PATH;
+  }
+
+  @Override public void handleRequest( CarteRequest request ) throws IOException {
+    Collection<String> names = request.getParameters().get( NAME_PARAMETER );
+    Collection<String> entries = request.getParameters().get( ENTRIES_PARAMETER );
+    final boolean listEntries = entries != null && entries.contains( "Y" );
+
+    final ImmutableList.Builder<ServiceCacheStatistics> builder = ImmutableList.builder();
+    for ( Map.Entry<String, ServiceCacheStatistics> statistics
+      : ImmutableSortedMap.copyOf( factory.getAllStatistics() ).entrySet() ) {
+      if ( names == null || names.isEmpty() || names.contains( statistics.getKey() ) ) {
+        builder.add( statistics.getValue() );
+      }
+    }
+    final ImmutableList<ServiceCacheStatistics> selected = builder.build();
+
+    request
+      .respond( 200 )
+      .with( MediaType.PLAIN_TEXT_UTF_8.toString(), new WriterResponse() {
+        @Override public void write( PrintWriter writer ) throws IOException {
+          if ( selected.isEmpty() ) {
+            writer.println( "No matching caches." );
+          }
+          for ( ServiceCacheStatistics statistics : selected ) {
+            writeStatistics( writer, statistics, listEntries );
+          }
+        }
+      } );
+  }
+
+  private void writeStatistics( PrintWriter writer, ServiceCacheStatistics statistics, boolean listEntries ) {
+    writer.println( "Cache: " + factory.cacheName( statistics.getServiceName() ) );
+    writer.println( "  Entries: " + statistics.getEntryCount() );
+    writer.println( "  Estimated bytes: " + statistics.getEstimatedBytes() );
+    writer.println( "  Hits: " + ImmutableSortedMap.copyOf( statistics.getHits() ) );
+    writer.println( "  Result hits: " + statistics.getResultHits() );
+    writer.println( "  Partial hits: " + statistics.getPartialHits() );
+    writer.println( "  Misses: " + statistics.getMisses() );
+    writer.println( "  Shared scans: " + statistics.getSharedScans() );
+    writer.println( "  Replays: " + statistics.getReplays() );
+    writer.println( "  Replayed rows: " + statistics.getReplayedRows() );
+    writer.println( String.format( "  Replay rows per second: %.1f", statistics.getReplayRowsPerSecond() ) );
+    writer.println( "  Observer aborts: " + statistics.getObserverAborts() );
+    writer.println( "  Evictions: " + statistics.getEvictions() );
+    writer.println( "  Rejections: " + statistics.getRejections() );
+    if ( listEntries ) {
+      for ( Cache.Entry<CachedService.CacheKey, CachedService> entry : statistics.getEntries() ) {
+        CachedService value = entry.getValue();
+        writer.println( "  Entry: " + entry.getKey() );
+        writer.println( "    Rows: " + value.getRowCount()
+          + ", Ranking: " + ( value.isComplete() ? "complete" : value.getRanking().orNull() )
+          + ", Estimated bytes: " + value.estimateBytes()
+          + ( value.getSpill().isPresent() ? ", Spilled bytes: " + value.getSpill().get().getBytes() : "" ) );
+      }
+    }
+  }
+}
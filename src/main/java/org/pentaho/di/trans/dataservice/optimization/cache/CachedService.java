@@ -23,6 +23,7 @@
 package org.pentaho.di.trans.dataservice.optimization.cache;
 
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.collect.FluentIterable;
@@ -31,16 +32,33 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import org.pentaho.di.core.Condition;
 import org.pentaho.di.core.RowMetaAndData;
-import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaAndData;
+import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.sql.SQL;
 import org.pentaho.di.core.sql.SQLCondition;
 import org.pentaho.di.core.sql.SQLField;
 import org.pentaho.di.core.sql.SQLFields;
 import org.pentaho.di.core.sql.SQLLimit;
+import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.dataservice.DataServiceExecutor;
 
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
 import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * @author nhudak
@@ -48,44 +66,331 @@ import java.util.List;
 class CachedService implements Serializable {
 
   private static final long serialVersionUID = 1L;
+  private static final long ROW_OVERHEAD = 24;
+  private static final long ARRAY_HEADER = 16;
+  private static final long REFERENCE = 8;
   private final ImmutableList<RowMetaAndData> rowMetaAndData;
+  /**
+   * Present if the rows were written to disk instead, {@link #rowMetaAndData} is then empty
+   */
+  private final Optional<SpillFile> spill;
   private final Optional<Integer> ranking;
   private final Optional<Integer> rankingServiceRows;
+  private final long created;
+  private final long estimatedBytes;
+  /**
+   * Gathered while capturing, or computed from the rows when first requested
+   */
+  private volatile ImmutableMap<String, ColumnStatistics> columnStatistics;
+  private volatile ZoneMap zoneMap;
+
+  private CachedService( List<RowMetaAndData> rowMetaAndData, Optional<SpillFile> spill, Optional<Integer> ranking,
+                         Optional<Integer> ranking2, long estimatedBytes,
+                         ImmutableMap<String, ColumnStatistics> columnStatistics ) {
+    this( rowMetaAndData, spill, ranking, ranking2, System.currentTimeMillis(), estimatedBytes );
+    this.columnStatistics = columnStatistics;
+  }
 
-  private CachedService( List<RowMetaAndData> rowMetaAndData, Optional<Integer> ranking,  Optional<Integer> ranking2 ) {
+  private CachedService( List<RowMetaAndData> rowMetaAndData, Optional<SpillFile> spill, Optional<Integer> ranking,
+                         Optional<Integer> ranking2, long created, long estimatedBytes ) {
     this.rowMetaAndData = ImmutableList.copyOf( rowMetaAndData );
+    this.spill = spill;
     this.ranking = ranking;
     this.rankingServiceRows = ranking2;
+    this.created = created;
+    this.estimatedBytes = estimatedBytes;
   }
 
   public static CachedService complete( List<RowMetaAndData> rowMetaAndData ) {
+    return complete( rowMetaAndData, estimateBytes( rowMetaAndData ) );
+  }
+
+  /**
+   * @param rowMetaAndData captured rows
+   * @param estimatedBytes size of the rows, as measured while capturing
+   */
+  public static CachedService complete( List<RowMetaAndData> rowMetaAndData, long estimatedBytes ) {
+    return complete( rowMetaAndData, estimatedBytes, null );
+  }
+
+  /**
+   * @param rowMetaAndData   captured rows
+   * @param estimatedBytes   size of the rows, as measured while capturing
+   * @param columnStatistics statistics of the rows, as gathered while capturing
+   */
+  public static CachedService complete( List<RowMetaAndData> rowMetaAndData, long estimatedBytes,
+                                        ImmutableMap<String, ColumnStatistics> columnStatistics ) {
     // Key based on service name and where clause only. Ordering here does not matter
     return new CachedService(
       rowMetaAndData,
+      Optional.<SpillFile>absent(),
       Optional.<Integer>absent(),
-      Optional.<Integer>absent()
+      Optional.<Integer>absent(),
+      estimatedBytes,
+      columnStatistics
     );
   }
 
   public static CachedService partial( List<RowMetaAndData> rowMetaAndData, DataServiceExecutor executor ) {
+    return partial( rowMetaAndData, executor, estimateBytes( rowMetaAndData ) );
+  }
+
+  public static CachedService partial( List<RowMetaAndData> rowMetaAndData, DataServiceExecutor executor,
+                                       long estimatedBytes ) {
+    return partial( rowMetaAndData, executor, estimatedBytes, null );
+  }
+
+  public static CachedService partial( List<RowMetaAndData> rowMetaAndData, DataServiceExecutor executor,
+                                       long estimatedBytes,
+                                       ImmutableMap<String, ColumnStatistics> columnStatistics ) {
     return new CachedService(
       rowMetaAndData,
+      Optional.<SpillFile>absent(),
       Optional.of( calculateRank( executor ) ),
-      Optional.of( calculateServiceRowRank( executor ) )
+      Optional.of( calculateServiceRowRank( executor ) ),
+      estimatedBytes,
+      columnStatistics
     );
   }
 
+  /**
+   * @param spill            captured rows, written to disk
+   * @param columnStatistics statistics of the rows, as gathered while capturing
+   */
+  static CachedService complete( SpillFile spill, ImmutableMap<String, ColumnStatistics> columnStatistics ) {
+    return new CachedService( ImmutableList.<RowMetaAndData>of(), Optional.of( spill ),
+      Optional.<Integer>absent(), Optional.<Integer>absent(), spill.estimateBytes(), columnStatistics );
+  }
+
+  static CachedService partial( SpillFile spill, DataServiceExecutor executor,
+                                ImmutableMap<String, ColumnStatistics> columnStatistics ) {
+    return new CachedService( ImmutableList.<RowMetaAndData>of(), Optional.of( spill ),
+      Optional.of( calculateRank( executor ) ), Optional.of( calculateServiceRowRank( executor ) ),
+      spill.estimateBytes(), columnStatistics );
+  }
+
+  /**
+   * Recreates a result set read by {@link CachedServiceCodec}
+   */
+  static CachedService restore( List<RowMetaAndData> rowMetaAndData, Optional<Integer> ranking,
+                                Optional<Integer> rankingServiceRows, long created, long estimatedBytes ) {
+    return new CachedService( rowMetaAndData, Optional.<SpillFile>absent(), ranking, rankingServiceRows, created,
+      estimatedBytes );
+  }
+
+  /**
+   * Creates a complete result set with the given rows appended to this one. Only rows whose watermark is greater
+   * than {@code lastSeen} are appended, so that overlapping reads do not produce duplicates.
+   *
+   * @param rows           newly captured rows
+   * @param watermarkField monotonically increasing field
+   * @param lastSeen       greatest watermark in this result set
+   * @return a new, complete result set
+   * @throws KettleValueException if watermark values can not be compared
+   */
+  public CachedService append( List<RowMetaAndData> rows, String watermarkField, ValueMetaAndData lastSeen )
+    throws KettleValueException {
+    checkState( !spill.isPresent(), "Spilled result sets can not be extended" );
+    ImmutableList.Builder<RowMetaAndData> builder = ImmutableList.<RowMetaAndData>builder().addAll( rowMetaAndData );
+    long bytes = estimatedBytes;
+    for ( RowMetaAndData row : rows ) {
+      int index = row.getRowMeta().indexOfValue( watermarkField );
+      Object value = index < 0 ? null : row.getData()[ index ];
+      if ( value != null && lastSeen.getValueMeta().compare( value, lastSeen.getValueData() ) > 0 ) {
+        builder.add( row );
+        bytes += estimateBytes( row.getData() );
+      }
+    }
+    return complete( builder.build(), bytes );
+  }
+
+  /**
+   * Finds the greatest value of a watermark field in this result set.
+   *
+   * @param watermarkField monotonically increasing field
+   * @return greatest non-null value, or absent if no row has a value for the field
+   * @throws KettleValueException if watermark values can not be compared
+   */
+  public Optional<ValueMetaAndData> getWatermark( String watermarkField ) throws KettleValueException {
+    ValueMetaInterface valueMeta = null;
+    Object max = null;
+    for ( RowMetaAndData row : rows() ) {
+      int index = row.getRowMeta().indexOfValue( watermarkField );
+      Object value = index < 0 ? null : row.getData()[ index ];
+      if ( value == null ) {
+        continue;
+      }
+      if ( max == null || row.getRowMeta().getValueMeta( index ).compare( value, max ) > 0 ) {
+        valueMeta = row.getRowMeta().getValueMeta( index );
+        max = value;
+      }
+    }
+    return max == null ? Optional.<ValueMetaAndData>absent() : Optional.of( new ValueMetaAndData( valueMeta, max ) );
+  }
+
+  /**
+   * @return estimated heap retained by the cached rows, in bytes
+   */
+  public long estimateBytes() {
+    return estimatedBytes;
+  }
+
+  private static long estimateBytes( List<RowMetaAndData> rows ) {
+    long bytes = 0;
+    for ( RowMetaAndData row : rows ) {
+      bytes += estimateBytes( row.getData() );
+    }
+    return bytes;
+  }
+
+  /**
+   * Estimates the heap retained by one captured row: its {@link RowMetaAndData} wrapper, the data array and each
+   * value. Row metadata is shared between rows and not counted.
+   *
+   * @param data row data
+   * @return estimated size in bytes
+   */
+  static long estimateBytes( Object[] data ) {
+    if ( data == null ) {
+      return ROW_OVERHEAD;
+    }
+    long bytes = ROW_OVERHEAD + ARRAY_HEADER + REFERENCE * data.length;
+    for ( Object value : data ) {
+      if ( value == null ) {
+        continue;
+      } else if ( value instanceof String ) {
+        // String object plus its backing char array
+        bytes += 24 + align( ARRAY_HEADER + 2L * ( (String) value ).length() );
+      } else if ( value instanceof byte[] ) {
+        bytes += align( ARRAY_HEADER + ( (byte[]) value ).length );
+      } else if ( value instanceof BigDecimal ) {
+        // BigDecimal, its BigInteger and magnitude array
+        bytes += 40 + 32 + align( ARRAY_HEADER + ( (BigDecimal) value ).unscaledValue().bitLength() / 8 + 4 );
+      } else if ( value instanceof Timestamp ) {
+        bytes += 32;
+      } else if ( value instanceof Date ) {
+        bytes += 24;
+      } else {
+        // Boxed Long, Double and Boolean
+        bytes += 16;
+      }
+    }
+    return bytes;
+  }
+
+  private static long align( long bytes ) {
+    return ( bytes + 7 ) & ~7L;
+  }
+
+  /**
+   * @return all cached rows, spilled rows are read back into memory
+   */
   public List<RowMetaAndData> getRowMetaAndData() {
-    return rowMetaAndData;
+    return spill.isPresent() ? ImmutableList.copyOf( rows() ) : rowMetaAndData;
+  }
+
+  /**
+   * @return cached rows, streamed from disk if they were spilled
+   */
+  Iterable<RowMetaAndData> rows() {
+    if ( !spill.isPresent() ) {
+      return rowMetaAndData;
+    }
+    final SpillFile spillFile = spill.get();
+    return new Iterable<RowMetaAndData>() {
+      @Override public Iterator<RowMetaAndData> iterator() {
+        return spillFile.iterator();
+      }
+    };
+  }
+
+  public long getRowCount() {
+    return spill.isPresent() ? spill.get().getRowCount() : rowMetaAndData.size();
+  }
+
+  Optional<SpillFile> getSpill() {
+    return spill;
+  }
+
+  /**
+   * Deletes spilled rows, once this result set is no longer cached
+   */
+  void release() {
+    if ( spill.isPresent() ) {
+      spill.get().delete();
+    }
+  }
+
+  /**
+   * Iterates over the rows that may satisfy a condition. In memory rows are filtered by their zone map, spilled rows
+   * are streamed in full. Spilled rows have no zone map: segment files can only be decoded sequentially, so skipping
+   * a block of rows would save no reads, and each segment holds far too many rows for its value ranges to exclude it.
+   *
+   * @param predicate query condition
+   * @return a new row iterator, {@link java.io.Closeable} if it holds files open
+   */
+  Iterator<RowMetaAndData> scan( NormalizedPredicate predicate ) {
+    return spill.isPresent() ? spill.get().iterator() : getZoneMap().scan( predicate );
+  }
+
+  /**
+   * @param predicate query condition
+   * @return number of rows {@link #scan(NormalizedPredicate)} returns
+   */
+  long countScanned( NormalizedPredicate predicate ) {
+    return spill.isPresent() ? getRowCount() : getZoneMap().count( predicate );
+  }
+
+  /**
+   * @return statistics of the cached rows by field name, empty if field values could not be read
+   */
+  public ImmutableMap<String, ColumnStatistics> getColumnStatistics() {
+    ImmutableMap<String, ColumnStatistics> statistics = columnStatistics;
+    if ( statistics == null ) {
+      // Not serialized, restored and appended result sets compute their statistics on demand
+      columnStatistics = statistics = ColumnStatisticsCollector.collect( rows() );
+    }
+    return statistics;
+  }
+
+  /**
+   * @return block value ranges of the cached rows, built when first requested
+   */
+  ZoneMap getZoneMap() {
+    ZoneMap blocks = zoneMap;
+    if ( blocks == null ) {
+      zoneMap = blocks = ZoneMap.build( rowMetaAndData );
+    }
+    return blocks;
   }
 
   public Optional<Integer> getRanking() {
     return ranking;
   }
 
+  Optional<Integer> getRankingServiceRows() {
+    return rankingServiceRows;
+  }
+
+  /**
+   * @return time this result set was captured, in milliseconds
+   */
+  public long getCreated() {
+    return created;
+  }
+
+  private Object writeReplace() {
+    return new SerializedForm( this );
+  }
+
+  private void readObject( ObjectInputStream stream ) throws InvalidObjectException {
+    throw new InvalidObjectException( "Serialized form required" );
+  }
+
   @Override public String toString() {
     return Objects.toStringHelper( this )
-      .add( "rowMetaAndData.length", rowMetaAndData.size() )
+      .add( "rowMetaAndData.length", getRowCount() )
+      .add( "spilled", spill.isPresent() )
       .add( "ranking", ranking )
       .toString();
   }
@@ -112,6 +417,14 @@ class CachedService implements Serializable {
     return Integer.MAX_VALUE;
   }
 
+  /**
+   * @param executor query to test
+   * @return <code>true</code> if the query will consume the complete service output
+   */
+  static boolean isUnbounded( DataServiceExecutor executor ) {
+    return calculateRank( executor ) == Integer.MAX_VALUE && calculateServiceRowRank( executor ) == Integer.MAX_VALUE;
+  }
+
   private static int calculateServiceRowRank( DataServiceExecutor executor ) {
     if ( executor.getServiceRowLimit() > 0 ) {
       return executor.getServiceRowLimit();
@@ -144,6 +457,38 @@ class CachedService implements Serializable {
     return outRanks;
   }
 
+  /**
+   * Stores cached results with {@link CachedServiceCodec} when a cache copies values, instead of serializing a
+   * full RowMeta with every row.
+   */
+  private static final class SerializedForm implements Externalizable {
+    private static final long serialVersionUID = 1L;
+    private CachedService cachedService;
+
+    public SerializedForm() {
+    }
+
+    SerializedForm( CachedService cachedService ) {
+      this.cachedService = cachedService;
+    }
+
+    @Override public void writeExternal( ObjectOutput out ) throws IOException {
+      byte[] encoded = CachedServiceCodec.encode( cachedService );
+      out.writeInt( encoded.length );
+      out.write( encoded );
+    }
+
+    @Override public void readExternal( ObjectInput in ) throws IOException {
+      byte[] encoded = new byte[ in.readInt() ];
+      in.readFully( encoded );
+      cachedService = CachedServiceCodec.decode( encoded );
+    }
+
+    private Object readResolve() {
+      return cachedService;
+    }
+  }
+
   public static final class CacheKey implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -164,41 +509,41 @@ class CachedService implements Serializable {
      * Optional
      */
     private final ImmutableList<String> orderByFields;
+    /**
+     * Derived from whereClause, used for subsumption tests only
+     */
+    private final NormalizedPredicate predicate;
 
     private CacheKey( int transMetaVersionId, ImmutableMap<String, String> parameters, Optional<String> whereClause,
-                      ImmutableList<String> orderByFields ) {
+                      ImmutableList<String> orderByFields, NormalizedPredicate predicate ) {
       this.transMetaVersionId = transMetaVersionId;
       this.parameters = parameters;
       this.whereClause = whereClause;
       this.orderByFields = orderByFields;
+      this.predicate = predicate;
     }
 
     public static CacheKey create( DataServiceExecutor executor ) {
       SQL sql = executor.getSql();
 
       // Calculate trans meta version. If the service transformation changes, keys will no longer match
-      int version;
-      try {
-        // Get trans meta from service instead of executor, since executor modifies the meta with every query
-        version = executor.getService().getServiceTrans().
-                getXML( true, true, true, true, true, true, true, true, true, false ).hashCode();
-      } catch ( KettleException e ) {
-        // Something has gone horribly wrong.
-        // If data service is executing, the transformation was loaded and should be serializable
-        throw new IllegalStateException( "Unable to determine version of transMeta", e );
-      }
+      // Get trans meta from service instead of executor, since executor modifies the meta with every query
+      int version = transMetaVersion( executor.getService().getServiceTrans() );
 
       // Extract where condition
-      Optional<String> whereClause = Optional.fromNullable( sql.getWhereCondition() ).transform(
-        // Simplify  and rewrite condition, more likely to match future queries
-        new Function<SQLCondition, String>() {
-          @Override public String apply( SQLCondition input ) {
+      // Simplify  and rewrite condition, more likely to match future queries
+      Optional<Condition> condition = Optional.fromNullable( sql.getWhereCondition() ).transform(
+        new Function<SQLCondition, Condition>() {
+          @Override public Condition apply( SQLCondition input ) {
             Condition clone = (Condition) input.getCondition().clone();
             clone.simplify();
-            return clone.toString();
+            return clone;
           }
         }
       );
+      Optional<String> whereClause = condition.transform( Functions.toStringFunction() );
+      NormalizedPredicate predicate = condition.isPresent()
+        ? NormalizedPredicate.create( condition.get() ) : NormalizedPredicate.alwaysTrue();
 
       // Extract ORDER BY fields from SQL
       ImmutableList<String> orderByFields = FluentIterable
@@ -222,7 +567,15 @@ class CachedService implements Serializable {
       // Copy execution parameters
       ImmutableMap<String, String> parameters = ImmutableMap.copyOf( executor.getParameters() );
 
-      return new CacheKey( version, parameters, whereClause, orderByFields );
+      return new CacheKey( version, parameters, whereClause, orderByFields, predicate );
+    }
+
+    /**
+     * @param transMeta service transformation, as loaded for the data service
+     * @return a version identifier that changes whenever the transformation changes
+     */
+    static int transMetaVersion( TransMeta transMeta ) {
+      return TransMetaFingerprint.of( transMeta );
     }
 
     /**
@@ -247,11 +600,30 @@ class CachedService implements Serializable {
     }
 
     public CacheKey withoutCondition() {
-      return new CacheKey( transMetaVersionId, parameters, Optional.<String>absent(), orderByFields );
+      return new CacheKey( transMetaVersionId, parameters, Optional.<String>absent(), orderByFields,
+        NormalizedPredicate.alwaysTrue() );
     }
 
     public CacheKey withoutOrder() {
-      return new CacheKey( transMetaVersionId, parameters, whereClause, ImmutableList.<String>of() );
+      return new CacheKey( transMetaVersionId, parameters, whereClause, ImmutableList.<String>of(), predicate );
+    }
+
+    public boolean hasCondition() {
+      return whereClause.isPresent();
+    }
+
+    /**
+     * Tests if the rows cached under this key contain every row that the query identified by {@code other} needs.
+     * Both keys must refer to the same service version and parameters.
+     *
+     * @param other key of the incoming query
+     * @return <code>true</code> if this key's WHERE condition is implied by {@code other}'s
+     */
+    public boolean subsumes( CacheKey other ) {
+      return Objects.equal( transMetaVersionId, other.transMetaVersionId )
+        && Objects.equal( parameters, other.parameters )
+        && predicate != null && other.predicate != null
+        && predicate.subsumes( other.predicate );
     }
 
     @Override public boolean equals( Object o ) {
@@ -272,6 +644,14 @@ class CachedService implements Serializable {
       return Objects.hashCode( transMetaVersionId, parameters, whereClause, orderByFields );
     }
 
+    private Object writeReplace() {
+      return new SerializedKey( this );
+    }
+
+    private void readObject( ObjectInputStream stream ) throws InvalidObjectException {
+      throw new InvalidObjectException( "Serialized form required" );
+    }
+
     @Override public String toString() {
       return Objects.toStringHelper( CacheKey.class )
         .add( "transMetaVersionId", transMetaVersionId )
@@ -280,6 +660,71 @@ class CachedService implements Serializable {
         .add( "orderByFields", orderByFields )
         .toString();
     }
+
+    /**
+     * Writes keys field by field, avoiding the class descriptors of the Guava collections
+     */
+    private static final class SerializedKey implements Externalizable {
+      private static final long serialVersionUID = 1L;
+      private CacheKey key;
+
+      public SerializedKey() {
+      }
+
+      SerializedKey( CacheKey key ) {
+        this.key = key;
+      }
+
+      @Override public void writeExternal( ObjectOutput out ) throws IOException {
+        out.writeInt( key.transMetaVersionId );
+        out.writeInt( key.parameters.size() );
+        for ( Map.Entry<String, String> parameter : key.parameters.entrySet() ) {
+          writeString( out, parameter.getKey() );
+          writeString( out, parameter.getValue() );
+        }
+        out.writeBoolean( key.whereClause.isPresent() );
+        if ( key.whereClause.isPresent() ) {
+          writeString( out, key.whereClause.get() );
+        }
+        out.writeInt( key.orderByFields.size() );
+        for ( String field : key.orderByFields ) {
+          writeString( out, field );
+        }
+        out.writeObject( key.predicate );
+      }
+
+      @Override public void readExternal( ObjectInput in ) throws IOException, ClassNotFoundException {
+        int transMetaVersionId = in.readInt();
+        ImmutableMap.Builder<String, String> parameters = ImmutableMap.builder();
+        for ( int i = in.readInt(); i > 0; i-- ) {
+          parameters.put( readString( in ), readString( in ) );
+        }
+        Optional<String> whereClause = in.readBoolean() ? Optional.of( readString( in ) ) : Optional.<String>absent();
+        ImmutableList.Builder<String> orderByFields = ImmutableList.builder();
+        for ( int i = in.readInt(); i > 0; i-- ) {
+          orderByFields.add( readString( in ) );
+        }
+        NormalizedPredicate predicate = (NormalizedPredicate) in.readObject();
+        key = new CacheKey( transMetaVersionId, parameters.build(), whereClause, orderByFields.build(), predicate );
+      }
+
+      private Object readResolve() {
+        return key;
+      }
+
+      // Unlike writeUTF, not limited to 64k
+      private static void writeString( ObjectOutput out, String value ) throws IOException {
+        byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+      }
+
+      private static String readString( ObjectInput in ) throws IOException {
+        byte[] bytes = new byte[ in.readInt() ];
+        in.readFully( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+      }
+    }
   }
 
 }
@@ -0,0 +1,226 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Closeables;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact binary form of a {@link CachedService}, used in place of default Java serialization.
+ * <p>
+ * The row metadata is written once for each run of rows sharing it, and rows are written with the
+ * {@link RowMetaInterface#writeData} encoding. The body may be deflated, see {@link #COMPRESS_PROPERTY}.
+ * Rows spilled to disk are streamed into the encoding, so the decoded copy holds them in memory and shares no files.
+ * </p>
+ */
+final class CachedServiceCodec {
+  /**
+   * Set to "Y" to compress cached results whenever a cache stores them by value
+   */
+  static final String COMPRESS_PROPERTY = "dataservice.cache.compress";
+
+  private static final byte FORMAT_VERSION = 1;
+  private static final byte FLAG_COMPRESSED = 0x01;
+
+  private static final byte BLOCK_META = 1;
+  private static final byte BLOCK_ROW = 2;
+  private static final byte BLOCK_END = 0;
+
+  private CachedServiceCodec() {
+  }
+
+  static boolean isCompressionEnabled() {
+    return "Y".equalsIgnoreCase( System.getProperty( COMPRESS_PROPERTY ) );
+  }
+
+  static byte[] encode( CachedService cachedService ) throws IOException {
+    return encode( cachedService, isCompressionEnabled() );
+  }
+
+  static byte[] encode( CachedService cachedService, boolean compress ) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bytes.write( FORMAT_VERSION );
+    bytes.write( compress ? FLAG_COMPRESSED : 0 );
+
+    Deflater deflater = compress ? new Deflater( Deflater.BEST_SPEED ) : null;
+    try {
+      OutputStream body = compress ? new DeflaterOutputStream( bytes, deflater, 8192 ) : bytes;
+      DataOutputStream out = new DataOutputStream( body );
+      writeHeader( out, cachedService );
+      writeRows( out, cachedService );
+      out.close();
+    } finally {
+      if ( deflater != null ) {
+        deflater.end();
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  static CachedService decode( byte[] encoded ) throws IOException {
+    if ( encoded.length < 2 || encoded[ 0 ] != FORMAT_VERSION ) {
+      throw new InvalidObjectException( "Unsupported cached service format" );
+    }
+    InputStream body = new ByteArrayInputStream( encoded, 2, encoded.length - 2 );
+    if ( ( encoded[ 1 ] & FLAG_COMPRESSED ) != 0 ) {
+      body = new InflaterInputStream( body );
+    }
+    try ( DataInputStream in = new DataInputStream( body ) ) {
+      long created = in.readLong();
+      long estimatedBytes = in.readLong();
+      Optional<Integer> ranking = readOptionalInt( in );
+      Optional<Integer> rankingServiceRows = readOptionalInt( in );
+      return CachedService.restore( readRows( in ), ranking, rankingServiceRows, created, estimatedBytes );
+    }
+  }
+
+  private static void writeHeader( DataOutputStream out, CachedService cachedService ) throws IOException {
+    out.writeLong( cachedService.getCreated() );
+    out.writeLong( cachedService.estimateBytes() );
+    writeOptionalInt( out, cachedService.getRanking() );
+    writeOptionalInt( out, cachedService.getRankingServiceRows() );
+  }
+
+  private static void writeRows( DataOutputStream out, CachedService cachedService ) throws IOException {
+    RowWriter writer = new RowWriter( out );
+    // Spilled rows are read from disk one at a time
+    Iterator<RowMetaAndData> rows = cachedService.rows().iterator();
+    try {
+      while ( rows.hasNext() ) {
+        writer.write( rows.next() );
+      }
+    } catch ( IllegalStateException e ) {
+      throw new IOException( "Unable to encode spilled rows", e );
+    } finally {
+      if ( rows instanceof Closeable ) {
+        Closeables.close( (Closeable) rows, true );
+      }
+    }
+    writer.end();
+  }
+
+  private static ImmutableList<RowMetaAndData> readRows( DataInputStream in ) throws IOException {
+    ImmutableList.Builder<RowMetaAndData> rows = ImmutableList.builder();
+    RowReader reader = new RowReader( in );
+    for ( RowMetaAndData row = reader.read(); row != null; row = reader.read() ) {
+      rows.add( row );
+    }
+    return rows.build();
+  }
+
+  private static void writeOptionalInt( DataOutputStream out, Optional<Integer> value ) throws IOException {
+    out.writeBoolean( value.isPresent() );
+    if ( value.isPresent() ) {
+      out.writeInt( value.get() );
+    }
+  }
+
+  private static Optional<Integer> readOptionalInt( DataInputStream in ) throws IOException {
+    return in.readBoolean() ? Optional.of( in.readInt() ) : Optional.<Integer>absent();
+  }
+
+  /**
+   * Writes a run of rows, each preceded by its row metadata when that differs from the previous row's
+   */
+  static final class RowWriter {
+    private final DataOutputStream out;
+    private RowMetaInterface current;
+
+    RowWriter( DataOutputStream out ) {
+      this.out = out;
+    }
+
+    void write( RowMetaAndData row ) throws IOException {
+      try {
+        // Captured rows normally share a single RowMeta instance
+        if ( row.getRowMeta() != current ) {
+          current = row.getRowMeta();
+          out.writeByte( BLOCK_META );
+          current.writeMeta( out );
+        }
+        out.writeByte( BLOCK_ROW );
+        current.writeData( out, row.getData() );
+      } catch ( KettleException e ) {
+        throw new IOException( "Unable to encode cached rows", e );
+      }
+    }
+
+    /**
+     * Marks the end of the run, the underlying stream is left open
+     */
+    void end() throws IOException {
+      out.writeByte( BLOCK_END );
+    }
+  }
+
+  /**
+   * Reads a run of rows written by {@link RowWriter}
+   */
+  static final class RowReader {
+    private final DataInputStream in;
+    private RowMetaInterface current;
+
+    RowReader( DataInputStream in ) {
+      this.in = in;
+    }
+
+    /**
+     * @return the next row, or <code>null</code> at the end of the run
+     */
+    RowMetaAndData read() throws IOException {
+      try {
+        for ( byte block = in.readByte(); block != BLOCK_END; block = in.readByte() ) {
+          if ( block == BLOCK_META ) {
+            current = new RowMeta( in );
+          } else if ( block == BLOCK_ROW && current != null ) {
+            return new RowMetaAndData( current, current.readData( in ) );
+          } else {
+            throw new InvalidObjectException( "Corrupt cached service block: " + block );
+          }
+        }
+      } catch ( KettleException e ) {
+        throw new IOException( "Unable to decode cached rows", e );
+      }
+      return null;
+    }
+  }
+}
@@ -26,9 +26,12 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Iterables;
+import com.google.common.io.Closeables;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListenableFutureTask;
+import org.pentaho.di.core.Condition;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.sql.SQLCondition;
 import org.pentaho.di.trans.dataservice.DataServiceExecutor;
 import org.pentaho.di.trans.dataservice.execution.DefaultTransWiring;
 import org.pentaho.di.trans.dataservice.execution.TransStarter;
@@ -38,12 +41,14 @@ import org.pentaho.di.trans.RowProducer;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.step.StepMetaDataCombi;
 
+import java.io.Closeable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -51,18 +56,33 @@ import java.util.function.Supplier;
  */
 class CachedServiceLoader {
   private final Executor executor;
-  private final Supplier<Iterator<RowMetaAndData>> rowSupplier;
+  private final Function<DataServiceExecutor, Iterator<RowMetaAndData>> rowSource;
 
   CachedServiceLoader( Executor executor, Supplier<Iterator<RowMetaAndData>> rowSupplier ) {
     this.executor = executor;
-    this.rowSupplier = rowSupplier;
+    this.rowSource = query -> rowSupplier.get();
   }
 
+  /**
+   * Replays a cached result set, skipping blocks of rows that can not match the query's WHERE clause.
+   * Spilled result sets are streamed from disk.
+   */
   CachedServiceLoader( CachedService cachedService, Executor executor ) {
-    this( executor, () -> cachedService.getRowMetaAndData().iterator() );
+    this.executor = executor;
+    this.rowSource = query -> cachedService.scan( wherePredicate( query ) );
+  }
+
+  static NormalizedPredicate wherePredicate( DataServiceExecutor dataServiceExecutor ) {
+    SQLCondition whereCondition = dataServiceExecutor.getSql().getWhereCondition();
+    if ( whereCondition == null || whereCondition.getCondition() == null ) {
+      return NormalizedPredicate.alwaysTrue();
+    }
+    Condition condition = (Condition) whereCondition.getCondition().clone();
+    condition.simplify();
+    return NormalizedPredicate.create( condition );
   }
 
-  ListenableFuture<Integer> replay( DataServiceExecutor dataServiceExecutor ) throws KettleException {
+  ListenableFuture<Integer> replay( final DataServiceExecutor dataServiceExecutor ) throws KettleException {
     final Trans serviceTrans = dataServiceExecutor.getServiceTrans(), genTrans = dataServiceExecutor.getGenTrans();
     final CountDownLatch startReplay = new CountDownLatch( 1 );
     final RowProducer rowProducer = dataServiceExecutor.addRowProducer();
@@ -100,20 +120,31 @@ class CachedServiceLoader {
       @Override public Integer call() throws Exception {
         Preconditions.checkState( startReplay.await( 30, TimeUnit.SECONDS ), "Cache replay did not start" );
         int rowCount = 0;
-        for ( Iterator<RowMetaAndData> iterator = rowSupplier.get();
-              iterator.hasNext() && genTrans.isRunning(); ) {
-          RowMetaAndData metaAndData = iterator.next();
-          boolean rowAdded = false;
-          RowMetaInterface rowMeta = metaAndData.getRowMeta();
-          Object[] rowData = rowMeta.cloneRow( metaAndData.getData() );
-          while ( !rowAdded && genTrans.isRunning() ) {
-            rowAdded = rowProducer.putRowWait( rowMeta, rowData, 10, TimeUnit.SECONDS );
+        Iterator<RowMetaAndData> iterator = null;
+        try {
+          for ( iterator = rowSource.apply( dataServiceExecutor ); iterator.hasNext() && genTrans.isRunning(); ) {
+            RowMetaAndData metaAndData = iterator.next();
+            boolean rowAdded = false;
+            RowMetaInterface rowMeta = metaAndData.getRowMeta();
+            Object[] rowData = rowMeta.cloneRow( metaAndData.getData() );
+            while ( !rowAdded && genTrans.isRunning() ) {
+              rowAdded = rowProducer.putRowWait( rowMeta, rowData, 10, TimeUnit.SECONDS );
+            }
+            if ( rowAdded ) {
+              rowCount += 1;
+            }
           }
-          if ( rowAdded ) {
-            rowCount += 1;
+        } catch ( RuntimeException e ) {
+          // Row source failed (e.g. an observed service gave up capturing), do not deliver a truncated result
+          genTrans.stopAll();
+          throw e;
+        } finally {
+          rowProducer.finished();
+          if ( iterator instanceof Closeable ) {
+            // Spilled rows hold their files open until fully read
+            Closeables.close( (Closeable) iterator, true );
           }
         }
-        rowProducer.finished();
         return rowCount;
       }
     } );
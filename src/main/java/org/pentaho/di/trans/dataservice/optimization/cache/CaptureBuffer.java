@@ -0,0 +1,302 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Append-only buffer of captured rows, written by a single producer and read by any number of concurrent readers.
+ * <p>
+ * Rows are stored in fixed-size segments that are never moved once allocated. A row becomes visible to readers
+ * only after the volatile size counter is published, so readers never take a lock unless they have caught up
+ * with the producer and must wait for more rows.
+ * </p>
+ * <p>
+ * Once the buffer {@link #stopRetaining() stops retaining} rows, e.g. because the capture grew too large to be cached,
+ * current readers still see every row but no reader may join. Segments are then released as soon as every reader
+ * has moved past them. A reader that stops iterating without being closed holds on to rows until the buffer is
+ * closed and dropped.
+ * </p>
+ *
+ * @param <T> row type
+ */
+class CaptureBuffer<T> {
+  private static final int SEGMENT_SHIFT = 10;
+  private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+  private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+  enum State {
+    OPEN, COMPLETE, ABANDONED
+  }
+
+  private final long maxRows;
+  private final Object monitor = new Object();
+  private final AtomicInteger waiting = new AtomicInteger();
+  private final Set<Reader> readers = ConcurrentHashMap.newKeySet();
+
+  private volatile Object[][] segments = new Object[ 4 ][];
+  private volatile int size = 0;
+  private volatile State state = State.OPEN;
+  private volatile boolean retaining = true;
+  private volatile Throwable failure;
+
+  /**
+   * Number of leading segments released once rows were no longer retained, only used by the producer
+   */
+  private int releasedSegments = 0;
+
+  /**
+   * @param maxRows maximum number of rows to retain before the buffer stops retaining rows, or 0 for no limit
+   */
+  CaptureBuffer( long maxRows ) {
+    this.maxRows = maxRows;
+  }
+
+  /**
+   * Appends a row and wakes up any waiting readers. Must only be called by the producer.
+   *
+   * @param row captured row
+   * @return <code>false</code> if the row is not retained, because the buffer is closed, over its limit or no
+   * longer retaining rows. Rows that are not retained are still passed on to current readers of an open buffer.
+   */
+  synchronized boolean add( T row ) {
+    if ( state != State.OPEN ) {
+      return false;
+    }
+    int index = size;
+    if ( retaining && maxRows > 0 && index >= maxRows ) {
+      stopRetaining();
+    }
+    if ( !retaining ) {
+      releaseReadSegments();
+      if ( readers.isEmpty() ) {
+        // No reader is left and none may join
+        return false;
+      }
+    }
+
+    int segment = index >>> SEGMENT_SHIFT;
+    Object[][] directory = segments;
+    if ( segment >= directory.length ) {
+      directory = Arrays.copyOf( directory, directory.length * 2 );
+    }
+    if ( directory[ segment ] == null ) {
+      directory[ segment ] = new Object[ SEGMENT_SIZE ];
+    }
+    directory[ segment ][ index & SEGMENT_MASK ] = row;
+    // Publish directory before size, readers always read size first
+    segments = directory;
+    size = index + 1;
+
+    signal();
+    return retaining;
+  }
+
+  /**
+   * Stops retaining rows for readers that have not joined yet. Current readers keep receiving every row.
+   */
+  synchronized void stopRetaining() {
+    retaining = false;
+  }
+
+  private void releaseReadSegments() {
+    int first = size;
+    for ( Reader reader : readers ) {
+      first = Math.min( first, reader.position );
+    }
+    Object[][] directory = segments;
+    int segment = Math.min( first >>> SEGMENT_SHIFT, directory.length );
+    for ( ; releasedSegments < segment; releasedSegments++ ) {
+      directory[ releasedSegments ] = null;
+    }
+  }
+
+  /**
+   * Marks the buffer as fully captured. Readers will see the end of the iteration after the last row.
+   */
+  void complete() {
+    close( State.COMPLETE, null );
+  }
+
+  /**
+   * Gives up on capturing. Captured rows are released and current readers fail on their next wait.
+   *
+   * @param cause reason for abandoning capture
+   */
+  void abandon( Throwable cause ) {
+    close( State.ABANDONED, cause );
+  }
+
+  private synchronized void close( State newState, Throwable cause ) {
+    if ( state != State.OPEN ) {
+      return;
+    }
+    if ( newState == State.ABANDONED ) {
+      segments = new Object[ 0 ][];
+    }
+    synchronized ( monitor ) {
+      failure = cause;
+      state = newState;
+      monitor.notifyAll();
+    }
+  }
+
+  private void signal() {
+    if ( waiting.get() > 0 ) {
+      synchronized ( monitor ) {
+        monitor.notifyAll();
+      }
+    }
+  }
+
+  private void awaitRow( int index ) throws InterruptedException {
+    synchronized ( monitor ) {
+      waiting.incrementAndGet();
+      try {
+        while ( size <= index && state == State.OPEN ) {
+          monitor.wait();
+        }
+      } finally {
+        waiting.decrementAndGet();
+      }
+    }
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private T get( int index ) {
+    Object[][] directory = segments;
+    int segment = index >>> SEGMENT_SHIFT;
+    if ( segment >= directory.length ) {
+      throw new IllegalStateException( "Service capture was abandoned", failure );
+    }
+    return (T) directory[ segment ][ index & SEGMENT_MASK ];
+  }
+
+  int size() {
+    return size;
+  }
+
+  State getState() {
+    return state;
+  }
+
+  /**
+   * @return <code>true</code> if a new reader would see every row of the capture
+   */
+  boolean isJoinable() {
+    return retaining && state != State.ABANDONED;
+  }
+
+  /**
+   * @return <code>true</code> if any reader is still iterating
+   */
+  boolean hasReaders() {
+    return !readers.isEmpty();
+  }
+
+  /**
+   * @return a copy of all rows published so far
+   * @throws IllegalStateException if rows are no longer retained
+   */
+  ImmutableList<T> toList() {
+    if ( !retaining ) {
+      throw new IllegalStateException( "Service capture no longer retains all rows" );
+    }
+    int count = size;
+    ImmutableList.Builder<T> builder = ImmutableList.builder();
+    for ( int i = 0; i < count; i++ ) {
+      builder.add( get( i ) );
+    }
+    return builder.build();
+  }
+
+  /**
+   * Iterates over all rows from the start of the capture. {@link Iterator#hasNext()} blocks until another row is
+   * published or the buffer is closed. The iterator is {@link Closeable}, readers that stop early should close it
+   * so that rows are not held for them.
+   *
+   * @return a new, independent iterator
+   * @throws IllegalStateException if the buffer no longer retains all rows
+   */
+  synchronized Iterator<T> iterator() {
+    if ( !isJoinable() ) {
+      throw new IllegalStateException( "Service capture no longer retains all rows", failure );
+    }
+    Reader reader = new Reader();
+    readers.add( reader );
+    return reader;
+  }
+
+  private final class Reader implements Iterator<T>, Closeable {
+    /**
+     * Index of the next row, only written by the reading thread
+     */
+    volatile int position = 0;
+
+    @Override public boolean hasNext() {
+      if ( position >= size && state == State.OPEN ) {
+        try {
+          awaitRow( position );
+        } catch ( InterruptedException e ) {
+          Thread.currentThread().interrupt();
+          close();
+          throw new IllegalStateException( "Interrupted while waiting for service rows", e );
+        }
+      }
+      if ( state == State.ABANDONED ) {
+        close();
+        throw new IllegalStateException( "Service capture was abandoned", failure );
+      }
+      if ( position < size ) {
+        return true;
+      }
+      close();
+      return false;
+    }
+
+    @Override public T next() {
+      if ( !hasNext() ) {
+        throw new NoSuchElementException();
+      }
+      T row = get( position );
+      position = position + 1;
+      return row;
+    }
+
+    @Override public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override public void close() {
+      readers.remove( this );
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import org.pentaho.di.core.row.ValueMetaAndData;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Summary of the values of one service output field, gathered while the output was captured.
+ * <p>
+ * Row and null counts are exact. The distinct count is an estimate, and the counts of frequent values are lower
+ * bounds of their actual number of occurrences.
+ * </p>
+ */
+public final class ColumnStatistics {
+  private final String fieldName;
+  private final ValueMetaInterface valueMeta;
+  private final long rowCount;
+  private final long nullCount;
+  private final Object min;
+  private final Object max;
+  private final long distinctCount;
+  private final ImmutableMap<Object, Long> frequentValues;
+
+  ColumnStatistics( String fieldName, ValueMetaInterface valueMeta, long rowCount, long nullCount, Object min,
+                    Object max, long distinctCount, ImmutableMap<Object, Long> frequentValues ) {
+    this.fieldName = fieldName;
+    this.valueMeta = valueMeta;
+    this.rowCount = rowCount;
+    this.nullCount = nullCount;
+    this.min = min;
+    this.max = max;
+    this.distinctCount = distinctCount;
+    this.frequentValues = frequentValues;
+  }
+
+  public String getFieldName() {
+    return fieldName;
+  }
+
+  /**
+   * @return metadata of the field, with normal storage
+   */
+  public ValueMetaInterface getValueMeta() {
+    return valueMeta;
+  }
+
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  public long getNullCount() {
+    return nullCount;
+  }
+
+  /**
+   * @return fraction of rows where the field is null, or 0 if there are no rows
+   */
+  public double getNullFraction() {
+    return rowCount > 0 ? (double) nullCount / rowCount : 0;
+  }
+
+  /**
+   * @return smallest non-null value, or absent if every value was null or values could not be compared
+   */
+  public Optional<ValueMetaAndData> getMin() {
+    return min == null ? Optional.<ValueMetaAndData>absent() : Optional.of( new ValueMetaAndData( valueMeta, min ) );
+  }
+
+  /**
+   * @return greatest non-null value, or absent if every value was null or values could not be compared
+   */
+  public Optional<ValueMetaAndData> getMax() {
+    return max == null ? Optional.<ValueMetaAndData>absent() : Optional.of( new ValueMetaAndData( valueMeta, max ) );
+  }
+
+  /**
+   * @return estimated number of distinct non-null values
+   */
+  public long getDistinctCount() {
+    return distinctCount;
+  }
+
+  /**
+   * @return most common non-null values with their minimum number of occurrences, most common first
+   */
+  public ImmutableMap<Object, Long> getFrequentValues() {
+    return frequentValues;
+  }
+
+  @Override public String toString() {
+    return Objects.toStringHelper( this )
+      .add( "fieldName", fieldName )
+      .add( "rowCount", rowCount )
+      .add( "nullCount", nullCount )
+      .add( "min", min )
+      .add( "max", max )
+      .add( "distinctCount", distinctCount )
+      .add( "frequentValues", frequentValues )
+      .toString();
+  }
+}
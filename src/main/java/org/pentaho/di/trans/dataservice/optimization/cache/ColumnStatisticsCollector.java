@@ -0,0 +1,159 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.collect.ImmutableMap;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gathers {@link ColumnStatistics} for every field of a stream of rows.
+ * <p>
+ * Not thread safe, rows are added by the thread writing them. If any value can not be read, statistics are given up
+ * for the whole stream.
+ * </p>
+ */
+final class ColumnStatisticsCollector {
+  /**
+   * Number of most common values tracked per field
+   */
+  static final int FREQUENT_VALUES = 8;
+
+  private final Map<String, Column> columns = new LinkedHashMap<>();
+  private boolean failed = false;
+
+  static ImmutableMap<String, ColumnStatistics> collect( Iterable<RowMetaAndData> rows ) {
+    ColumnStatisticsCollector collector = new ColumnStatisticsCollector();
+    for ( RowMetaAndData row : rows ) {
+      collector.add( row.getRowMeta(), row.getData() );
+    }
+    return collector.build();
+  }
+
+  void add( RowMetaInterface rowMeta, Object[] row ) {
+    if ( failed ) {
+      return;
+    }
+    try {
+      for ( int i = 0; i < rowMeta.size(); i++ ) {
+        ValueMetaInterface valueMeta = rowMeta.getValueMeta( i );
+        Column column = columns.get( valueMeta.getName() );
+        if ( column == null ) {
+          column = new Column( valueMeta );
+          columns.put( valueMeta.getName(), column );
+        }
+        column.add( valueMeta, row != null && i < row.length ? row[ i ] : null );
+      }
+    } catch ( KettleValueException e ) {
+      failed = true;
+      columns.clear();
+    }
+  }
+
+  /**
+   * @return statistics by field name, in the order fields were first seen. Empty if values could not be read
+   */
+  ImmutableMap<String, ColumnStatistics> build() {
+    ImmutableMap.Builder<String, ColumnStatistics> statistics = ImmutableMap.builder();
+    for ( Map.Entry<String, Column> entry : columns.entrySet() ) {
+      statistics.put( entry.getKey(), entry.getValue().build() );
+    }
+    return statistics.build();
+  }
+
+  private static final class Column {
+    private final ValueMetaInterface valueMeta;
+    private final DistinctCounter distinct = new DistinctCounter();
+    // Misra-Gries summary, counts fall short of actual occurrences by at most rowCount / FREQUENT_VALUES
+    private final Map<Object, Long> frequent = new HashMap<>();
+    private long rowCount;
+    private long nullCount;
+    private Object min;
+    private Object max;
+
+    Column( ValueMetaInterface source ) {
+      valueMeta = source.clone();
+      valueMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+      valueMeta.setStorageMetadata( null );
+    }
+
+    void add( ValueMetaInterface source, Object data ) throws KettleValueException {
+      rowCount++;
+      Object value = source.isNull( data ) ? null : source.convertToNormalStorageType( data );
+      if ( value == null ) {
+        nullCount++;
+        return;
+      }
+      if ( min == null || valueMeta.compare( value, min ) < 0 ) {
+        min = value;
+      }
+      if ( max == null || valueMeta.compare( value, max ) > 0 ) {
+        max = value;
+      }
+      distinct.add( value );
+      // Arrays are compared by identity, so binary values are not summarized
+      if ( !( value instanceof byte[] ) ) {
+        countFrequent( value );
+      }
+    }
+
+    private void countFrequent( Object value ) {
+      Long count = frequent.get( value );
+      if ( count != null ) {
+        frequent.put( value, count + 1 );
+      } else if ( frequent.size() < FREQUENT_VALUES ) {
+        frequent.put( value, 1L );
+      } else {
+        for ( Iterator<Map.Entry<Object, Long>> i = frequent.entrySet().iterator(); i.hasNext(); ) {
+          Map.Entry<Object, Long> entry = i.next();
+          if ( entry.getValue() > 1 ) {
+            entry.setValue( entry.getValue() - 1 );
+          } else {
+            i.remove();
+          }
+        }
+      }
+    }
+
+    ColumnStatistics build() {
+      List<Map.Entry<Object, Long>> sorted = new ArrayList<>( frequent.entrySet() );
+      Collections.sort( sorted, Collections.reverseOrder( Map.Entry.<Object, Long>comparingByValue() ) );
+      ImmutableMap.Builder<Object, Long> frequentValues = ImmutableMap.builder();
+      for ( Map.Entry<Object, Long> entry : sorted ) {
+        frequentValues.put( entry );
+      }
+      return new ColumnStatistics( valueMeta.getName(), valueMeta, rowCount, nullCount, min, max,
+        distinct.estimate(), frequentValues.build() );
+    }
+  }
+}
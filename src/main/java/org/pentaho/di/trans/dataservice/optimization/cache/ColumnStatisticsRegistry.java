@@ -0,0 +1,102 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import org.pentaho.di.trans.dataservice.DataServiceMeta;
+
+import java.util.Map;
+
+/**
+ * Latest {@link ColumnStatistics} of each data service's complete output, by version of the service transformation.
+ * <p>
+ * Statistics of an older transformation version are no longer found once the transformation changes.
+ * </p>
+ */
+public class ColumnStatisticsRegistry {
+  static final int MAX_SERVICE_VERSIONS = 256;
+
+  private final Cache<Key, ImmutableMap<String, ColumnStatistics>> statistics =
+    CacheBuilder.newBuilder().maximumSize( MAX_SERVICE_VERSIONS ).build();
+
+  /**
+   * @param dataService data service, as loaded
+   * @return statistics of the service output by field name, or absent if no complete output was captured for the
+   * current version of the service transformation
+   */
+  public Optional<ImmutableMap<String, ColumnStatistics>> get( DataServiceMeta dataService ) {
+    return Optional.fromNullable( statistics.getIfPresent( Key.of( dataService ) ) );
+  }
+
+  void put( DataServiceMeta dataService, Map<String, ColumnStatistics> columnStatistics ) {
+    if ( !columnStatistics.isEmpty() ) {
+      statistics.put( Key.of( dataService ), ImmutableMap.copyOf( columnStatistics ) );
+    }
+  }
+
+  /**
+   * Drops statistics of all versions of a data service
+   *
+   * @param serviceName data service name
+   */
+  public void invalidate( String serviceName ) {
+    for ( Key key : statistics.asMap().keySet() ) {
+      if ( key.serviceName.equals( serviceName ) ) {
+        statistics.invalidate( key );
+      }
+    }
+  }
+
+  private static final class Key {
+    private final String serviceName;
+    private final int transMetaVersionId;
+
+    private Key( String serviceName, int transMetaVersionId ) {
+      this.serviceName = serviceName;
+      this.transMetaVersionId = transMetaVersionId;
+    }
+
+    static Key of( DataServiceMeta dataService ) {
+      return new Key( dataService.getName(), CachedService.CacheKey.transMetaVersion( dataService.getServiceTrans() ) );
+    }
+
+    @Override public boolean equals( Object o ) {
+      if ( this == o ) {
+        return true;
+      }
+      if ( o == null || getClass() != o.getClass() ) {
+        return false;
+      }
+      Key key = (Key) o;
+      return transMetaVersionId == key.transMetaVersionId && Objects.equal( serviceName, key.serviceName );
+    }
+
+    @Override public int hashCode() {
+      return Objects.hashCode( serviceName, transMetaVersionId );
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Estimates the number of distinct values added, in constant space.
+ * <p>
+ * A HyperLogLog counter with 1024 registers, giving a typical error of about 3%. Small counts are corrected with
+ * linear counting.
+ * </p>
+ */
+final class DistinctCounter {
+  private static final int PRECISION = 10;
+  private static final int REGISTERS = 1 << PRECISION;
+  private static final double ALPHA = 0.7213 / ( 1 + 1.079 / REGISTERS );
+
+  private static final HashFunction hashFunction = Hashing.murmur3_128();
+
+  private final byte[] registers = new byte[ REGISTERS ];
+
+  /**
+   * @param value non-null value, in normal storage
+   */
+  void add( Object value ) {
+    long hash = hash( value );
+    int index = (int) ( hash >>> ( Long.SIZE - PRECISION ) );
+    // Guard bit bounds the rank when the remaining bits are all zero
+    int rank = Long.numberOfLeadingZeros( ( hash << PRECISION ) | ( 1L << ( PRECISION - 1 ) ) ) + 1;
+    if ( registers[ index ] < rank ) {
+      registers[ index ] = (byte) rank;
+    }
+  }
+
+  long estimate() {
+    double sum = 0;
+    int zeros = 0;
+    for ( byte register : registers ) {
+      sum += 1.0 / ( 1L << register );
+      if ( register == 0 ) {
+        zeros++;
+      }
+    }
+    double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+    if ( estimate <= 2.5 * REGISTERS && zeros > 0 ) {
+      estimate = REGISTERS * Math.log( (double) REGISTERS / zeros );
+    }
+    return Math.round( estimate );
+  }
+
+  private static long hash( Object value ) {
+    if ( value instanceof String ) {
+      return hashFunction.hashUnencodedChars( (String) value ).asLong();
+    } else if ( value instanceof Long ) {
+      return hashFunction.hashLong( (Long) value ).asLong();
+    } else if ( value instanceof Double ) {
+      return hashFunction.hashLong( Double.doubleToLongBits( (Double) value ) ).asLong();
+    } else if ( value instanceof Date ) {
+      return hashFunction.hashLong( ( (Date) value ).getTime() ).asLong();
+    } else if ( value instanceof BigDecimal ) {
+      // Equal numbers with a different scale are the same value
+      return hashFunction.hashUnencodedChars( ( (BigDecimal) value ).stripTrailingZeros().toPlainString() ).asLong();
+    } else if ( value instanceof byte[] ) {
+      return hashFunction.hashBytes( (byte[]) value ).asLong();
+    } else {
+      return hashFunction.hashInt( value.hashCode() ).asLong();
+    }
+  }
+}
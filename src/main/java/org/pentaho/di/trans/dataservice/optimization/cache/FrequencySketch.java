@@ -0,0 +1,103 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Approximate count of recent accesses per key, in constant space.
+ * <p>
+ * A count-min sketch of small saturating counters. Estimates may be too high because of collisions, never too low.
+ * Once the number of recorded accesses reaches ten times the sketch width, all counters are halved so that old
+ * popularity fades.
+ * </p>
+ */
+final class FrequencySketch {
+  static final int MAX_FREQUENCY = 15;
+
+  private static final int[] SEEDS = { 0x97cb3127, 0xc3a5c85c, 0x9ae16a3b, 0x6c5b3c4d };
+
+  private final byte[][] counters;
+  private final int mask;
+  private final int sampleSize;
+  private int additions;
+
+  /**
+   * @param width counters per row, a power of two
+   */
+  FrequencySketch( int width ) {
+    checkArgument( width > 0 && Integer.bitCount( width ) == 1, "width must be a power of two" );
+    this.counters = new byte[ SEEDS.length ][ width ];
+    this.mask = width - 1;
+    this.sampleSize = 10 * width;
+  }
+
+  synchronized void increment( Object key ) {
+    int hash = spread( key.hashCode() );
+    boolean added = false;
+    for ( int i = 0; i < SEEDS.length; i++ ) {
+      int index = indexOf( hash, i );
+      if ( counters[ i ][ index ] < MAX_FREQUENCY ) {
+        counters[ i ][ index ]++;
+        added = true;
+      }
+    }
+    if ( added && ++additions >= sampleSize ) {
+      age();
+    }
+  }
+
+  /**
+   * @return estimated number of recent accesses, at most {@link #MAX_FREQUENCY}
+   */
+  synchronized int frequency( Object key ) {
+    int hash = spread( key.hashCode() );
+    int frequency = MAX_FREQUENCY;
+    for ( int i = 0; i < SEEDS.length; i++ ) {
+      frequency = Math.min( frequency, counters[ i ][ indexOf( hash, i ) ] );
+    }
+    return frequency;
+  }
+
+  private void age() {
+    for ( byte[] row : counters ) {
+      for ( int j = 0; j < row.length; j++ ) {
+        row[ j ] = (byte) ( row[ j ] >>> 1 );
+      }
+    }
+    additions /= 2;
+  }
+
+  private int indexOf( int hash, int row ) {
+    int h = hash * SEEDS[ row ];
+    h ^= h >>> 16;
+    return h & mask;
+  }
+
+  private static int spread( int hash ) {
+    hash ^= hash >>> 17;
+    hash *= 0xed5ad4bb;
+    hash ^= hash >>> 11;
+    return hash;
+  }
+}
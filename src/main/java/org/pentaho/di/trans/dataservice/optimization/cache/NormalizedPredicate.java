@@ -0,0 +1,319 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.row.ValueMetaAndData;
+import org.pentaho.di.trans.dataservice.optimization.ValueMetaResolver;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A WHERE condition normalized to a conjunction of simple atoms, used to decide if the rows cached for one query
+ * are a superset of the rows needed by another.
+ * <p>
+ * Only conjunctions are decomposed. Any sub-condition that can not be represented as a simple field comparison
+ * (OR groups, negations, field to field comparisons, ...) is kept as an opaque atom, which only implies an
+ * identical atom.
+ * </p>
+ */
+final class NormalizedPredicate implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int OPAQUE = -1;
+
+  private static final NormalizedPredicate TRUE = new NormalizedPredicate( ImmutableList.<Atom>of() );
+
+  private final ImmutableList<Atom> conjuncts;
+
+  private NormalizedPredicate( ImmutableList<Atom> conjuncts ) {
+    this.conjuncts = conjuncts;
+  }
+
+  static NormalizedPredicate alwaysTrue() {
+    return TRUE;
+  }
+
+  static NormalizedPredicate create( Condition condition ) {
+    ImmutableList.Builder<Atom> builder = ImmutableList.builder();
+    collectConjuncts( condition, builder );
+    return new NormalizedPredicate( builder.build() );
+  }
+
+  private static void collectConjuncts( Condition condition, ImmutableList.Builder<Atom> builder ) {
+    if ( condition.isAtomic() ) {
+      if ( condition.getFunction() != Condition.FUNC_TRUE || condition.getLeftValuename() != null ) {
+        builder.add( Atom.create( condition ) );
+      }
+    } else if ( isConjunction( condition ) ) {
+      for ( Condition child : condition.getChildren() ) {
+        collectConjuncts( child, builder );
+      }
+    } else {
+      builder.add( Atom.opaque( condition ) );
+    }
+  }
+
+  private static boolean isConjunction( Condition condition ) {
+    if ( condition.isNegated() ) {
+      return false;
+    }
+    List<Condition> children = condition.getChildren();
+    for ( int i = 1; i < children.size(); i++ ) {
+      if ( children.get( i ).getOperator() != Condition.OPERATOR_AND ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Tests if every row matching {@code other} also matches this predicate.
+   * The test is conservative: a <code>false</code> result does not prove the opposite.
+   *
+   * @param other predicate of the incoming query
+   * @return <code>true</code> if this predicate is implied by {@code other}
+   */
+  boolean subsumes( NormalizedPredicate other ) {
+    for ( Atom required : conjuncts ) {
+      boolean implied = false;
+      for ( Atom given : other.conjuncts ) {
+        if ( given.implies( required ) ) {
+          implied = true;
+          break;
+        }
+      }
+      if ( !implied ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  List<Atom> getConjuncts() {
+    return conjuncts;
+  }
+
+  @Override public boolean equals( Object o ) {
+    if ( this == o ) {
+      return true;
+    }
+    if ( o == null || getClass() != o.getClass() ) {
+      return false;
+    }
+    return Objects.equal( conjuncts, ( (NormalizedPredicate) o ).conjuncts );
+  }
+
+  @Override public int hashCode() {
+    return conjuncts.hashCode();
+  }
+
+  @Override public String toString() {
+    return Objects.toStringHelper( this ).add( "conjuncts", conjuncts ).toString();
+  }
+
+  /**
+   * A single field comparison, or an opaque condition identified by its normalized string
+   */
+  static final class Atom implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String field;
+    private final int function;
+    private final Serializable value;
+    private final ImmutableSet<String> inList;
+    private final String description;
+
+    private Atom( String field, int function, Serializable value, ImmutableSet<String> inList, String description ) {
+      this.field = field;
+      this.function = function;
+      this.value = value;
+      this.inList = inList;
+      this.description = description;
+    }
+
+    static Atom create( Condition condition ) {
+      String field = condition.getLeftValuename();
+      if ( condition.isNegated() || field == null || condition.getRightValuename() != null ) {
+        return opaque( condition );
+      }
+      switch ( condition.getFunction() ) {
+        case Condition.FUNC_NULL:
+        case Condition.FUNC_NOT_NULL:
+          return new Atom( field, condition.getFunction(), null, null, describe( condition ) );
+        case Condition.FUNC_IN_LIST:
+          ImmutableSet<String> values =
+            ImmutableSet.copyOf( ValueMetaResolver.splitInList( condition.getRightExactString() ) );
+          return new Atom( field, Condition.FUNC_IN_LIST, null, values, describe( condition ) );
+        case Condition.FUNC_EQUAL:
+        case Condition.FUNC_SMALLER:
+        case Condition.FUNC_SMALLER_EQUAL:
+        case Condition.FUNC_LARGER:
+        case Condition.FUNC_LARGER_EQUAL:
+          ValueMetaAndData rightExact = condition.getRightExact();
+          Object data = rightExact != null ? rightExact.getValueData() : null;
+          if ( data instanceof Comparable && data instanceof Serializable ) {
+            return new Atom( field, condition.getFunction(), (Serializable) data, null, describe( condition ) );
+          }
+          return opaque( condition );
+        default:
+          return opaque( condition );
+      }
+    }
+
+    static Atom opaque( Condition condition ) {
+      return new Atom( null, OPAQUE, null, null, describe( condition ) );
+    }
+
+    /**
+     * Describes a condition independently of its position among its siblings
+     */
+    private static String describe( Condition condition ) {
+      Condition copy = (Condition) condition.clone();
+      copy.setOperator( Condition.OPERATOR_NONE );
+      return copy.toString().trim();
+    }
+
+    boolean isOpaque() {
+      return field == null;
+    }
+
+    /**
+     * @return compared field, or <code>null</code> if opaque
+     */
+    String getField() {
+      return field;
+    }
+
+    int getFunction() {
+      return function;
+    }
+
+    /**
+     * @return literal compared to, for equality and range comparisons
+     */
+    Object getValue() {
+      return value;
+    }
+
+    /**
+     * @return <code>true</code> if every row satisfying this atom also satisfies {@code required}
+     */
+    boolean implies( Atom required ) {
+      if ( description.equals( required.description ) && function == required.function ) {
+        return true;
+      }
+      if ( isOpaque() || required.isOpaque() || !field.equals( required.field ) ) {
+        return false;
+      }
+      switch ( required.function ) {
+        case Condition.FUNC_NOT_NULL:
+          // Kettle sorts nulls first, so only equality and lower bounds exclude nulls
+          return function == Condition.FUNC_EQUAL || function == Condition.FUNC_IN_LIST
+            || function == Condition.FUNC_LARGER || function == Condition.FUNC_LARGER_EQUAL;
+        case Condition.FUNC_IN_LIST:
+          if ( function == Condition.FUNC_IN_LIST ) {
+            return required.inList.containsAll( inList );
+          }
+          return function == Condition.FUNC_EQUAL && required.inList.contains( String.valueOf( value ) );
+        case Condition.FUNC_EQUAL:
+          Integer cmp = compare( value, required.value );
+          return function == Condition.FUNC_EQUAL && cmp != null && cmp == 0;
+        case Condition.FUNC_LARGER:
+          return impliesLowerBound( required, false );
+        case Condition.FUNC_LARGER_EQUAL:
+          return impliesLowerBound( required, true );
+        case Condition.FUNC_SMALLER:
+          return impliesUpperBound( required, false );
+        case Condition.FUNC_SMALLER_EQUAL:
+          return impliesUpperBound( required, true );
+        default:
+          return false;
+      }
+    }
+
+    private boolean impliesLowerBound( Atom required, boolean inclusive ) {
+      Integer cmp = compare( value, required.value );
+      if ( cmp == null ) {
+        return false;
+      }
+      switch ( function ) {
+        case Condition.FUNC_EQUAL:
+        case Condition.FUNC_LARGER_EQUAL:
+          return inclusive ? cmp >= 0 : cmp > 0;
+        case Condition.FUNC_LARGER:
+          return cmp >= 0;
+        default:
+          return false;
+      }
+    }
+
+    private boolean impliesUpperBound( Atom required, boolean inclusive ) {
+      Integer cmp = compare( value, required.value );
+      if ( cmp == null ) {
+        return false;
+      }
+      switch ( function ) {
+        case Condition.FUNC_EQUAL:
+        case Condition.FUNC_SMALLER_EQUAL:
+          return inclusive ? cmp <= 0 : cmp < 0;
+        case Condition.FUNC_SMALLER:
+          return cmp <= 0;
+        default:
+          return false;
+      }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private static Integer compare( Object left, Object right ) {
+      if ( left == null || right == null || !left.getClass().equals( right.getClass() ) ) {
+        return null;
+      }
+      return ( (Comparable<Object>) left ).compareTo( right );
+    }
+
+    @Override public boolean equals( Object o ) {
+      if ( this == o ) {
+        return true;
+      }
+      if ( o == null || getClass() != o.getClass() ) {
+        return false;
+      }
+      Atom atom = (Atom) o;
+      return function == atom.function && Objects.equal( description, atom.description );
+    }
+
+    @Override public int hashCode() {
+      return Objects.hashCode( function, description );
+    }
+
+    @Override public String toString() {
+      return description;
+    }
+  }
+}
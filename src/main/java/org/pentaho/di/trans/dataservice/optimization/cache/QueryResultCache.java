@@ -0,0 +1,205 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+/**
+ * Second level cache holding the encoded query results sent to clients, keyed by query text.
+ * <p>
+ * Results are stored without the metadata header, which names per-execution transformation IDs.
+ * The cache is bounded by the total size of stored results, see {@link #MAX_BYTES_PROPERTY}.
+ * </p>
+ */
+public class QueryResultCache {
+  /**
+   * Total bytes of encoded results to retain. Set to 0 to disable the result cache.
+   */
+  static final String MAX_BYTES_PROPERTY = "dataservice.result.cache.max.bytes";
+  static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+  private final long maxBytes;
+  private final Cache<Key, Result> results;
+
+  QueryResultCache( long maxBytes ) {
+    this.maxBytes = Math.max( 0, maxBytes );
+    this.results = CacheBuilder.newBuilder()
+      .maximumWeight( this.maxBytes )
+      .weigher( new Weigher<Key, Result>() {
+        @Override public int weigh( Key key, Result result ) {
+          return result.body.length + key.sql.length();
+        }
+      } )
+      .build();
+  }
+
+  public boolean isEnabled() {
+    return maxBytes > 0;
+  }
+
+  /**
+   * @return largest single result that will be cached, a quarter of the total budget
+   */
+  long getMaxResultBytes() {
+    return maxBytes / 4;
+  }
+
+  /**
+   * @param key       query
+   * @param ttlMillis time to live of results, or 0 if results do not expire
+   * @param now       current time in milliseconds
+   * @return the cached result, if present and not expired
+   */
+  Optional<Result> get( Key key, long ttlMillis, long now ) {
+    Result result = results.getIfPresent( key );
+    if ( result != null && ttlMillis > 0 && now - result.created >= ttlMillis ) {
+      results.invalidate( key );
+      result = null;
+    }
+    return Optional.fromNullable( result );
+  }
+
+  void put( Key key, byte[] body ) {
+    if ( isEnabled() && body.length <= getMaxResultBytes() ) {
+      results.put( key, new Result( body, System.currentTimeMillis() ) );
+    }
+  }
+
+  /**
+   * Drops all results of a data service, after its cached output changed
+   *
+   * @param serviceName data service name
+   */
+  public void invalidate( String serviceName ) {
+    for ( Key key : results.asMap().keySet() ) {
+      if ( key.serviceName.equals( serviceName ) ) {
+        results.invalidate( key );
+      }
+    }
+  }
+
+  public void invalidateAll() {
+    results.invalidateAll();
+  }
+
+  long size() {
+    return results.size();
+  }
+
+  /**
+   * Collapses runs of whitespace outside of quoted literals and identifiers
+   *
+   * @param sql query text
+   * @return normalized query text
+   */
+  static String normalize( String sql ) {
+    StringBuilder builder = new StringBuilder( sql.length() );
+    char quote = 0;
+    boolean space = false;
+    for ( char c : sql.trim().toCharArray() ) {
+      if ( quote == 0 && Character.isWhitespace( c ) ) {
+        space = true;
+        continue;
+      }
+      if ( space ) {
+        builder.append( ' ' );
+        space = false;
+      }
+      if ( quote == 0 && ( c == '\'' || c == '"' ) ) {
+        quote = c;
+      } else if ( c == quote ) {
+        quote = 0;
+      }
+      builder.append( c );
+    }
+    return builder.toString();
+  }
+
+  static final class Key {
+    private final String serviceName;
+    private final int transMetaVersionId;
+    private final String sql;
+    private final ImmutableMap<String, String> parameters;
+    private final int maxRows;
+
+    Key( String serviceName, int transMetaVersionId, String sql, Map<String, String> parameters, int maxRows ) {
+      this.serviceName = serviceName;
+      this.transMetaVersionId = transMetaVersionId;
+      this.sql = normalize( sql );
+      this.parameters = ImmutableMap.copyOf( parameters );
+      this.maxRows = Math.max( 0, maxRows );
+    }
+
+    @Override public boolean equals( Object o ) {
+      if ( this == o ) {
+        return true;
+      }
+      if ( o == null || getClass() != o.getClass() ) {
+        return false;
+      }
+      Key key = (Key) o;
+      return transMetaVersionId == key.transMetaVersionId
+        && maxRows == key.maxRows
+        && Objects.equal( serviceName, key.serviceName )
+        && Objects.equal( sql, key.sql )
+        && Objects.equal( parameters, key.parameters );
+    }
+
+    @Override public int hashCode() {
+      return Objects.hashCode( serviceName, transMetaVersionId, sql, parameters, maxRows );
+    }
+
+    @Override public String toString() {
+      return Objects.toStringHelper( this )
+        .add( "serviceName", serviceName )
+        .add( "sql", sql )
+        .add( "parameters", parameters )
+        .add( "maxRows", maxRows )
+        .toString();
+    }
+  }
+
+  static final class Result {
+    private final byte[] body;
+    private final long created;
+
+    private Result( byte[] body, long created ) {
+      this.body = body;
+      this.created = created;
+    }
+
+    /**
+     * @return encoded row metadata and rows, as written after the metadata header
+     */
+    byte[] getBody() {
+      return body;
+    }
+  }
+}
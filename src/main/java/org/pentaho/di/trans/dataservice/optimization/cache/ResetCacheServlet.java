@@ -77,6 +77,9 @@ public class ResetCacheServlet extends BaseCartePlugin {
     for ( Cache cache : cacheSet ) {
       cache.clear();
     }
+    for ( String name : names ) {
+      factory.getResultCache().invalidate( name );
+    }
 
     request
       .respond( 200 )
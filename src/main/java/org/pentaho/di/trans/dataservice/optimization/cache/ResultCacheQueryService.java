@@ -0,0 +1,217 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.sql.SQL;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.dataservice.DataServiceExecutor;
+import org.pentaho.di.trans.dataservice.DataServiceMeta;
+import org.pentaho.di.trans.dataservice.clients.DualQueryService;
+import org.pentaho.di.trans.dataservice.clients.ExecutorQueryService;
+import org.pentaho.di.trans.dataservice.clients.Query;
+import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
+import org.pentaho.di.trans.dataservice.resolvers.DataServiceResolver;
+import org.pentaho.osgi.metastore.locator.api.MetastoreLocator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers repeated queries against cached data services with the bytes written for an earlier execution.
+ * <p>
+ * Queries against services without an enabled {@link ServiceCache} are left to the next service in the chain.
+ * Other queries are executed by an {@link ExecutorQueryService} while a copy of their output is kept in the
+ * {@link QueryResultCache}.
+ * </p>
+ * <p>
+ * No transformation runs for a query answered from the result cache, so there is nothing for the server to monitor.
+ * Like the responses of {@link DualQueryService}, its metadata header names no transformations, which tells clients
+ * that there is no transformation status to look up or transformation to stop.
+ * </p>
+ */
+public class ResultCacheQueryService implements Query.Service {
+
+  private final ServiceCacheFactory factory;
+  private final DataServiceResolver resolver;
+  private final ExecutorQueryService executorQueryService;
+
+  public ResultCacheQueryService( ServiceCacheFactory factory, DataServiceResolver resolver,
+                                  MetastoreLocator metastoreLocator ) {
+    this.factory = factory;
+    this.resolver = resolver;
+    this.executorQueryService = new ExecutorQueryService( resolver, metastoreLocator );
+  }
+
+  @Override public Query prepareQuery( String sqlString, int maxRows, Map<String, String> parameters )
+    throws KettleException {
+    QueryResultCache resultCache = factory.getResultCache();
+    if ( !resultCache.isEnabled() ) {
+      return null;
+    }
+    SQL sql;
+    DataServiceMeta dataService;
+    try {
+      sql = new SQL( sqlString );
+      dataService = resolver.getDataService( sql.getServiceName() );
+    } catch ( Exception e ) {
+      // Let the executor report invalid queries
+      return null;
+    }
+    Optional<ServiceCache> serviceCache = dataService == null ? Optional.<ServiceCache>absent()
+      : getServiceCache( dataService );
+    if ( !serviceCache.isPresent() ) {
+      return null;
+    }
+
+    QueryResultCache.Key key = new QueryResultCache.Key( dataService.getName(),
+      CachedService.CacheKey.transMetaVersion( dataService.getServiceTrans() ), sqlString, parameters, maxRows );
+    ServiceCacheStatistics statistics = factory.getStatistics( dataService.getName() );
+    Optional<QueryResultCache.Result> result =
+      resultCache.get( key, serviceCache.get().getTimeToLiveMillis(), System.currentTimeMillis() );
+    if ( result.isPresent() ) {
+      statistics.recordResultHit();
+      return new CachedResultQuery( sql, result.get() );
+    }
+
+    ExecutorQueryService.ExecutorQuery query = executorQueryService.prepareQuery( sqlString, maxRows, parameters );
+    return new CapturingQuery( query.getExecutor(), resultCache, key );
+  }
+
+  private static Optional<ServiceCache> getServiceCache( DataServiceMeta dataService ) {
+    for ( PushDownOptimizationMeta optimizationMeta : dataService.getPushDownOptimizationMeta() ) {
+      if ( optimizationMeta.isEnabled() && optimizationMeta.getType() instanceof ServiceCache ) {
+        return Optional.of( (ServiceCache) optimizationMeta.getType() );
+      }
+    }
+    return Optional.absent();
+  }
+
+  /**
+   * Strips the metadata header from the output of {@link DataServiceExecutor#executeQuery(DataOutputStream)}
+   */
+  static byte[] stripHeader( byte[] output ) throws IOException {
+    DataInputStream in = new DataInputStream( new ByteArrayInputStream( output ) );
+    // service name, service trans name and ID, generated trans name and ID
+    for ( int i = 0; i < 5; i++ ) {
+      in.readUTF();
+    }
+    return Arrays.copyOfRange( output, output.length - in.available(), output.length );
+  }
+
+  private static class CachedResultQuery implements Query {
+    private final SQL sql;
+    private final QueryResultCache.Result result;
+
+    CachedResultQuery( SQL sql, QueryResultCache.Result result ) {
+      this.sql = sql;
+      this.result = result;
+    }
+
+    @Override public void writeTo( OutputStream outputStream ) throws IOException {
+      DataOutputStream dos = ExecutorQueryService.asDataOutputStream( outputStream );
+      DataServiceExecutor.writeMetadata( dos, sql.getServiceName(), "", "", "", "" );
+      dos.write( result.getBody() );
+      dos.flush();
+    }
+
+    @Override public List<Trans> getTransList() {
+      return ImmutableList.of();
+    }
+  }
+
+  private static class CapturingQuery extends ExecutorQueryService.ExecutorQuery {
+    private final QueryResultCache resultCache;
+    private final QueryResultCache.Key key;
+
+    CapturingQuery( DataServiceExecutor executor, QueryResultCache resultCache, QueryResultCache.Key key ) {
+      super( executor );
+      this.resultCache = resultCache;
+      this.key = key;
+    }
+
+    @Override public void writeTo( OutputStream outputStream ) throws IOException {
+      CaptureOutputStream capture = new CaptureOutputStream( outputStream, resultCache.getMaxResultBytes() );
+      DataOutputStream dos = new DataOutputStream( capture );
+      super.writeTo( dos );
+      dos.flush();
+      DataServiceExecutor executor = getExecutor();
+      if ( !executor.isStopped() && !executor.hasErrors() && !capture.isOverflow() ) {
+        resultCache.put( key, stripHeader( capture.toByteArray() ) );
+      }
+    }
+  }
+
+  /**
+   * Copies everything written to the client, until the copy exceeds the largest cacheable result
+   */
+  private static class CaptureOutputStream extends FilterOutputStream {
+    private final long limit;
+    private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+    CaptureOutputStream( OutputStream out, long limit ) {
+      super( out );
+      this.limit = limit;
+    }
+
+    @Override public synchronized void write( int b ) throws IOException {
+      out.write( b );
+      if ( copy != null ) {
+        copy.write( b );
+        checkLimit();
+      }
+    }
+
+    @Override public synchronized void write( byte[] b, int off, int len ) throws IOException {
+      out.write( b, off, len );
+      if ( copy != null ) {
+        copy.write( b, off, len );
+        checkLimit();
+      }
+    }
+
+    private void checkLimit() {
+      if ( copy.size() > limit ) {
+        copy = null;
+      }
+    }
+
+    synchronized boolean isOverflow() {
+      return copy == null;
+    }
+
+    synchronized byte[] toByteArray() {
+      return copy.toByteArray();
+    }
+  }
+}
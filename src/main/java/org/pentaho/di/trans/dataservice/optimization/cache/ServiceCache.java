@@ -24,17 +24,25 @@ package org.pentaho.di.trans.dataservice.optimization.cache;
 
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Closeables;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.pentaho.caching.api.PentahoCacheTemplateConfiguration;
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.row.ValueMetaAndData;
+import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.dataservice.DataServiceExecutor;
 import org.pentaho.di.trans.dataservice.DataServiceMeta;
+import org.pentaho.di.trans.dataservice.optimization.CostEstimating;
 import org.pentaho.di.trans.dataservice.optimization.OptimizationImpactInfo;
 import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
 import org.pentaho.di.trans.dataservice.optimization.PushDownType;
@@ -46,9 +54,16 @@ import javax.cache.Cache;
 import javax.cache.configuration.CompleteConfiguration;
 import javax.cache.expiry.Duration;
 import javax.cache.expiry.ExpiryPolicy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.text.MessageFormat;
+import java.text.SimpleDateFormat;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Predicates.instanceOf;
@@ -60,11 +75,19 @@ import static org.pentaho.caching.api.Constants.DEFAULT_TEMPLATE;
 /**
  * @author nhudak
  */
-public class ServiceCache extends StepOptimization {
+public class ServiceCache extends StepOptimization implements CostEstimating {
   public static final String NAME = "Service Cache";
+  /**
+   * Replay rate assumed until a replay of this service has been measured
+   */
+  static final double DEFAULT_REPLAY_ROWS_PER_SECOND = 1000000;
   private final ServiceCacheFactory factory;
   public static final String SERVICE_CACHE_TEMPLATE_NAME = "template_name";
   public static final String SERVICE_CACHE_TTL = "time_to_live";
+  public static final String SERVICE_CACHE_WARM_UP_QUERIES = "warm_up_queries";
+  public static final String SERVICE_CACHE_WARM_UP_INTERVAL = "warm_up_interval";
+  public static final String SERVICE_CACHE_REFRESH_AHEAD = "refresh_ahead";
+  public static final String SERVICE_CACHE_WATERMARK_FIELD = "watermark_field";
 
   @MetaStoreAttribute( key = SERVICE_CACHE_TEMPLATE_NAME )
   private String templateName = DEFAULT_TEMPLATE;
@@ -72,6 +95,30 @@ public class ServiceCache extends StepOptimization {
   @MetaStoreAttribute( key = SERVICE_CACHE_TTL )
   private String timeToLive;
 
+  /**
+   * SQL queries, one per line, executed to populate the cache when the server starts
+   */
+  @MetaStoreAttribute( key = SERVICE_CACHE_WARM_UP_QUERIES )
+  private String warmUpQueries;
+
+  /**
+   * Seconds between warm-up runs. If empty, warm-up queries only run once at start up
+   */
+  @MetaStoreAttribute( key = SERVICE_CACHE_WARM_UP_INTERVAL )
+  private String warmUpInterval;
+
+  /**
+   * Seconds before expiry at which a cache hit triggers a background refresh of the entry
+   */
+  @MetaStoreAttribute( key = SERVICE_CACHE_REFRESH_AHEAD )
+  private String refreshAhead;
+
+  /**
+   * Monotonically increasing service field. If set, refreshes only read and append rows past the cached maximum
+   */
+  @MetaStoreAttribute( key = SERVICE_CACHE_WATERMARK_FIELD )
+  private String watermarkField;
+
   public ServiceCache( ServiceCacheFactory factory ) {
     this.factory = factory;
   }
@@ -80,42 +127,72 @@ public class ServiceCache extends StepOptimization {
     optMeta.setStepName( dataService.getStepname() );
   }
 
+  /**
+   * Cached results are replayed as the complete output of the service transformation
+   */
+  @Override public boolean capturesServiceOutput() {
+    return true;
+  }
+
   @Override public boolean activate( final DataServiceExecutor executor, StepInterface stepInterface ) {
     final LogChannelInterface logChannel = executor.getGenTrans().getLogChannel();
+    // Refresh queries always run the service transformation
+    final boolean refresh = factory.isRefresh( executor );
+    final ServiceCacheStatistics statistics = factory.getStatistics( executor.getServiceName() );
+    CachedService.CacheKey rootKey = createRootKey( executor );
+    if ( !refresh ) {
+      factory.recordAccess( rootKey );
+    }
 
-    for ( CachedService availableCache : getAvailableCache( executor ).values() ) {
+    Map<CachedService.CacheKey, CachedService> availableCaches =
+      refresh ? ImmutableMap.<CachedService.CacheKey, CachedService>of() : getAvailableCache( executor );
+    for ( Map.Entry<CachedService.CacheKey, CachedService> available : availableCaches.entrySet() ) {
+      CachedService availableCache = available.getValue();
       try {
         ListenableFuture<Integer> replay = factory.createCachedServiceLoader( availableCache ).replay( executor );
-        addReplayCallback( logChannel, replay );
+        addReplayCallback( logChannel, replay, statistics );
+        statistics.recordHit( ServiceCacheStatistics.hitKind( rootKey, available.getKey() ),
+          available.getKey(), availableCache );
+        long now = System.currentTimeMillis();
+        // The time to live restarts on every access, the entry is only close to expiry if it was left idle
+        long lastAccess = statistics.recordAccess( available.getKey(), now ).or( availableCache.getCreated() );
+        if ( isExpiring( lastAccess, now ) ) {
+          requestRefresh( executor, available.getKey(), availableCache, logChannel );
+        }
         return true;
       } catch ( Throwable e ) {
         logChannel.logError( "Unable to replay from cache", e );
       }
     }
 
-    CachedService.CacheKey rootKey = createRootKey( executor );
     final Map<CachedService.CacheKey, ServiceObserver> runningServices = factory.getRunningServices();
-    if ( runningServices.containsKey( rootKey ) ) {
-      try {
-        ListenableFuture<Integer> replay =
-          factory.createCachedServiceLoader( () -> runningServices.get( rootKey ).rows() ).replay( executor );
-        addReplayCallback( logChannel, replay );
-        return true;
-      } catch ( KettleException e ) {
-        logChannel.logError( "Unable to replay from running service" );
-      }
+    if ( !refresh ) {
+      statistics.recordMiss();
+    }
+    Optional<ServiceObserver> running = refresh ? Optional.<ServiceObserver>absent()
+      : getRunningService( runningServices, rootKey );
+    if ( running.isPresent() && replayFromRunning( executor, running.get(), logChannel, statistics ) ) {
+      return true;
     }
 
-    ServiceObserver serviceObserver = factory.createObserver( executor );
+    final ServiceObserver serviceObserver = factory.createObserver( executor );
+    // Shared scans are keyed without ORDER BY, the generated transformation sorts for each query
+    final CachedService.CacheKey sharedKey = rootKey.withoutOrder();
     //only allow replay from this running trans if it's going to return all the rows
-    if ( CachedService.calculateRank( executor ) == Integer.MAX_VALUE ) {
-      runningServices.put( rootKey, serviceObserver );
+    if ( CachedService.isUnbounded( executor ) ) {
+      ServiceObserver leader = runningServices.putIfAbsent( sharedKey, serviceObserver );
+      // Another query with the same service output started at the same time, join it instead
+      if ( leader != null && replayFromRunning( executor, leader, logChannel, statistics ) ) {
+        return true;
+      }
     }
     // Allow service transformation to run, observe rows
     Futures.addCallback( serviceObserver.install(), new FutureCallback<CachedService>() {
       @Override public void onSuccess( CachedService result ) {
         if ( executor.isStopped() || executor.hasErrors() ) {
-          runningServices.remove( rootKey );
+          runningServices.remove( sharedKey, serviceObserver );
+          statistics.recordObserverAbort();
+          result.release();
           return;
         }
 
@@ -127,35 +204,295 @@ public class ServiceCache extends StepOptimization {
         if ( result.isComplete() ) {
           key = key.withoutOrder();
         }
-        if ( cache.putIfAbsent( key, result ) ) {
+        Optional<Map.Entry<CachedService.CacheKey, CachedService>> base = factory.getIncrementalBase( executor );
+        boolean cached = true;
+        if ( base.isPresent() ) {
+          appendIncrement( executor, cache, base.get().getKey(), base.get().getValue(), result, logChannel );
+          factory.getResultCache().invalidate( executor.getServiceName() );
+          // Rows of the increment are copied into the updated entry
+          cached = false;
+        } else if ( refresh ) {
+          // Replace the entry the refresh was requested for, which may be keyed differently from the refresh query
+          CachedService.CacheKey target = factory.getRefreshKey( executor ).or( key );
+          CachedService existing = result.isComplete() ? null : cache.get( target );
+          if ( existing != null && existing.isComplete() ) {
+            logChannel.logDetailed( "Service Transformation refresh was incomplete, cache was not updated", target );
+            cached = false;
+          } else {
+            // Swap in the new entry, readers see either the old or the new result set
+            cache.put( target, result );
+            registerColumnStatistics( executor, target, result );
+            statistics.recordCost( target, serviceObserver.getRunMillis() );
+            factory.getResultCache().invalidate( executor.getServiceName() );
+            logChannel.logBasic( "Service Transformation cache refreshed", target );
+          }
+        } else if ( !factory.admit( executor.getServiceName(), key, result, serviceObserver.getRunMillis() ) ) {
+          // Rarely queried or cheap results do not displace more valuable entries
+          logChannel.logDetailed( "Service Transformation results were not admitted to the cache", key );
+          cached = false;
+        } else if ( cache.putIfAbsent( key, result ) ) {
+          registerColumnStatistics( executor, key, result );
           logChannel.logBasic( "Service Transformation results cached", key );
         } else {
           try {
             CachedService existing = checkNotNull( cache.get( key ) );
             // If the existing result set can't answer this query, replace it
             if ( !existing.answersQuery( executor ) && cache.replace( key, existing, result ) ) {
+              registerColumnStatistics( executor, key, result );
               logChannel.logBasic( "Service Transformation cache updated", key );
             } else {
               logChannel.logDetailed( "Service Transformation cache was not updated", key );
+              cached = false;
             }
           } catch ( Throwable t ) {
+            cached = false;
             onFailure( t );
           }
         }
-        runningServices.remove( rootKey );
+        if ( !cached || isStoreByValue( cache ) ) {
+          // Delete spilled rows that no cache entry refers to, a cache storing by value keeps its own copy of the rows
+          result.release();
+        }
+        runningServices.remove( sharedKey, serviceObserver );
+        factory.enforceBudgets();
       }
 
       @Override public void onFailure( Throwable t ) {
-        runningServices.remove( rootKey );
+        runningServices.remove( sharedKey, serviceObserver );
+        statistics.recordObserverAbort();
         logChannel.logError( "Cache failed to observe service transformation", t );
       }
     }, factory.getExecutorService() );
     return false;
   }
 
-  private void addReplayCallback( final LogChannelInterface logChannel, ListenableFuture<Integer> replay ) {
+  /**
+   * Finds a running service transformation whose complete output contains every row needed by this query.
+   */
+  private Optional<ServiceObserver> getRunningService( Map<CachedService.CacheKey, ServiceObserver> runningServices,
+                                                       CachedService.CacheKey rootKey ) {
+    ServiceObserver exactMatch = runningServices.get( rootKey.withoutOrder() );
+    if ( exactMatch != null && exactMatch.isJoinable() ) {
+      return Optional.of( exactMatch );
+    }
+    for ( Map.Entry<CachedService.CacheKey, ServiceObserver> entry : runningServices.entrySet() ) {
+      if ( entry.getKey().subsumes( rootKey ) && entry.getValue().isJoinable() ) {
+        return Optional.of( entry.getValue() );
+      }
+    }
+    return Optional.absent();
+  }
+
+  private boolean replayFromRunning( DataServiceExecutor executor, final ServiceObserver observer,
+                                     LogChannelInterface logChannel, ServiceCacheStatistics statistics ) {
+    Iterator<RowMetaAndData> rows;
+    try {
+      // Join now, the capture may stop accepting readers before the replay starts
+      rows = observer.rows();
+    } catch ( IllegalStateException e ) {
+      logChannel.logDetailed( "Running service transformation can no longer be shared" );
+      return false;
+    }
+    try {
+      ListenableFuture<Integer> replay = factory.createCachedServiceLoader( () -> rows ).replay( executor );
+      addReplayCallback( logChannel, replay, statistics );
+      statistics.recordSharedScan();
+      logChannel.logDetailed( "Sharing output of a running service transformation" );
+      return true;
+    } catch ( KettleException e ) {
+      try {
+        // Do not hold captured rows for a replay that never starts
+        Closeables.close( (Closeable) rows, true );
+      } catch ( IOException ignored ) {
+        // Swallowed by close
+      }
+      logChannel.logError( "Unable to replay from running service", e );
+      return false;
+    }
+  }
+
+  private void requestRefresh( DataServiceExecutor executor, CachedService.CacheKey key, CachedService cachedService,
+                               LogChannelInterface logChannel ) {
+    Optional<String> incrementalQuery = Optional.absent();
+    // Only an entry cached for exactly this query can be extended with this query's conditions
+    if ( cachedService.isComplete() && key.withoutOrder().equals( createRootKey( executor ).withoutOrder() ) ) {
+      try {
+        incrementalQuery = createIncrementalQuery( executor, cachedService );
+      } catch ( KettleException e ) {
+        logChannel.logError( "Unable to create incremental cache refresh", e );
+      }
+    }
+    if ( incrementalQuery.isPresent() ) {
+      factory.requestRefresh( incrementalQuery.get(), executor.getParameters(), key, cachedService );
+    } else {
+      factory.requestRefresh( createRefreshQuery( executor, key ), executor.getParameters(), key );
+    }
+  }
+
+  /**
+   * Builds a query reading the complete service output cached under a key, without the LIMIT or ORDER BY of the
+   * query that hit it. The WHERE clause is kept if the entry was cached for it. An entry cached for another condition
+   * is refreshed with the unconditioned output, a superset that the generated transformation filters on replay.
+   *
+   * @param executor query answered from the cache entry
+   * @param key      key of the cache entry
+   * @return refresh query
+   */
+  String createRefreshQuery( DataServiceExecutor executor, CachedService.CacheKey key ) {
+    StringBuilder query = new StringBuilder( "SELECT * FROM " ).append( quote( executor.getServiceName() ) );
+    String whereClause = executor.getSql().getWhereClause();
+    if ( key.hasCondition() && key.withoutOrder().equals( createRootKey( executor ).withoutOrder() )
+      && !Strings.isNullOrEmpty( whereClause ) ) {
+      query.append( " WHERE " ).append( whereClause );
+    }
+    return query.toString();
+  }
+
+  /**
+   * Builds a query reading only service rows past the greatest watermark in a cached result set. The watermark
+   * condition is added to the original WHERE clause so that it is pushed down along with the other conditions.
+   *
+   * @param executor      query answered from the cached result set
+   * @param cachedService complete result set to extend
+   * @return incremental query, or absent if no watermark is configured or found
+   * @throws KettleException if the watermark can not be determined
+   */
+  Optional<String> createIncrementalQuery( DataServiceExecutor executor, CachedService cachedService )
+    throws KettleException {
+    if ( Strings.isNullOrEmpty( watermarkField ) ) {
+      return Optional.absent();
+    }
+    Optional<ValueMetaAndData> lastSeen = cachedService.getWatermark( watermarkField );
+    if ( !lastSeen.isPresent() ) {
+      return Optional.absent();
+    }
+    Optional<String> literal = toLiteral( lastSeen.get() );
+    if ( !literal.isPresent() ) {
+      return Optional.absent();
+    }
+    StringBuilder query = new StringBuilder( "SELECT * FROM " ).append( quote( executor.getServiceName() ) )
+      .append( " WHERE " );
+    String whereClause = executor.getSql().getWhereClause();
+    if ( !Strings.isNullOrEmpty( whereClause ) ) {
+      query.append( "( " ).append( whereClause ).append( " ) AND " );
+    }
+    query.append( quote( watermarkField ) ).append( " > " ).append( literal.get() );
+    return Optional.of( query.toString() );
+  }
+
+  private void appendIncrement( DataServiceExecutor executor, Cache<CachedService.CacheKey, CachedService> cache,
+                                CachedService.CacheKey key, CachedService existing, CachedService increment,
+                                LogChannelInterface logChannel ) {
+    if ( !increment.isComplete() ) {
+      logChannel.logDetailed( "Incremental refresh was incomplete, cache was not updated", key );
+      return;
+    }
+    if ( existing.getSpill().isPresent() || increment.getSpill().isPresent() ) {
+      // Appending would read spilled rows back into memory
+      logChannel.logDetailed( "Spilled results can not be extended, cache was not updated", key );
+      return;
+    }
+    try {
+      Optional<ValueMetaAndData> lastSeen = existing.getWatermark( watermarkField );
+      if ( !lastSeen.isPresent() ) {
+        return;
+      }
+      CachedService updated = existing.append( increment.getRowMetaAndData(), watermarkField, lastSeen.get() );
+      if ( cache.replace( key, existing, updated ) ) {
+        registerColumnStatistics( executor, key, updated );
+        logChannel.logBasic( "Service Transformation cache extended by "
+          + ( updated.getRowCount() - existing.getRowCount() ) + " rows", key );
+      } else {
+        logChannel.logDetailed( "Service Transformation cache was not updated", key );
+      }
+    } catch ( KettleValueException e ) {
+      logChannel.logError( "Unable to append rows to cached service", e );
+    }
+  }
+
+  /**
+   * Publishes the statistics of a newly cached result set, if it holds the complete output of the service
+   */
+  private void registerColumnStatistics( DataServiceExecutor executor, CachedService.CacheKey key,
+                                         CachedService cachedService ) {
+    if ( cachedService.isComplete() && !key.hasCondition() ) {
+      factory.getColumnStatisticsRegistry().put( executor.getService(), cachedService.getColumnStatistics() );
+    }
+  }
+
+  private static Optional<String> toLiteral( ValueMetaAndData value ) throws KettleValueException {
+    ValueMetaInterface valueMeta = value.getValueMeta();
+    Object data = value.getValueData();
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        return Optional.of( String.valueOf( valueMeta.getInteger( data ) ) );
+      case ValueMetaInterface.TYPE_NUMBER:
+        // Plain notation, the query parser does not read exponents
+        Double number = valueMeta.getNumber( data );
+        return number.isNaN() || number.isInfinite() ? Optional.<String>absent()
+          : Optional.of( BigDecimal.valueOf( number ).toPlainString() );
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        return Optional.of( valueMeta.getBigNumber( data ).toPlainString() );
+      case ValueMetaInterface.TYPE_STRING:
+        return Optional.of( "'" + valueMeta.getString( data ).replace( "'", "''" ) + "'" );
+      case ValueMetaInterface.TYPE_DATE:
+      case ValueMetaInterface.TYPE_TIMESTAMP:
+        return Optional.of( "'" + new SimpleDateFormat( "yyyy-MM-dd HH:mm:ss.SSS" )
+          .format( valueMeta.getDate( data ) ) + "'" );
+      default:
+        return Optional.absent();
+    }
+  }
+
+  private static String quote( String identifier ) {
+    return "\"" + identifier.replace( "\"", "\"\"" ) + "\"";
+  }
+
+  /**
+   * Tests if a cached result set is close enough to its time to live to be refreshed ahead of expiry.
+   * Cached results expire once they have not been accessed for their time to live.
+   *
+   * @param lastAccess time the entry was last read or written, in milliseconds
+   * @param now        current time in milliseconds
+   * @return <code>true</code> if a refresh-ahead window is configured and the entry is inside it
+   */
+  boolean isExpiring( long lastAccess, long now ) {
+    long refreshAheadMillis = toMillis( getRefreshAhead() );
+    if ( refreshAheadMillis <= 0 ) {
+      return false;
+    }
+    long ttlMillis = getTimeToLiveMillis();
+    return ttlMillis > 0 && now - lastAccess >= ttlMillis - refreshAheadMillis;
+  }
+
+  /**
+   * @return time to live of cached results in milliseconds, or 0 if unknown or unbounded
+   */
+  long getTimeToLiveMillis() {
+    try {
+      return toMillis( Optional.fromNullable( getTimeToLive() ).or( getConfiguredTimeToLive() ) );
+    } catch ( RuntimeException e ) {
+      return 0;
+    }
+  }
+
+  private static long toMillis( String seconds ) {
+    if ( Strings.isNullOrEmpty( seconds ) ) {
+      return 0;
+    }
+    try {
+      return TimeUnit.SECONDS.toMillis( Long.parseLong( seconds.trim() ) );
+    } catch ( NumberFormatException e ) {
+      return 0;
+    }
+  }
+
+  private void addReplayCallback( final LogChannelInterface logChannel, ListenableFuture<Integer> replay,
+                                  final ServiceCacheStatistics statistics ) {
+    final long start = System.nanoTime();
     Futures.addCallback( replay, new FutureCallback<Integer>() {
       @Override public void onSuccess( Integer rowCount ) {
+        statistics.recordReplay( rowCount, System.nanoTime() - start );
         logChannel.logBasic( "Service Transformation successfully replayed " + rowCount + " rows from cache" );
       }
 
@@ -165,6 +502,36 @@ public class ServiceCache extends StepOptimization {
     }, factory.getExecutorService() );
   }
 
+  /**
+   * Estimates the time to replay the cached rows that answer the query, at the replay rate observed for this service.
+   * Only rows in blocks the zone map can not exclude are replayed. The cache is looked up without side effects, a
+   * cache with a different time to live is left for {@link #activate} to drop.
+   */
+  @Override public Optional<Double> estimateCost( DataServiceExecutor executor, PushDownOptimizationMeta meta ) {
+    if ( factory.isRefresh( executor ) ) {
+      return Optional.absent();
+    }
+    Optional<Cache<CachedService.CacheKey, CachedService>> cache = factory.getCache( executor.getServiceName() );
+    try {
+      if ( !cache.isPresent() || !ttlMatches( cache.get(), executor.getServiceTrans().getLogChannel() ) ) {
+        return Optional.absent();
+      }
+    } catch ( NumberFormatException e ) {
+      return Optional.absent();
+    }
+    Map<CachedService.CacheKey, CachedService> availableCache = getAvailableCache( executor, cache.get() );
+    if ( availableCache.isEmpty() ) {
+      return Optional.absent();
+    }
+    long rowCount = availableCache.values().iterator().next()
+      .countScanned( CachedServiceLoader.wherePredicate( executor ) );
+    double rowsPerSecond = factory.getStatistics( executor.getServiceName() ).getReplayRowsPerSecond();
+    if ( rowsPerSecond <= 0 ) {
+      rowsPerSecond = DEFAULT_REPLAY_ROWS_PER_SECOND;
+    }
+    return Optional.of( rowCount * (double) TimeUnit.SECONDS.toMillis( 1 ) / rowsPerSecond );
+  }
+
   @Override public OptimizationImpactInfo preview( DataServiceExecutor executor, StepInterface stepInterface ) {
     OptimizationImpactInfo info = new OptimizationImpactInfo( executor.getService().getStepname() );
     Map<CachedService.CacheKey, CachedService> availableCache = getAvailableCache( executor );
@@ -173,7 +540,7 @@ public class ServiceCache extends StepOptimization {
       info.setQueryBeforeOptimization( MessageFormat.format( "Service results for {0} are available.",
           available.getKey() ) );
       info.setQueryAfterOptimization( MessageFormat.format( "{0} rows can be read from cache.",
-          available.getValue().getRowMetaAndData().size() ) );
+          available.getValue().getRowCount() ) );
       return info;
     }
     info.setModified( false );
@@ -191,8 +558,11 @@ public class ServiceCache extends StepOptimization {
   }
 
   Map<CachedService.CacheKey, CachedService> getAvailableCache( final DataServiceExecutor executor ) {
-    final Cache<CachedService.CacheKey, CachedService> cache =
-        maybeInvalidateCache( executor );
+    return getAvailableCache( executor, maybeInvalidateCache( executor ) );
+  }
+
+  private Map<CachedService.CacheKey, CachedService> getAvailableCache( DataServiceExecutor executor,
+    final Cache<CachedService.CacheKey, CachedService> cache ) {
     if ( cache == null ) {
       return ImmutableMap.of();
     }
@@ -205,7 +575,7 @@ public class ServiceCache extends StepOptimization {
     }
 
     // Otherwise, check all related keys for a complete set
-    return FluentIterable.from( rootKey.all() )
+    Optional<Map<CachedService.CacheKey, CachedService>> related = FluentIterable.from( rootKey.all() )
       .transform( new Function<CachedService.CacheKey, Map<CachedService.CacheKey, CachedService>>() {
         @Override public Map<CachedService.CacheKey, CachedService> apply(
           CachedService.CacheKey key ) {
@@ -214,7 +584,29 @@ public class ServiceCache extends StepOptimization {
         }
       } )
       .filter( notNull() )
-      .first().or( ImmutableMap.<CachedService.CacheKey, CachedService>of() );
+      .first();
+    if ( related.isPresent() || !rootKey.hasCondition() ) {
+      return related.or( ImmutableMap.<CachedService.CacheKey, CachedService>of() );
+    }
+
+    // Finally, look for a complete set cached with a weaker condition.
+    // The generated transformation re-applies the full WHERE clause, filtering out any residual rows during replay.
+    return getSubsumingCache( cache, rootKey );
+  }
+
+  private Map<CachedService.CacheKey, CachedService> getSubsumingCache(
+    Cache<CachedService.CacheKey, CachedService> cache, CachedService.CacheKey rootKey ) {
+    for ( Cache.Entry<CachedService.CacheKey, CachedService> entry : cache ) {
+      // Keys are compared first, values are only read for candidates
+      if ( !entry.getKey().subsumes( rootKey ) ) {
+        continue;
+      }
+      CachedService value = entry.getValue();
+      if ( value != null && value.isComplete() ) {
+        return ImmutableMap.of( entry.getKey(), value );
+      }
+    }
+    return ImmutableMap.of();
   }
 
   /**
@@ -263,6 +655,11 @@ public class ServiceCache extends StepOptimization {
     return true;
   }
 
+  private static boolean isStoreByValue( Cache<CachedService.CacheKey, CachedService> cache ) {
+    CompleteConfiguration config = cache.getConfiguration( CompleteConfiguration.class );
+    return config != null && config.isStoreByValue();
+  }
+
   private synchronized void dropCache( Cache<CachedService.CacheKey, CachedService> cache ) {
     if ( !cache.isClosed() ) {
       cache.clear();
@@ -308,6 +705,46 @@ public class ServiceCache extends StepOptimization {
     this.timeToLive = timeToLive;
   }
 
+  public String getWarmUpQueries() {
+    return warmUpQueries;
+  }
+
+  public void setWarmUpQueries( String warmUpQueries ) {
+    this.warmUpQueries = warmUpQueries;
+  }
+
+  public List<String> getWarmUpQueryList() {
+    return Splitter.on( '\n' ).trimResults().omitEmptyStrings().splitToList( Strings.nullToEmpty( warmUpQueries ) );
+  }
+
+  public String getWarmUpInterval() {
+    return warmUpInterval;
+  }
+
+  public void setWarmUpInterval( String warmUpInterval ) {
+    this.warmUpInterval = warmUpInterval;
+  }
+
+  public long getWarmUpIntervalMillis() {
+    return toMillis( warmUpInterval );
+  }
+
+  public String getRefreshAhead() {
+    return refreshAhead;
+  }
+
+  public void setRefreshAhead( String refreshAhead ) {
+    this.refreshAhead = refreshAhead;
+  }
+
+  public String getWatermarkField() {
+    return watermarkField;
+  }
+
+  public void setWatermarkField( String watermarkField ) {
+    this.watermarkField = watermarkField;
+  }
+
   public String getConfiguredTimeToLive() {
     PentahoCacheTemplateConfiguration configuration = factory.getPentahoCacheTemplateConfiguration( this );
     return configuration.getProperties().get( CONFIG_TTL );
@@ -0,0 +1,250 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.base.Optional;
+
+import javax.cache.Cache;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps cached service results within a per-service entry count, and within a per-service and a global byte budget.
+ * <p>
+ * Entries are ranked by weight: how often they are likely to be reused, times the cost of recomputing them, per byte
+ * they retain. Reuse is the greater of an entry's hits and the recent access frequency of its key. When a bound is
+ * exceeded, the lightest entries are evicted first. A new result is only admitted to a full cache if it outweighs
+ * every entry it would displace. Admission and eviction read the entry sizes tracked by
+ * {@link ServiceCacheStatistics}, and only rank entries when a cache is full.
+ * </p>
+ */
+class ServiceCacheBudget {
+
+  private final long maxServiceBytes;
+  private final long maxTotalBytes;
+  private final long maxServiceEntries;
+  private final FrequencySketch accessFrequency;
+
+  /**
+   * @param maxServiceBytes   byte budget of a single data service cache, or 0 for no limit
+   * @param maxTotalBytes     byte budget of all data service caches, or 0 for no limit
+   * @param maxServiceEntries number of entries of a single data service cache, or 0 for no limit
+   * @param accessFrequency   recent queries, by key without ordering
+   */
+  ServiceCacheBudget( long maxServiceBytes, long maxTotalBytes, long maxServiceEntries,
+                      FrequencySketch accessFrequency ) {
+    this.maxServiceBytes = maxServiceBytes;
+    this.maxTotalBytes = maxTotalBytes;
+    this.maxServiceEntries = maxServiceEntries;
+    this.accessFrequency = accessFrequency;
+  }
+
+  boolean isUnbounded() {
+    return maxServiceBytes <= 0 && maxTotalBytes <= 0 && maxServiceEntries <= 0;
+  }
+
+  /**
+   * @return the largest result set that could be cached, or 0 for no limit
+   */
+  long getMaxEntryBytes() {
+    if ( maxServiceBytes > 0 && maxTotalBytes > 0 ) {
+      return Math.min( maxServiceBytes, maxTotalBytes );
+    }
+    return Math.max( maxServiceBytes, maxTotalBytes );
+  }
+
+  /**
+   * Decides if a new result set is worth caching
+   *
+   * @param statistics    statistics of the data service the result belongs to
+   * @param key           key the result would be cached under
+   * @param bytes         estimated size of the result
+   * @param costMillis    time taken to compute the result
+   * @param allStatistics statistics of every data service cache
+   * @return <code>true</code> if the result fits in the bounds, or is heavier than the entries it would displace
+   */
+  boolean admits( ServiceCacheStatistics statistics, CachedService.CacheKey key, long bytes, long costMillis,
+                  Collection<ServiceCacheStatistics> allStatistics ) {
+    if ( isUnbounded() ) {
+      return true;
+    }
+    long maxEntryBytes = getMaxEntryBytes();
+    if ( maxEntryBytes > 0 && bytes > maxEntryBytes ) {
+      return false;
+    }
+    double weight = weight( key, 0, costMillis, bytes );
+    long byteOverflow = maxServiceBytes > 0 ? statistics.getCachedBytes() + bytes - maxServiceBytes : 0;
+    long entryOverflow = maxServiceEntries > 0 ? statistics.getEntrySizes().size() + 1 - maxServiceEntries : 0;
+    if ( !outweighs( candidates( statistics ), byteOverflow, entryOverflow, weight ) ) {
+      return false;
+    }
+    if ( maxTotalBytes <= 0 ) {
+      return true;
+    }
+    long overflow = bytes - maxTotalBytes;
+    for ( ServiceCacheStatistics other : allStatistics ) {
+      overflow += other.getCachedBytes();
+    }
+    if ( overflow <= 0 ) {
+      return true;
+    }
+    List<Candidate> all = new ArrayList<>();
+    for ( ServiceCacheStatistics other : allStatistics ) {
+      all.addAll( candidates( other ) );
+    }
+    return outweighs( all, overflow, 0, weight );
+  }
+
+  /**
+   * Evicts entries until every cache is within the budget
+   *
+   * @param allStatistics statistics of every data service cache
+   * @return number of evicted entries
+   */
+  int enforce( Collection<ServiceCacheStatistics> allStatistics ) {
+    if ( isUnbounded() ) {
+      return 0;
+    }
+    int evicted = 0;
+    long totalBytes = 0;
+    for ( ServiceCacheStatistics statistics : allStatistics ) {
+      if ( maxServiceBytes > 0 && statistics.getCachedBytes() > maxServiceBytes
+        || maxServiceEntries > 0 && statistics.getEntryCount() > maxServiceEntries ) {
+        evicted += evict( candidates( statistics ), maxServiceBytes, maxServiceEntries );
+      }
+      totalBytes += statistics.getCachedBytes();
+    }
+    if ( maxTotalBytes <= 0 || totalBytes <= maxTotalBytes ) {
+      return evicted;
+    }
+    List<Candidate> all = new ArrayList<>();
+    for ( ServiceCacheStatistics statistics : allStatistics ) {
+      all.addAll( candidates( statistics ) );
+    }
+    return evicted + evict( all, maxTotalBytes, 0 );
+  }
+
+  /**
+   * @return entries of a data service cache, as tracked by its statistics
+   */
+  private List<Candidate> candidates( ServiceCacheStatistics statistics ) {
+    List<Candidate> candidates = new ArrayList<>();
+    Optional<Cache<CachedService.CacheKey, CachedService>> cache = statistics.getCache();
+    if ( !cache.isPresent() ) {
+      return candidates;
+    }
+    for ( Map.Entry<CachedService.CacheKey, Long> entry : statistics.getEntrySizes().entrySet() ) {
+      CachedService.CacheKey key = entry.getKey();
+      long bytes = entry.getValue();
+      candidates.add( new Candidate( statistics, cache.get(), key, bytes,
+        weight( key, statistics.getEntryHits( key ), statistics.getEntryCost( key ), bytes ) ) );
+    }
+    return candidates;
+  }
+
+  private double weight( CachedService.CacheKey key, long hits, long costMillis, long bytes ) {
+    long reuse = Math.max( hits, accessFrequency.frequency( key.withoutOrder() ) ) + 1;
+    return reuse * (double) ( costMillis + 1 ) / Math.max( 1, bytes );
+  }
+
+  /**
+   * Tests if the residents that would be evicted to make room are all lighter than the newcomer
+   *
+   * @param byteOverflow  bytes to free, if positive
+   * @param entryOverflow entries to free, if positive
+   */
+  private static boolean outweighs( List<Candidate> residents, long byteOverflow, long entryOverflow,
+                                    double weight ) {
+    if ( byteOverflow <= 0 && entryOverflow <= 0 ) {
+      return true;
+    }
+    Collections.sort( residents, Candidate.BY_WEIGHT );
+    for ( Candidate resident : residents ) {
+      if ( byteOverflow <= 0 && entryOverflow <= 0 ) {
+        break;
+      }
+      if ( resident.weight >= weight ) {
+        return false;
+      }
+      byteOverflow -= resident.bytes;
+      entryOverflow--;
+    }
+    return true;
+  }
+
+  /**
+   * Removes the lightest candidates until the rest fit in the bounds. Evicted candidates are removed from the list.
+   *
+   * @param budget     bytes the candidates may retain, or 0 for no limit
+   * @param maxEntries number of candidates to keep, or 0 for no limit
+   */
+  private static int evict( List<Candidate> candidates, long budget, long maxEntries ) {
+    long total = 0;
+    for ( Candidate candidate : candidates ) {
+      total += candidate.bytes;
+    }
+    long byteOverflow = budget > 0 ? total - budget : 0;
+    long entryOverflow = maxEntries > 0 ? candidates.size() - maxEntries : 0;
+    if ( byteOverflow <= 0 && entryOverflow <= 0 ) {
+      return 0;
+    }
+    Collections.sort( candidates, Candidate.BY_WEIGHT );
+    int evicted = 0;
+    while ( ( byteOverflow > 0 || entryOverflow > 0 ) && !candidates.isEmpty() ) {
+      Candidate lightest = candidates.remove( 0 );
+      lightest.cache.remove( lightest.key );
+      lightest.statistics.forgetEntry( lightest.key );
+      byteOverflow -= lightest.bytes;
+      entryOverflow--;
+      evicted++;
+    }
+    return evicted;
+  }
+
+  private static class Candidate {
+    static final Comparator<Candidate> BY_WEIGHT = new Comparator<Candidate>() {
+      @Override public int compare( Candidate o1, Candidate o2 ) {
+        return Double.compare( o1.weight, o2.weight );
+      }
+    };
+
+    final ServiceCacheStatistics statistics;
+    final Cache<CachedService.CacheKey, CachedService> cache;
+    final CachedService.CacheKey key;
+    final long bytes;
+    final double weight;
+
+    Candidate( ServiceCacheStatistics statistics, Cache<CachedService.CacheKey, CachedService> cache,
+               CachedService.CacheKey key, long bytes, double weight ) {
+      this.statistics = statistics;
+      this.cache = cache;
+      this.key = key;
+      this.bytes = bytes;
+      this.weight = weight;
+    }
+  }
+}
@@ -24,6 +24,7 @@ package org.pentaho.di.trans.dataservice.optimization.cache;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import org.pentaho.caching.api.PentahoCacheManager;
@@ -36,8 +37,15 @@ import org.pentaho.di.trans.dataservice.optimization.cache.ui.ServiceCacheOverla
 
 import javax.cache.Cache;
 import javax.cache.CacheException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Supplier;
@@ -51,12 +59,78 @@ public class ServiceCacheFactory implements PushDownFactory {
 
   public static final String CACHE_PREFIX = "SERVICE_CACHE.";
 
+  /**
+   * System property limiting the number of rows a single observer will capture, 0 or unset for no limit
+   */
+  static final String MAX_CAPTURE_ROWS_PROPERTY = "dataservice.cache.capture.max.rows";
+
+  /**
+   * System property limiting the estimated size in bytes of each data service cache, 0 or unset for no limit
+   */
+  static final String MAX_SERVICE_BYTES_PROPERTY = "dataservice.cache.max.service.bytes";
+
+  /**
+   * System property limiting the estimated size in bytes of all data service caches, 0 for no limit
+   */
+  static final String MAX_TOTAL_BYTES_PROPERTY = "dataservice.cache.max.total.bytes";
+
+  /**
+   * A quarter of the heap, so that admission weighs new results against cached ones before the heap fills up
+   */
+  static final long DEFAULT_MAX_TOTAL_BYTES = Runtime.getRuntime().maxMemory() / 4;
+
+  /**
+   * System property limiting the number of entries of each data service cache, 0 for no limit
+   */
+  static final String MAX_SERVICE_ENTRIES_PROPERTY = "dataservice.cache.max.service.entries";
+
+  static final long DEFAULT_MAX_SERVICE_ENTRIES = 1000;
+
+  /**
+   * System property setting the estimated size in bytes after which an observer writes captured rows to disk,
+   * 0 or unset to keep all captured rows in memory
+   */
+  static final String SPILL_THRESHOLD_BYTES_PROPERTY = "dataservice.cache.spill.threshold.bytes";
+
+  /**
+   * System property naming the directory under which spilled rows are kept, defaults to java.io.tmpdir
+   */
+  static final String SPILL_DIRECTORY_PROPERTY = "dataservice.cache.spill.dir";
+
+  static final String SPILL_DIRECTORY_NAME = "pdi-dataservice-spill";
+
+  /**
+   * Counters per row of the sketch tracking recent query frequency
+   */
+  static final int ACCESS_SKETCH_WIDTH = 4096;
+
+  static final String JMX_DOMAIN = "org.pentaho.di.trans.dataservice";
+
   private final PentahoCacheManager cacheManager;
 
   private final ListeningExecutorService executorService;
 
   private final Map<CachedService.CacheKey, ServiceObserver> runningServices = new ConcurrentHashMap<>();
 
+  private final Set<DataServiceExecutor> refreshExecutors =
+    Collections.newSetFromMap( new ConcurrentHashMap<DataServiceExecutor, Boolean>() );
+
+  private final Map<DataServiceExecutor, Map.Entry<CachedService.CacheKey, CachedService>> incrementalBases =
+    new ConcurrentHashMap<>();
+
+  private final Map<DataServiceExecutor, CachedService.CacheKey> refreshKeys = new ConcurrentHashMap<>();
+
+  private final Map<String, ServiceCacheStatistics> statistics = new ConcurrentHashMap<>();
+
+  private final FrequencySketch accessFrequency = new FrequencySketch( ACCESS_SKETCH_WIDTH );
+
+  private final QueryResultCache resultCache =
+    new QueryResultCache( Long.getLong( QueryResultCache.MAX_BYTES_PROPERTY, QueryResultCache.DEFAULT_MAX_BYTES ) );
+
+  private final ColumnStatisticsRegistry columnStatisticsRegistry = new ColumnStatisticsRegistry();
+
+  private volatile ServiceCacheWarmer warmer;
+
   public ServiceCacheFactory( PentahoCacheManager cacheManager, ExecutorService executorService ) {
     this.cacheManager = cacheManager;
     this.executorService = MoreExecutors.listeningDecorator( executorService );
@@ -97,12 +171,15 @@ public class ServiceCacheFactory implements PushDownFactory {
       return cache.get();
     }
 
-    return getPentahoCacheTemplateConfiguration( serviceCache )
+    Cache<CachedService.CacheKey, CachedService> created = getPentahoCacheTemplateConfiguration( serviceCache )
       .createCache(
         cacheName( dataServiceName ),
         CachedService.CacheKey.class,
         CachedService.class
       );
+    getStatistics( dataServiceName ).listenTo( created );
+    SpillFile.reclaimOnEviction( created );
+    return created;
   }
 
   public PentahoCacheTemplateConfiguration getPentahoCacheTemplateConfiguration( ServiceCache serviceCache ) {
@@ -129,16 +206,124 @@ public class ServiceCacheFactory implements PushDownFactory {
     }
   }
 
+  public QueryResultCache getResultCache() {
+    return resultCache;
+  }
+
+  public ColumnStatisticsRegistry getColumnStatisticsRegistry() {
+    return columnStatisticsRegistry;
+  }
+
   public String cacheName( String dataServiceName ) {
     return CACHE_PREFIX + dataServiceName;
   }
 
   public ServiceObserver createObserver( DataServiceExecutor executor ) {
-    return new ServiceObserver( executor );
+    return new ServiceObserver( executor, getMaxCaptureRows(), getBudget().getMaxEntryBytes(),
+      getLimitProperty( SPILL_THRESHOLD_BYTES_PROPERTY ), getSpillDirectory() );
+  }
+
+  /**
+   * @return directory holding only spilled rows, cleared when the bundle starts and stops
+   */
+  File getSpillDirectory() {
+    String directory = System.getProperty( SPILL_DIRECTORY_PROPERTY );
+    String parent = Strings.isNullOrEmpty( directory ) ? System.getProperty( "java.io.tmpdir" ) : directory.trim();
+    return new File( parent, SPILL_DIRECTORY_NAME );
+  }
+
+  /**
+   * Deletes spilled rows left behind by a previous run
+   */
+  public void init() {
+    SpillFile.deleteAll( getSpillDirectory() );
+  }
+
+  /**
+   * Drops cache entries holding spilled rows and deletes their files
+   */
+  public void destroy() {
+    for ( ServiceCacheStatistics serviceStatistics : statistics.values() ) {
+      Optional<Cache<CachedService.CacheKey, CachedService>> cache = serviceStatistics.getCache();
+      if ( cache.isPresent() ) {
+        for ( Cache.Entry<CachedService.CacheKey, CachedService> entry : cache.get() ) {
+          if ( entry.getValue() != null && entry.getValue().getSpill().isPresent() ) {
+            cache.get().remove( entry.getKey() );
+          }
+        }
+      }
+    }
+    SpillFile.deleteAll( getSpillDirectory() );
+  }
+
+  long getMaxCaptureRows() {
+    return getLimitProperty( MAX_CAPTURE_ROWS_PROPERTY );
+  }
+
+  ServiceCacheBudget getBudget() {
+    return new ServiceCacheBudget( getLimitProperty( MAX_SERVICE_BYTES_PROPERTY ),
+      getLimitProperty( MAX_TOTAL_BYTES_PROPERTY, DEFAULT_MAX_TOTAL_BYTES ),
+      getLimitProperty( MAX_SERVICE_ENTRIES_PROPERTY, DEFAULT_MAX_SERVICE_ENTRIES ), accessFrequency );
+  }
+
+  /**
+   * Counts a query towards the popularity of its cache key
+   *
+   * @param key root key of the query
+   */
+  public void recordAccess( CachedService.CacheKey key ) {
+    accessFrequency.increment( key.withoutOrder() );
+  }
+
+  /**
+   * Decides if a captured result set should be cached, given how often it was recently queried,
+   * how long it took to compute and the entries it would displace
+   *
+   * @param dataServiceName data service the result belongs to
+   * @param key             key the result would be cached under
+   * @param result          captured result set
+   * @param costMillis      service transformation run time
+   * @return <code>true</code> if the result should be cached
+   */
+  public synchronized boolean admit( String dataServiceName, CachedService.CacheKey key, CachedService result,
+                                     long costMillis ) {
+    ServiceCacheStatistics serviceStatistics = getStatistics( dataServiceName );
+    if ( getBudget().admits( serviceStatistics, key, result.estimateBytes(), costMillis, statistics.values() ) ) {
+      serviceStatistics.recordCost( key, costMillis );
+      return true;
+    }
+    serviceStatistics.recordRejection();
+    return false;
+  }
+
+  /**
+   * Evicts cached results until all data service caches are within their entry counts and byte budgets
+   */
+  public synchronized void enforceBudgets() {
+    getBudget().enforce( statistics.values() );
+  }
+
+  private static long getLimitProperty( String property ) {
+    return getLimitProperty( property, 0 );
+  }
+
+  /**
+   * @param defaultLimit limit used if the property is unset or invalid
+   */
+  private static long getLimitProperty( String property, long defaultLimit ) {
+    String limit = System.getProperty( property );
+    if ( Strings.isNullOrEmpty( limit ) ) {
+      return defaultLimit;
+    }
+    try {
+      return Math.max( 0, Long.parseLong( limit.trim() ) );
+    } catch ( NumberFormatException e ) {
+      return defaultLimit;
+    }
   }
 
   public CachedServiceLoader createCachedServiceLoader( CachedService cachedService ) {
-    return new CachedServiceLoader( executorService, () -> cachedService.getRowMetaAndData().iterator() );
+    return new CachedServiceLoader( cachedService, executorService );
   }
 
   public CachedServiceLoader createCachedServiceLoader( Supplier<Iterator<RowMetaAndData>> supplier ) {
@@ -156,7 +341,114 @@ public class ServiceCacheFactory implements PushDownFactory {
     return cacheManager.getTemplates().get( templateName ).getProperties();
   }
 
+  /**
+   * Gets the statistics of a data service cache, creating and registering them with JMX on first use
+   *
+   * @param dataServiceName name of data service
+   * @return statistics of the data service cache
+   */
+  public ServiceCacheStatistics getStatistics( final String dataServiceName ) {
+    return statistics.computeIfAbsent( dataServiceName, name -> {
+      ServiceCacheStatistics serviceStatistics = new ServiceCacheStatistics( name, () -> getCache( name ) );
+      registerMBean( serviceStatistics );
+      return serviceStatistics;
+    } );
+  }
+
+  public Map<String, ServiceCacheStatistics> getAllStatistics() {
+    return Collections.unmodifiableMap( statistics );
+  }
+
+  private void registerMBean( ServiceCacheStatistics serviceStatistics ) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName( JMX_DOMAIN + ":type=ServiceCache,name="
+        + ObjectName.quote( serviceStatistics.getServiceName() ) );
+      // Replace statistics left behind by a previous instance of this bundle
+      if ( server.isRegistered( name ) ) {
+        server.unregisterMBean( name );
+      }
+      server.registerMBean( serviceStatistics, name );
+    } catch ( JMException | SecurityException e ) {
+      // Statistics are still available through the servlet
+    }
+  }
+
   public Map<CachedService.CacheKey, ServiceObserver> getRunningServices() {
     return runningServices;
   }
+
+  void setWarmer( ServiceCacheWarmer warmer ) {
+    this.warmer = warmer;
+  }
+
+  /**
+   * Flags a query as a cache refresh. Refresh queries never read from cache and always replace the cached entry.
+   */
+  void markRefresh( DataServiceExecutor executor ) {
+    refreshExecutors.add( executor );
+  }
+
+  /**
+   * Flags a refresh query as incremental. Its output is appended to the given cache entry instead of replacing it.
+   */
+  void markIncremental( DataServiceExecutor executor, CachedService.CacheKey key, CachedService base ) {
+    incrementalBases.put( executor, Maps.immutableEntry( key, base ) );
+  }
+
+  /**
+   * Flags a refresh query as replacing the given cache entry, instead of the entry keyed by the query itself
+   */
+  void markReplacement( DataServiceExecutor executor, CachedService.CacheKey key ) {
+    refreshKeys.put( executor, key );
+  }
+
+  void unmarkRefresh( DataServiceExecutor executor ) {
+    refreshExecutors.remove( executor );
+    incrementalBases.remove( executor );
+    refreshKeys.remove( executor );
+  }
+
+  public Optional<CachedService.CacheKey> getRefreshKey( DataServiceExecutor executor ) {
+    return Optional.fromNullable( refreshKeys.get( executor ) );
+  }
+
+  public Optional<Map.Entry<CachedService.CacheKey, CachedService>> getIncrementalBase(
+    DataServiceExecutor executor ) {
+    return Optional.fromNullable( incrementalBases.get( executor ) );
+  }
+
+  public boolean isRefresh( DataServiceExecutor executor ) {
+    return refreshExecutors.contains( executor );
+  }
+
+  /**
+   * Requests a background query replacing a cache entry about to expire, if a warmer is available
+   *
+   * @param query      query reading the complete service output cached under the key
+   * @param parameters query parameters
+   * @param key        key of the cache entry to replace
+   */
+  public void requestRefresh( String query, Map<String, String> parameters, CachedService.CacheKey key ) {
+    ServiceCacheWarmer current = warmer;
+    if ( current != null ) {
+      current.refresh( query, parameters, key );
+    }
+  }
+
+  /**
+   * Requests a background query reading only new service rows, to be appended to an existing cache entry
+   *
+   * @param query      incremental query
+   * @param parameters query parameters
+   * @param key        key of the cache entry to extend
+   * @param base       complete cache entry to extend
+   */
+  public void requestRefresh( String query, Map<String, String> parameters, CachedService.CacheKey key,
+                              CachedService base ) {
+    ServiceCacheWarmer current = warmer;
+    if ( current != null ) {
+      current.refresh( query, parameters, key, base );
+    }
+  }
 }
@@ -0,0 +1,436 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import javax.cache.Cache;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryExpiredListener;
+import javax.cache.event.CacheEntryListenerException;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Hit, miss and replay counters for the cache of a single data service.
+ * Entry sizes are kept up to date by a listener on the cache, so that they can be read without decoding entries.
+ */
+public class ServiceCacheStatistics implements ServiceCacheStatisticsMXBean {
+  /**
+   * Hit kinds, matching the keys tried by {@link ServiceCache} from most to least specific
+   */
+  public static final String HIT_EXACT = "exact";
+  public static final String HIT_UNORDERED = "unordered";
+  public static final String HIT_UNCONDITIONED = "unconditioned";
+  public static final String HIT_SUBSUMED = "subsumed";
+
+  private final String serviceName;
+  private final Supplier<Optional<Cache<CachedService.CacheKey, CachedService>>> cacheSupplier;
+
+  private final ConcurrentHashMap<String, AtomicLong> hits = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<CachedService.CacheKey, AtomicLong> entryHits = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<CachedService.CacheKey, Long> entryCosts = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<CachedService.CacheKey, Long> entryAccesses = new ConcurrentHashMap<>();
+  private final AtomicLong resultHits = new AtomicLong();
+  private final AtomicLong partialHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong sharedScans = new AtomicLong();
+  private final AtomicLong replays = new AtomicLong();
+  private final AtomicLong replayedRows = new AtomicLong();
+  private final AtomicLong replayNanos = new AtomicLong();
+  private final AtomicLong observerAborts = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong rejections = new AtomicLong();
+
+  private final ConcurrentHashMap<CachedService.CacheKey, Long> entrySizes = new ConcurrentHashMap<>();
+  private final AtomicLong cachedBytes = new AtomicLong();
+  private volatile Cache<CachedService.CacheKey, CachedService> trackedCache;
+  private volatile boolean tracking;
+
+  public ServiceCacheStatistics( String serviceName,
+                                 Supplier<Optional<Cache<CachedService.CacheKey, CachedService>>> cacheSupplier ) {
+    this.serviceName = serviceName;
+    this.cacheSupplier = cacheSupplier;
+  }
+
+  /**
+   * Describes which of the keys derived from a query matched a cache entry
+   *
+   * @param rootKey    key of the query
+   * @param matchedKey key of the entry used to answer the query
+   * @return one of the HIT_* kinds
+   */
+  static String hitKind( CachedService.CacheKey rootKey, CachedService.CacheKey matchedKey ) {
+    if ( matchedKey.equals( rootKey ) ) {
+      return HIT_EXACT;
+    }
+    if ( matchedKey.equals( rootKey.withoutOrder() ) ) {
+      return HIT_UNORDERED;
+    }
+    if ( matchedKey.equals( rootKey.withoutOrder().withoutCondition() ) ) {
+      return HIT_UNCONDITIONED;
+    }
+    return HIT_SUBSUMED;
+  }
+
+  void recordHit( String kind, CachedService.CacheKey key, CachedService cachedService ) {
+    hits.computeIfAbsent( kind, k -> new AtomicLong() ).incrementAndGet();
+    entryHits.computeIfAbsent( key, k -> new AtomicLong() ).incrementAndGet();
+    if ( !cachedService.isComplete() ) {
+      partialHits.incrementAndGet();
+    }
+  }
+
+  void recordResultHit() {
+    resultHits.incrementAndGet();
+  }
+
+  void recordMiss() {
+    misses.incrementAndGet();
+  }
+
+  void recordSharedScan() {
+    sharedScans.incrementAndGet();
+  }
+
+  void recordReplay( int rowCount, long elapsedNanos ) {
+    replays.incrementAndGet();
+    replayedRows.addAndGet( rowCount );
+    replayNanos.addAndGet( elapsedNanos );
+  }
+
+  void recordObserverAbort() {
+    observerAborts.incrementAndGet();
+  }
+
+  /**
+   * @param key        key of a cached result
+   * @param costMillis time taken by the service transformation to produce it
+   */
+  void recordCost( CachedService.CacheKey key, long costMillis ) {
+    entryCosts.put( key, costMillis );
+  }
+
+  /**
+   * Records a read or write of a cache entry, which restarts its time to live
+   *
+   * @param key cache entry key
+   * @param now time of the access in milliseconds
+   * @return time of the previous access to the entry, if known
+   */
+  Optional<Long> recordAccess( CachedService.CacheKey key, long now ) {
+    return Optional.fromNullable( entryAccesses.put( key, now ) );
+  }
+
+  void recordRejection() {
+    rejections.incrementAndGet();
+  }
+
+  /**
+   * Tracks the sizes of entries put into a cache, and counts entries expiring or being removed from it.
+   * Entries cached before are measured once.
+   *
+   * @param cache cache of this data service
+   */
+  synchronized void listenTo( Cache<CachedService.CacheKey, CachedService> cache ) {
+    if ( cache == trackedCache ) {
+      return;
+    }
+    trackedCache = cache;
+    entrySizes.clear();
+    cachedBytes.set( 0 );
+    try {
+      cache.registerCacheEntryListenerConfiguration( new MutableCacheEntryListenerConfiguration<>(
+        FactoryBuilder.factoryOf( new EntryListener( this ) ), null, false, true ) );
+      tracking = true;
+    } catch ( RuntimeException e ) {
+      // Not every cache provider supports listeners, evictions will not be counted and sizes are read from the cache
+      tracking = false;
+      return;
+    }
+    for ( Cache.Entry<CachedService.CacheKey, CachedService> entry : cache ) {
+      CachedService value = entry.getValue();
+      if ( value != null && entrySizes.putIfAbsent( entry.getKey(), value.estimateBytes() ) == null ) {
+        cachedBytes.addAndGet( value.estimateBytes() );
+      }
+    }
+  }
+
+  /**
+   * @param key   key of an entry put into the cache
+   * @param bytes estimated size of the entry
+   */
+  void recordEntry( CachedService.CacheKey key, long bytes ) {
+    Long previous = entrySizes.put( key, bytes );
+    cachedBytes.addAndGet( previous == null ? bytes : bytes - previous );
+  }
+
+  /**
+   * Forgets the size, hit count, cost and last access of an entry
+   *
+   * @param key key of an entry removed from the cache
+   */
+  void forgetEntry( CachedService.CacheKey key ) {
+    entryHits.remove( key );
+    entryCosts.remove( key );
+    entryAccesses.remove( key );
+    Long previous = entrySizes.remove( key );
+    if ( previous != null ) {
+      cachedBytes.addAndGet( -previous );
+    }
+  }
+
+  /**
+   * @return estimated size of each cached entry
+   */
+  Map<CachedService.CacheKey, Long> getEntrySizes() {
+    Optional<Cache<CachedService.CacheKey, CachedService>> cache = getCache();
+    if ( !cache.isPresent() ) {
+      return ImmutableMap.of();
+    }
+    if ( cache.get() != trackedCache ) {
+      listenTo( cache.get() );
+    }
+    if ( tracking ) {
+      return Collections.unmodifiableMap( entrySizes );
+    }
+    Map<CachedService.CacheKey, Long> sizes = new HashMap<>();
+    for ( Cache.Entry<CachedService.CacheKey, CachedService> entry : cache.get() ) {
+      CachedService value = entry.getValue();
+      if ( value != null ) {
+        sizes.put( entry.getKey(), value.estimateBytes() );
+      }
+    }
+    retainEntries( sizes.keySet() );
+    return sizes;
+  }
+
+  /**
+   * @return estimated size of all cached entries
+   */
+  long getCachedBytes() {
+    Map<CachedService.CacheKey, Long> sizes = getEntrySizes();
+    if ( tracking ) {
+      return cachedBytes.get();
+    }
+    long bytes = 0;
+    for ( Long size : sizes.values() ) {
+      bytes += size;
+    }
+    return bytes;
+  }
+
+  /**
+   * @param key cache entry key
+   * @return number of queries answered from the entry
+   */
+  long getEntryHits( CachedService.CacheKey key ) {
+    AtomicLong count = entryHits.get( key );
+    return count == null ? 0 : count.get();
+  }
+
+  /**
+   * @param key cache entry key
+   * @return time taken to compute the entry in milliseconds, or 0 if unknown
+   */
+  long getEntryCost( CachedService.CacheKey key ) {
+    Long cost = entryCosts.get( key );
+    return cost == null ? 0 : cost;
+  }
+
+  /**
+   * Forgets hit counts, costs and accesses of entries no longer in the cache
+   *
+   * @param retained keys currently cached
+   */
+  private void retainEntries( Collection<CachedService.CacheKey> retained ) {
+    entryHits.keySet().retainAll( retained );
+    entryCosts.keySet().retainAll( retained );
+    entryAccesses.keySet().retainAll( retained );
+  }
+
+  Optional<Cache<CachedService.CacheKey, CachedService>> getCache() {
+    Optional<Cache<CachedService.CacheKey, CachedService>> cache = cacheSupplier.get();
+    if ( cache.isPresent() && !cache.get().isClosed() ) {
+      return cache;
+    }
+    return Optional.absent();
+  }
+
+  @Override public String getServiceName() {
+    return serviceName;
+  }
+
+  @Override public long getEntryCount() {
+    return getEntrySizes().size();
+  }
+
+  @Override public long getEstimatedBytes() {
+    return getCachedBytes();
+  }
+
+  /**
+   * @return current entries of this data service cache
+   */
+  public Iterable<Cache.Entry<CachedService.CacheKey, CachedService>> getEntries() {
+    return cache();
+  }
+
+  @Override public Map<String, Long> getHits() {
+    ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+    for ( Map.Entry<String, AtomicLong> entry : hits.entrySet() ) {
+      builder.put( entry.getKey(), entry.getValue().get() );
+    }
+    return builder.build();
+  }
+
+  @Override public long getResultHits() {
+    return resultHits.get();
+  }
+
+  @Override public long getPartialHits() {
+    return partialHits.get();
+  }
+
+  @Override public long getMisses() {
+    return misses.get();
+  }
+
+  @Override public long getSharedScans() {
+    return sharedScans.get();
+  }
+
+  @Override public long getReplays() {
+    return replays.get();
+  }
+
+  @Override public long getReplayedRows() {
+    return replayedRows.get();
+  }
+
+  @Override public double getReplayRowsPerSecond() {
+    long nanos = replayNanos.get();
+    return nanos > 0 ? replayedRows.get() * (double) TimeUnit.SECONDS.toNanos( 1 ) / nanos : 0;
+  }
+
+  @Override public long getObserverAborts() {
+    return observerAborts.get();
+  }
+
+  @Override public long getEvictions() {
+    return evictions.get();
+  }
+
+  @Override public long getRejections() {
+    return rejections.get();
+  }
+
+  @Override public void reset() {
+    hits.clear();
+    entryHits.clear();
+    for ( AtomicLong counter : ImmutableList.of( resultHits, partialHits, misses, sharedScans, replays, replayedRows,
+      replayNanos, observerAborts, evictions, rejections ) ) {
+      counter.set( 0 );
+    }
+  }
+
+  private Iterable<Cache.Entry<CachedService.CacheKey, CachedService>> cache() {
+    Optional<Cache<CachedService.CacheKey, CachedService>> cache = getCache();
+    if ( cache.isPresent() ) {
+      return cache.get();
+    }
+    return ImmutableList.of();
+  }
+
+  private static class EntryListener implements CacheEntryCreatedListener<CachedService.CacheKey, CachedService>,
+    CacheEntryUpdatedListener<CachedService.CacheKey, CachedService>,
+    CacheEntryExpiredListener<CachedService.CacheKey, CachedService>,
+    CacheEntryRemovedListener<CachedService.CacheKey, CachedService>, Serializable {
+    private static final long serialVersionUID = 1L;
+    private final transient ServiceCacheStatistics statistics;
+
+    EntryListener( ServiceCacheStatistics statistics ) {
+      this.statistics = statistics;
+    }
+
+    @Override public void onCreated(
+      Iterable<CacheEntryEvent<? extends CachedService.CacheKey, ? extends CachedService>> events )
+      throws CacheEntryListenerException {
+      put( events );
+    }
+
+    @Override public void onUpdated(
+      Iterable<CacheEntryEvent<? extends CachedService.CacheKey, ? extends CachedService>> events )
+      throws CacheEntryListenerException {
+      put( events );
+    }
+
+    @Override public void onExpired(
+      Iterable<CacheEntryEvent<? extends CachedService.CacheKey, ? extends CachedService>> events )
+      throws CacheEntryListenerException {
+      evict( events );
+    }
+
+    @Override public void onRemoved(
+      Iterable<CacheEntryEvent<? extends CachedService.CacheKey, ? extends CachedService>> events )
+      throws CacheEntryListenerException {
+      evict( events );
+    }
+
+    private void put( Iterable<CacheEntryEvent<? extends CachedService.CacheKey, ? extends CachedService>> events ) {
+      if ( statistics == null ) {
+        return;
+      }
+      for ( CacheEntryEvent<? extends CachedService.CacheKey, ? extends CachedService> event : events ) {
+        if ( event.getValue() != null ) {
+          statistics.recordEntry( event.getKey(), event.getValue().estimateBytes() );
+          statistics.recordAccess( event.getKey(), System.currentTimeMillis() );
+        }
+      }
+    }
+
+    private void evict( Iterable<CacheEntryEvent<? extends CachedService.CacheKey, ? extends CachedService>> events ) {
+      if ( statistics == null ) {
+        return;
+      }
+      for ( CacheEntryEvent<? extends CachedService.CacheKey, ? extends CachedService> event : events ) {
+        statistics.evictions.incrementAndGet();
+        statistics.forgetEntry( event.getKey() );
+      }
+    }
+  }
+}
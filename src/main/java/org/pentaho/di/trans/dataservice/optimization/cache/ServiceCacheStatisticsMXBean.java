@@ -0,0 +1,69 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import java.util.Map;
+
+/**
+ * JMX view of the cache statistics of a single data service
+ */
+public interface ServiceCacheStatisticsMXBean {
+  String getServiceName();
+
+  long getEntryCount();
+
+  long getEstimatedBytes();
+
+  /**
+   * @return number of queries answered from cache, by the kind of key that matched
+   */
+  Map<String, Long> getHits();
+
+  /**
+   * @return number of queries answered with an encoded result, without running any transformation
+   */
+  long getResultHits();
+
+  long getPartialHits();
+
+  long getMisses();
+
+  long getSharedScans();
+
+  long getReplays();
+
+  long getReplayedRows();
+
+  double getReplayRowsPerSecond();
+
+  long getObserverAborts();
+
+  long getEvictions();
+
+  /**
+   * @return number of results not cached because they were unlikely to be worth the space
+   */
+  long getRejections();
+
+  void reset();
+}
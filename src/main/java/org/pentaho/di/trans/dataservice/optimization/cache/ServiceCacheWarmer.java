@@ -0,0 +1,202 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.sql.SQL;
+import org.pentaho.di.trans.dataservice.DataServiceExecutor;
+import org.pentaho.di.trans.dataservice.DataServiceMeta;
+import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
+import org.pentaho.di.trans.dataservice.resolvers.DataServiceResolver;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs configured warm-up queries against data services with a {@link ServiceCache} optimization, and refreshes
+ * cached entries in the background before they expire.
+ * <p>
+ * Warm-up queries run once when the bundle starts and then again every warm-up interval. Refreshes and warm-ups
+ * are executed like any other query, but flagged so that {@link ServiceCache} always runs the service
+ * transformation and replaces the existing cache entry when it finishes.
+ * </p>
+ */
+public class ServiceCacheWarmer {
+  /**
+   * How often configured warm-up schedules are checked, in seconds
+   */
+  static final long POLL_INTERVAL = 60;
+
+  private final ServiceCacheFactory factory;
+  private final DataServiceResolver resolver;
+  private final ScheduledExecutorService scheduler;
+  private final LogChannelInterface log = new LogChannel( this );
+
+  private final Map<String, Long> lastWarmUp = new ConcurrentHashMap<>();
+  private final Set<String> pending = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+
+  public ServiceCacheWarmer( ServiceCacheFactory factory, DataServiceResolver resolver ) {
+    this( factory, resolver, Executors.newSingleThreadScheduledExecutor() );
+  }
+
+  ServiceCacheWarmer( ServiceCacheFactory factory, DataServiceResolver resolver,
+                      ScheduledExecutorService scheduler ) {
+    this.factory = factory;
+    this.resolver = resolver;
+    this.scheduler = scheduler;
+  }
+
+  public void start() {
+    factory.setWarmer( this );
+    scheduler.scheduleWithFixedDelay( new Runnable() {
+      @Override public void run() {
+        warmUp( System.currentTimeMillis() );
+      }
+    }, 0, POLL_INTERVAL, TimeUnit.SECONDS );
+  }
+
+  public void stop() {
+    factory.setWarmer( null );
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Runs warm-up queries for every data service that is due.
+   *
+   * @param now current time in milliseconds
+   */
+  void warmUp( long now ) {
+    try {
+      for ( DataServiceMeta dataService : resolver.getDataServices( logErrors() ) ) {
+        ServiceCache serviceCache = getServiceCache( dataService );
+        if ( serviceCache == null || serviceCache.getWarmUpQueryList().isEmpty() ) {
+          continue;
+        }
+        Long last = lastWarmUp.get( dataService.getName() );
+        long interval = serviceCache.getWarmUpIntervalMillis();
+        if ( last == null || ( interval > 0 && now - last >= interval ) ) {
+          lastWarmUp.put( dataService.getName(), now );
+          for ( String query : serviceCache.getWarmUpQueryList() ) {
+            execute( query, ImmutableMap.<String, String>of(), null, null );
+          }
+        }
+      }
+    } catch ( Throwable e ) {
+      // Never let the scheduled task die
+      log.logError( "Unable to warm up service cache", e );
+    }
+  }
+
+  /**
+   * Schedules a background query replacing a cache entry that is about to expire.
+   * Duplicate requests for a refresh that is already pending are ignored.
+   *
+   * @param query      query reading the complete service output cached under the key
+   * @param parameters query parameters
+   * @param key        key of the cache entry to replace
+   */
+  public void refresh( String query, Map<String, String> parameters, CachedService.CacheKey key ) {
+    refresh( query, parameters, key, null );
+  }
+
+  /**
+   * Schedules a background query. If a base entry is given, the query output is appended to it.
+   *
+   * @param query           query to execute
+   * @param queryParameters query parameters
+   * @param baseKey         key of the cache entry to extend or replace, or null to cache under the query's own key
+   * @param base            cache entry to extend, or null to replace the entry
+   */
+  void refresh( final String query, Map<String, String> queryParameters, final CachedService.CacheKey baseKey,
+                final CachedService base ) {
+    final Map<String, String> parameters = ImmutableMap.copyOf( queryParameters );
+    final String refreshKey = Objects.toStringHelper( "refresh" ).add( "query", query )
+      .add( "parameters", parameters ).add( "key", baseKey ).toString();
+    if ( !pending.add( refreshKey ) ) {
+      return;
+    }
+    scheduler.execute( new Runnable() {
+      @Override public void run() {
+        try {
+          execute( query, parameters, baseKey, base );
+        } finally {
+          pending.remove( refreshKey );
+        }
+      }
+    } );
+  }
+
+  private void execute( String query, Map<String, String> parameters, CachedService.CacheKey baseKey,
+                        CachedService base ) {
+    DataServiceExecutor executor = null;
+    try {
+      DataServiceExecutor.Builder builder = resolver.createBuilder( new SQL( query ) );
+      if ( builder == null ) {
+        log.logError( "Unable to find data service for cache warm-up query: " + query );
+        return;
+      }
+      executor = builder.parameters( parameters ).build();
+      factory.markRefresh( executor );
+      if ( base != null ) {
+        factory.markIncremental( executor, baseKey, base );
+      } else if ( baseKey != null ) {
+        factory.markReplacement( executor, baseKey );
+      }
+      executor.executeQuery().waitUntilFinished();
+      log.logDetailed( "Service cache refreshed by query: " + query );
+    } catch ( Throwable e ) {
+      log.logError( "Service cache warm-up query failed: " + query, e );
+    } finally {
+      if ( executor != null ) {
+        factory.unmarkRefresh( executor );
+      }
+    }
+  }
+
+  private static ServiceCache getServiceCache( DataServiceMeta dataService ) {
+    for ( PushDownOptimizationMeta optimizationMeta : dataService.getPushDownOptimizationMeta() ) {
+      if ( optimizationMeta.isEnabled() && optimizationMeta.getType() instanceof ServiceCache ) {
+        return (ServiceCache) optimizationMeta.getType();
+      }
+    }
+    return null;
+  }
+
+  private Function<Exception, Void> logErrors() {
+    return new Function<Exception, Void>() {
+      @Override public Void apply( Exception e ) {
+        log.logError( "Unable to load data service", e );
+        return null;
+      }
+    };
+  }
+}
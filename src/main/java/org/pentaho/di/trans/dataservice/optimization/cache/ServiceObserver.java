@@ -22,8 +22,8 @@
 
 package org.pentaho.di.trans.dataservice.optimization.cache;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.AbstractFuture;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.pentaho.di.core.exception.KettleValueException;
@@ -37,9 +37,10 @@ import org.pentaho.di.trans.step.StepAdapter;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Predicates.instanceOf;
@@ -50,42 +51,105 @@ import static com.google.common.base.Predicates.instanceOf;
 public class ServiceObserver extends AbstractFuture<CachedService> implements Runnable {
   private final DataServiceExecutor executor;
 
-  List<RowMetaAndData> rowMetaAndData = Lists.newArrayList();
-  boolean isRunning = true;
-  CountDownLatch latch = new CountDownLatch( 1 );
+  final CaptureBuffer<RowMetaAndData> buffer;
+
+  private final long maxRows;
+
+  private final long maxBytes;
+
+  private final long spillThreshold;
+
+  private final File spillDirectory;
+
+  /**
+   * Rows written to disk once the capture outgrew {@link #spillThreshold}, only used by the service step thread
+   */
+  private SpillFile.Writer spill;
+
+  /**
+   * Statistics of captured rows, only used by the service step thread
+   */
+  private final ColumnStatisticsCollector columnStatistics = new ColumnStatisticsCollector();
+
+  /**
+   * Estimated size of captured rows, only written by the service step thread
+   */
+  private volatile long capturedBytes = 0;
+
+  private volatile long startNanos;
+  private volatile long runNanos;
 
   public ServiceObserver( DataServiceExecutor executor ) {
+    this( executor, 0 );
+  }
+
+  /**
+   * @param executor query whose service transformation will be observed
+   * @param maxRows  number of rows after which caching is abandoned, or 0 for no limit
+   */
+  public ServiceObserver( DataServiceExecutor executor, long maxRows ) {
+    this( executor, maxRows, 0 );
+  }
+
+  /**
+   * @param executor query whose service transformation will be observed
+   * @param maxRows  number of rows after which caching is abandoned, or 0 for no limit
+   * @param maxBytes estimated size after which caching is abandoned, or 0 for no limit
+   */
+  public ServiceObserver( DataServiceExecutor executor, long maxRows, long maxBytes ) {
+    this( executor, maxRows, maxBytes, 0, null );
+  }
+
+  /**
+   * @param executor       query whose service transformation will be observed
+   * @param maxRows        number of rows after which caching is abandoned, or 0 for no limit
+   * @param maxBytes       estimated size after which caching is abandoned, or 0 for no limit. Does not apply once
+   *                       rows are spilled.
+   * @param spillThreshold estimated size after which captured rows are written to disk, or 0 to never spill
+   * @param spillDirectory directory of spilled rows
+   */
+  public ServiceObserver( DataServiceExecutor executor, long maxRows, long maxBytes, long spillThreshold,
+                          File spillDirectory ) {
     this.executor = executor;
+    this.buffer = new CaptureBuffer<>( maxRows );
+    this.maxRows = maxRows;
+    this.maxBytes = maxBytes;
+    this.spillThreshold = spillDirectory == null ? 0 : spillThreshold;
+    this.spillDirectory = spillDirectory;
+  }
+
+  /**
+   * @return estimated heap retained by the rows captured so far, in bytes. Stops growing once rows are spilled.
+   */
+  public long getCapturedBytes() {
+    return capturedBytes;
   }
 
+  /**
+   * @return time from service start until its output was complete, in milliseconds
+   */
+  public long getRunMillis() {
+    return TimeUnit.NANOSECONDS.toMillis( runNanos );
+  }
+
+  /**
+   * Iterates over all captured rows, from the first one, waiting for more rows until the service is finished.
+   * Any number of readers may iterate concurrently. Readers that joined keep receiving rows even if the capture
+   * is not cached in the end.
+   *
+   * @return a new row iterator
+   * @throws IllegalStateException if the observer is no longer {@link #isJoinable() joinable}
+   */
   public Iterator<RowMetaAndData> rows() {
-    return new Iterator<RowMetaAndData>() {
-      int index = 0;
-      @Override public boolean hasNext() {
-        if ( rowMetaAndData.size() > index ) {
-          return true;
-        }
-        if ( isRunning ) {
-          latch = new CountDownLatch( 1 );
-          try {
-            while ( !latch.await( 1, TimeUnit.SECONDS ) ) {
-              if ( !isRunning ) {
-                return rowMetaAndData.size() > index;
-              }
-            }
-            return rowMetaAndData.size() > index;
-          } catch ( InterruptedException e ) {
-            return rowMetaAndData.size() > index;
-          }
-        } else {
-          return rowMetaAndData.size() > index;
-        }
-      }
+    return buffer.iterator();
+  }
 
-      @Override public RowMetaAndData next() {
-        return rowMetaAndData.get( index++ );
-      }
-    };
+  /**
+   * @return <code>true</code> if a new reader would see every row of the service output. Readers may no longer join
+   * once the capture failed, outgrew its limits or was spilled to disk.
+   */
+  public boolean isJoinable() {
+    return buffer.isJoinable();
   }
 
   public ListenableFuture<CachedService> install() {
@@ -99,32 +163,139 @@ public class ServiceObserver extends AbstractFuture<CachedService> implements Ru
   }
 
   @Override public void run() {
+    startNanos = System.nanoTime();
     StepInterface serviceStep = executor.getServiceTrans().findRunThread( executor.getService().getStepname() );
     serviceStep.addRowListener( new RowAdapter() {
-      @Override public synchronized void rowWrittenEvent( RowMetaInterface rowMeta, Object[] row ) {
+      @Override public void rowWrittenEvent( RowMetaInterface rowMeta, Object[] row ) {
+        if ( buffer.getState() != CaptureBuffer.State.OPEN || isDone() && !buffer.hasReaders() ) {
+          return;
+        }
         Object[] clonedRow;
         try {
           clonedRow = rowMeta.cloneRow( row );
         } catch ( KettleValueException e ) {
-          setException( e );
+          abandon( e );
           return;
         }
-        rowMetaAndData.add( new RowMetaAndData( rowMeta, clonedRow ) );
-        latch.countDown();
+        RowMetaAndData captured = new RowMetaAndData( rowMeta, clonedRow );
+        if ( isDone() ) {
+          // No longer caching, rows are only passed on to the queries that joined this capture
+          buffer.add( captured );
+          return;
+        }
+        long bytes = capturedBytes + CachedService.estimateBytes( clonedRow );
+        if ( spill != null || spillThreshold > 0 && bytes > spillThreshold ) {
+          spill( captured );
+        } else if ( maxBytes > 0 && bytes > maxBytes ) {
+          stopCaching( new KettleException( "Service Transformation output is too large to cache" ) );
+          buffer.add( captured );
+        } else if ( buffer.add( captured ) ) {
+          capturedBytes = bytes;
+          columnStatistics.add( rowMeta, clonedRow );
+        } else {
+          // Row limit of the buffer was reached, the row was still passed on to current readers
+          stopCaching( new KettleException( "Service Transformation output is too large to cache" ) );
+        }
       }
     } );
     serviceStep.addStepListener( new StepAdapter() {
       @Override public void stepFinished( Trans trans, StepMeta stepMeta, StepInterface step ) {
-        isRunning = false;
+        runNanos = System.nanoTime() - startNanos;
+        if ( buffer.getState() == CaptureBuffer.State.ABANDONED ) {
+          return;
+        }
         if ( executor.getGenTrans().getErrors() > 0 ) {
-          setException(
-            new KettleException( "Dynamic transformation finished with errors, could not cache results" ) );
-        } else if ( step.isStopped() ) {
-          set( CachedService.partial( rowMetaAndData, executor ) );
+          // The service output is still complete for other queries reading it
+          stopCaching( new KettleException( "Dynamic transformation finished with errors, could not cache results" ) );
+        }
+        CachedService result = isDone() ? null : capture( step.isStopped() );
+        if ( step.isStopped() ) {
+          // Readers joined this service expecting a complete set
+          buffer.abandon( new KettleException( "Service Transformation was stopped" ) );
         } else {
-          set( CachedService.complete( rowMetaAndData ) );
+          buffer.complete();
+        }
+        if ( result != null ) {
+          set( result );
         }
       }
     } );
   }
+
+  /**
+   * Builds the captured result set, once the service step finished
+   *
+   * @param partial <code>true</code> if the service was stopped before its output was complete
+   * @return captured result set, or null if spilled rows could not be written
+   */
+  private CachedService capture( boolean partial ) {
+    if ( spill == null ) {
+      ImmutableList<RowMetaAndData> rows = buffer.toList();
+      return partial
+        ? CachedService.partial( rows, executor, capturedBytes, columnStatistics.build() )
+        : CachedService.complete( rows, capturedBytes, columnStatistics.build() );
+    }
+    try {
+      SpillFile spillFile = spill.finish();
+      spill = null;
+      return partial
+        ? CachedService.partial( spillFile, executor, columnStatistics.build() )
+        : CachedService.complete( spillFile, columnStatistics.build() );
+    } catch ( IOException e ) {
+      stopCaching( new KettleException( "Unable to spill service output to " + spillDirectory, e ) );
+      return null;
+    }
+  }
+
+  /**
+   * Writes a row to disk, moving rows captured in memory there first. Every row is still passed on to the queries
+   * that joined this capture, from memory.
+   */
+  private void spill( RowMetaAndData row ) {
+    try {
+      if ( spill == null ) {
+        spill = SpillFile.create( spillDirectory );
+        for ( RowMetaAndData captured : buffer.toList() ) {
+          spill.add( captured );
+        }
+        // Rows in memory are only held until current readers have read them, no other query may join
+        buffer.stopRetaining();
+      }
+      if ( maxRows > 0 && spill.getRowCount() >= maxRows ) {
+        stopCaching( new KettleException( "Capture limit of " + maxRows + " rows was exceeded" ) );
+      } else {
+        spill.add( row );
+        columnStatistics.add( row.getRowMeta(), row.getData() );
+      }
+    } catch ( IOException e ) {
+      stopCaching( new KettleException( "Unable to spill service output to " + spillDirectory, e ) );
+    }
+    buffer.add( row );
+  }
+
+  /**
+   * Gives up on caching the service output. Queries that joined this capture keep reading rows until the service
+   * is finished.
+   */
+  private void stopCaching( Exception cause ) {
+    discardSpill();
+    buffer.stopRetaining();
+    setException( cause );
+  }
+
+  /**
+   * Gives up on capturing, queries that joined this capture fail
+   */
+  private void abandon( Exception cause ) {
+    discardSpill();
+    buffer.abandon( cause );
+    setException( cause );
+  }
+
+  private void discardSpill() {
+    if ( spill != null ) {
+      spill.discard();
+      spill = null;
+    }
+  }
 }
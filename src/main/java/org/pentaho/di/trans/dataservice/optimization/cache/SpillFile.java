@@ -0,0 +1,363 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import org.pentaho.di.core.RowMetaAndData;
+
+import javax.cache.Cache;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryExpiredListener;
+import javax.cache.event.CacheEntryListenerException;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Captured rows kept in local segment files instead of the heap, for service output too large to hold in memory.
+ * <p>
+ * Each spill has its own directory of segment files, written once in capture order with the
+ * {@link CachedServiceCodec} row encoding. Readers stream the segments back sequentially through a large read-ahead
+ * buffer. Files are deleted when the cache entry holding them is evicted. Spills left behind, by a cache without
+ * listeners or by a previous run, are deleted with {@link #deleteAll} when the bundle starts and stops.
+ * </p>
+ */
+final class SpillFile {
+  /**
+   * Size after which a new segment file is started
+   */
+  static final long SEGMENT_BYTES = 128L * 1024 * 1024;
+
+  static final int READ_AHEAD_BYTES = 1024 * 1024;
+
+  private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+
+  private static final String SPILL_PREFIX = "capture-";
+
+  private final File directory;
+  private final ImmutableList<String> segments;
+  private final long rowCount;
+  private final long bytes;
+
+  private SpillFile( File directory, List<String> segments, long rowCount, long bytes ) {
+    this.directory = directory;
+    this.segments = ImmutableList.copyOf( segments );
+    this.rowCount = rowCount;
+    this.bytes = bytes;
+  }
+
+  /**
+   * @param parent directory in which a new spill directory is created
+   * @return a writer for a new spill
+   * @throws IOException if the spill directory can not be created
+   */
+  static Writer create( File parent ) throws IOException {
+    return create( parent, SEGMENT_BYTES );
+  }
+
+  static Writer create( File parent, long segmentBytes ) throws IOException {
+    Files.createDirectories( parent.toPath() );
+    File directory = Files.createTempDirectory( parent.toPath(), SPILL_PREFIX ).toFile();
+    return new Writer( directory, segmentBytes );
+  }
+
+  long getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * @return size of the segment files, in bytes
+   */
+  long getBytes() {
+    return bytes;
+  }
+
+  File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @return estimated heap retained by this spill, without its rows
+   */
+  long estimateBytes() {
+    return 64 + 64L * segments.size();
+  }
+
+  /**
+   * Opens every segment up front, so that an eviction while reading does not cut the iteration short. The iterator
+   * releases its files once exhausted, and is {@link Closeable} for readers that stop early.
+   *
+   * @return a new iterator over the spilled rows, in capture order
+   * @throws IllegalStateException if the segment files can not be opened
+   */
+  Iterator<RowMetaAndData> iterator() {
+    Deque<InputStream> streams = new ArrayDeque<>( segments.size() );
+    try {
+      for ( String segment : segments ) {
+        streams.add( new FileInputStream( new File( directory, segment ) ) );
+      }
+    } catch ( IOException e ) {
+      closeAll( streams );
+      throw new IllegalStateException( "Unable to open spilled rows in " + directory, e );
+    }
+    return new SegmentIterator( streams );
+  }
+
+  /**
+   * Deletes the segment files and their directory
+   */
+  void delete() {
+    for ( String segment : segments ) {
+      new File( directory, segment ).delete();
+    }
+    directory.delete();
+  }
+
+  /**
+   * Deletes every spill in a directory
+   *
+   * @param parent directory in which spill directories were created
+   */
+  static void deleteAll( File parent ) {
+    File[] spills = parent.listFiles();
+    if ( spills == null ) {
+      return;
+    }
+    for ( File spill : spills ) {
+      File[] files = spill.isDirectory() && spill.getName().startsWith( SPILL_PREFIX ) ? spill.listFiles() : null;
+      if ( files != null ) {
+        for ( File file : files ) {
+          file.delete();
+        }
+        spill.delete();
+      }
+    }
+  }
+
+  /**
+   * Deletes the spilled rows of cache entries when they are evicted or replaced
+   *
+   * @param cache data service cache
+   */
+  static void reclaimOnEviction( Cache<CachedService.CacheKey, CachedService> cache ) {
+    try {
+      cache.registerCacheEntryListenerConfiguration( new MutableCacheEntryListenerConfiguration<>(
+        FactoryBuilder.factoryOf( new Reclaimer() ), null, true, false ) );
+    } catch ( RuntimeException e ) {
+      // Not every cache provider supports listeners, spilled rows will be deleted when the bundle stops
+    }
+  }
+
+  private static void closeAll( Iterable<? extends Closeable> closeables ) {
+    for ( Closeable closeable : closeables ) {
+      try {
+        closeable.close();
+      } catch ( IOException e ) {
+        // Read only, nothing was lost
+      }
+    }
+  }
+
+  /**
+   * Appends rows to a new spill. Used by a single thread.
+   */
+  static final class Writer {
+    private final File directory;
+    private final long segmentBytes;
+    private final List<String> segments = new ArrayList<>();
+    private DataOutputStream out;
+    private CachedServiceCodec.RowWriter rows;
+    private long rowCount;
+    private long bytes;
+
+    private Writer( File directory, long segmentBytes ) {
+      this.directory = directory;
+      this.segmentBytes = segmentBytes;
+    }
+
+    void add( RowMetaAndData row ) throws IOException {
+      if ( out == null || out.size() >= segmentBytes ) {
+        nextSegment();
+      }
+      rows.write( row );
+      rowCount++;
+    }
+
+    long getRowCount() {
+      return rowCount;
+    }
+
+    /**
+     * @return bytes written so far
+     */
+    long getBytes() {
+      return bytes + ( out == null ? 0 : out.size() );
+    }
+
+    /**
+     * @return the completed spill
+     */
+    SpillFile finish() throws IOException {
+      closeSegment();
+      return new SpillFile( directory, segments, rowCount, bytes );
+    }
+
+    /**
+     * Gives up on this spill and deletes its files
+     */
+    void discard() {
+      try {
+        closeSegment();
+      } catch ( IOException e ) {
+        // Files are deleted anyway
+      }
+      new SpillFile( directory, segments, rowCount, bytes ).delete();
+    }
+
+    private void nextSegment() throws IOException {
+      closeSegment();
+      String name = String.format( "segment-%05d.bin", segments.size() );
+      File file = new File( directory, name );
+      segments.add( name );
+      out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), WRITE_BUFFER_BYTES ) );
+      rows = new CachedServiceCodec.RowWriter( out );
+    }
+
+    private void closeSegment() throws IOException {
+      if ( out != null ) {
+        DataOutputStream segment = out;
+        out = null;
+        try {
+          rows.end();
+          bytes += segment.size();
+        } finally {
+          segment.close();
+        }
+      }
+    }
+  }
+
+  private static final class SegmentIterator extends AbstractIterator<RowMetaAndData> implements Closeable {
+    private final Deque<InputStream> pending;
+    private DataInputStream in;
+    private CachedServiceCodec.RowReader reader;
+
+    SegmentIterator( Deque<InputStream> pending ) {
+      this.pending = pending;
+    }
+
+    @Override protected RowMetaAndData computeNext() {
+      try {
+        while ( true ) {
+          if ( reader != null ) {
+            RowMetaAndData row = reader.read();
+            if ( row != null ) {
+              return row;
+            }
+            in.close();
+            reader = null;
+          }
+          if ( pending.isEmpty() ) {
+            return endOfData();
+          }
+          in = new DataInputStream( new BufferedInputStream( pending.poll(), READ_AHEAD_BYTES ) );
+          reader = new CachedServiceCodec.RowReader( in );
+        }
+      } catch ( IOException e ) {
+        close();
+        throw new IllegalStateException( "Unable to read spilled rows", e );
+      }
+    }
+
+    @Override public void close() {
+      if ( in != null ) {
+        closeAll( ImmutableList.of( in ) );
+        in = null;
+        reader = null;
+      }
+      closeAll( pending );
+      pending.clear();
+    }
+  }
+
+  private static class Reclaimer implements CacheEntryExpiredListener<CachedService.CacheKey, CachedService>,
+    CacheEntryRemovedListener<CachedService.CacheKey, CachedService>,
+    CacheEntryUpdatedListener<CachedService.CacheKey, CachedService>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Override public void onExpired(
+      Iterable<CacheEntryEvent<? extends CachedService.CacheKey, ? extends CachedService>> events )
+      throws CacheEntryListenerException {
+      for ( CacheEntryEvent<? extends CachedService.CacheKey, ? extends CachedService> event : events ) {
+        release( event.isOldValueAvailable() ? event.getOldValue() : event.getValue() );
+      }
+    }
+
+    @Override public void onRemoved(
+      Iterable<CacheEntryEvent<? extends CachedService.CacheKey, ? extends CachedService>> events )
+      throws CacheEntryListenerException {
+      onExpired( events );
+    }
+
+    @Override public void onUpdated(
+      Iterable<CacheEntryEvent<? extends CachedService.CacheKey, ? extends CachedService>> events )
+      throws CacheEntryListenerException {
+      for ( CacheEntryEvent<? extends CachedService.CacheKey, ? extends CachedService> event : events ) {
+        if ( event.isOldValueAvailable() && !sameSpill( event.getOldValue(), event.getValue() ) ) {
+          release( event.getOldValue() );
+        }
+      }
+    }
+
+    private static boolean sameSpill( CachedService oldValue, CachedService newValue ) {
+      return oldValue != null && newValue != null && oldValue.getSpill().isPresent()
+        && newValue.getSpill().isPresent()
+        && oldValue.getSpill().get().getDirectory().equals( newValue.getSpill().get().getDirectory() );
+    }
+
+    private static void release( CachedService cachedService ) {
+      if ( cachedService != null ) {
+        cachedService.release();
+      }
+    }
+  }
+}
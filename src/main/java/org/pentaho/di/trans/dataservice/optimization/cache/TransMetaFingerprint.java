@@ -0,0 +1,125 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.apache.commons.vfs2.FileContent;
+import org.apache.commons.vfs2.FileObject;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.listeners.ContentChangedListener;
+import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.repository.ObjectRevision;
+import org.pentaho.di.trans.TransMeta;
+
+/**
+ * Version identifier of a service transformation, used to invalidate cached results when the transformation changes.
+ * <p>
+ * Transformations loaded from a repository revision or a file are identified by that revision or by the file's
+ * modification time. Any other transformation, or one with unsaved changes, is identified by a hash of its XML.
+ * Fingerprints are remembered for each loaded {@link TransMeta} until it reports a change.
+ * </p>
+ */
+final class TransMetaFingerprint {
+  // Stable across restarts, fingerprints are part of cache keys that may be persisted
+  private static final HashFunction hashFunction = Hashing.murmur3_32();
+
+  // Weak keys are compared by identity, each loaded copy of a transformation has its own entry
+  private static final Cache<TransMeta, Integer> fingerprints = CacheBuilder.newBuilder().weakKeys().build();
+
+  private static final ContentChangedListener INVALIDATOR = new ContentChangedListener() {
+    @Override public void contentChanged( Object parentObject ) {
+      fingerprints.invalidate( parentObject );
+    }
+
+    @Override public void contentSafe( Object parentObject ) {
+      fingerprints.invalidate( parentObject );
+    }
+  };
+
+  private TransMetaFingerprint() {
+  }
+
+  /**
+   * @param transMeta service transformation
+   * @return fingerprint that changes whenever the transformation changes
+   */
+  static int of( TransMeta transMeta ) {
+    Integer fingerprint = fingerprints.getIfPresent( transMeta );
+    if ( fingerprint == null ) {
+      fingerprint = compute( transMeta );
+      if ( !transMeta.getContentChangedListeners().contains( INVALIDATOR ) ) {
+        transMeta.addContentChangedListener( INVALIDATOR );
+      }
+      fingerprints.put( transMeta, fingerprint );
+    }
+    return fingerprint;
+  }
+
+  private static int compute( TransMeta transMeta ) {
+    Optional<Integer> saved = transMeta.hasChanged() ? Optional.<Integer>absent() : savedVersion( transMeta );
+    if ( saved.isPresent() ) {
+      return saved.get();
+    }
+    try {
+      return transMeta.getXML( true, true, true, true, true, true, true, true, true, false ).hashCode();
+    } catch ( KettleException e ) {
+      // Something has gone horribly wrong.
+      // If data service is executing, the transformation was loaded and should be serializable
+      throw new IllegalStateException( "Unable to determine version of transMeta", e );
+    }
+  }
+
+  /**
+   * Identifies an unmodified transformation by where it was saved
+   */
+  private static Optional<Integer> savedVersion( TransMeta transMeta ) {
+    ObjectRevision revision = transMeta.getObjectRevision();
+    if ( transMeta.getRepository() != null && transMeta.getObjectId() != null && revision != null
+      && revision.getName() != null ) {
+      return Optional.of( hashFunction.newHasher()
+        .putString( transMeta.getObjectId().getId(), Charsets.UTF_8 )
+        .putString( revision.getName(), Charsets.UTF_8 )
+        .hash().asInt() );
+    }
+    if ( transMeta.getRepository() == null && transMeta.getFilename() != null ) {
+      try {
+        FileObject file = KettleVFS.getFileObject( transMeta.getFilename() );
+        FileContent content = file.getContent();
+        return Optional.of( hashFunction.newHasher()
+          .putString( file.getName().getURI(), Charsets.UTF_8 )
+          .putLong( content.getLastModifiedTime() )
+          .putLong( content.getSize() )
+          .hash().asInt() );
+      } catch ( Exception e ) {
+        // File is not accessible, fall back to the transformation's XML
+        return Optional.absent();
+      }
+    }
+    return Optional.absent();
+  }
+}
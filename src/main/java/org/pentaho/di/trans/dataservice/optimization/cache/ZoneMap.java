@@ -0,0 +1,218 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * Value ranges for fixed-size blocks of a cached result set, used to skip blocks that can not match a query.
+ * <p>
+ * For each field, a block records its smallest and greatest non-null values and its number of nulls. Only conjuncts
+ * comparing a field to a literal are tested against these ranges. Replayed rows are still filtered by the generated
+ * transformation, so a block is only skipped when none of its rows can match.
+ * </p>
+ */
+final class ZoneMap {
+  static final int BLOCK_ROWS = 1024;
+
+  private final List<RowMetaAndData> rows;
+  private final ImmutableList<Block> blocks;
+
+  private ZoneMap( List<RowMetaAndData> rows, ImmutableList<Block> blocks ) {
+    this.rows = rows;
+    this.blocks = blocks;
+  }
+
+  static ZoneMap build( List<RowMetaAndData> rows ) {
+    return build( rows, BLOCK_ROWS );
+  }
+
+  static ZoneMap build( List<RowMetaAndData> rows, int blockRows ) {
+    Map<String, ValueMetaInterface> fields = new HashMap<>();
+    ImmutableList.Builder<Block> blocks = ImmutableList.builder();
+    try {
+      for ( int from = 0; from < rows.size(); from += blockRows ) {
+        blocks.add( Block.build( rows, from, Math.min( from + blockRows, rows.size() ), fields ) );
+      }
+    } catch ( KettleValueException e ) {
+      // Values can not be compared, every row will be replayed
+      return new ZoneMap( rows, ImmutableList.of( new Block( 0, rows.size(), ImmutableMap.<String, Range>of() ) ) );
+    }
+    return new ZoneMap( rows, blocks.build() );
+  }
+
+  int getBlockCount() {
+    return blocks.size();
+  }
+
+  /**
+   * @param predicate WHERE condition of the query being answered
+   * @return number of rows {@link #scan(NormalizedPredicate)} returns
+   */
+  long count( NormalizedPredicate predicate ) {
+    long count = 0;
+    for ( Block block : blocks ) {
+      if ( block.mayMatch( predicate ) ) {
+        count += block.to - block.from;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @param predicate WHERE condition of the query being answered
+   * @return rows of all blocks that may contain a match, in their original order
+   */
+  Iterator<RowMetaAndData> scan( final NormalizedPredicate predicate ) {
+    return FluentIterable.from( blocks )
+      .filter( block -> block.mayMatch( predicate ) )
+      .transformAndConcat( block -> rows.subList( block.from, block.to ) )
+      .iterator();
+  }
+
+  private static final class Block {
+    private final int from;
+    private final int to;
+    private final ImmutableMap<String, Range> ranges;
+
+    Block( int from, int to, ImmutableMap<String, Range> ranges ) {
+      this.from = from;
+      this.to = to;
+      this.ranges = ranges;
+    }
+
+    static Block build( List<RowMetaAndData> rows, int from, int to, Map<String, ValueMetaInterface> fields )
+      throws KettleValueException {
+      Map<String, Range> ranges = new LinkedHashMap<>();
+      for ( RowMetaAndData row : rows.subList( from, to ) ) {
+        RowMetaInterface rowMeta = row.getRowMeta();
+        Object[] data = row.getData();
+        for ( int i = 0; i < rowMeta.size(); i++ ) {
+          ValueMetaInterface source = rowMeta.getValueMeta( i );
+          ValueMetaInterface valueMeta = fields.get( source.getName() );
+          if ( valueMeta == null ) {
+            valueMeta = source.clone();
+            valueMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+            valueMeta.setStorageMetadata( null );
+            fields.put( source.getName(), valueMeta );
+          }
+          Range range = ranges.get( source.getName() );
+          if ( range == null ) {
+            range = new Range( valueMeta );
+            ranges.put( source.getName(), range );
+          }
+          Object value = data != null && i < data.length ? data[ i ] : null;
+          range.add( source.isNull( value ) ? null : source.convertToNormalStorageType( value ) );
+        }
+      }
+      return new Block( from, to, ImmutableMap.copyOf( ranges ) );
+    }
+
+    boolean mayMatch( NormalizedPredicate predicate ) {
+      for ( NormalizedPredicate.Atom atom : predicate.getConjuncts() ) {
+        Range range = atom.isOpaque() ? null : ranges.get( atom.getField() );
+        if ( range != null && !range.mayMatch( atom ) ) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static final class Range {
+    private final ValueMetaInterface valueMeta;
+    private Object min;
+    private Object max;
+    private int rowCount;
+    private int nullCount;
+
+    Range( ValueMetaInterface valueMeta ) {
+      this.valueMeta = valueMeta;
+    }
+
+    void add( Object value ) throws KettleValueException {
+      rowCount++;
+      if ( value == null ) {
+        nullCount++;
+        return;
+      }
+      if ( min == null || valueMeta.compare( value, min ) < 0 ) {
+        min = value;
+      }
+      if ( max == null || valueMeta.compare( value, max ) > 0 ) {
+        max = value;
+      }
+    }
+
+    boolean mayMatch( NormalizedPredicate.Atom atom ) {
+      Object value = atom.getValue();
+      switch ( atom.getFunction() ) {
+        case Condition.FUNC_NULL:
+          return nullCount > 0;
+        case Condition.FUNC_NOT_NULL:
+          return nullCount < rowCount;
+        case Condition.FUNC_EQUAL:
+          return max != null && satisfies( min, value, cmp -> cmp <= 0 ) && satisfies( max, value, cmp -> cmp >= 0 );
+        case Condition.FUNC_LARGER:
+          return max != null && satisfies( max, value, cmp -> cmp > 0 );
+        case Condition.FUNC_LARGER_EQUAL:
+          return max != null && satisfies( max, value, cmp -> cmp >= 0 );
+        case Condition.FUNC_SMALLER:
+          // Kettle sorts nulls first, so nulls are smaller than any value
+          return nullCount > 0 || satisfies( min, value, cmp -> cmp < 0 );
+        case Condition.FUNC_SMALLER_EQUAL:
+          return nullCount > 0 || satisfies( min, value, cmp -> cmp <= 0 );
+        default:
+          return true;
+      }
+    }
+
+    /**
+     * Compares a block bound to a literal. Values that can not be compared exactly are assumed to satisfy the test.
+     */
+    private boolean satisfies( Object bound, Object literal, IntPredicate test ) {
+      if ( bound == null || literal == null || !bound.getClass().equals( literal.getClass() ) ) {
+        return true;
+      }
+      try {
+        return test.test( valueMeta.compare( bound, literal ) );
+      } catch ( KettleValueException e ) {
+        return true;
+      }
+    }
+  }
+}
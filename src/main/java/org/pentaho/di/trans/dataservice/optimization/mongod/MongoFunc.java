@@ -28,12 +28,15 @@ import org.pentaho.di.core.jdbc.ThinUtil;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 /**
  * Enumeration of supported Mongodb functions mapped to Kettle function constants
  * defined in {@link Condition}.
  * This enumeration includes methods to apply the affirmation
  * and negation of the function to a com.mongodb.QueryBuilder.
+ * String matching functions become anchored regular expressions where possible,
+ * so that a prefix match can still use an index.
  */
 public enum MongoFunc {
   LT( Condition.FUNC_SMALLER ) {
@@ -117,6 +120,97 @@ public enum MongoFunc {
           .and( attribute )
           .regex( ThinUtil.like( value.toString() ) );
     }
+
+    @Override public boolean isStringMatch() {
+      return true;
+    }
+  },
+
+  STARTS_WITH( Condition.FUNC_STARTS_WITH ) {
+    @Override public void affirm( QueryBuilder queryBuilder, String attribute, Object value ) {
+      queryBuilder
+        .and( attribute )
+        .regex( Pattern.compile( "^" + quote( value.toString() ) ) );
+    }
+
+    @Override public boolean isStringMatch() {
+      return true;
+    }
+  },
+
+  ENDS_WITH( Condition.FUNC_ENDS_WITH ) {
+    @Override public void affirm( QueryBuilder queryBuilder, String attribute, Object value ) {
+      queryBuilder
+        .and( attribute )
+        .regex( Pattern.compile( quote( value.toString() ) + "$" ) );
+    }
+
+    @Override public boolean isStringMatch() {
+      return true;
+    }
+  },
+
+  CONTAINS( Condition.FUNC_CONTAINS ) {
+    @Override public void affirm( QueryBuilder queryBuilder, String attribute, Object value ) {
+      queryBuilder
+        .and( attribute )
+        .regex( Pattern.compile( quote( value.toString() ) ) );
+    }
+
+    @Override public boolean isStringMatch() {
+      return true;
+    }
+  },
+
+  /**
+   * Kettle matches the whole value against the expression
+   */
+  REGEXP( Condition.FUNC_REGEXP ) {
+    @Override public void affirm( QueryBuilder queryBuilder, String attribute, Object value ) {
+      queryBuilder
+        .and( attribute )
+        .regex( Pattern.compile( "^(?:" + value + ")$" ) );
+    }
+
+    @Override public boolean isStringMatch() {
+      return true;
+    }
+  },
+
+  /**
+   * Matches null values and missing fields
+   */
+  NULL( Condition.FUNC_NULL ) {
+    @Override public void affirm( QueryBuilder queryBuilder, String attribute, Object value ) {
+      queryBuilder
+        .and( attribute )
+        .is( null );
+    }
+
+    @Override public void negate( QueryBuilder queryBuilder, String attribute, Object value ) {
+      queryBuilder
+        .and( attribute )
+        .exists( true )
+        .notEquals( null );
+    }
+
+    @Override public boolean requiresValue() {
+      return false;
+    }
+  },
+
+  NOT_NULL( Condition.FUNC_NOT_NULL ) {
+    @Override public void affirm( QueryBuilder queryBuilder, String attribute, Object value ) {
+      NULL.negate( queryBuilder, attribute, value );
+    }
+
+    @Override public void negate( QueryBuilder queryBuilder, String attribute, Object value ) {
+      NULL.affirm( queryBuilder, attribute, value );
+    }
+
+    @Override public boolean requiresValue() {
+      return false;
+    }
   };
 
   private final int kettleFuncCode;
@@ -140,4 +234,33 @@ public enum MongoFunc {
   public  void negate( QueryBuilder queryBuilder, String attribute, Object value ) {
     affirm( queryBuilder.not(), attribute, value );
   }
+
+  /**
+   * @return false if the function does not compare against a value
+   */
+  public boolean requiresValue() {
+    return true;
+  }
+
+  /**
+   * @return true if the function matches string values with a regular expression
+   */
+  public boolean isStringMatch() {
+    return false;
+  }
+
+  /**
+   * Escapes regular expression meta characters. Letters and digits are kept as is, since escaping them may change
+   * their meaning.
+   */
+  static String quote( String value ) {
+    StringBuilder builder = new StringBuilder( value.length() );
+    for ( char c : value.toCharArray() ) {
+      if ( !Character.isLetterOrDigit( c ) && !Character.isWhitespace( c ) && c != '_' ) {
+        builder.append( '\\' );
+      }
+      builder.append( c );
+    }
+    return builder.toString();
+  }
 }
@@ -26,6 +26,7 @@ import com.mongodb.DBObject;
 import com.mongodb.QueryBuilder;
 import org.pentaho.di.core.Condition;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -42,27 +43,42 @@ import java.util.Map;
  * would result in a QueryBuilder with the subexpression
  *
  *   { $and : [ { field1 : 'foo'}, {field2 : 'bar'} ] }
+ *
+ * Each operation also names the nested expression that can be flattened into it,
+ * e.g. { $nor : [ { $or : [ a, b ] }, c ] } is the same as { $nor : [ a, b, c ] }
  */
 public enum MongoOp {
-  AND( Condition.OPERATOR_AND ) {
+  AND( Condition.OPERATOR_AND, "$and" ) {
     @Override
     public void apply( QueryBuilder queryBuilder, DBObject... ands ) {
       queryBuilder.and( ands );
     }
   },
-  OR( Condition.OPERATOR_OR ) {
+  OR( Condition.OPERATOR_OR, "$or" ) {
     @Override
     public void apply( QueryBuilder queryBuilder, DBObject... ors ) {
       queryBuilder.or( ors );
     }
+  },
+  /**
+   * Negated OR. Kettle has no matching operator, this is only used to negate compound conditions.
+   */
+  NOR( null, "$or" ) {
+    @Override
+    public void apply( QueryBuilder queryBuilder, DBObject... nors ) {
+      queryBuilder.put( "$nor" ).is( Arrays.asList( nors ) );
+    }
   };
 
-  private final int kettleOpCode;
+  private final Integer kettleOpCode;
+  private final String flattenedOp;
 
   private static final Map<Integer, MongoOp> kettleToMongo = new HashMap<Integer, MongoOp>();
   static {
     for ( MongoOp op : values() ) {
-      kettleToMongo.put( op.kettleOpCode, op );
+      if ( op.kettleOpCode != null ) {
+        kettleToMongo.put( op.kettleOpCode, op );
+      }
     }
   }
 
@@ -70,9 +86,17 @@ public enum MongoOp {
     return kettleToMongo.get( kettleOpCode );
   }
 
-  MongoOp( int kettleOperator ) {
+  MongoOp( Integer kettleOperator, String flattenedOp ) {
     kettleOpCode = kettleOperator;
+    this.flattenedOp = flattenedOp;
   }
 
   public abstract void apply( QueryBuilder queryBuilder, DBObject... objects );
+
+  /**
+   * @return operator of nested expressions that can be merged into this one
+   */
+  public String getFlattenedOp() {
+    return flattenedOp;
+  }
 }
@@ -32,12 +32,15 @@ import org.pentaho.di.core.row.ValueMetaAndData;
 
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * This class translates org.pentaho.di.core.Condition objects to Mongodb
  * predicate expressions.  The string form of this expression can be retrieved
  * as a $match expression suitable for use in an aggregation pipeline, or as
  * filter criteria for use in .find().
+ * Negated compound conditions and mixed AND/OR operators are supported.
  */
 public class MongodbPredicate {
   private static final String MATCH = "$match";
@@ -61,27 +64,74 @@ public class MongodbPredicate {
   }
 
   protected DBObject conditionAsDBObject() throws PushDownOptimizationException {
-    return buildMongoCondition( condition, QueryBuilder.start() ).get();
+    return buildMongoCondition( condition, false );
   }
 
-  private QueryBuilder buildMongoCondition( Condition condition, QueryBuilder queryBuilder ) throws PushDownOptimizationException {
-    condition = unwrap( condition );
-    return condition.isAtomic()
-      ? applyAtomicCondition( condition, queryBuilder )
-      : applyCompoundCondition( condition, queryBuilder );
+  /**
+   * Checks if an atomic condition can be converted. String matching functions require a string field.
+   *
+   * @param condition atomic condition
+   * @param resolver  value metas of the condition's fields
+   * @return true if {@link #asFilterCriteria()} will succeed for the condition
+   */
+  public static boolean isSupported( Condition condition, ValueMetaResolver resolver ) {
+    MongoFunc func = MongoFunc.getMongoFunc( condition.getFunction() );
+    if ( func == null ) {
+      return false;
+    }
+    if ( !func.requiresValue() ) {
+      return true;
+    }
+    if ( condition.getRightExact() == null ) {
+      return false;
+    }
+    if ( func.isStringMatch() ) {
+      String value = condition.getRightExactString();
+      try {
+        if ( value == null || !resolver.getValueMeta( condition.getLeftValuename() ).isString() ) {
+          return false;
+        }
+        if ( func == MongoFunc.REGEXP ) {
+          Pattern.compile( value );
+        }
+      } catch ( PushDownOptimizationException | PatternSyntaxException e ) {
+        return false;
+      }
+    }
+    return true;
   }
 
-  private QueryBuilder applyAtomicCondition( Condition condition, QueryBuilder queryBuilder )
+  /**
+   * Converts the condition to negation normal form. Negations are pushed down to atomic conditions, using De Morgan's
+   * laws for AND and $nor for OR, and nested operations of the same kind are flattened.
+   *
+   * @param condition condition to convert
+   * @param negate    true if the condition is within an odd number of negations
+   */
+  private DBObject buildMongoCondition( Condition condition, boolean negate ) throws PushDownOptimizationException {
+    negate ^= condition.isNegated();
+    if ( condition.isAtomic() ) {
+      return applyAtomicCondition( condition, negate );
+    }
+    List<Condition> children = condition.getChildren();
+    return foldChildren( children, children.size() - 1, negate );
+  }
+
+  private DBObject applyAtomicCondition( Condition condition, boolean negate )
     throws PushDownOptimizationException {
+    if ( !isSupported( condition, valueMetaResolver ) ) {
+      throw new PushDownOptimizationException( "Unsupported condition: " + condition.toString().trim() );
+    }
     MongoFunc func = MongoFunc.getMongoFunc( condition.getFunction() );
     String fieldName = getResolvedFieldName( condition.getLeftValuename() );
-    Object value = getResolvedValue( condition );
-    if ( condition.isNegated() ) {
+    Object value = func.requiresValue() ? getResolvedValue( condition ) : null;
+    QueryBuilder queryBuilder = QueryBuilder.start();
+    if ( negate ) {
       func.negate( queryBuilder, fieldName, value );
     } else {
       func.affirm( queryBuilder, fieldName, value );
     }
-    return queryBuilder;
+    return queryBuilder.get();
   }
 
   private String getResolvedFieldName( String fieldName ) {
@@ -109,54 +159,66 @@ public class MongodbPredicate {
     return valueMetaResolver.getTypedValue( fieldName, type, value );
   }
 
-  private QueryBuilder applyCompoundCondition( Condition condition, QueryBuilder queryBuilder )
-    throws PushDownOptimizationException {
-    getMongoOp( condition )
-      .apply( queryBuilder,
-        conditionListToDBObjectArray( condition.getChildren() ) );
-    return queryBuilder;
-  }
-
-  private MongoOp getMongoOp( Condition condition )
+  /**
+   * Kettle evaluates the operators of compound conditions from left to right, without precedence, so
+   * <code>a AND b OR c</code> is <code>(a AND b) OR c</code>.
+   *
+   * @param children compound condition children
+   * @param last     index of the last child to include
+   * @param negate   true if the result should be negated
+   */
+  private DBObject foldChildren( List<Condition> children, int last, boolean negate )
     throws PushDownOptimizationException {
-    validateConditionForOpDetermination( condition );
-
-    final Condition firstChild = condition.getChildren().get( 1 );
-    MongoOp op = MongoOp
-      .getMongoOp( firstChild.getOperator() );
-    if ( op == null ) {
-      throw new PushDownOptimizationException( "Unsupported operator:  " + firstChild.getOperatorDesc() );
+    if ( last == 0 ) {
+      return buildMongoCondition( children.get( 0 ), negate );
     }
-    return op;
-  }
-
-  private void validateConditionForOpDetermination( Condition condition )
-    throws PushDownOptimizationException {
-    if ( condition.getChildren().size() <= 1 ) {
-      throw new PushDownOptimizationException( "At least 2 children are required to determine connecting operator." );
+    Condition child = children.get( last );
+    MongoOp op;
+    switch ( child.getOperator() ) {
+      case Condition.OPERATOR_AND:
+      case Condition.OPERATOR_AND_NOT:
+        op = MongoOp.AND;
+        break;
+      case Condition.OPERATOR_OR:
+      case Condition.OPERATOR_OR_NOT:
+        op = MongoOp.OR;
+        break;
+      default:
+        throw new PushDownOptimizationException( "Unsupported operator:  " + child.getOperatorDesc() );
     }
-    if ( condition.isNegated() ) {
-      throw new PushDownOptimizationException( "Negated non-atomic conditions can't be converted to BSON" );
+    boolean negateChild = child.getOperator() == Condition.OPERATOR_AND_NOT
+      || child.getOperator() == Condition.OPERATOR_OR_NOT;
+
+    if ( !negate ) {
+      return applyCompoundCondition( op,
+        foldChildren( children, last - 1, false ),
+        buildMongoCondition( child, negateChild ) );
+    } else if ( op == MongoOp.AND ) {
+      // NOT ( a AND b ) == NOT a OR NOT b
+      return applyCompoundCondition( MongoOp.OR,
+        foldChildren( children, last - 1, true ),
+        buildMongoCondition( child, !negateChild ) );
+    } else {
+      // NOT ( a OR b ) == $nor [ a, b ]
+      return applyCompoundCondition( MongoOp.NOR,
+        foldChildren( children, last - 1, false ),
+        buildMongoCondition( child, negateChild ) );
     }
   }
 
-  private DBObject[] conditionListToDBObjectArray( List<Condition> conditions )
-    throws PushDownOptimizationException {
+  private DBObject applyCompoundCondition( MongoOp op, DBObject... operands ) {
     BasicDBList basicDbList = new BasicDBList();
-    for ( Condition condition : conditions ) {
-      QueryBuilder childContainer = QueryBuilder.start();
-      buildMongoCondition( condition, childContainer );
-      basicDbList.add( childContainer.get() );
+    for ( DBObject operand : operands ) {
+      Object nested = operand.keySet().size() == 1 ? operand.get( op.getFlattenedOp() ) : null;
+      if ( nested instanceof List ) {
+        basicDbList.addAll( (List<?>) nested );
+      } else {
+        basicDbList.add( operand );
+      }
     }
-    return basicDbList.toArray( new DBObject[basicDbList.size()] );
-  }
-
-  /**
-   * Strips off redundent condition nesting.
-   */
-  private Condition unwrap( Condition condition ) {
-    return condition.getChildren().size() == 1 && !condition.isNegated()
-      ? unwrap( condition.getChildren().get( 0 ) ) : condition;
+    QueryBuilder queryBuilder = QueryBuilder.start();
+    op.apply( queryBuilder, basicDbList.toArray( new DBObject[basicDbList.size()] ) );
+    return queryBuilder.get();
   }
 }
 
@@ -0,0 +1,247 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.sql.SQL;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.dataservice.DataServiceExecutor;
+import org.pentaho.di.trans.dataservice.DataServiceMeta;
+import org.pentaho.di.trans.dataservice.optimization.OptimizationImpactInfo;
+import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationException;
+import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
+import org.pentaho.di.trans.dataservice.optimization.SourceTargetFields;
+import org.pentaho.di.trans.dataservice.optimization.StepOptimization;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByMeta;
+import org.pentaho.metastore.persist.MetaStoreAttribute;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Groups and aggregates rows in the source of a data service, instead of reading every detail row.
+ * <p>
+ * Applies to services whose output is the unchanged output of an input step, see
+ * {@link AutoParameterGenerationService}. The input is grouped by the same fields as the query, so the generated
+ * transformation receives one row per group and re-aggregates it: sums, minimums, maximums and averages of a single
+ * row are unchanged, counts are summed. Queries with a WHERE clause or a service row limit are not aggregated, since
+ * both are applied to detail rows.
+ * </p>
+ */
+public class AggregatePushDown extends StepOptimization {
+
+  public static final String TYPE_NAME = "Aggregate Push Down";
+  public static final String PUSH_DOWN_FIELD_MAPPINGS = "field_mappings";
+
+  /**
+   * Service field (source) to input column (target), for every field of the service
+   */
+  @MetaStoreAttribute( key = PUSH_DOWN_FIELD_MAPPINGS )
+  private List<SourceTargetFields> fieldMappings = new ArrayList<SourceTargetFields>();
+
+  protected ParameterGenerationFactory serviceProvider;
+
+  public AggregatePushDown( ParameterGenerationFactory serviceProvider ) {
+    this.serviceProvider = serviceProvider;
+  }
+
+  public List<SourceTargetFields> getFieldMappings() {
+    return fieldMappings;
+  }
+
+  public SourceTargetFields createFieldMapping( String source, String target ) {
+    SourceTargetFields mapping = new SourceTargetFields( source, target );
+    fieldMappings.add( mapping );
+    return mapping;
+  }
+
+  @Override public void init( TransMeta transMeta, DataServiceMeta dataService, PushDownOptimizationMeta optMeta ) {
+    fieldMappings = Lists.newArrayList( Iterables.filter( fieldMappings, SourceTargetFields.IS_DEFINED ) );
+  }
+
+  @Override protected boolean activate( DataServiceExecutor executor, StepInterface stepInterface ) {
+    Optional<MemoryGroupByMeta> groupBy = findGroupBy( executor.getGenTransMeta() );
+    ParameterGenerationService service = serviceProvider.getService( stepInterface.getStepMeta() );
+    if ( !groupBy.isPresent() || service == null || executor.getService().isServiceOutputCaptured() ) {
+      return false;
+    }
+    Optional<SqlAggregate> aggregate = createAggregate( executor.getSql(), executor.getServiceRowLimit(),
+      groupBy.get() );
+    try {
+      if ( !aggregate.isPresent() || !service.pushDownAggregate( aggregate.get(), stepInterface ) ) {
+        return false;
+      }
+    } catch ( PushDownOptimizationException e ) {
+      return false;
+    }
+    reaggregate( groupBy.get() );
+    return true;
+  }
+
+  @Override protected OptimizationImpactInfo preview( DataServiceExecutor executor, StepInterface stepInterface ) {
+    Optional<MemoryGroupByMeta> groupBy = findGroupBy( executor.getGenTransMeta() );
+    Optional<SqlAggregate> aggregate = groupBy.isPresent()
+      ? createAggregate( executor.getSql(), executor.getServiceRowLimit(), groupBy.get() )
+      : Optional.<SqlAggregate>absent();
+    ParameterGenerationService service = serviceProvider.getService( stepInterface.getStepMeta() );
+    if ( !aggregate.isPresent() || service == null ) {
+      OptimizationImpactInfo info = new OptimizationImpactInfo( stepInterface.getStepname() );
+      info.setModified( false );
+      return info;
+    }
+    return service.previewAggregate( aggregate.get(), stepInterface );
+  }
+
+  /**
+   * Finds the grouping of the generated transformation, if the query aggregates
+   */
+  static Optional<MemoryGroupByMeta> findGroupBy( TransMeta genTransMeta ) {
+    for ( StepMeta stepMeta : genTransMeta.getSteps() ) {
+      if ( stepMeta.getStepMetaInterface() instanceof MemoryGroupByMeta ) {
+        return Optional.of( (MemoryGroupByMeta) stepMeta.getStepMetaInterface() );
+      }
+    }
+    return Optional.absent();
+  }
+
+  /**
+   * Translates the grouping of the generated transformation to input columns
+   *
+   * @param sql             query
+   * @param serviceRowLimit limit on service rows read by the query
+   * @param groupBy         grouping of the generated transformation
+   * @return grouping of the input, or absent if the query must read detail rows
+   */
+  Optional<SqlAggregate> createAggregate( SQL sql, int serviceRowLimit, MemoryGroupByMeta groupBy ) {
+    if ( sql.getWhereCondition() != null && !sql.getWhereCondition().isEmpty() || serviceRowLimit > 0 ) {
+      return Optional.absent();
+    }
+    Map<String, String> columns = Maps.newHashMap();
+    for ( SourceTargetFields fieldMapping : fieldMappings ) {
+      columns.put( fieldMapping.getSourceFieldName(), fieldMapping.getTargetFieldName() );
+    }
+    RowMetaInterface serviceFields = sql.getRowMeta();
+    if ( !columns.keySet().containsAll( Arrays.asList( serviceFields.getFieldNames() ) ) ) {
+      return Optional.absent();
+    }
+
+    Set<String> groupColumns = new LinkedHashSet<>();
+    for ( String groupField : groupBy.getGroupField() ) {
+      if ( !columns.containsKey( groupField ) ) {
+        return Optional.absent();
+      }
+      groupColumns.add( columns.get( groupField ) );
+    }
+
+    Map<String, SqlAggregate.Function> aggregates = Maps.newHashMap();
+    for ( int i = 0; i < groupBy.getSubjectField().length; i++ ) {
+      ValueMetaInterface valueMeta = serviceFields.searchValueMeta( groupBy.getSubjectField()[ i ] );
+      Optional<SqlAggregate.Function> function = valueMeta == null ? Optional.<SqlAggregate.Function>absent()
+        : toFunction( groupBy.getAggregateType()[ i ], valueMeta );
+      if ( !function.isPresent() ) {
+        return Optional.absent();
+      }
+      // Each column carries a single value per group
+      String column = columns.get( valueMeta.getName() );
+      SqlAggregate.Function previous = aggregates.put( column, function.get() );
+      if ( groupColumns.contains( column ) || previous != null && previous != function.get() ) {
+        return Optional.absent();
+      }
+    }
+
+    List<String> inputColumns = Lists.newArrayListWithCapacity( serviceFields.size() );
+    Map<String, ValueMetaInterface> types = Maps.newHashMap();
+    for ( ValueMetaInterface valueMeta : serviceFields.getValueMetaList() ) {
+      String column = columns.get( valueMeta.getName() );
+      if ( types.put( column, valueMeta ) != null ) {
+        return Optional.absent();
+      }
+      // Remaining columns are reduced with MIN, which not all types support
+      if ( !groupColumns.contains( column ) && !aggregates.containsKey( column ) && !isComparable( valueMeta ) ) {
+        return Optional.absent();
+      }
+      inputColumns.add( column );
+    }
+    return Optional.of( new SqlAggregate( inputColumns, groupColumns, aggregates, types ) );
+  }
+
+  private static Optional<SqlAggregate.Function> toFunction( int aggregateType, ValueMetaInterface valueMeta ) {
+    switch ( aggregateType ) {
+      case MemoryGroupByMeta.TYPE_GROUP_SUM:
+        return Optional.of( SqlAggregate.Function.SUM );
+      case MemoryGroupByMeta.TYPE_GROUP_MIN:
+        return Optional.of( SqlAggregate.Function.MIN );
+      case MemoryGroupByMeta.TYPE_GROUP_MAX:
+        return Optional.of( SqlAggregate.Function.MAX );
+      case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
+        // Some databases truncate the average of integers
+        return valueMeta.isInteger() ? Optional.<SqlAggregate.Function>absent()
+          : Optional.of( SqlAggregate.Function.AVG );
+      case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL:
+        // Counts replace the values of their column and are summed, which must remain integers like counts
+        return valueMeta.isInteger() ? Optional.of( SqlAggregate.Function.COUNT )
+          : Optional.<SqlAggregate.Function>absent();
+      case MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY:
+        return valueMeta.isInteger() ? Optional.of( SqlAggregate.Function.COUNT_ROWS )
+          : Optional.<SqlAggregate.Function>absent();
+      default:
+        return Optional.absent();
+    }
+  }
+
+  private static boolean isComparable( ValueMetaInterface valueMeta ) {
+    return valueMeta.getType() != ValueMetaInterface.TYPE_BINARY
+      && valueMeta.getType() != ValueMetaInterface.TYPE_SERIALIZABLE;
+  }
+
+  /**
+   * Sums the counts read from the input, all other aggregates of one row per group are unchanged
+   */
+  static void reaggregate( MemoryGroupByMeta groupBy ) {
+    int[] aggregateTypes = groupBy.getAggregateType();
+    for ( int i = 0; i < aggregateTypes.length; i++ ) {
+      if ( aggregateTypes[ i ] == MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL
+        || aggregateTypes[ i ] == MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY ) {
+        aggregateTypes[ i ] = MemoryGroupByMeta.TYPE_GROUP_SUM;
+      }
+    }
+  }
+
+  @Override public String toString() {
+    return Objects.toStringHelper( this )
+      .add( "fieldMappings", fieldMappings )
+      .toString();
+  }
+}
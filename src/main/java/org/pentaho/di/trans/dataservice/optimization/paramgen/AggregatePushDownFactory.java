@@ -0,0 +1,55 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import org.pentaho.di.trans.dataservice.optimization.PushDownFactory;
+import org.pentaho.di.trans.dataservice.optimization.PushDownType;
+import org.pentaho.di.trans.dataservice.ui.DataServiceDialog;
+
+/**
+ * Aggregate push downs are created by Auto-Optimization along with Parameter Generation, and have no dialog of their
+ * own. They are disabled or enabled together from the Parameter Generation tab.
+ */
+public class AggregatePushDownFactory implements PushDownFactory {
+  private final ParameterGenerationFactory serviceProvider;
+
+  public AggregatePushDownFactory( ParameterGenerationFactory serviceProvider ) {
+    this.serviceProvider = serviceProvider;
+  }
+
+  @Override public String getName() {
+    return AggregatePushDown.TYPE_NAME;
+  }
+
+  @Override public Class<? extends PushDownType> getType() {
+    return AggregatePushDown.class;
+  }
+
+  @Override public AggregatePushDown createPushDown() {
+    return serviceProvider.createAggregatePushDown();
+  }
+
+  @Override public DataServiceDialog.OptimizationOverlay createOverlay() {
+    return null;
+  }
+}
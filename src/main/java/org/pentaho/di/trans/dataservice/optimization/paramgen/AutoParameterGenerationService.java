@@ -35,7 +35,20 @@ import org.pentaho.di.trans.dataservice.DataServiceMeta;
 import org.pentaho.di.trans.dataservice.optimization.AutoOptimizationService;
 import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
 import org.pentaho.di.trans.dataservice.optimization.PushDownType;
+import org.pentaho.di.trans.dataservice.optimization.SourceTargetFields;
 import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.calculator.CalculatorMeta;
+import org.pentaho.di.trans.steps.constant.ConstantMeta;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.ifnull.IfNullMeta;
+import org.pentaho.di.trans.steps.numberrange.NumberRangeMeta;
+import org.pentaho.di.trans.steps.replacestring.ReplaceStringMeta;
+import org.pentaho.di.trans.steps.selectvalues.SelectValuesMeta;
+import org.pentaho.di.trans.steps.setvalueconstant.SetValueConstantMeta;
+import org.pentaho.di.trans.steps.setvaluefield.SetValueFieldMeta;
+import org.pentaho.di.trans.steps.stringcut.StringCutMeta;
+import org.pentaho.di.trans.steps.stringoperations.StringOperationsMeta;
+import org.pentaho.di.trans.steps.valuemapper.ValueMapperMeta;
 import org.pentaho.metaverse.api.ChangeType;
 import org.pentaho.metaverse.api.ILineageClient;
 import org.pentaho.metaverse.api.StepFieldOperations;
@@ -56,6 +69,19 @@ import static com.google.common.base.Predicates.not;
  * @author nhudak
  */
 public class AutoParameterGenerationService implements AutoOptimizationService {
+  /**
+   * Steps that output exactly one row for each row they read
+   */
+  private static final Set<Class<?>> ROW_PRESERVING_STEPS = ImmutableSet.<Class<?>>of(
+    SelectValuesMeta.class, CalculatorMeta.class, ConstantMeta.class, DummyTransMeta.class,
+    StringOperationsMeta.class, ReplaceStringMeta.class, ValueMapperMeta.class, SetValueFieldMeta.class,
+    SetValueConstantMeta.class, IfNullMeta.class, StringCutMeta.class, NumberRangeMeta.class );
+
+  /**
+   * Steps that output each row they read without changes
+   */
+  private static final Set<Class<?>> PASS_THROUGH_STEPS = ImmutableSet.<Class<?>>of( DummyTransMeta.class );
+
   private final ILineageClient lineageClient;
   private final ParameterGenerationFactory serviceProvider;
 
@@ -77,7 +103,7 @@ public class AutoParameterGenerationService implements AutoOptimizationService {
         .filterKeys( not( in( parametrizedSteps( dataServiceMeta ) ) ) )
         .filter( fieldUnchanged() );
 
-      return generateOptimizationList( sourceLineageMap );
+      return generateOptimizationList( transMeta, stepName, fields, sourceLineageMap );
     } catch ( Throwable e ) {
       logChannel.logError( "Unable to run Auto-Optimization", e );
       return Collections.emptyList();
@@ -117,7 +143,58 @@ public class AutoParameterGenerationService implements AutoOptimizationService {
     };
   }
 
-  private List<PushDownOptimizationMeta> generateOptimizationList( SourceLineageMap sourceLineageMap ) {
+  /**
+   * Checks that every row read by an input step reaches the service step unchanged in number and order, through a
+   * single chain of steps that neither filter nor add rows.
+   */
+  static boolean isRowPreserving( TransMeta transMeta, String inputStep, String serviceStep ) {
+    return isChainOf( ROW_PRESERVING_STEPS, transMeta, inputStep, serviceStep );
+  }
+
+  /**
+   * Checks that the service step outputs the rows of an input step as they were read
+   */
+  static boolean isPassThrough( TransMeta transMeta, String inputStep, String serviceStep ) {
+    return isChainOf( PASS_THROUGH_STEPS, transMeta, inputStep, serviceStep );
+  }
+
+  /**
+   * Checks that the service step outputs the rows of an input step as they were read, in the order they were read.
+   * Copies of a step interleave the rows they write, so every step of the chain must run as a single copy.
+   */
+  static boolean isOrderPreserving( TransMeta transMeta, String inputStep, String serviceStep ) {
+    if ( !isChainOf( PASS_THROUGH_STEPS, transMeta, inputStep, serviceStep ) ) {
+      return false;
+    }
+    StepMeta stepMeta = transMeta.findStep( serviceStep );
+    while ( stepMeta.getCopies() == 1 ) {
+      if ( stepMeta.getName().equals( inputStep ) ) {
+        return true;
+      }
+      stepMeta = transMeta.findPrevStep( stepMeta, 0 );
+    }
+    return false;
+  }
+
+  private static boolean isChainOf( Set<Class<?>> stepTypes, TransMeta transMeta, String inputStep,
+                                    String serviceStep ) {
+    StepMeta stepMeta = transMeta.findStep( serviceStep );
+    while ( stepMeta != null && !stepMeta.getName().equals( inputStep ) ) {
+      if ( !stepTypes.contains( stepMeta.getStepMetaInterface().getClass() )
+        || transMeta.findNrPrevSteps( stepMeta ) != 1 ) {
+        return false;
+      }
+      stepMeta = transMeta.findPrevStep( stepMeta, 0 );
+      if ( stepMeta != null && transMeta.findNrNextSteps( stepMeta ) != 1 ) {
+        return false;
+      }
+    }
+    return stepMeta != null;
+  }
+
+  private List<PushDownOptimizationMeta> generateOptimizationList( TransMeta transMeta, String serviceStep,
+                                                                   List<String> serviceFields,
+                                                                   SourceLineageMap sourceLineageMap ) {
     Map<String, Set<List<StepFieldOperations>>> inputSteps = Multimaps.asMap( sourceLineageMap );
     List<PushDownOptimizationMeta> optimizationList = Lists.newArrayListWithExpectedSize( inputSteps.size() );
     for ( Map.Entry<String, Set<List<StepFieldOperations>>> inputStepLineage : inputSteps.entrySet() ) {
@@ -129,17 +206,68 @@ public class AutoParameterGenerationService implements AutoOptimizationService {
       pushDownOptimizationMeta.setStepName( inputStep );
       pushDownOptimizationMeta.setType( parameterGeneration );
       parameterGeneration.setParameterName( "DATA_SERVICE_QUERY_" + inputStep.replaceAll( "\\s", "_" ).toUpperCase() );
+      parameterGeneration.setRowLimitPushDown( isRowPreserving( transMeta, inputStep, serviceStep ) );
       for ( List<StepFieldOperations> fieldLineage : lineageSet ) {
         StepFieldOperations origin = fieldLineage.get( 0 );
         StepFieldOperations last = Iterables.getLast( fieldLineage );
         parameterGeneration.createFieldMapping( last.getFieldName(), origin.getFieldName() );
       }
       optimizationList.add( pushDownOptimizationMeta );
+
+      if ( isPassThrough( transMeta, inputStep, serviceStep ) && isFullyMapped( serviceFields, lineageSet ) ) {
+        AggregatePushDown aggregatePushDown = serviceProvider.createAggregatePushDown();
+        optimizationList.add( createPushDown( aggregatePushDown, AggregatePushDown.TYPE_NAME, inputStep,
+          aggregatePushDown.getFieldMappings(), lineageSet ) );
+        ProjectionPushDown projectionPushDown = serviceProvider.createProjectionPushDown();
+        optimizationList.add( createPushDown( projectionPushDown, ProjectionPushDown.TYPE_NAME, inputStep,
+          projectionPushDown.getFieldMappings(), lineageSet ) );
+      }
+      if ( isOrderPreserving( transMeta, inputStep, serviceStep ) ) {
+        OrderPushDown orderPushDown = serviceProvider.createOrderPushDown();
+        optimizationList.add( createPushDown( orderPushDown, OrderPushDown.TYPE_NAME, inputStep,
+          orderPushDown.getFieldMappings(), lineageSet ) );
+      }
     }
     return optimizationList;
   }
 
+  /**
+   * Aggregates and projections at the source are possible if every service field is an unchanged input column
+   */
+  private static boolean isFullyMapped( List<String> serviceFields, Set<List<StepFieldOperations>> lineageSet ) {
+    Set<String> mappedFields = Sets.newHashSet();
+    for ( List<StepFieldOperations> fieldLineage : lineageSet ) {
+      mappedFields.add( Iterables.getLast( fieldLineage ).getFieldName() );
+    }
+    return mappedFields.containsAll( serviceFields );
+  }
+
+  /**
+   * Creates a push down for an input step, mapping each service field to the input column it was read from
+   *
+   * @param pushDown      optimization type
+   * @param name          optimization type name
+   * @param inputStep     step the push down applies to
+   * @param fieldMappings field mappings of the push down, service field (source) to input column (target)
+   * @param lineageSet    lineage of each service field, starting at the input step
+   */
+  private static PushDownOptimizationMeta createPushDown( PushDownType pushDown, String name, String inputStep,
+                                                          List<SourceTargetFields> fieldMappings,
+                                                          Set<List<StepFieldOperations>> lineageSet ) {
+    for ( List<StepFieldOperations> fieldLineage : lineageSet ) {
+      StepFieldOperations origin = fieldLineage.get( 0 );
+      StepFieldOperations last = Iterables.getLast( fieldLineage );
+      fieldMappings.add( new SourceTargetFields( last.getFieldName(), origin.getFieldName() ) );
+    }
+    PushDownOptimizationMeta pushDownOptimizationMeta = new PushDownOptimizationMeta();
+    pushDownOptimizationMeta.setName( MessageFormat.format( "{0}: {1}", name, inputStep ) );
+    pushDownOptimizationMeta.setStepName( inputStep );
+    pushDownOptimizationMeta.setType( pushDown );
+    return pushDownOptimizationMeta;
+  }
+
   @Override public Set<Class<? extends PushDownType>> getProvidedOptimizationTypes() {
-    return ImmutableSet.<Class<? extends PushDownType>>of( ParameterGeneration.class );
+    return ImmutableSet.<Class<? extends PushDownType>>of( ParameterGeneration.class, AggregatePushDown.class,
+      OrderPushDown.class, ProjectionPushDown.class );
   }
 }
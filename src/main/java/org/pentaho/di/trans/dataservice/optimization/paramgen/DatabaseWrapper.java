@@ -28,6 +28,7 @@ import org.pentaho.di.core.logging.LogChannel;
 import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
 
 import java.sql.ResultSet;
 import java.util.ArrayList;
@@ -35,16 +36,19 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.UUID;
 
 /**
 * @author nhudak
 */
 class DatabaseWrapper extends Database {
+  static final String FRAGMENT_PREFIX = "DATA_SERVICE_PUSH_DOWN_";
+
   Map<String, RuntimePushDown> pushDownMap = new HashMap<String, RuntimePushDown>();
   private final LogChannelInterface log;
+  private int rowLimit;
+  private SqlAggregate aggregate;
+  private SqlOrder order;
+  private SqlProjection projection;
 
   public DatabaseWrapper( Database db ) {
     super( db, db.getDatabaseMeta() );
@@ -64,14 +68,33 @@ class DatabaseWrapper extends Database {
   @Override
   public ResultSet openQuery( String sql, RowMetaInterface paramsMeta, Object[] data, int fetch_mode, boolean lazyConversion ) throws KettleDatabaseException {
     List<Object> params = data == null ? new ArrayList<Object>() : new ArrayList<Object>( Arrays.asList( data ) );
-    paramsMeta = paramsMeta == null ? new RowMeta() : paramsMeta;
+    // Injected parameters must not be added to the caller's meta
+    paramsMeta = paramsMeta == null ? new RowMeta() : paramsMeta.clone();
     sql = injectRuntime( pushDownMap, sql, paramsMeta, params );
+    sql = aggregateRows( sql );
+    // Projected after aggregating, as the aggregate selects every column
+    sql = projectColumns( sql );
+    sql = limitRows( sql );
+    // Ordered after limiting, the same rows are read as without an order
+    sql = orderRows( sql );
     if ( params.size() > 0 && log.isDetailed() ) {
       log.logDetailed( parameterizedQueryToString( sql, params ) );
     }
     return super.openQuery( sql, paramsMeta, params.toArray(), fetch_mode, lazyConversion );
   }
 
+  @Override
+  public RowMetaInterface getReturnRowMeta() {
+    RowMetaInterface rowMeta = super.getReturnRowMeta();
+    return projection != null && rowMeta != null ? projection.restoreRowMeta( rowMeta ) : rowMeta;
+  }
+
+  @Override
+  public Object[] getRow( ResultSet rs, boolean lazyConversion ) throws KettleDatabaseException {
+    Object[] row = super.getRow( rs, lazyConversion );
+    return projection != null && row != null ? projection.restoreRow( row ) : row;
+  }
+
   protected String parameterizedQueryToString( String sql, List<Object> params ) {
     return String.format( "Parameterized SQL:  %s   %s", sql,  paramsToString( params ) );
   }
@@ -90,38 +113,174 @@ class DatabaseWrapper extends Database {
     return paramStr.append( "}" ).toString();
   }
 
+  /**
+   * Replaces fragment IDs in a query with their SQL fragments.
+   * <p>
+   * Parameters of injected fragments are merged with the query's own parameters, in the order their placeholders
+   * appear. If the query's placeholders can not be matched to its parameters, the query is returned unchanged and
+   * each fragment ID falls back to its default value.
+   * </p>
+   *
+   * @param paramsMeta query parameter types, updated with injected parameters
+   * @param params     query parameter values, updated with injected parameters
+   * @return query with all fragments injected
+   */
   protected String injectRuntime( Map<String, RuntimePushDown> runtimeMap, String sql, final RowMetaInterface paramsMeta, final List<Object> params ) {
-    if ( !params.isEmpty() ) {
-      //TODO Don't know what to do if query already has parameters. Give up on optimization? Try to mix params?
+    // Rows may be larger than their meta
+    int queryParamCount = paramsMeta.size();
+    List<ValueMetaInterface> mergedMeta = new ArrayList<ValueMetaInterface>();
+    List<Object> mergedParams = new ArrayList<Object>();
+
+    StringBuilder sqlBuilder = new StringBuilder( sql.length() );
+    int placeholders = 0;
+    int i = 0;
+    while ( i < sql.length() ) {
+      RuntimePushDown runtime = findRuntime( runtimeMap, sql, i );
+      if ( runtime != null ) {
+        // Inject SQL fragment with its parameters
+        sqlBuilder.append( runtime.sqlFragment );
+        mergedMeta.addAll( runtime.paramsMeta.getValueMetaList() );
+        mergedParams.addAll( runtime.params );
+        i += runtime.fragmentId.length();
+        continue;
+      }
+
+      int next = skipQuoted( sql, i );
+      if ( next > i ) {
+        sqlBuilder.append( sql, i, next );
+        i = next;
+        continue;
+      }
+
+      char c = sql.charAt( i );
+      if ( c == '?' && queryParamCount > 0 ) {
+        if ( placeholders < queryParamCount ) {
+          mergedMeta.add( paramsMeta.getValueMeta( placeholders ) );
+          mergedParams.add( params.get( placeholders ) );
+        }
+        placeholders++;
+      }
+      sqlBuilder.append( c );
+      i++;
+    }
+
+    if ( placeholders != queryParamCount && queryParamCount > 0 ) {
+      log.logDetailed( "Unable to match " + queryParamCount + " parameters to query placeholders, "
+        + "conditions will not be pushed down: " + sql );
       return sql;
     }
 
-    // Determine fragment ordering and position
-    StringBuilder sqlBuilder = new StringBuilder( sql );
-    SortedMap<Integer, RuntimePushDown> sortedMap = new TreeMap<Integer, RuntimePushDown>();
-    for ( String fragmentId : runtimeMap.keySet() ) {
-      int pos = sqlBuilder.indexOf( fragmentId );
-      if ( pos >= 0 ) {
-        sortedMap.put( pos, runtimeMap.get( fragmentId ) );
+    paramsMeta.setValueMetaList( mergedMeta );
+    params.clear();
+    params.addAll( mergedParams );
+    return sqlBuilder.toString();
+  }
+
+  private static RuntimePushDown findRuntime( Map<String, RuntimePushDown> runtimeMap, String sql, int pos ) {
+    // Fragment IDs start with a comment
+    if ( !sql.startsWith( "/*", pos ) ) {
+      return null;
+    }
+    for ( RuntimePushDown runtime : runtimeMap.values() ) {
+      if ( sql.startsWith( runtime.fragmentId, pos ) ) {
+        return runtime;
       }
     }
-    for ( RuntimePushDown runtime : sortedMap.values() ) {
-      // Inject SQL fragment
-      int start = sqlBuilder.indexOf( runtime.fragmentId );
-      int end = start + runtime.fragmentId.length();
-      sqlBuilder.replace( start, end, runtime.sqlFragment );
-
-      // Append prepared statement parameters and meta
-      paramsMeta.addRowMeta( runtime.paramsMeta );
-      params.addAll( runtime.params );
+    return null;
+  }
+
+  /**
+   * @return end of the literal, quoted identifier or comment starting at {@code pos}, or {@code pos} if there is none
+   */
+  private static int skipQuoted( String sql, int pos ) {
+    char c = sql.charAt( pos );
+    if ( c == '\'' || c == '"' || c == '`' ) {
+      // Doubled quotes are escapes, read as two adjacent quoted sections
+      int end = sql.indexOf( c, pos + 1 );
+      return end < 0 ? sql.length() : end + 1;
+    }
+    if ( sql.startsWith( "--", pos ) ) {
+      int end = sql.indexOf( '\n', pos );
+      return end < 0 ? sql.length() : end + 1;
+    }
+    if ( sql.startsWith( "/*", pos ) ) {
+      int end = sql.indexOf( "*/", pos + 2 );
+      return end < 0 ? sql.length() : end + 2;
     }
+    return pos;
+  }
 
-    return sqlBuilder.toString();
+  /**
+   * @param rowLimit maximum number of rows to read with each query, or 0 for no limit
+   */
+  public void setRowLimit( int rowLimit ) {
+    this.rowLimit = rowLimit;
+  }
+
+  public int getRowLimit() {
+    return rowLimit;
+  }
+
+  protected String limitRows( String sql ) {
+    return rowLimit > 0 ? SqlRowLimit.limit( getDatabaseMeta(), sql, rowLimit ).or( sql ) : sql;
+  }
+
+  /**
+   * @param aggregate grouping to apply to each query, or null to read detail rows
+   */
+  public void setAggregate( SqlAggregate aggregate ) {
+    this.aggregate = aggregate;
+  }
+
+  public SqlAggregate getAggregate() {
+    return aggregate;
+  }
+
+  protected String aggregateRows( String sql ) {
+    return aggregate != null ? aggregate.apply( getDatabaseMeta(), sql ) : sql;
+  }
+
+  /**
+   * @param projection unused columns to leave out of each query and read as null, or null to read all columns
+   */
+  public void setProjection( SqlProjection projection ) {
+    this.projection = projection;
+  }
+
+  public SqlProjection getProjection() {
+    return projection;
+  }
+
+  protected String projectColumns( String sql ) {
+    return projection != null ? projection.apply( getDatabaseMeta(), sql ) : sql;
+  }
+
+  /**
+   * @param order ordering to apply to each query, or null to read rows in the order of the query
+   */
+  public void setOrder( SqlOrder order ) {
+    this.order = order;
+  }
+
+  public SqlOrder getOrder() {
+    return order;
+  }
+
+  protected String orderRows( String sql ) {
+    return order != null ? order.apply( getDatabaseMeta(), sql ) : sql;
   }
 
+  /**
+   * Registers a condition to inject into queries at runtime.
+   * <p>
+   * Fragment IDs are numbered in order of creation, so the same push downs produce the same query text for every
+   * execution of a service. Together with bound parameters, this lets the database and driver reuse cached plans.
+   * </p>
+   *
+   * @return ID to substitute into the step's query, including a default value
+   */
   public String createRuntimePushDown( String sqlFragment, RowMeta paramsMeta, List<Object> params, String defaultValue ) {
-    // Create a unique ID for this substitution, including a default value
-    String fragmentId = "/*" + UUID.randomUUID().toString() + "*/" + defaultValue;
+    String fragmentId = "/*" + FRAGMENT_PREFIX + pushDownMap.size() + "*/" + defaultValue;
 
     RuntimePushDown runtimePushDown = new RuntimePushDown( fragmentId, sqlFragment, paramsMeta, params );
     pushDownMap.put( fragmentId, runtimePushDown );
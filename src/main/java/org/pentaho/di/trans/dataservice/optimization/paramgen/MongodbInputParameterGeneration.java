@@ -27,11 +27,13 @@ import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationExcepti
 import org.pentaho.di.trans.dataservice.optimization.ValueMetaResolver;
 import org.pentaho.di.trans.dataservice.optimization.mongod.MongodbPredicate;
 import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.ExtensionDataInterface;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.logging.LogChannel;
 import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.steps.mongodbinput.MongoDbInput;
 import org.pentaho.di.trans.steps.mongodbinput.MongoDbInputMeta;
 import org.pentaho.mongo.wrapper.field.MongoField;
@@ -50,6 +52,10 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class MongodbInputParameterGeneration implements ParameterGenerationService {
+  /**
+   * Key of the step's push down pipeline, in the step's extension data
+   */
+  static final String PIPELINE_KEY = "DataServicePipeline";
 
   private final ValueMetaResolver valueMetaResolver;
 
@@ -73,6 +79,14 @@ public class MongodbInputParameterGeneration implements ParameterGenerationServi
       getMongodbPredicate( condition, getFieldMappings( stepInterface ) ).asFilterCriteria() );
   }
 
+  /**
+   * Conditions that can not be converted to a MongoDB query are left out, instead of dropping the whole push down.
+   */
+  @Override
+  public boolean supportsCondition( Condition condition, StepMeta stepMeta ) {
+    return MongodbPredicate.isSupported( condition, valueMetaResolver );
+  }
+
   @Override
   public String getParameterDefault() {
     return "{_id:{$exists:true}}";
@@ -105,6 +119,129 @@ public class MongodbInputParameterGeneration implements ParameterGenerationServi
     return impactInfo;
   }
 
+  @Override
+  public boolean pushDownRowLimit( int rowLimit, StepInterface stepInterface ) throws PushDownOptimizationException {
+    return pushDownStage( stepInterface, pipeline -> pipeline.setRowLimit( rowLimit ) );
+  }
+
+  @Override
+  public boolean pushDownAggregate( SqlAggregate aggregate, StepInterface stepInterface )
+    throws PushDownOptimizationException {
+    return pushDownStage( stepInterface, pipeline -> pipeline.setAggregate( aggregate ) );
+  }
+
+  @Override
+  public OptimizationImpactInfo previewAggregate( SqlAggregate aggregate, StepInterface stepInterface ) {
+    return previewStage( stepInterface, pipeline -> pipeline.setAggregate( aggregate ) );
+  }
+
+  @Override
+  public boolean pushDownProjection( SqlProjection projection, StepInterface stepInterface )
+    throws PushDownOptimizationException {
+    return pushDownStage( stepInterface, pipeline -> pipeline.setProjection( projection ) );
+  }
+
+  @Override
+  public OptimizationImpactInfo previewProjection( SqlProjection projection, StepInterface stepInterface ) {
+    return previewStage( stepInterface, pipeline -> pipeline.setProjection( projection ) );
+  }
+
+  /**
+   * Every column of the ordering needs a scalar document path, the generated transformation will not sort the rows
+   */
+  @Override
+  public boolean supportsOrder( SqlOrder order, StepMeta stepMeta ) {
+    if ( !( stepMeta.getStepMetaInterface() instanceof MongoDbInputMeta ) ) {
+      return false;
+    }
+    MongoDbInputMeta meta = (MongoDbInputMeta) stepMeta.getStepMetaInterface();
+    if ( meta.getExecuteForEachIncomingRow() ) {
+      return false;
+    }
+    try {
+      new MongodbPipeline( "", getFieldMappings( meta ) ).setOrder( order );
+      return true;
+    } catch ( PushDownOptimizationException e ) {
+      return false;
+    }
+  }
+
+  @Override
+  public boolean pushDownOrder( SqlOrder order, StepInterface stepInterface ) throws PushDownOptimizationException {
+    return pushDownStage( stepInterface, pipeline -> pipeline.setOrder( order ) );
+  }
+
+  @Override
+  public OptimizationImpactInfo previewOrder( SqlOrder order, StepInterface stepInterface ) {
+    return previewStage( stepInterface, pipeline -> pipeline.setOrder( order ) );
+  }
+
+  private interface PipelineStage {
+    void apply( MongodbPipeline pipeline ) throws PushDownOptimizationException;
+  }
+
+  /**
+   * Adds a stage to the step's pipeline, and runs the step's query as the pipeline. The step reads its query when it
+   * processes the first row.
+   */
+  private boolean pushDownStage( StepInterface stepInterface, PipelineStage stage )
+    throws PushDownOptimizationException {
+    MongoDbInputMeta meta = getMongoDbInputMeta( stepInterface );
+    MongodbPipeline pipeline = getPipeline( stepInterface );
+    stage.apply( pipeline );
+    meta.setQueryIsPipeline( true );
+    meta.setJsonQuery( pipeline.toJson() );
+    return true;
+  }
+
+  private OptimizationImpactInfo previewStage( StepInterface stepInterface, PipelineStage stage ) {
+    OptimizationImpactInfo impactInfo = new OptimizationImpactInfo( stepInterface.getStepname() );
+    impactInfo.setModified( false );
+    try {
+      impactInfo.setQueryBeforeOptimization( getMongoDbInputMeta( stepInterface ).getJsonQuery() );
+      MongodbPipeline pipeline = createPipeline( stepInterface );
+      stage.apply( pipeline );
+      impactInfo.setQueryAfterOptimization( pipeline.toJson() );
+      impactInfo.setModified( true );
+    } catch ( PushDownOptimizationException e ) {
+      impactInfo.setErrorMsg( e );
+    }
+    return impactInfo;
+  }
+
+  /**
+   * Push downs to the same step share a pipeline, kept with the step for the run of the service transformation
+   */
+  protected MongodbPipeline getPipeline( StepInterface stepInterface ) throws PushDownOptimizationException {
+    if ( !( stepInterface instanceof ExtensionDataInterface ) ) {
+      throw new PushDownOptimizationException( "Unable to push down to type " + stepInterface.getClass() );
+    }
+    Map<String, Object> extensionData = ( (ExtensionDataInterface) stepInterface ).getExtensionDataMap();
+    MongodbPipeline pipeline = (MongodbPipeline) extensionData.get( PIPELINE_KEY );
+    if ( pipeline == null ) {
+      pipeline = createPipeline( stepInterface );
+      extensionData.put( PIPELINE_KEY, pipeline );
+    }
+    return pipeline;
+  }
+
+  private MongodbPipeline createPipeline( StepInterface stepInterface ) throws PushDownOptimizationException {
+    MongoDbInputMeta meta = getMongoDbInputMeta( stepInterface );
+    if ( meta.getExecuteForEachIncomingRow() ) {
+      throw new PushDownOptimizationException( "Queries executed for each input row can not be pushed down" );
+    }
+    String stages = MongodbPipeline.asStages( meta.getJsonQuery(), meta.getFieldsName(), meta.getQueryIsPipeline() );
+    return new MongodbPipeline( stages, getFieldMappings( stepInterface ) );
+  }
+
+  private MongoDbInputMeta getMongoDbInputMeta( StepInterface stepInterface ) throws PushDownOptimizationException {
+    if ( !"MongoDbInput".equals( stepInterface.getStepMeta().getTypeId() )
+      || !( stepInterface.getStepMeta().getStepMetaInterface() instanceof MongoDbInputMeta ) ) {
+      throw new PushDownOptimizationException( "Unable to push down to type " + stepInterface.getClass() );
+    }
+    return (MongoDbInputMeta) stepInterface.getStepMeta().getStepMetaInterface();
+  }
+
   private String getJsonQuery( StepInterface stepInterface ) throws KettleException {
     String xml = stepInterface.getStepMeta().getXML();
     DocumentBuilder builder;
@@ -128,10 +265,13 @@ public class MongodbInputParameterGeneration implements ParameterGenerationServi
   }
 
   protected Map<String, String> getFieldMappings( StepInterface stepInterface ) {
+    MongoDbInput mongoDbInput = (MongoDbInput) stepInterface;
+    return getFieldMappings( (MongoDbInputMeta) mongoDbInput.getStepMeta().getStepMetaInterface() );
+  }
+
+  protected Map<String, String> getFieldMappings( MongoDbInputMeta mongoDbInputMeta ) {
     Map<String, String> fieldMap = new HashMap<String, String>();
 
-    MongoDbInput mongoDbInput = (MongoDbInput) stepInterface;
-    MongoDbInputMeta mongoDbInputMeta = (MongoDbInputMeta) mongoDbInput.getStepMeta().getStepMetaInterface();
     for ( MongoField mongoField : mongoDbInputMeta.getMongoFields() ) {
       fieldMap.put( mongoField.getName(), mongoField.getPath() );
     }
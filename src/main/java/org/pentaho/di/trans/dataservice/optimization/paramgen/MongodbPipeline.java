@@ -0,0 +1,248 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationException;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds an aggregation pipeline that reduces the documents of a MongoDB Input step.
+ * <p>
+ * The step's own query is kept as the first stages of the pipeline, as text, so that variables are still substituted
+ * when the step runs. Push downs add a $project, a $group, a $limit and a $sort stage, in that order, whatever the
+ * order they are set in. Input fields are mapped to document paths. Fields read from arrays are not supported.
+ * </p>
+ * <p>
+ * MongoDB Input runs the pipeline without aggregation options, so $group and $sort stages are held to the server's
+ * memory limit for a stage unless the server spills them to disk by default, as from MongoDB 6.0.
+ * </p>
+ */
+public final class MongodbPipeline {
+  private static final String ID = "_id";
+
+  private final String baseStages;
+  private final Map<String, String> fieldPaths;
+
+  private DBObject project;
+  private List<DBObject> group;
+  private DBObject limit;
+  private DBObject sort;
+
+  /**
+   * @param baseStages stages of the step's query, separated by commas and without brackets
+   * @param fieldPaths input field name to path, as in the step's field definitions
+   */
+  public MongodbPipeline( String baseStages, Map<String, String> fieldPaths ) {
+    this.baseStages = baseStages.trim();
+    this.fieldPaths = fieldPaths;
+  }
+
+  /**
+   * @param jsonQuery   query of the step
+   * @param fields      fields expression of the step, applied to find() queries
+   * @param isPipeline  <code>true</code> if the query is already an aggregation pipeline
+   * @return stages equivalent to the query
+   */
+  public static String asStages( String jsonQuery, String fields, boolean isPipeline ) {
+    String query = jsonQuery == null ? "" : jsonQuery.trim();
+    if ( isPipeline ) {
+      return query.startsWith( "[" ) && query.endsWith( "]" ) ? query.substring( 1, query.length() - 1 ) : query;
+    }
+    String stages = "{ \"$match\" : " + ( query.isEmpty() ? "{ }" : query ) + " }";
+    if ( fields != null && !fields.trim().isEmpty() ) {
+      stages += ", { \"$project\" : " + fields.trim() + " }";
+    }
+    return stages;
+  }
+
+  /**
+   * Includes only used fields in documents, unused fields are read as null
+   */
+  public void setProjection( SqlProjection projection ) throws PushDownOptimizationException {
+    List<String> usedPaths = Lists.newArrayList();
+    for ( String column : projection.getColumns() ) {
+      if ( !projection.getUnusedColumns().contains( column ) ) {
+        usedPaths.add( getPath( column ) );
+      }
+    }
+    checkDistinct( usedPaths );
+    BasicDBObject fields = new BasicDBObject();
+    for ( String path : usedPaths ) {
+      fields.put( path, 1 );
+    }
+    if ( !fields.containsField( ID ) ) {
+      fields.put( ID, 0 );
+    }
+    project = new BasicDBObject( "$project", fields );
+  }
+
+  /**
+   * Groups documents, then reshapes each group so that aggregated values are found at the paths of their fields
+   */
+  public void setAggregate( SqlAggregate aggregate ) throws PushDownOptimizationException {
+    List<String> paths = Lists.newArrayListWithCapacity( aggregate.getColumns().size() );
+    for ( String column : aggregate.getColumns() ) {
+      paths.add( getPath( column ) );
+    }
+    checkDistinct( paths );
+
+    BasicDBObject groupId = new BasicDBObject();
+    BasicDBObject accumulators = new BasicDBObject( ID, groupId );
+    BasicDBObject reshape = new BasicDBObject();
+    for ( int i = 0; i < paths.size(); i++ ) {
+      String column = aggregate.getColumns().get( i );
+      String path = paths.get( i );
+      // Group keys and accumulators can not contain dots
+      String key = "f" + i;
+      if ( aggregate.getGroupColumns().contains( column ) ) {
+        groupId.put( key, "$" + path );
+        reshape.put( path, "$" + ID + "." + key );
+        continue;
+      }
+      SqlAggregate.Function function = aggregate.getAggregates().containsKey( column )
+        ? aggregate.getAggregates().get( column ) : SqlAggregate.Function.MIN;
+      switch ( function ) {
+        case SUM:
+          // The sum of a group without values is null, not 0
+          accumulators.put( key, new BasicDBObject( "$sum", "$" + path ) );
+          accumulators.put( key + "_n", new BasicDBObject( "$sum", countValue( path ) ) );
+          reshape.put( path, new BasicDBObject( "$cond",
+            list( new BasicDBObject( "$gt", list( "$" + key + "_n", 0 ) ), "$" + key, null ) ) );
+          continue;
+        case COUNT:
+          accumulators.put( key, new BasicDBObject( "$sum", countValue( path ) ) );
+          break;
+        case COUNT_ROWS:
+          accumulators.put( key, new BasicDBObject( "$sum", 1 ) );
+          break;
+        default:
+          accumulators.put( key, new BasicDBObject( "$" + function.name().toLowerCase(), "$" + path ) );
+          break;
+      }
+      reshape.put( path, "$" + key );
+    }
+    if ( !reshape.containsField( ID ) ) {
+      reshape.put( ID, 0 );
+    }
+
+    if ( groupId.isEmpty() ) {
+      // A single group for all documents
+      accumulators.put( ID, null );
+    }
+    group = Lists.<DBObject>newArrayList(
+      new BasicDBObject( "$group", accumulators ), new BasicDBObject( "$project", reshape ) );
+  }
+
+  public void setRowLimit( int rowLimit ) {
+    limit = new BasicDBObject( "$limit", rowLimit );
+  }
+
+  /**
+   * Null and missing values sort first in ascending order and last in descending order, as they do in Kettle
+   */
+  public void setOrder( SqlOrder order ) throws PushDownOptimizationException {
+    BasicDBObject fields = new BasicDBObject();
+    for ( Map.Entry<String, Boolean> column : order.getColumns().entrySet() ) {
+      fields.put( getPath( column.getKey() ), column.getValue() ? 1 : -1 );
+    }
+    sort = new BasicDBObject( "$sort", fields );
+  }
+
+  /**
+   * @return the pipeline, as a JSON array
+   */
+  public String toJson() {
+    List<Object> stages = Lists.newArrayList();
+    if ( !baseStages.isEmpty() ) {
+      stages.add( baseStages );
+    }
+    if ( project != null ) {
+      stages.add( project );
+    }
+    if ( group != null ) {
+      stages.addAll( group );
+    }
+    if ( limit != null ) {
+      stages.add( limit );
+    }
+    if ( sort != null ) {
+      stages.add( sort );
+    }
+    return "[" + Joiner.on( ", " ).join( stages ) + "]";
+  }
+
+  /**
+   * @param column input field name
+   * @return document path of the field
+   * @throws PushDownOptimizationException if the field is not mapped to a document path, outside of arrays
+   */
+  String getPath( String column ) throws PushDownOptimizationException {
+    String path = fieldPaths.get( column );
+    if ( path != null && path.startsWith( "$." ) ) {
+      path = path.substring( 2 );
+    }
+    if ( path == null || path.isEmpty() || path.contains( "[" ) || path.contains( "$" ) ) {
+      throw new PushDownOptimizationException( "Field '" + column + "' has no document path: " + path );
+    }
+    return path;
+  }
+
+  /**
+   * Paths set in the same stage may not overlap
+   */
+  private static void checkDistinct( List<String> paths ) throws PushDownOptimizationException {
+    for ( int i = 0; i < paths.size(); i++ ) {
+      for ( int j = 0; j < paths.size(); j++ ) {
+        String path = paths.get( i );
+        String other = paths.get( j );
+        if ( i != j && ( path.equals( other ) || other.startsWith( path + "." ) ) ) {
+          throw new PushDownOptimizationException( "Overlapping document paths: " + path + ", " + other );
+        }
+      }
+    }
+  }
+
+  private static DBObject countValue( String path ) {
+    // Null and missing values compare lower than any other value
+    return new BasicDBObject( "$cond", list( new BasicDBObject( "$gt", list( "$" + path, null ) ), 1, 0 ) );
+  }
+
+  private static BasicDBList list( Object... values ) {
+    BasicDBList list = new BasicDBList();
+    for ( Object value : values ) {
+      list.add( value );
+    }
+    return list;
+  }
+
+  @Override public String toString() {
+    return toJson();
+  }
+}
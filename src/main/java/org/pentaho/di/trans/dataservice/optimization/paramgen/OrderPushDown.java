@@ -0,0 +1,199 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.sql.SQL;
+import org.pentaho.di.core.sql.SQLField;
+import org.pentaho.di.core.sql.SQLFields;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.dataservice.DataServiceExecutor;
+import org.pentaho.di.trans.dataservice.DataServiceMeta;
+import org.pentaho.di.trans.dataservice.optimization.OptimizationImpactInfo;
+import org.pentaho.di.trans.dataservice.optimization.OrderProviding;
+import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationException;
+import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
+import org.pentaho.di.trans.dataservice.optimization.SourceTargetFields;
+import org.pentaho.di.trans.dataservice.optimization.StepOptimization;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.metastore.persist.MetaStoreAttribute;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders rows in the source of a data service, so that the generated transformation does not sort them.
+ * <p>
+ * Applies to services whose output is the unchanged output of an input step, read by a single copy of every step,
+ * see {@link AutoParameterGenerationService}. Queries are ordered at the source if they neither aggregate nor compute
+ * IIF fields, and only order by numbers and dates. The collation of strings differs between databases and Kettle.
+ * </p>
+ */
+public class OrderPushDown extends StepOptimization implements OrderProviding {
+
+  public static final String TYPE_NAME = "Order Push Down";
+  public static final String PUSH_DOWN_FIELD_MAPPINGS = "field_mappings";
+
+  private static final String UNORDERED = "Unable to order input rows, query results would not be sorted";
+
+  /**
+   * Service field (source) to input column (target)
+   */
+  @MetaStoreAttribute( key = PUSH_DOWN_FIELD_MAPPINGS )
+  private List<SourceTargetFields> fieldMappings = new ArrayList<SourceTargetFields>();
+
+  protected ParameterGenerationFactory serviceProvider;
+
+  public OrderPushDown( ParameterGenerationFactory serviceProvider ) {
+    this.serviceProvider = serviceProvider;
+  }
+
+  public List<SourceTargetFields> getFieldMappings() {
+    return fieldMappings;
+  }
+
+  public SourceTargetFields createFieldMapping( String source, String target ) {
+    SourceTargetFields mapping = new SourceTargetFields( source, target );
+    fieldMappings.add( mapping );
+    return mapping;
+  }
+
+  @Override public void init( TransMeta transMeta, DataServiceMeta dataService, PushDownOptimizationMeta optMeta ) {
+    fieldMappings = Lists.newArrayList( Iterables.filter( fieldMappings, SourceTargetFields.IS_DEFINED ) );
+  }
+
+  @Override public boolean providesOrder( SQL sql, DataServiceMeta service, TransMeta serviceTransMeta,
+                                          PushDownOptimizationMeta meta ) {
+    return providesOrder( sql, service, serviceTransMeta, meta.getStepName() );
+  }
+
+  private boolean providesOrder( SQL sql, DataServiceMeta service, TransMeta serviceTransMeta, String stepName ) {
+    StepMeta stepMeta = serviceTransMeta.findStep( stepName );
+    if ( stepMeta == null || service.isServiceOutputCaptured()
+      || !AutoParameterGenerationService.isOrderPreserving( serviceTransMeta, stepName, service.getStepname() ) ) {
+      return false;
+    }
+    ParameterGenerationService paramGenService = serviceProvider.getService( stepMeta );
+    Optional<SqlOrder> order = createOrder( sql );
+    return paramGenService != null && order.isPresent() && paramGenService.supportsOrder( order.get(), stepMeta );
+  }
+
+  @Override protected boolean activate( DataServiceExecutor executor, StepInterface stepInterface ) {
+    // Only order the source if the generated transformation was built without a sort
+    if ( !executor.isPresorted() || !providesOrder( executor.getSql(), executor.getService(),
+      executor.getServiceTrans().getTransMeta(), stepInterface.getStepname() ) ) {
+      return false;
+    }
+    ParameterGenerationService service = serviceProvider.getService( stepInterface.getStepMeta() );
+    try {
+      if ( service.pushDownOrder( createOrder( executor.getSql() ).get(), stepInterface ) ) {
+        return true;
+      }
+      stepInterface.getLogChannel().logError( UNORDERED );
+    } catch ( PushDownOptimizationException e ) {
+      stepInterface.getLogChannel().logError( UNORDERED, e );
+    }
+    // Fail the query rather than return unsorted rows
+    stepInterface.setErrors( 1 );
+    stepInterface.stopAll();
+    return false;
+  }
+
+  @Override protected OptimizationImpactInfo preview( DataServiceExecutor executor, StepInterface stepInterface ) {
+    Optional<SqlOrder> order = createOrder( executor.getSql() );
+    ParameterGenerationService service = serviceProvider.getService( stepInterface.getStepMeta() );
+    if ( !order.isPresent() || service == null ) {
+      OptimizationImpactInfo info = new OptimizationImpactInfo( stepInterface.getStepname() );
+      info.setModified( false );
+      return info;
+    }
+    return service.previewOrder( order.get(), stepInterface );
+  }
+
+  /**
+   * Translates the ORDER BY clause of a query to input columns
+   *
+   * @param sql query
+   * @return ordering of the input, or absent if the generated transformation must sort rows
+   */
+  Optional<SqlOrder> createOrder( SQL sql ) {
+    SQLFields selectFields = sql.getSelectFields();
+    SQLFields orderFields = sql.getOrderFields();
+    // Grouping and IIF steps of the generated transformation do not keep the order of their input
+    if ( orderFields == null || orderFields.isEmpty() || !selectFields.getAggregateFields().isEmpty()
+      || !sql.getGroupFields().getFields().isEmpty()
+      || sql.getHavingCondition() != null && !sql.getHavingCondition().isEmpty()
+      || !selectFields.getIifFunctionFields().isEmpty() || !orderFields.getIifFunctionFields().isEmpty() ) {
+      return Optional.absent();
+    }
+    Map<String, String> columns = Maps.newHashMap();
+    for ( SourceTargetFields fieldMapping : fieldMappings ) {
+      columns.put( fieldMapping.getSourceFieldName(), fieldMapping.getTargetFieldName() );
+    }
+
+    Map<String, Boolean> order = new LinkedHashMap<>();
+    for ( SQLField orderField : orderFields.getFields() ) {
+      ValueMetaInterface valueMeta = findServiceField( sql, orderField );
+      if ( valueMeta == null || !( valueMeta.isNumeric() || valueMeta.isDate() )
+        || !columns.containsKey( valueMeta.getName() ) ) {
+        return Optional.absent();
+      }
+      // Later terms for the same column never change the order
+      String column = columns.get( valueMeta.getName() );
+      if ( !order.containsKey( column ) ) {
+        order.put( column, orderField.isAscending() );
+      }
+    }
+    return Optional.of( new SqlOrder( order ) );
+  }
+
+  /**
+   * Resolves an order field like the sort step of the generated transformation, by name or by select alias
+   */
+  private static ValueMetaInterface findServiceField( SQL sql, SQLField orderField ) {
+    RowMetaInterface serviceFields = sql.getRowMeta();
+    ValueMetaInterface valueMeta = serviceFields.searchValueMeta( orderField.getField() );
+    if ( valueMeta == null ) {
+      SQLField selectField =
+        SQLField.searchSQLFieldByFieldOrAlias( sql.getSelectFields().getFields(), orderField.getField() );
+      String name = selectField != null ? selectField.getField() : orderField.getAlias();
+      valueMeta = name != null ? serviceFields.searchValueMeta( name ) : null;
+    }
+    return valueMeta;
+  }
+
+  @Override public String toString() {
+    return Objects.toStringHelper( this )
+      .add( "fieldMappings", fieldMappings )
+      .toString();
+  }
+}
@@ -23,17 +23,27 @@
 package org.pentaho.di.trans.dataservice.optimization.paramgen;
 
 import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import org.apache.commons.lang.StringUtils;
 import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.parameters.DuplicateParamException;
 import org.pentaho.di.core.sql.SQL;
+import org.pentaho.di.core.sql.SQLCondition;
+import org.pentaho.di.core.sql.SQLFields;
+import org.pentaho.di.core.sql.SQLLimit;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.core.variables.Variables;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransAdapter;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.dataservice.DataServiceExecutor;
 import org.pentaho.di.trans.dataservice.DataServiceMeta;
+import org.pentaho.di.trans.dataservice.optimization.CostEstimating;
 import org.pentaho.di.trans.dataservice.optimization.OptimizationImpactInfo;
 import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationException;
 import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
@@ -52,10 +62,11 @@ import java.util.Map;
 /**
  * @author nhudak
  */
-public class ParameterGeneration extends StepOptimization {
+public class ParameterGeneration extends StepOptimization implements CostEstimating {
 
   public static final String PUSH_DOWN_FIELD_MAPPINGS = "field_mappings";
   public static final String PUSH_DOWN_PARAMETER_NAME = "parameter_name";
+  public static final String PUSH_DOWN_ROW_LIMIT = "row_limit";
   public static final String TYPE_NAME = "Parameter Generation";
 
   @MetaStoreAttribute( key = PUSH_DOWN_FIELD_MAPPINGS )
@@ -64,6 +75,12 @@ public class ParameterGeneration extends StepOptimization {
   @MetaStoreAttribute( key = PUSH_DOWN_PARAMETER_NAME )
   private String parameterName;
 
+  /**
+   * Set if every row of the input step reaches the service step, so that LIMIT may be applied at the source
+   */
+  @MetaStoreAttribute( key = PUSH_DOWN_ROW_LIMIT )
+  private boolean rowLimitPushDown;
+
   protected ParameterGenerationFactory serviceProvider;
 
   public ParameterGeneration( ParameterGenerationFactory serviceProvider ) {
@@ -78,6 +95,14 @@ public class ParameterGeneration extends StepOptimization {
     this.parameterName = parameterName;
   }
 
+  public boolean isRowLimitPushDown() {
+    return rowLimitPushDown;
+  }
+
+  public void setRowLimitPushDown( boolean rowLimitPushDown ) {
+    this.rowLimitPushDown = rowLimitPushDown;
+  }
+
   public List<SourceTargetFields> getFieldMappings() {
     return fieldMappings;
   }
@@ -100,6 +125,15 @@ public class ParameterGeneration extends StepOptimization {
   }
 
   protected Condition mapConditionFields( Condition condition ) {
+    return mapConditionFields( condition, Predicates.<Condition>alwaysTrue() );
+  }
+
+  /**
+   * @param condition query condition, on service fields
+   * @param supported filter for atomic conditions after mapping, others are removed like unmapped fields
+   * @return condition on input step fields, or null if nothing can be pushed down
+   */
+  protected Condition mapConditionFields( Condition condition, Predicate<Condition> supported ) {
     Condition clone = (Condition) condition.clone();
     HashMap<String, SourceTargetFields> sourceMap;
     sourceMap = new HashMap<String, SourceTargetFields>();
@@ -107,7 +141,7 @@ public class ParameterGeneration extends StepOptimization {
       sourceMap.put( fieldMapping.getSourceFieldName(), fieldMapping );
     }
 
-    if ( applyMapping( clone, sourceMap ) ) {
+    if ( applyMapping( clone, sourceMap, supported ) ) {
       clone.simplify();
       return clone;
     } else {
@@ -115,14 +149,15 @@ public class ParameterGeneration extends StepOptimization {
     }
   }
 
-  private boolean applyMapping( Condition condition, Map<String, SourceTargetFields> sourceTargetFieldsMap ) {
+  private boolean applyMapping( Condition condition, Map<String, SourceTargetFields> sourceTargetFieldsMap,
+                               Predicate<Condition> supported ) {
     // Atomic: check for simple mapping
     if ( condition.isAtomic() ) {
       String key = condition.getLeftValuename();
       SourceTargetFields mapping = sourceTargetFieldsMap.get( key );
       if ( mapping != null ) {
         condition.setLeftValuename( mapping.getTargetFieldName() );
-        return true;
+        return supported.apply( condition );
       } else {
         return false;
       }
@@ -141,7 +176,7 @@ public class ParameterGeneration extends StepOptimization {
       // Map each child
       for ( Iterator<Condition> i = children.iterator(); i.hasNext(); ) {
         Condition child = i.next();
-        if ( !applyMapping( child, sourceTargetFieldsMap ) ) {
+        if ( !applyMapping( child, sourceTargetFieldsMap, supported ) ) {
           if ( requireAll ) {
             // If all were required, give up now
             return false;
@@ -175,15 +210,118 @@ public class ParameterGeneration extends StepOptimization {
 
   @Override public boolean activate( DataServiceExecutor executor, StepInterface stepInterface ) {
     ParameterGenerationService service = serviceProvider.getService( stepInterface.getStepMeta() );
-    Condition pushDownCondition = getPushDownCondition( executor.getSql() );
+    Predicate<Condition> supported = supportedBy( service, stepInterface );
+    Condition pushDownCondition = getPushDownCondition( executor.getSql(), supported );
+
+    boolean pushedDown = handlePushDown( service, pushDownCondition, stepInterface );
+    boolean limited =
+      handleRowLimit( service, getPushDownRowLimit( executor, pushedDown, supported ), stepInterface );
+    if ( pushedDown && !limited ) {
+      // Limited runs do not reflect the cost of the query
+      recordLatency( executor, stepInterface.getStepname() );
+    }
+    return pushedDown || limited;
+  }
+
+  /**
+   * Finds how many rows of the input step are enough to answer a query. Only the first rows are needed if the query
+   * does not aggregate, sort or remove duplicates, and its WHERE clause, if any, was pushed down in full.
+   *
+   * @param executor            query
+   * @param conditionPushedDown <code>true</code> if the query's WHERE clause was pushed down
+   * @return number of rows to read from the input step, or 0 if all rows are needed
+   */
+  int getPushDownRowLimit( DataServiceExecutor executor, boolean conditionPushedDown ) {
+    return getPushDownRowLimit( executor, conditionPushedDown, Predicates.<Condition>alwaysTrue() );
+  }
+
+  /**
+   * @param supported filter for atomic conditions, the WHERE clause is only pushed down in full if all are supported
+   */
+  int getPushDownRowLimit( DataServiceExecutor executor, boolean conditionPushedDown,
+                           Predicate<Condition> supported ) {
+    // Service caches keep the output of the service transformation as its complete output
+    if ( !rowLimitPushDown || executor.getService().isServiceOutputCaptured() ) {
+      return 0;
+    }
+    // Applies to service rows before the query does
+    int rowLimit = executor.getServiceRowLimit();
+
+    SQL sql = executor.getSql();
+    SQLCondition where = sql.getWhereCondition();
+    boolean filteredAtSource = where == null || where.isEmpty()
+      || conditionPushedDown && isFullyMapped( where.getCondition(), supported );
+    if ( filteredAtSource && isAnsweredByFirstRows( sql ) ) {
+      rowLimit = minLimit( rowLimit, executor.getRowLimit() );
+      SQLLimit limitValues = sql.getLimitValues();
+      if ( limitValues != null ) {
+        long queryLimit = (long) limitValues.getLimit() + limitValues.getOffset();
+        rowLimit = minLimit( rowLimit, (int) Math.min( Integer.MAX_VALUE, queryLimit ) );
+      }
+    }
+    return rowLimit;
+  }
 
-    return handlePushDown( service, pushDownCondition, stepInterface );
+  private static boolean isAnsweredByFirstRows( SQL sql ) {
+    SQLFields selectFields = sql.getSelectFields();
+    return selectFields.getAggregateFields().isEmpty() && !selectFields.isDistinct()
+      && sql.getGroupFields().getFields().isEmpty()
+      && ( sql.getHavingCondition() == null || sql.getHavingCondition().isEmpty() )
+      && ( sql.getOrderFields() == null || sql.getOrderFields().isEmpty() );
+  }
+
+  private static int minLimit( int limit, int other ) {
+    if ( limit <= 0 ) {
+      return Math.max( other, 0 );
+    }
+    return other > 0 ? Math.min( limit, other ) : limit;
+  }
+
+  private boolean isFullyMapped( Condition condition, Predicate<Condition> supported ) {
+    if ( condition.isAtomic() ) {
+      for ( SourceTargetFields fieldMapping : fieldMappings ) {
+        if ( fieldMapping.getSourceFieldName().equals( condition.getLeftValuename() ) ) {
+          Condition mapped = (Condition) condition.clone();
+          mapped.setLeftValuename( fieldMapping.getTargetFieldName() );
+          return supported.apply( mapped );
+        }
+      }
+      return false;
+    }
+    for ( Condition child : condition.getChildren() ) {
+      if ( !isFullyMapped( child, supported ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Estimates the time to run the service transformation with this push down, from previous runs of the same step
+   */
+  @Override public Optional<Double> estimateCost( DataServiceExecutor executor, PushDownOptimizationMeta meta ) {
+    if ( getPushDownCondition( executor.getSql() ) == null ) {
+      return Optional.absent();
+    }
+    return serviceProvider.getLatency( executor.getServiceName(), meta.getStepName() );
+  }
+
+  private void recordLatency( final DataServiceExecutor executor, final String stepName ) {
+    final long start = System.currentTimeMillis();
+    executor.getServiceTrans().addTransListener( new TransAdapter() {
+      @Override public void transFinished( Trans trans ) throws KettleException {
+        // Runs stopped early, e.g. for a cache replay, do not reflect the cost of the query
+        if ( !trans.isStopped() && trans.getErrors() == 0 ) {
+          serviceProvider.recordLatency( executor.getServiceName(), stepName, System.currentTimeMillis() - start );
+        }
+      }
+    } );
   }
 
   @Override
   public OptimizationImpactInfo preview( DataServiceExecutor executor, StepInterface stepInterface ) {
     ParameterGenerationService service = serviceProvider.getService( stepInterface.getStepMeta() );
-    Condition pushDownCondition = getPushDownCondition( executor.getSql() );
+    Condition pushDownCondition = getPushDownCondition( executor.getSql(), supportedBy( service, stepInterface ) );
 
     return service.preview( pushDownCondition, this, stepInterface );
   }
@@ -202,7 +340,34 @@ public class ParameterGeneration extends StepOptimization {
     return true;
   }
 
+  private boolean handleRowLimit( ParameterGenerationService service, int rowLimit, StepInterface stepInterface ) {
+    if ( service == null || rowLimit <= 0 || stepInterface == null ) {
+      return false;
+    }
+    try {
+      return service.pushDownRowLimit( rowLimit, stepInterface );
+    } catch ( PushDownOptimizationException e ) {
+      return false;
+    }
+  }
+
+  private static Predicate<Condition> supportedBy( final ParameterGenerationService service,
+                                                  final StepInterface stepInterface ) {
+    if ( service == null || stepInterface == null ) {
+      return Predicates.alwaysTrue();
+    }
+    return new Predicate<Condition>() {
+      @Override public boolean apply( Condition condition ) {
+        return service.supportsCondition( condition, stepInterface.getStepMeta() );
+      }
+    };
+  }
+
   private Condition getPushDownCondition( SQL query ) {
+    return getPushDownCondition( query, Predicates.<Condition>alwaysTrue() );
+  }
+
+  private Condition getPushDownCondition( SQL query, Predicate<Condition> supported ) {
     // Get user query conditions
     Condition whereCondition;
     if ( query.getWhereCondition() != null ) {
@@ -212,7 +377,7 @@ public class ParameterGeneration extends StepOptimization {
     }
 
     // Attempt to map fields to where clause
-    Condition pushDownCondition = mapConditionFields( whereCondition );
+    Condition pushDownCondition = mapConditionFields( whereCondition, supported );
     if ( pushDownCondition == null || StringUtils.isBlank( getParameterName() ) ) {
       return null;
     }
@@ -229,6 +394,7 @@ public class ParameterGeneration extends StepOptimization {
     return Objects.toStringHelper( this )
       .add( "fieldMappings", fieldMappings )
       .add( "parameterName", parameterName )
+      .add( "rowLimitPushDown", rowLimitPushDown )
       .toString();
   }
 }
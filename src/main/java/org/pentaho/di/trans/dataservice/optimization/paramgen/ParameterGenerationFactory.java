@@ -37,6 +37,8 @@ import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.metaverse.api.ILineageClient;
 
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -45,7 +47,13 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public class ParameterGenerationFactory implements PushDownFactory {
 
+  /**
+   * Weight of the latest run in the moving average of pushed down query latency
+   */
+  static final double LATENCY_SMOOTHING = 0.3;
+
   private final List<ParameterGenerationServiceFactory> factories;
+  private final ConcurrentMap<String, Double> latencies = new ConcurrentHashMap<>();
   private ILineageClient lineageClient;
 
   public ParameterGenerationFactory( List<ParameterGenerationServiceFactory> factories ) {
@@ -72,6 +80,18 @@ public class ParameterGenerationFactory implements PushDownFactory {
     return new ParameterGeneration( this );
   }
 
+  public AggregatePushDown createAggregatePushDown() {
+    return new AggregatePushDown( this );
+  }
+
+  public OrderPushDown createOrderPushDown() {
+    return new OrderPushDown( this );
+  }
+
+  public ProjectionPushDown createProjectionPushDown() {
+    return new ProjectionPushDown( this );
+  }
+
   @Override public ParameterGenerationOverlay createOverlay() {
     return new ParameterGenerationOverlay( this );
   }
@@ -98,6 +118,29 @@ public class ParameterGenerationFactory implements PushDownFactory {
     return getFactory( stepMeta ).isPresent();
   }
 
+  /**
+   * Records how long a service transformation ran with a pushed down condition
+   *
+   * @param serviceName data service name
+   * @param stepName    optimized step
+   * @param millis      elapsed time of the service transformation
+   */
+  public void recordLatency( String serviceName, String stepName, long millis ) {
+    latencies.merge( latencyKey( serviceName, stepName ), (double) millis,
+      ( average, latest ) -> average + LATENCY_SMOOTHING * ( latest - average ) );
+  }
+
+  /**
+   * @return moving average of recorded latencies in milliseconds, or absent if no run was recorded
+   */
+  public Optional<Double> getLatency( String serviceName, String stepName ) {
+    return Optional.fromNullable( latencies.get( latencyKey( serviceName, stepName ) ) );
+  }
+
+  private static String latencyKey( String serviceName, String stepName ) {
+    return serviceName + '\u0000' + stepName;
+  }
+
   private Optional<ParameterGenerationServiceFactory> getFactory( final StepMeta stepMeta ) {
     return Iterables.tryFind( factories, new Predicate<ParameterGenerationServiceFactory>() {
       @Override public boolean apply( ParameterGenerationServiceFactory input ) {
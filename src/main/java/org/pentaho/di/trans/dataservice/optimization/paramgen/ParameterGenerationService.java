@@ -26,6 +26,7 @@ import org.pentaho.di.trans.dataservice.optimization.OptimizationImpactInfo;
 import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationException;
 import org.pentaho.di.core.Condition;
 import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
 
 /**
  * @author nhudak
@@ -36,4 +37,112 @@ public interface ParameterGenerationService {
   public String getParameterDefault();
 
   OptimizationImpactInfo preview( Condition pushDownCondition, ParameterGeneration parameterGeneration, StepInterface stepInterface );
+
+  /**
+   * Conditions that are not supported are left out of push downs where possible. The generated transformation always
+   * evaluates the full WHERE clause.
+   *
+   * @param condition atomic condition, on a field of the input step
+   * @param stepMeta  input step
+   * @return <code>true</code> if the condition can be pushed down to the step
+   */
+  default boolean supportsCondition( Condition condition, StepMeta stepMeta ) {
+    return true;
+  }
+
+  /**
+   * Limits the number of rows read by an input step, for queries that need no more than the first rows of the source
+   *
+   * @param rowLimit      maximum number of rows to read
+   * @param stepInterface input step
+   * @return <code>true</code> if the source will be limited
+   * @throws PushDownOptimizationException if the step can not be limited
+   */
+  default boolean pushDownRowLimit( int rowLimit, StepInterface stepInterface ) throws PushDownOptimizationException {
+    return false;
+  }
+
+  /**
+   * Groups and aggregates rows at the source, so that an input step reads one row per group
+   *
+   * @param aggregate     grouping and aggregate functions, by input column
+   * @param stepInterface input step
+   * @return <code>true</code> if the source will be aggregated
+   * @throws PushDownOptimizationException if the step can not be aggregated
+   */
+  default boolean pushDownAggregate( SqlAggregate aggregate, StepInterface stepInterface )
+    throws PushDownOptimizationException {
+    return false;
+  }
+
+  /**
+   * @param aggregate     grouping and aggregate functions, by input column
+   * @param stepInterface input step
+   * @return description of the aggregated input
+   */
+  default OptimizationImpactInfo previewAggregate( SqlAggregate aggregate, StepInterface stepInterface ) {
+    OptimizationImpactInfo info = new OptimizationImpactInfo( stepInterface.getStepname() );
+    info.setModified( false );
+    return info;
+  }
+
+  /**
+   * Reads only the columns of an input step that a query uses, the others are read as null
+   *
+   * @param projection    unused input columns
+   * @param stepInterface input step
+   * @return <code>true</code> if the source will be projected
+   * @throws PushDownOptimizationException if the step can not be projected
+   */
+  default boolean pushDownProjection( SqlProjection projection, StepInterface stepInterface )
+    throws PushDownOptimizationException {
+    return false;
+  }
+
+  /**
+   * @param projection    unused input columns
+   * @param stepInterface input step
+   * @return description of the projected input
+   */
+  default OptimizationImpactInfo previewProjection( SqlProjection projection, StepInterface stepInterface ) {
+    OptimizationImpactInfo info = new OptimizationImpactInfo( stepInterface.getStepname() );
+    info.setModified( false );
+    return info;
+  }
+
+  /**
+   * Asked before the generated transformation is built without a sort, so an ordering that is accepted here must not
+   * fail in {@link #pushDownOrder(SqlOrder, StepInterface)}
+   *
+   * @param order    ordering, by input column
+   * @param stepMeta input step
+   * @return <code>true</code> if the step can read its rows in the order of a query, see
+   * {@link #pushDownOrder(SqlOrder, StepInterface)}
+   */
+  default boolean supportsOrder( SqlOrder order, StepMeta stepMeta ) {
+    return false;
+  }
+
+  /**
+   * Reads the rows of an input step in the order of a query, so that the generated transformation does not sort them
+   *
+   * @param order         ordering, by input column
+   * @param stepInterface input step
+   * @return <code>true</code> if the source will be ordered
+   * @throws PushDownOptimizationException if the step can not be ordered
+   */
+  default boolean pushDownOrder( SqlOrder order, StepInterface stepInterface ) throws PushDownOptimizationException {
+    return false;
+  }
+
+  /**
+   * @param order         ordering, by input column
+   * @param stepInterface input step
+   * @return description of the ordered input
+   */
+  default OptimizationImpactInfo previewOrder( SqlOrder order, StepInterface stepInterface ) {
+    OptimizationImpactInfo info = new OptimizationImpactInfo( stepInterface.getStepname() );
+    info.setModified( false );
+    return info;
+  }
 }
@@ -0,0 +1,210 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.sql.IifFunction;
+import org.pentaho.di.core.sql.SQL;
+import org.pentaho.di.core.sql.SQLField;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.dataservice.DataServiceExecutor;
+import org.pentaho.di.trans.dataservice.DataServiceMeta;
+import org.pentaho.di.trans.dataservice.optimization.OptimizationImpactInfo;
+import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationException;
+import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
+import org.pentaho.di.trans.dataservice.optimization.SourceTargetFields;
+import org.pentaho.di.trans.dataservice.optimization.StepOptimization;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.metastore.persist.MetaStoreAttribute;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads only the input columns used by a query, the source returns null for all others.
+ * <p>
+ * Applies to services whose output is the unchanged output of an input step, see
+ * {@link AutoParameterGenerationService}. A column is used if the query names its field anywhere: in the select list,
+ * the WHERE clause, grouping, ordering or IIF functions. Queries with a HAVING clause read every column.
+ * </p>
+ */
+public class ProjectionPushDown extends StepOptimization {
+
+  public static final String TYPE_NAME = "Projection Push Down";
+  public static final String PUSH_DOWN_FIELD_MAPPINGS = "field_mappings";
+
+  /**
+   * Service field (source) to input column (target), for every field of the service
+   */
+  @MetaStoreAttribute( key = PUSH_DOWN_FIELD_MAPPINGS )
+  private List<SourceTargetFields> fieldMappings = new ArrayList<SourceTargetFields>();
+
+  protected ParameterGenerationFactory serviceProvider;
+
+  public ProjectionPushDown( ParameterGenerationFactory serviceProvider ) {
+    this.serviceProvider = serviceProvider;
+  }
+
+  public List<SourceTargetFields> getFieldMappings() {
+    return fieldMappings;
+  }
+
+  public SourceTargetFields createFieldMapping( String source, String target ) {
+    SourceTargetFields mapping = new SourceTargetFields( source, target );
+    fieldMappings.add( mapping );
+    return mapping;
+  }
+
+  @Override public void init( TransMeta transMeta, DataServiceMeta dataService, PushDownOptimizationMeta optMeta ) {
+    fieldMappings = Lists.newArrayList( Iterables.filter( fieldMappings, SourceTargetFields.IS_DEFINED ) );
+  }
+
+  @Override protected boolean activate( DataServiceExecutor executor, StepInterface stepInterface ) {
+    ParameterGenerationService service = serviceProvider.getService( stepInterface.getStepMeta() );
+    if ( service == null || executor.getService().isServiceOutputCaptured() ) {
+      return false;
+    }
+    Optional<SqlProjection> projection = createProjection( executor.getSql() );
+    try {
+      return projection.isPresent() && service.pushDownProjection( projection.get(), stepInterface );
+    } catch ( PushDownOptimizationException e ) {
+      return false;
+    }
+  }
+
+  @Override protected OptimizationImpactInfo preview( DataServiceExecutor executor, StepInterface stepInterface ) {
+    Optional<SqlProjection> projection = createProjection( executor.getSql() );
+    ParameterGenerationService service = serviceProvider.getService( stepInterface.getStepMeta() );
+    if ( !projection.isPresent() || service == null ) {
+      OptimizationImpactInfo info = new OptimizationImpactInfo( stepInterface.getStepname() );
+      info.setModified( false );
+      return info;
+    }
+    return service.previewProjection( projection.get(), stepInterface );
+  }
+
+  /**
+   * Finds the input columns a query does not use
+   *
+   * @param sql query
+   * @return projection of the input, or absent if every column must be read
+   */
+  Optional<SqlProjection> createProjection( SQL sql ) {
+    if ( sql.getHavingCondition() != null && !sql.getHavingCondition().isEmpty() ) {
+      return Optional.absent();
+    }
+    Map<String, String> columns = Maps.newHashMap();
+    for ( SourceTargetFields fieldMapping : fieldMappings ) {
+      columns.put( fieldMapping.getSourceFieldName(), fieldMapping.getTargetFieldName() );
+    }
+    RowMetaInterface serviceFields = sql.getRowMeta();
+    if ( !columns.keySet().containsAll( Arrays.asList( serviceFields.getFieldNames() ) ) ) {
+      return Optional.absent();
+    }
+
+    Set<String> usedFields = getUsedFields( sql );
+    List<String> inputColumns = Lists.newArrayListWithCapacity( serviceFields.size() );
+    Map<String, ValueMetaInterface> unusedColumns = Maps.newLinkedHashMap();
+    for ( ValueMetaInterface valueMeta : serviceFields.getValueMetaList() ) {
+      String column = columns.get( valueMeta.getName() );
+      inputColumns.add( column );
+      if ( !usedFields.contains( valueMeta.getName() ) ) {
+        unusedColumns.put( column, valueMeta );
+      }
+    }
+    return unusedColumns.isEmpty() ? Optional.<SqlProjection>absent()
+      : Optional.of( new SqlProjection( inputColumns, unusedColumns.keySet(), unusedColumns ) );
+  }
+
+  /**
+   * @return names of all service fields the generated transformation may read
+   */
+  private static Set<String> getUsedFields( SQL sql ) {
+    Set<String> names = Sets.newHashSet();
+    List<SQLField> fields = Lists.newArrayList( sql.getSelectFields().getFields() );
+    fields.addAll( sql.getGroupFields().getFields() );
+    if ( sql.getOrderFields() != null ) {
+      fields.addAll( sql.getOrderFields().getFields() );
+    }
+    RowMetaInterface serviceFields = sql.getRowMeta();
+    for ( SQLField field : fields ) {
+      names.add( field.getField() );
+      if ( field.getValueMeta() != null ) {
+        names.add( field.getValueMeta().getName() );
+      }
+      if ( "*".equals( field.getField() ) ) {
+        names.addAll( Arrays.asList( serviceFields.getFieldNames() ) );
+      }
+      if ( field.isCountStar() && serviceFields.size() > 0 ) {
+        // The generated transformation counts rows on the first field
+        names.add( serviceFields.getValueMeta( 0 ).getName() );
+      }
+      IifFunction iif = field.getIif();
+      if ( iif != null ) {
+        addConditionFields( iif.getSqlCondition().getCondition(), names );
+        if ( iif.isTrueField() ) {
+          names.add( iif.getTrueValueString() );
+        }
+        if ( iif.isFalseField() ) {
+          names.add( iif.getFalseValueString() );
+        }
+      }
+    }
+    if ( sql.getWhereCondition() != null && sql.getWhereCondition().getCondition() != null ) {
+      addConditionFields( sql.getWhereCondition().getCondition(), names );
+    }
+    return names;
+  }
+
+  private static void addConditionFields( Condition condition, Set<String> names ) {
+    if ( condition.isAtomic() ) {
+      if ( condition.getLeftValuename() != null ) {
+        names.add( condition.getLeftValuename() );
+      }
+      if ( condition.getRightValuename() != null ) {
+        names.add( condition.getRightValuename() );
+      }
+    } else {
+      for ( Condition child : condition.getChildren() ) {
+        addConditionFields( child, names );
+      }
+    }
+  }
+
+  @Override public String toString() {
+    return Objects.toStringHelper( this )
+      .add( "fieldMappings", fieldMappings )
+      .toString();
+  }
+}
@@ -0,0 +1,235 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import org.pentaho.di.core.database.DatabaseInterface;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.H2DatabaseMeta;
+import org.pentaho.di.core.database.MSSQLServerDatabaseMeta;
+import org.pentaho.di.core.database.MySQLDatabaseMeta;
+import org.pentaho.di.core.database.PostgreSQLDatabaseMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Rewrites an input query to return one row per group, with aggregated values in place of the detail columns.
+ * <p>
+ * The query is wrapped in a derived table and keeps all of its columns, in the same order. Columns that are neither
+ * grouped nor aggregated take the minimum value of each group, so that steps reading the input still find them.
+ * Sums, averages and counts are cast back to the type of their column, as databases widen them and the input step
+ * reads the type reported by the database.
+ * </p>
+ */
+public final class SqlAggregate {
+  static final String ALIAS = "DATA_SERVICE_AGGREGATE";
+
+  public enum Function {
+    SUM, MIN, MAX, AVG, COUNT,
+    /**
+     * Number of rows in each group, COUNT(*)
+     */
+    COUNT_ROWS;
+
+    String apply( String column ) {
+      return this == COUNT_ROWS ? "COUNT(*)" : name() + "(" + column + ")";
+    }
+  }
+
+  private final ImmutableList<String> columns;
+  private final ImmutableSet<String> groupColumns;
+  private final ImmutableMap<String, Function> aggregates;
+  private final ImmutableMap<String, ValueMetaInterface> types;
+
+  /**
+   * @param columns      all columns of the input query, in order
+   * @param groupColumns columns to group by
+   * @param aggregates   function to apply to each aggregated column
+   * @param types        type of the service field read from each column
+   */
+  SqlAggregate( List<String> columns, Collection<String> groupColumns, Map<String, Function> aggregates,
+                Map<String, ValueMetaInterface> types ) {
+    this.columns = ImmutableList.copyOf( columns );
+    this.groupColumns = ImmutableSet.copyOf( groupColumns );
+    this.aggregates = ImmutableMap.copyOf( aggregates );
+    this.types = ImmutableMap.copyOf( types );
+    checkArgument( this.columns.containsAll( this.groupColumns ), "Unknown group columns %s", groupColumns );
+    checkArgument( this.columns.containsAll( this.aggregates.keySet() ), "Unknown aggregate columns %s", aggregates );
+    checkArgument( this.types.keySet().containsAll( this.columns ), "Missing column types %s", types );
+  }
+
+  public List<String> getColumns() {
+    return columns;
+  }
+
+  public ImmutableSet<String> getGroupColumns() {
+    return groupColumns;
+  }
+
+  public ImmutableMap<String, Function> getAggregates() {
+    return aggregates;
+  }
+
+  public ValueMetaInterface getType( String column ) {
+    return types.get( column );
+  }
+
+  /**
+   * @param databaseMeta database connection
+   * @param sql          input query
+   * @return <code>true</code> if the query can be used as a derived table
+   */
+  static boolean isSupported( DatabaseMeta databaseMeta, String sql ) {
+    // SQL Server rejects ORDER BY in a derived table without TOP
+    return !( databaseMeta.getDatabaseInterface() instanceof MSSQLServerDatabaseMeta
+      && SqlRowLimit.ORDER_BY.matcher( sql ).find() );
+  }
+
+  /**
+   * Checks that the database produces the same groups and values as the generated transformation.
+   * <p>
+   * Strings are grouped and ordered by the collation of the database, which may e.g. ignore case. String group keys
+   * are only pushed down where strings are equal only if their characters are, and minimums and maximums of strings
+   * only where they are also ordered by their characters. Sums, averages and counts must be cast to their column's
+   * type.
+   * </p>
+   *
+   * @param databaseMeta database connection
+   * @return <code>true</code> if the aggregate can be pushed down to the database
+   */
+  boolean isReproducible( DatabaseMeta databaseMeta ) {
+    DatabaseInterface databaseInterface = databaseMeta.getDatabaseInterface();
+    boolean binaryOrder = databaseInterface instanceof H2DatabaseMeta;
+    // Deterministic collations only treat strings with the same bytes as equal
+    boolean binaryEquality = binaryOrder || databaseInterface instanceof PostgreSQLDatabaseMeta;
+    for ( String column : columns ) {
+      ValueMetaInterface type = types.get( column );
+      Function function = aggregates.get( column );
+      if ( groupColumns.contains( column ) ) {
+        if ( type.isString() && !binaryEquality ) {
+          return false;
+        }
+      } else if ( function == null || isOrdered( function ) ) {
+        // Columns that are not aggregated are not read, their minimum may be any value of the group
+        if ( function != null && type.isString() && !binaryOrder ) {
+          return false;
+        }
+      } else if ( castType( databaseMeta, type ) == null ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isOrdered( Function function ) {
+    return function == Function.MIN || function == Function.MAX;
+  }
+
+  /**
+   * @param databaseMeta database connection
+   * @param valueMeta    type of a service field
+   * @return type to cast an aggregate of the field to, so that it is read back with the field's type, or null if
+   * there is none
+   */
+  static String castType( DatabaseMeta databaseMeta, ValueMetaInterface valueMeta ) {
+    if ( databaseMeta.getDatabaseInterface() instanceof MySQLDatabaseMeta ) {
+      // MySQL casts to a few types only, DOUBLE requires version 8.0.17
+      switch ( valueMeta.getType() ) {
+        case ValueMetaInterface.TYPE_INTEGER:
+          return "SIGNED";
+        case ValueMetaInterface.TYPE_BIGNUMBER:
+          return "DECIMAL(65, 30)";
+        default:
+          return null;
+      }
+    }
+    ValueMetaInterface target = valueMeta.clone();
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        // Wide enough for the sum of any integer column, while still read as an integer
+        target.setLength( 18, 0 );
+        break;
+      case ValueMetaInterface.TYPE_NUMBER:
+        target.setLength( -1, -1 );
+        break;
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        target.setLength( 38, valueMeta.getPrecision() > 0 ? valueMeta.getPrecision() : 10 );
+        break;
+      default:
+        return null;
+    }
+    String definition = databaseMeta.getFieldDefinition( target, null, null, false, false, false );
+    return Strings.emptyToNull( Strings.nullToEmpty( definition ).trim() );
+  }
+
+  /**
+   * @param databaseMeta database connection
+   * @param sql          input query
+   * @return aggregated query
+   * @see #isReproducible(DatabaseMeta)
+   */
+  String apply( DatabaseMeta databaseMeta, String sql ) {
+    String query = SqlRowLimit.TRAILING_SEMICOLON.matcher( sql ).replaceFirst( "" );
+    List<String> select = Lists.newArrayListWithCapacity( columns.size() );
+    List<String> groupBy = Lists.newArrayListWithCapacity( groupColumns.size() );
+    for ( String column : columns ) {
+      String quoted = databaseMeta.quoteField( column );
+      if ( groupColumns.contains( column ) ) {
+        select.add( quoted );
+        groupBy.add( quoted );
+      } else {
+        Function function = aggregates.containsKey( column ) ? aggregates.get( column ) : Function.MIN;
+        String value = function.apply( quoted );
+        if ( !isOrdered( function ) ) {
+          value = "CAST(" + value + " AS " + castType( databaseMeta, types.get( column ) ) + ")";
+        }
+        select.add( value + " AS " + quoted );
+      }
+    }
+    StringBuilder builder = new StringBuilder( "SELECT " );
+    Joiner.on( ", " ).appendTo( builder, select );
+    builder.append( " FROM ( " ).append( query ).append( " ) " ).append( ALIAS );
+    if ( !groupBy.isEmpty() ) {
+      Joiner.on( ", " ).appendTo( builder.append( " GROUP BY " ), groupBy );
+    }
+    return builder.toString();
+  }
+
+  @Override public String toString() {
+    return Objects.toStringHelper( this )
+      .add( "groupColumns", groupColumns )
+      .add( "aggregates", aggregates )
+      .toString();
+  }
+}
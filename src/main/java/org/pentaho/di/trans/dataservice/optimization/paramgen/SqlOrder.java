@@ -0,0 +1,115 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.pentaho.di.core.database.DatabaseInterface;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.H2DatabaseMeta;
+import org.pentaho.di.core.database.MSSQLServerDatabaseMeta;
+import org.pentaho.di.core.database.MySQLDatabaseMeta;
+import org.pentaho.di.core.database.OracleDatabaseMeta;
+import org.pentaho.di.core.database.PostgreSQLDatabaseMeta;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Rewrites an input query to return its rows in the order of a data service query.
+ * <p>
+ * The query is wrapped in a derived table and ordered by input columns. Kettle sorts null values before all others,
+ * as MySQL and SQL Server do. Oracle, PostgreSQL and H2 are told where nulls belong, other databases are not
+ * supported.
+ * </p>
+ */
+public final class SqlOrder {
+  static final String ALIAS = "DATA_SERVICE_ORDER";
+
+  private final ImmutableMap<String, Boolean> columns;
+
+  /**
+   * @param columns input columns to order by, in order, each mapped to <code>true</code> if ascending
+   */
+  SqlOrder( Map<String, Boolean> columns ) {
+    this.columns = ImmutableMap.copyOf( columns );
+    checkArgument( !this.columns.isEmpty(), "No columns to order by" );
+  }
+
+  public ImmutableMap<String, Boolean> getColumns() {
+    return columns;
+  }
+
+  /**
+   * @param databaseMeta database connection
+   * @param sql          input query
+   * @return <code>true</code> if the query can be ordered like Kettle would sort its rows
+   */
+  static boolean isSupported( DatabaseMeta databaseMeta, String sql ) {
+    DatabaseInterface dialect = databaseMeta.getDatabaseInterface();
+    if ( dialect instanceof MSSQLServerDatabaseMeta ) {
+      // SQL Server rejects ORDER BY in a derived table without TOP
+      return !SqlRowLimit.ORDER_BY.matcher( sql ).find();
+    }
+    return dialect instanceof MySQLDatabaseMeta || explicitNulls( dialect );
+  }
+
+  /**
+   * @param databaseMeta database connection
+   * @param sql          input query
+   * @return ordered query
+   */
+  String apply( DatabaseMeta databaseMeta, String sql ) {
+    String query = SqlRowLimit.TRAILING_SEMICOLON.matcher( sql ).replaceFirst( "" );
+    boolean explicitNulls = explicitNulls( databaseMeta.getDatabaseInterface() );
+    List<String> orderBy = Lists.newArrayListWithCapacity( columns.size() );
+    for ( Map.Entry<String, Boolean> column : columns.entrySet() ) {
+      StringBuilder term = new StringBuilder( databaseMeta.quoteField( column.getKey() ) );
+      term.append( column.getValue() ? " ASC" : " DESC" );
+      if ( explicitNulls ) {
+        term.append( column.getValue() ? " NULLS FIRST" : " NULLS LAST" );
+      }
+      orderBy.add( term.toString() );
+    }
+    StringBuilder builder = new StringBuilder( "SELECT * FROM ( " ).append( query ).append( " ) " ).append( ALIAS );
+    return Joiner.on( ", " ).appendTo( builder.append( " ORDER BY " ), orderBy ).toString();
+  }
+
+  /**
+   * Databases that accept NULLS FIRST and NULLS LAST, and may otherwise not sort nulls like Kettle
+   */
+  private static boolean explicitNulls( DatabaseInterface dialect ) {
+    return dialect instanceof OracleDatabaseMeta || dialect instanceof PostgreSQLDatabaseMeta
+      || dialect instanceof H2DatabaseMeta;
+  }
+
+  @Override public String toString() {
+    return Objects.toStringHelper( this )
+      .add( "columns", columns )
+      .toString();
+  }
+}
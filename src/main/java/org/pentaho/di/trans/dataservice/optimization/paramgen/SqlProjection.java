@@ -0,0 +1,161 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Rewrites an input query to select only the columns a data service query uses.
+ * <p>
+ * A plain <code>SELECT * FROM</code> query has its select list replaced, any other query is wrapped in a derived
+ * table. Unused columns are not read from the database at all. Steps reading the input still expect every column, so
+ * rows read from the projected query are restored to the layout of the input query, with null values of the service
+ * field's type in place of the unused columns.
+ * </p>
+ */
+public final class SqlProjection {
+  static final String ALIAS = "DATA_SERVICE_PROJECTION";
+
+  private static final Pattern SELECT_ALL =
+    Pattern.compile( "^\\s*SELECT\\s+\\*\\s+FROM\\s", Pattern.CASE_INSENSITIVE );
+  private static final Pattern SET_OPERATION =
+    Pattern.compile( "\\b(UNION|INTERSECT|EXCEPT|MINUS)\\b", Pattern.CASE_INSENSITIVE );
+
+  private final ImmutableList<String> columns;
+  private final ImmutableSet<String> unusedColumns;
+  private final ImmutableMap<String, ValueMetaInterface> types;
+
+  /**
+   * @param columns       all columns of the input query, in order
+   * @param unusedColumns columns to leave out of the query
+   * @param types         type of the service field read from each unused column
+   */
+  SqlProjection( List<String> columns, Collection<String> unusedColumns, Map<String, ValueMetaInterface> types ) {
+    this.columns = ImmutableList.copyOf( columns );
+    this.unusedColumns = ImmutableSet.copyOf( unusedColumns );
+    this.types = ImmutableMap.copyOf( types );
+    checkArgument( this.columns.containsAll( this.unusedColumns ), "Unknown columns %s", unusedColumns );
+    checkArgument( this.types.keySet().containsAll( this.unusedColumns ), "Missing column types %s", types );
+  }
+
+  public List<String> getColumns() {
+    return columns;
+  }
+
+  public ImmutableSet<String> getUnusedColumns() {
+    return unusedColumns;
+  }
+
+  /**
+   * @param databaseMeta database connection
+   * @param sql          input query
+   * @return <code>true</code> if the select list of the query can be replaced, or the query used as a derived table
+   */
+  static boolean isSupported( DatabaseMeta databaseMeta, String sql ) {
+    return isSelectAll( sql ) || SqlAggregate.isSupported( databaseMeta, sql );
+  }
+
+  /**
+   * A set operation would still select every column in its other queries
+   */
+  private static boolean isSelectAll( String sql ) {
+    return SELECT_ALL.matcher( sql ).find() && !SET_OPERATION.matcher( sql ).find();
+  }
+
+  /**
+   * @param databaseMeta database connection
+   * @param sql          input query
+   * @return projected query
+   */
+  String apply( DatabaseMeta databaseMeta, String sql ) {
+    String query = SqlRowLimit.TRAILING_SEMICOLON.matcher( sql ).replaceFirst( "" );
+    List<String> select = Lists.newArrayListWithCapacity( columns.size() );
+    for ( String column : columns ) {
+      if ( !unusedColumns.contains( column ) ) {
+        select.add( databaseMeta.quoteField( column ) );
+      }
+    }
+    StringBuilder builder = new StringBuilder( "SELECT " );
+    Joiner.on( ", " ).appendTo( builder, select );
+    if ( isSelectAll( query ) ) {
+      return builder.append( query.substring( query.indexOf( '*' ) + 1 ) ).toString();
+    }
+    return builder.append( " FROM ( " ).append( query ).append( " ) " ).append( ALIAS ).toString();
+  }
+
+  /**
+   * @param rowMeta columns read from the projected query
+   * @return columns of the input query
+   */
+  RowMetaInterface restoreRowMeta( RowMetaInterface rowMeta ) {
+    RowMetaInterface restored = new RowMeta();
+    int index = 0;
+    for ( String column : columns ) {
+      if ( unusedColumns.contains( column ) ) {
+        ValueMetaInterface valueMeta = types.get( column ).clone();
+        valueMeta.setName( column );
+        restored.addValueMeta( valueMeta );
+      } else {
+        restored.addValueMeta( rowMeta.getValueMeta( index++ ) );
+      }
+    }
+    return restored;
+  }
+
+  /**
+   * @param row row read from the projected query
+   * @return row of the input query, with null values for the unused columns
+   */
+  Object[] restoreRow( Object[] row ) {
+    Object[] restored = new Object[ columns.size() ];
+    int index = 0;
+    for ( int i = 0; i < restored.length; i++ ) {
+      if ( !unusedColumns.contains( columns.get( i ) ) ) {
+        restored[ i ] = row[ index++ ];
+      }
+    }
+    return restored;
+  }
+
+  @Override public String toString() {
+    return Objects.toStringHelper( this )
+      .add( "unusedColumns", unusedColumns )
+      .toString();
+  }
+}
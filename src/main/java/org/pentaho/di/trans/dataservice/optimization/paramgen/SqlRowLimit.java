@@ -0,0 +1,96 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import org.pentaho.di.core.database.AS400DatabaseMeta;
+import org.pentaho.di.core.database.DB2DatabaseMeta;
+import org.pentaho.di.core.database.DatabaseInterface;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.DerbyDatabaseMeta;
+import org.pentaho.di.core.database.MSSQLServerDatabaseMeta;
+import org.pentaho.di.core.database.OracleDatabaseMeta;
+
+import java.util.regex.Pattern;
+
+/**
+ * Rewrites a query to return at most a number of rows, in the syntax of its database.
+ * <p>
+ * The query is wrapped in a derived table, so that any limit it already has still applies. Oracle is limited with
+ * ROWNUM, SQL Server with TOP, DB2, AS/400 and Derby with FETCH FIRST, and every other database with the limit clause
+ * of its Kettle dialect, if it has one.
+ * </p>
+ */
+final class SqlRowLimit {
+  static final String ALIAS = "DATA_SERVICE_LIMIT";
+
+  static final Pattern ORDER_BY = Pattern.compile( "\\bORDER\\s+BY\\b", Pattern.CASE_INSENSITIVE );
+
+  static final Pattern TRAILING_SEMICOLON = Pattern.compile( "[\\s;]+$" );
+
+  private SqlRowLimit() {
+  }
+
+  /**
+   * @param databaseMeta database connection
+   * @return <code>true</code> if queries against the database can be limited
+   */
+  static boolean isSupported( DatabaseMeta databaseMeta ) {
+    DatabaseInterface dialect = databaseMeta.getDatabaseInterface();
+    return dialect instanceof OracleDatabaseMeta || dialect instanceof MSSQLServerDatabaseMeta || fetchFirst( dialect )
+      || !Strings.isNullOrEmpty( databaseMeta.getLimitClause( 1 ) );
+  }
+
+  /**
+   * @param databaseMeta database connection
+   * @param sql          query to limit
+   * @param rowLimit     maximum number of rows
+   * @return limited query, or absent if the query can not be limited
+   */
+  static Optional<String> limit( DatabaseMeta databaseMeta, String sql, int rowLimit ) {
+    String query = TRAILING_SEMICOLON.matcher( sql ).replaceFirst( "" );
+    DatabaseInterface dialect = databaseMeta.getDatabaseInterface();
+    if ( dialect instanceof OracleDatabaseMeta ) {
+      return Optional.of( "SELECT * FROM ( " + query + " ) WHERE ROWNUM <= " + rowLimit );
+    }
+    if ( dialect instanceof MSSQLServerDatabaseMeta ) {
+      // SQL Server rejects ORDER BY in a derived table without TOP
+      return ORDER_BY.matcher( query ).find() ? Optional.<String>absent()
+        : Optional.of( "SELECT TOP " + rowLimit + " * FROM ( " + query + " ) " + ALIAS );
+    }
+    if ( fetchFirst( dialect ) ) {
+      return Optional.of( "SELECT * FROM ( " + query + " ) " + ALIAS + " FETCH FIRST " + rowLimit + " ROWS ONLY" );
+    }
+    String limitClause = databaseMeta.getLimitClause( rowLimit );
+    if ( Strings.isNullOrEmpty( limitClause ) ) {
+      return Optional.absent();
+    }
+    return Optional.of( "SELECT * FROM ( " + query + " ) " + ALIAS + " " + limitClause.trim() );
+  }
+
+  private static boolean fetchFirst( DatabaseInterface dialect ) {
+    return dialect instanceof DB2DatabaseMeta || dialect instanceof AS400DatabaseMeta
+      || dialect instanceof DerbyDatabaseMeta;
+  }
+}
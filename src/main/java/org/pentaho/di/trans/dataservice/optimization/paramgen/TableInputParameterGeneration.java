@@ -27,12 +27,20 @@ import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationExcepti
 import org.pentaho.di.trans.dataservice.optimization.ValueMetaResolver;
 import org.apache.commons.lang.StringUtils;
 import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.database.DatabaseInterface;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.H2DatabaseMeta;
+import org.pentaho.di.core.database.MSSQLServerDatabaseMeta;
+import org.pentaho.di.core.database.OracleDatabaseMeta;
+import org.pentaho.di.core.database.PostgreSQLDatabaseMeta;
+import org.pentaho.di.core.database.SybaseDatabaseMeta;
+import org.pentaho.di.core.database.SybaseIQDatabaseMeta;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.ValueMetaAndData;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.steps.tableinput.TableInput;
 import org.pentaho.di.trans.steps.tableinput.TableInputData;
 import org.pentaho.di.trans.steps.tableinput.TableInputMeta;
@@ -40,12 +48,27 @@ import org.pentaho.di.trans.steps.tableinput.TableInputMeta;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * @author nhudak
  */
 public class TableInputParameterGeneration implements ParameterGenerationService {
 
+  /**
+   * Longer IN lists are bound as is, padding stays below limits such as Oracle's 1000 expressions
+   */
+  static final int MAX_PADDED_IN_LIST = 512;
+
+  /**
+   * Escapes wildcards in LIKE patterns built from CONTAINS, STARTS WITH and ENDS WITH. Brackets are only escaped where
+   * they are wildcards, other databases such as Oracle reject escaping anything but wildcards and the escape itself.
+   */
+  static final char LIKE_ESCAPE = '!';
+  private static final String LIKE_SPECIAL_CHARS = "!%_";
+  private static final String BRACKET_LIKE_SPECIAL_CHARS = LIKE_SPECIAL_CHARS + "[";
+
   private final ValueMetaResolver valueMetaResolver;
   protected DatabaseMeta dbMeta;
 
@@ -120,6 +143,147 @@ public class TableInputParameterGeneration implements ParameterGenerationService
     tableInput.db = db;
   }
 
+  @Override
+  public boolean pushDownRowLimit( int rowLimit, StepInterface stepInterface ) throws PushDownOptimizationException {
+    TableInputData tableInput = getTableInputData( stepInterface );
+    boolean wrapped = tableInput.db instanceof DatabaseWrapper;
+    DatabaseWrapper db = getDatabaseWrapper( stepInterface );
+    if ( !SqlRowLimit.isSupported( db.getDatabaseMeta() ) ) {
+      return false;
+    }
+    if ( !wrapped ) {
+      verifyDbConnection( db );
+    }
+    db.setRowLimit( rowLimit );
+    tableInput.db = db;
+    return true;
+  }
+
+  @Override
+  public boolean pushDownAggregate( SqlAggregate aggregate, StepInterface stepInterface )
+    throws PushDownOptimizationException {
+    TableInputData tableInput = getTableInputData( stepInterface );
+    boolean wrapped = tableInput.db instanceof DatabaseWrapper;
+    DatabaseWrapper db = getDatabaseWrapper( stepInterface );
+    if ( !SqlAggregate.isSupported( db.getDatabaseMeta(), getSQL( stepInterface ) )
+      || !aggregate.isReproducible( db.getDatabaseMeta() ) ) {
+      return false;
+    }
+    if ( !wrapped ) {
+      verifyDbConnection( db );
+    }
+    db.setAggregate( aggregate );
+    tableInput.db = db;
+    return true;
+  }
+
+  @Override
+  public OptimizationImpactInfo previewAggregate( SqlAggregate aggregate, StepInterface stepInterface ) {
+    OptimizationImpactInfo optimizationInfo = new OptimizationImpactInfo( stepInterface.getStepname() );
+    try {
+      String sql = getSQL( stepInterface );
+      optimizationInfo.setQueryBeforeOptimization( sql );
+      DatabaseMeta databaseMeta = getDatabaseWrapper( stepInterface ).getDatabaseMeta();
+      if ( SqlAggregate.isSupported( databaseMeta, sql ) && aggregate.isReproducible( databaseMeta ) ) {
+        optimizationInfo.setQueryAfterOptimization( aggregate.apply( databaseMeta, sql ) );
+        optimizationInfo.setModified( true );
+      } else {
+        optimizationInfo.setModified( false );
+      }
+    } catch ( PushDownOptimizationException e ) {
+      optimizationInfo.setModified( false );
+      optimizationInfo.setErrorMsg( e );
+    }
+    return optimizationInfo;
+  }
+
+  @Override
+  public boolean pushDownProjection( SqlProjection projection, StepInterface stepInterface )
+    throws PushDownOptimizationException {
+    TableInputData tableInput = getTableInputData( stepInterface );
+    boolean wrapped = tableInput.db instanceof DatabaseWrapper;
+    DatabaseWrapper db = getDatabaseWrapper( stepInterface );
+    if ( !SqlProjection.isSupported( db.getDatabaseMeta(), getSQL( stepInterface ) ) ) {
+      return false;
+    }
+    if ( !wrapped ) {
+      verifyDbConnection( db );
+    }
+    db.setProjection( projection );
+    tableInput.db = db;
+    return true;
+  }
+
+  @Override
+  public OptimizationImpactInfo previewProjection( SqlProjection projection, StepInterface stepInterface ) {
+    OptimizationImpactInfo optimizationInfo = new OptimizationImpactInfo( stepInterface.getStepname() );
+    try {
+      String sql = getSQL( stepInterface );
+      optimizationInfo.setQueryBeforeOptimization( sql );
+      DatabaseMeta databaseMeta = getDatabaseWrapper( stepInterface ).getDatabaseMeta();
+      if ( SqlProjection.isSupported( databaseMeta, sql ) ) {
+        optimizationInfo.setQueryAfterOptimization( projection.apply( databaseMeta, sql ) );
+        optimizationInfo.setModified( true );
+      } else {
+        optimizationInfo.setModified( false );
+      }
+    } catch ( PushDownOptimizationException e ) {
+      optimizationInfo.setModified( false );
+      optimizationInfo.setErrorMsg( e );
+    }
+    return optimizationInfo;
+  }
+
+  @Override public boolean supportsOrder( SqlOrder order, StepMeta stepMeta ) {
+    if ( !( stepMeta.getStepMetaInterface() instanceof TableInputMeta ) ) {
+      return false;
+    }
+    TableInputMeta tableInputMeta = (TableInputMeta) stepMeta.getStepMetaInterface();
+    return tableInputMeta.getDatabaseMeta() != null && isOrderSupported( tableInputMeta,
+      tableInputMeta.getDatabaseMeta() );
+  }
+
+  @Override
+  public boolean pushDownOrder( SqlOrder order, StepInterface stepInterface ) throws PushDownOptimizationException {
+    TableInputData tableInput = getTableInputData( stepInterface );
+    boolean wrapped = tableInput.db instanceof DatabaseWrapper;
+    DatabaseWrapper db = getDatabaseWrapper( stepInterface );
+    if ( !isOrderSupported( getTableInputMeta( stepInterface ), db.getDatabaseMeta() ) ) {
+      return false;
+    }
+    if ( !wrapped ) {
+      verifyDbConnection( db );
+    }
+    db.setOrder( order );
+    tableInput.db = db;
+    return true;
+  }
+
+  @Override
+  public OptimizationImpactInfo previewOrder( SqlOrder order, StepInterface stepInterface ) {
+    OptimizationImpactInfo optimizationInfo = new OptimizationImpactInfo( stepInterface.getStepname() );
+    try {
+      String sql = getSQL( stepInterface );
+      optimizationInfo.setQueryBeforeOptimization( sql );
+      DatabaseMeta databaseMeta = getDatabaseWrapper( stepInterface ).getDatabaseMeta();
+      if ( isOrderSupported( getTableInputMeta( stepInterface ), databaseMeta ) ) {
+        optimizationInfo.setQueryAfterOptimization( order.apply( databaseMeta, sql ) );
+        optimizationInfo.setModified( true );
+      } else {
+        optimizationInfo.setModified( false );
+      }
+    } catch ( PushDownOptimizationException e ) {
+      optimizationInfo.setModified( false );
+      optimizationInfo.setErrorMsg( e );
+    }
+    return optimizationInfo;
+  }
+
+  private static boolean isOrderSupported( TableInputMeta tableInputMeta, DatabaseMeta databaseMeta ) {
+    // A query executed for each input row is only ordered within each execution
+    return !tableInputMeta.isExecuteEachInputRow() && SqlOrder.isSupported( databaseMeta, tableInputMeta.getSQL() );
+  }
+
   private void verifyDbConnection( DatabaseWrapper db ) throws PushDownOptimizationException {
     try {
       db.connect();
@@ -152,14 +316,17 @@ public class TableInputParameterGeneration implements ParameterGenerationService
   }
 
   private String getSQL( StepInterface stepInterface ) throws PushDownOptimizationException {
+    return getTableInputMeta( stepInterface ).getSQL();
+  }
+
+  private TableInputMeta getTableInputMeta( StepInterface stepInterface ) throws PushDownOptimizationException {
     TableInput tableInput;
     if ( stepInterface instanceof TableInput ) {
       tableInput = (TableInput) stepInterface;
     } else {
       throw new PushDownOptimizationException( "Unable to push down to push down to type " + stepInterface.getClass() );
     }
-    final TableInputMeta tableInputMeta = (TableInputMeta) tableInput.getStepMeta().getStepMetaInterface();
-    return tableInputMeta.getSQL();
+    return (TableInputMeta) tableInput.getStepMeta().getStepMetaInterface();
   }
 
   protected void convertCondition( Condition condition, StringBuilder builder, RowMeta paramsMeta, List<Object> params )
@@ -184,6 +351,150 @@ public class TableInputParameterGeneration implements ParameterGenerationService
     }
   }
 
+  /**
+   * String matching functions are pushed down for string fields only. Regular expressions also need a database with
+   * a regular expression operator, and must be portable to it.
+   */
+  @Override public boolean supportsCondition( Condition condition, StepMeta stepMeta ) {
+    switch ( condition.getFunction() ) {
+      case Condition.FUNC_TRUE:
+        return false;
+      case Condition.FUNC_REGEXP:
+        if ( !( stepMeta.getStepMetaInterface() instanceof TableInputMeta ) ) {
+          return false;
+        }
+        DatabaseMeta databaseMeta = ( (TableInputMeta) stepMeta.getStepMetaInterface() ).getDatabaseMeta();
+        if ( databaseMeta == null || getRegexFormat( databaseMeta ) == null ) {
+          return false;
+        }
+        return isStringField( condition ) && isPortableRegex( condition.getRightExactString() );
+      case Condition.FUNC_CONTAINS:
+      case Condition.FUNC_STARTS_WITH:
+      case Condition.FUNC_ENDS_WITH:
+        return isStringField( condition );
+      default:
+        return true;
+    }
+  }
+
+  private boolean isStringField( Condition condition ) {
+    try {
+      return condition.getRightExactString() != null && getResolvedValueMeta( condition ).isString();
+    } catch ( PushDownOptimizationException e ) {
+      return false;
+    }
+  }
+
+  /**
+   * @return format of a regular expression match, taking field and placeholder, or null if the database has none
+   */
+  static String getRegexFormat( DatabaseMeta databaseMeta ) {
+    DatabaseInterface databaseInterface = databaseMeta.getDatabaseInterface();
+    if ( databaseInterface instanceof PostgreSQLDatabaseMeta ) {
+      return "%s ~ %s";
+    }
+    if ( databaseInterface instanceof OracleDatabaseMeta ) {
+      return "REGEXP_LIKE( %s, %s )";
+    }
+    if ( databaseInterface instanceof H2DatabaseMeta ) {
+      return "%s REGEXP %s";
+    }
+    return null;
+  }
+
+  /**
+   * Regular expressions are only pushed down if they use syntax that Java and the supported databases interpret the
+   * same way: literals, escaped punctuation, '.', simple bracket expressions, groups, alternation, anchors and greedy
+   * quantifiers. Other expressions are left to Kettle.
+   */
+  static boolean isPortableRegex( String regex ) {
+    try {
+      Pattern.compile( regex );
+    } catch ( PatternSyntaxException e ) {
+      return false;
+    }
+    boolean inBrackets = false;
+    boolean quantified = false;
+    for ( int i = 0; i < regex.length(); i++ ) {
+      char c = regex.charAt( i );
+      char next = i + 1 < regex.length() ? regex.charAt( i + 1 ) : 0;
+      if ( inBrackets ) {
+        // Backslashes are literal in POSIX brackets, nested brackets are POSIX classes or Java set operations
+        if ( c == '\\' || c == '[' || c == '&' && next == '&' ) {
+          return false;
+        }
+        inBrackets = c != ']';
+        continue;
+      }
+      switch ( c ) {
+        case '\\':
+          // Escaped letters and digits are classes or back references, their meaning depends on the dialect
+          if ( Character.isLetterOrDigit( next ) ) {
+            return false;
+          }
+          i++;
+          break;
+        case '[':
+          if ( next == ']' || next == '^' && i + 2 < regex.length() && regex.charAt( i + 2 ) == ']' ) {
+            return false;
+          }
+          inBrackets = true;
+          break;
+        case '(':
+          // Non-capturing groups, flags and look-around
+          if ( next == '?' ) {
+            return false;
+          }
+          break;
+        case '*':
+        case '+':
+        case '?':
+        case '{':
+          // Lazy and possessive quantifiers
+          if ( quantified ) {
+            return false;
+          }
+          if ( c == '{' ) {
+            int end = regex.indexOf( '}', i );
+            if ( end < 0 || !regex.substring( i + 1, end ).matches( "\\d+(,\\d*)?" ) ) {
+              return false;
+            }
+            i = end;
+          }
+          quantified = true;
+          continue;
+        default:
+          break;
+      }
+      quantified = false;
+    }
+    return !inBrackets;
+  }
+
+  /**
+   * @return true if the database treats brackets in LIKE patterns as wildcards
+   */
+  static boolean hasBracketWildcards( DatabaseMeta databaseMeta ) {
+    DatabaseInterface databaseInterface = databaseMeta != null ? databaseMeta.getDatabaseInterface() : null;
+    return databaseInterface instanceof MSSQLServerDatabaseMeta || databaseInterface instanceof SybaseDatabaseMeta
+      || databaseInterface instanceof SybaseIQDatabaseMeta;
+  }
+
+  /**
+   * @return pattern matching strings that contain {@code value} literally, for use with {@link #LIKE_ESCAPE}
+   */
+  static String escapeLike( String value, DatabaseMeta databaseMeta ) {
+    String specialChars = hasBracketWildcards( databaseMeta ) ? BRACKET_LIKE_SPECIAL_CHARS : LIKE_SPECIAL_CHARS;
+    StringBuilder escaped = new StringBuilder( value.length() );
+    for ( char c : value.toCharArray() ) {
+      if ( specialChars.indexOf( c ) >= 0 ) {
+        escaped.append( LIKE_ESCAPE );
+      }
+      escaped.append( c );
+    }
+    return escaped.toString();
+  }
+
   protected String convertAtomicCondition( Condition condition, RowMeta paramsMeta, List<Object> params )
     throws PushDownOptimizationException {
     String value = condition.getRightExactString();
@@ -191,10 +502,20 @@ public class TableInputParameterGeneration implements ParameterGenerationService
     String placeholder = "?";
 
     switch ( condition.getFunction() ) {
-      case Condition.FUNC_REGEXP:
       case Condition.FUNC_CONTAINS:
       case Condition.FUNC_STARTS_WITH:
       case Condition.FUNC_ENDS_WITH:
+        return convertStringMatch( condition, paramsMeta, params );
+      case Condition.FUNC_REGEXP:
+        String regexFormat = dbMeta != null ? getRegexFormat( dbMeta ) : null;
+        if ( regexFormat == null || value == null || !isPortableRegex( value ) ) {
+          throw new PushDownOptimizationException( condition.getFunctionDesc()
+            + " is not supported for push down." );
+        }
+        paramsMeta.addValueMeta( getResolvedValueMeta( condition ) );
+        // Kettle matches the whole value, database operators search within it
+        params.add( "^(" + value + ")$" );
+        return String.format( regexFormat, getQuotedFieldName( condition ), placeholder );
       case Condition.FUNC_TRUE:
         throw new PushDownOptimizationException( condition.getFunctionDesc()
           + " is not supported for push down." );
@@ -205,11 +526,13 @@ public class TableInputParameterGeneration implements ParameterGenerationService
       case Condition.FUNC_IN_LIST:
         Object[] inList = getInListArray( condition );
         ValueMetaInterface inListValueMeta = getResolvedValueMeta( condition );
-        for ( int i = 0; i < inList.length; i++ ) {
+        int paddedLength = getPaddedLength( inList.length );
+        for ( int i = 0; i < paddedLength; i++ ) {
           paramsMeta.addValueMeta( inListValueMeta );
-          params.add( inList [ i ] );
+          // Repeating the last value does not change the result
+          params.add( inList[ Math.min( i, inList.length - 1 ) ] );
         }
-        placeholder = String.format( "(%s)", StringUtils.join( Collections.nCopies( inList.length, "?" ).iterator(), "," ) );
+        placeholder = String.format( "(%s)", StringUtils.join( Collections.nCopies( paddedLength, "?" ).iterator(), "," ) );
         function = " IN ";
         break;
       default:
@@ -224,6 +547,47 @@ public class TableInputParameterGeneration implements ParameterGenerationService
     return String.format( "%s %s %s", getQuotedFieldName( condition ), function, placeholder );
   }
 
+  /**
+   * Rounds IN list lengths up to a power of two, so lists of similar length share a single statement text
+   *
+   * @param length number of values in the list
+   * @return number of parameters to bind
+   */
+  static int getPaddedLength( int length ) {
+    if ( length <= 1 || length > MAX_PADDED_IN_LIST ) {
+      return length;
+    }
+    return Integer.highestOneBit( length - 1 ) << 1;
+  }
+
+  private String convertStringMatch( Condition condition, RowMeta paramsMeta, List<Object> params )
+    throws PushDownOptimizationException {
+    String value = condition.getRightExactString();
+    if ( value == null ) {
+      throw new PushDownOptimizationException( "Condition value can not be null: " + condition );
+    }
+    ValueMetaInterface valueMeta = getResolvedValueMeta( condition );
+    if ( !valueMeta.isString() ) {
+      throw new PushDownOptimizationException( condition.getFunctionDesc()
+        + " is only supported for push down on string fields." );
+    }
+    String pattern = escapeLike( value, dbMeta );
+    switch ( condition.getFunction() ) {
+      case Condition.FUNC_CONTAINS:
+        pattern = "%" + pattern + "%";
+        break;
+      case Condition.FUNC_STARTS_WITH:
+        pattern = pattern + "%";
+        break;
+      default:
+        pattern = "%" + pattern;
+        break;
+    }
+    paramsMeta.addValueMeta( valueMeta );
+    params.add( pattern );
+    return String.format( "%s LIKE ? ESCAPE '%s'", getQuotedFieldName( condition ), LIKE_ESCAPE );
+  }
+
   private Object[] getInListArray( Condition condition ) throws PushDownOptimizationException {
     String value = condition.getRightExactString();
     return valueMetaResolver.inListToTypedObjectArray(
@@ -79,6 +79,7 @@ public class ParameterGenerationController extends AbstractController {
     bindingFactory.createBinding( model, "selectedParameter", "param_gen_list", "selectedItem" );
     bindingFactory.createBinding( model, "selectedStep", stepList, "value" );
     bindingFactory.createBinding( model, "enabled", "param_gen_enabled", "checked", not() );
+    bindingFactory.createBinding( model, "queryPushDownEnabled", "param_gen_query_enabled", "checked", not() );
 
     // ONE WAY bindings
     bindingFactory.setBindingType( Binding.Type.ONE_WAY );
@@ -89,6 +90,7 @@ public class ParameterGenerationController extends AbstractController {
     bindingFactory.createBinding( model, "enabled", "param_gen_step", "disabled", not() );
     bindingFactory.createBinding( model, "enabled", "param_gen_mapping", "disabled", not() );
     bindingFactory.createBinding( model, "mappings", "param_gen_mapping", "elements" );
+    bindingFactory.createBinding( model, "queryPushDownFound", "param_gen_query_enabled", "disabled", not() );
 
     model.updateParameterMap();
   }
@@ -107,8 +109,19 @@ public class ParameterGenerationController extends AbstractController {
         model.updateParameterMap();
       }
 
+      // Aggregate, projection and order push downs are not listed, they are only disabled or enabled together
+      int parameterCount = 0;
+      int queryPushDownCount = 0;
+      for ( PushDownOptimizationMeta optimizationMeta : found ) {
+        if ( optimizationMeta.getType() instanceof ParameterGeneration ) {
+          parameterCount++;
+        } else if ( optimizationMeta.getType() != null
+          && ParameterGenerationModel.QUERY_PUSH_DOWNS.contains( optimizationMeta.getType().getClass() ) ) {
+          queryPushDownCount++;
+        }
+      }
       info( getString( PKG, "ParameterGenerationController.AutoGen.Title" ),
-        getString( PKG, "ParameterGenerationController.AutoGen.Message", found.size() ) );
+        getString( PKG, "ParameterGenerationController.AutoGen.Message", parameterCount, queryPushDownCount ) );
     } catch ( Exception e ) {
       String message = getString( PKG, "ParameterGenerationController.AutoGen.Error" );
       getLogChannel().logError( message, e );
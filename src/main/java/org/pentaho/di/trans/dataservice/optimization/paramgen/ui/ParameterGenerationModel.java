@@ -24,12 +24,17 @@ package org.pentaho.di.trans.dataservice.optimization.paramgen.ui;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
+import org.pentaho.di.trans.dataservice.optimization.PushDownType;
 import org.pentaho.di.trans.dataservice.optimization.SourceTargetFields;
+import org.pentaho.di.trans.dataservice.optimization.paramgen.AggregatePushDown;
+import org.pentaho.di.trans.dataservice.optimization.paramgen.OrderPushDown;
 import org.pentaho.di.trans.dataservice.optimization.paramgen.ParameterGeneration;
 import org.pentaho.di.trans.dataservice.optimization.paramgen.ParameterGenerationFactory;
+import org.pentaho.di.trans.dataservice.optimization.paramgen.ProjectionPushDown;
 import org.pentaho.di.trans.dataservice.ui.AbstractModel;
 import org.pentaho.di.trans.dataservice.ui.model.DataServiceModel;
 
@@ -42,6 +47,13 @@ import java.util.Objects;
  * @author nhudak
  */
 public class ParameterGenerationModel extends AbstractModel {
+  /**
+   * Push downs found by Get Optimizations along with parameters, which have no tab of their own
+   */
+  public static final ImmutableSet<Class<? extends PushDownType>> QUERY_PUSH_DOWNS =
+    ImmutableSet.<Class<? extends PushDownType>>of( AggregatePushDown.class, ProjectionPushDown.class,
+      OrderPushDown.class );
+
   private final ParameterGenerationFactory factory;
   private final DataServiceModel dialogModel;
   private ImmutableMap<String, PushDownOptimizationMeta> parameterMap = ImmutableMap.of();
@@ -135,6 +147,8 @@ public class ParameterGenerationModel extends AbstractModel {
     map.put( "selectedStep", getSelectedStep() );
     map.put( "enabled", isEnabled() );
     map.put( "mappings", getMappings() );
+    map.put( "queryPushDownEnabled", isQueryPushDownEnabled() );
+    map.put( "queryPushDownFound", isQueryPushDownFound() );
     return map;
   }
 
@@ -170,6 +184,40 @@ public class ParameterGenerationModel extends AbstractModel {
     return meta != null && meta.isEnabled();
   }
 
+  /**
+   * @return aggregate, projection and order push downs of the data service
+   */
+  public ImmutableList<PushDownOptimizationMeta> getQueryPushDowns() {
+    ImmutableList.Builder<PushDownOptimizationMeta> builder = ImmutableList.builder();
+    for ( PushDownOptimizationMeta meta : dialogModel.getPushDownOptimizations() ) {
+      if ( meta.getType() != null && QUERY_PUSH_DOWNS.contains( meta.getType().getClass() ) ) {
+        builder.add( meta );
+      }
+    }
+    return builder.build();
+  }
+
+  public boolean isQueryPushDownFound() {
+    return !getQueryPushDowns().isEmpty();
+  }
+
+  public boolean isQueryPushDownEnabled() {
+    for ( PushDownOptimizationMeta meta : getQueryPushDowns() ) {
+      if ( meta.isEnabled() ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public void setQueryPushDownEnabled( boolean enabled ) {
+    boolean previous = isQueryPushDownEnabled();
+    for ( PushDownOptimizationMeta meta : getQueryPushDowns() ) {
+      meta.setEnabled( enabled );
+    }
+    firePropertyChange( "queryPushDownEnabled", previous, enabled );
+  }
+
   private void resetMappings( ParameterGeneration parameterGeneration ) {
     mappings = Lists.newArrayList();
     if ( parameterGeneration != null ) {
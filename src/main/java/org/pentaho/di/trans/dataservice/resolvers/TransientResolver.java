@@ -129,7 +129,13 @@ public class TransientResolver implements DataServiceResolver {
 
     Optional<TransMeta> transMeta;
     if ( local && spoonSupplier.get() != null && spoonSupplier.get().getActiveTransformation() != null ) {
-      transMeta = Optional.of( (TransMeta) spoonSupplier.get().getActiveTransformation().realClone( false ) );
+      TransMeta active = spoonSupplier.get().getActiveTransformation();
+      TransMeta clone = (TransMeta) active.realClone( false );
+      // Unsaved edits must not be mistaken for the saved file or revision when caching results
+      if ( active.hasChanged() ) {
+        clone.setChanged();
+      }
+      transMeta = Optional.of( clone );
     } else {
       // Try to locate the transformation, repository first
       transMeta = Stream.of( loadFromRepository(), TransMeta::new )
@@ -22,6 +22,7 @@
 
 package org.pentaho.di.trans.dataservice;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ListMultimap;
@@ -47,7 +48,10 @@ import org.pentaho.di.trans.RowProducer;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransListener;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.dataservice.optimization.CostEstimating;
+import org.pentaho.di.trans.dataservice.optimization.OrderProviding;
 import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
+import org.pentaho.di.trans.dataservice.optimization.PushDownType;
 import org.pentaho.di.trans.step.RowListener;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepListener;
@@ -63,9 +67,11 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 
 import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -88,6 +94,7 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 import static org.pentaho.di.trans.dataservice.testing.answers.ReturnsSelf.RETURNS_SELF;
 
 @RunWith( org.mockito.runners.MockitoJUnitRunner.class )
@@ -349,6 +356,72 @@ public class DataServiceExecutorTest extends BaseTest {
     executor.getSql().getWhereCondition().getCondition().evaluate( rowMeta, new Object[] { "value".getBytes() } );
   }
 
+  @Test
+  public void testPlanOptimizations() throws Exception {
+    PushDownOptimizationMeta slow = createOptimization( Optional.of( 100.0 ) );
+    PushDownOptimizationMeta fast = createOptimization( Optional.of( 5.0 ) );
+    PushDownOptimizationMeta unknown = createOptimization( Optional.<Double>absent() );
+    PushDownOptimizationMeta disabled = createOptimization( Optional.of( 1.0 ) );
+    disabled.setEnabled( false );
+    PushDownOptimizationMeta other = new PushDownOptimizationMeta();
+    other.setType( mock( PushDownType.class ) );
+    dataService.getPushDownOptimizationMeta().addAll( ImmutableList.of( slow, other, fast, unknown, disabled ) );
+
+    DataServiceExecutor executor = new DataServiceExecutor.Builder( new SQL( "SELECT * FROM " + DATA_SERVICE_NAME ),
+      dataService, context ).
+      serviceTrans( serviceTrans ).
+      sqlTransGenerator( sqlTransGenerator ).
+      genTrans( genTrans ).
+      build();
+
+    // Only the cheapest of the estimated optimizations is activated
+    assertThat( executor.planOptimizations(), contains( other, fast, unknown ) );
+
+    // A single estimate has nothing to compete with
+    when( ( (CostEstimating) fast.getType() ).estimateCost( executor, fast ) ).thenReturn( Optional.<Double>absent() );
+    assertThat( executor.planOptimizations(), contains( slow, other, fast, unknown ) );
+  }
+
+  @Test
+  public void testPresorted() throws Exception {
+    RowMeta rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "day" ) );
+    when( transMeta.getStepFields( DATA_SERVICE_STEP ) ).thenReturn( rowMeta );
+    SQL sql = new SQL( "SELECT * FROM " + DATA_SERVICE_NAME + " ORDER BY day" );
+
+    PushDownType type = mock( PushDownType.class, withSettings().extraInterfaces( OrderProviding.class ) );
+    PushDownOptimizationMeta optimization = new PushDownOptimizationMeta();
+    optimization.setType( type );
+    dataService.getPushDownOptimizationMeta().add( optimization );
+    when( ( (OrderProviding) type ).providesOrder( same( sql ), same( dataService ), same( transMeta ),
+      same( optimization ) ) ).thenReturn( true );
+
+    DataServiceExecutor executor = new DataServiceExecutor.Builder( sql, dataService, context ).
+      serviceTrans( new Trans( transMeta ) ).
+      prepareExecution( false ).
+      build();
+
+    // The generated transformation relies on the optimization to sort service rows
+    assertThat( executor.isPresorted(), is( true ) );
+    assertThat( executor.getGenTransMeta().findStep( "Sort rows" ), nullValue() );
+
+    optimization.setEnabled( false );
+    executor = new DataServiceExecutor.Builder( sql, dataService, context ).
+      serviceTrans( new Trans( transMeta ) ).
+      prepareExecution( false ).
+      build();
+    assertThat( executor.isPresorted(), is( false ) );
+  }
+
+  private static PushDownOptimizationMeta createOptimization( Optional<Double> cost ) {
+    PushDownType type = mock( PushDownType.class, withSettings().extraInterfaces( CostEstimating.class ) );
+    when( ( (CostEstimating) type ).estimateCost( any( DataServiceExecutor.class ),
+      any( PushDownOptimizationMeta.class ) ) ).thenReturn( cost );
+    PushDownOptimizationMeta meta = new PushDownOptimizationMeta();
+    meta.setType( type );
+    return meta;
+  }
+
   @Test
   public void testBuilderFailsOnNulls() {
     try {
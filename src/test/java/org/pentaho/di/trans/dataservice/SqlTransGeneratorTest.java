@@ -52,6 +52,7 @@ import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.arrayContaining;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.pentaho.di.core.row.ValueMetaInterface.TYPE_NONE;
 import static org.pentaho.di.core.row.ValueMetaInterface.TYPE_NUMBER;
@@ -307,5 +308,20 @@ public class SqlTransGeneratorTest {
     transMeta = generator.generateTransMeta();
     assertTrue( "limit<=0 not ignored", Arrays.asList( transMeta.getStepNames() ).indexOf( genLimitStep ) < 0 );
   }
+
+  @Test
+  public void testPresorted() throws KettleException {
+    SQL sql = new SQL( "SELECT * FROM table ORDER BY foo DESC" );
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "foo" ) );
+    sql.parse( rowMeta );
+
+    SqlTransGenerator generator = new SqlTransGenerator( sql, 0 );
+    assertTrue( Arrays.asList( generator.generateTransMeta().getStepNames() ).contains( "Sort rows" ) );
+
+    // Rows arrive in order, no need to sort them again
+    generator.setPresorted( true );
+    assertFalse( Arrays.asList( generator.generateTransMeta().getStepNames() ).contains( "Sort rows" ) );
+  }
 }
 
@@ -0,0 +1,180 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.execution;
+
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.GenericDatabaseMeta;
+import org.pentaho.di.core.database.OracleDatabaseMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.dataservice.DataServiceMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.tableinput.TableInputMeta;
+
+import java.util.Properties;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith( MockitoJUnitRunner.class )
+public class PooledConnectionsTest {
+  @Mock private TransMeta transMeta;
+  @Mock private DatabaseMeta databaseMeta;
+  @Mock private DatabaseMeta pooledMeta;
+  @Mock private TableInputMeta orders;
+  @Mock private TableInputMeta customers;
+  @Mock private DataServiceMeta service;
+
+  @Before
+  public void setUp() throws Exception {
+    when( service.isConnectionPooling() ).thenReturn( true );
+    when( databaseMeta.getName() ).thenReturn( "warehouse" );
+    when( databaseMeta.getURL() ).thenReturn( "jdbc:oracle:thin:@localhost:1521:orcl" );
+    when( databaseMeta.getUsername() ).thenReturn( "scott" );
+    when( databaseMeta.getPassword() ).thenReturn( "tiger" );
+    when( databaseMeta.getXML() ).thenReturn( "<connection><server>localhost</server></connection>" );
+    when( databaseMeta.clone() ).thenReturn( pooledMeta );
+    when( pooledMeta.getDatabaseInterface() ).thenReturn( new OracleDatabaseMeta() );
+    when( pooledMeta.getConnectionPoolingProperties() ).thenReturn( new Properties() );
+    when( orders.getDatabaseMeta() ).thenReturn( databaseMeta );
+    when( customers.getDatabaseMeta() ).thenReturn( databaseMeta );
+
+    StepMeta other = mock( StepMeta.class );
+    when( other.getStepMetaInterface() ).thenReturn( new DummyTransMeta() );
+    when( transMeta.getSteps() ).thenReturn( Lists.newArrayList( step( orders ), step( customers ), other ) );
+  }
+
+  private static StepMeta step( TableInputMeta tableInputMeta ) {
+    StepMeta stepMeta = mock( StepMeta.class );
+    when( stepMeta.getStepMetaInterface() ).thenReturn( tableInputMeta );
+    return stepMeta;
+  }
+
+  @Test
+  public void testUsePooledConnections() throws Exception {
+    when( service.getConnectionPoolSize() ).thenReturn( 5 );
+    PooledConnections.usePooledConnections( transMeta, service );
+
+    // Shared connections are copied once, the original is not modified
+    verify( databaseMeta ).clone();
+    verify( databaseMeta, never() ).setUsingConnectionPool( anyBoolean() );
+    verify( orders ).setDatabaseMeta( pooledMeta );
+    verify( customers ).setDatabaseMeta( pooledMeta );
+
+    verify( pooledMeta ).setName( startsWith( "warehouse [pool " ) );
+    verify( pooledMeta ).setUsingConnectionPool( true );
+    verify( pooledMeta ).setInitialPoolSize( PooledConnections.INITIAL_POOL_SIZE );
+    verify( pooledMeta ).setMaximumPoolSize( 5 );
+    ArgumentCaptor<Properties> properties = ArgumentCaptor.forClass( Properties.class );
+    verify( pooledMeta ).setConnectionPoolingProperties( properties.capture() );
+    assertThat( properties.getValue(), hasEntry( (Object) "validationQuery", (Object) "SELECT 1 FROM DUAL" ) );
+    assertThat( properties.getValue(), hasEntry( (Object) "testOnBorrow", (Object) "true" ) );
+    assertThat( properties.getValue(), hasEntry( (Object) "poolPreparedStatements", (Object) "true" ) );
+    assertThat( properties.getValue().getProperty( "minEvictableIdleTimeMillis" ),
+      equalTo( String.valueOf( PooledConnections.MAX_IDLE_MILLIS ) ) );
+    assertThat( properties.getValue().getProperty( "maxConnLifetimeMillis" ),
+      equalTo( String.valueOf( PooledConnections.MAX_LIFETIME_MILLIS ) ) );
+  }
+
+  @Test
+  public void testPoolingDisabled() throws Exception {
+    // Previous behaviour, unless enabled for the service
+    when( service.isConnectionPooling() ).thenReturn( false );
+    PooledConnections.usePooledConnections( transMeta, service );
+
+    verify( databaseMeta, never() ).clone();
+    verify( orders, never() ).setDatabaseMeta( any( DatabaseMeta.class ) );
+  }
+
+  @Test
+  public void testUnboundedPoolSize() throws Exception {
+    PooledConnections.usePooledConnections( transMeta, service );
+    verify( pooledMeta ).setMaximumPoolSize( PooledConnections.UNBOUNDED_POOL_SIZE );
+  }
+
+  @Test
+  public void testPoolName() throws Exception {
+    String poolName = PooledConnections.getPoolName( databaseMeta, 10 );
+    assertThat( PooledConnections.getPoolName( databaseMeta, 10 ), equalTo( poolName ) );
+
+    // Each connection identity and pool setting has its own pool
+    assertThat( PooledConnections.getPoolName( databaseMeta, 20 ), not( equalTo( poolName ) ) );
+    when( databaseMeta.getURL() ).thenReturn( "jdbc:oracle:thin:@otherhost:1521:orcl" );
+    String otherHost = PooledConnections.getPoolName( databaseMeta, 10 );
+    assertThat( otherHost, not( equalTo( poolName ) ) );
+    when( databaseMeta.getPassword() ).thenReturn( "lion" );
+    assertThat( PooledConnections.getPoolName( databaseMeta, 10 ), not( equalTo( otherHost ) ) );
+    assertFalse( poolName.contains( "tiger" ) );
+  }
+
+  @Test
+  public void testUnknownValidation() throws Exception {
+    when( pooledMeta.getDatabaseInterface() ).thenReturn( new GenericDatabaseMeta() );
+
+    PooledConnections.createPooled( databaseMeta, 10 );
+
+    ArgumentCaptor<Properties> properties = ArgumentCaptor.forClass( Properties.class );
+    verify( pooledMeta ).setConnectionPoolingProperties( properties.capture() );
+    assertFalse( properties.getValue().containsKey( "validationQuery" ) );
+    assertFalse( properties.getValue().containsKey( "testOnBorrow" ) );
+  }
+
+  @Test
+  public void testPoolable() throws Exception {
+    assertTrue( PooledConnections.isPoolable( databaseMeta ) );
+
+    when( databaseMeta.getXML() ).thenReturn( "<connection><server>${DB_HOST}</server></connection>" );
+    assertFalse( PooledConnections.isPoolable( databaseMeta ) );
+
+    when( databaseMeta.getXML() ).thenReturn( "<connection/>" );
+    when( databaseMeta.isUsingConnectionPool() ).thenReturn( true );
+    assertFalse( PooledConnections.isPoolable( databaseMeta ) );
+
+    when( databaseMeta.isUsingConnectionPool() ).thenReturn( false );
+    when( databaseMeta.getAccessType() ).thenReturn( DatabaseMeta.TYPE_ACCESS_JNDI );
+    assertFalse( PooledConnections.isPoolable( databaseMeta ) );
+
+    PooledConnections.usePooledConnections( transMeta, service );
+    verify( orders, never() ).setDatabaseMeta( any( DatabaseMeta.class ) );
+    verify( pooledMeta, never() ).setName( anyString() );
+  }
+}
@@ -72,4 +72,15 @@ public class PushDownOptimizationMetaTest {
     assertThat( disabled.isModified(), is( false ) );
     assertThat( disabled.getDescription(), startsWith( "#Optimization is disabled" ) );
   }
+
+  @Test
+  public void testCapturesServiceOutput() throws Exception {
+    assertThat( pushDownOptimizationMeta.capturesServiceOutput(), is( false ) );
+
+    when( pushDownType.capturesServiceOutput() ).thenReturn( true );
+    assertThat( pushDownOptimizationMeta.capturesServiceOutput(), is( true ) );
+
+    pushDownOptimizationMeta.setEnabled( false );
+    assertThat( pushDownOptimizationMeta.capturesServiceOutput(), is( false ) );
+  }
 }
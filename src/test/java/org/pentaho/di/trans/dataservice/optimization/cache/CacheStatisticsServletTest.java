@@ -0,0 +1,99 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.pentaho.di.www.CarteRequestHandler;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith( MockitoJUnitRunner.class )
+public class CacheStatisticsServletTest {
+  @Mock ServiceCacheFactory factory;
+
+  @InjectMocks CacheStatisticsServlet servlet;
+
+  @Mock CarteRequestHandler.CarteRequest request;
+  @Mock CarteRequestHandler.CarteResponse response;
+  private HashMultimap<String, String> parameterMap;
+
+  @Before
+  public void setUp() throws Exception {
+    when( request.respond( anyInt() ) ).thenReturn( response );
+    parameterMap = HashMultimap.create();
+    when( request.getParameters() ).thenReturn( parameterMap.asMap() );
+
+    ServiceCacheStatistics first = new ServiceCacheStatistics( "first", Optional::absent );
+    first.recordMiss();
+    ServiceCacheStatistics second = new ServiceCacheStatistics( "second", Optional::absent );
+    when( factory.getAllStatistics() ).thenReturn( ImmutableMap.of( "first", first, "second", second ) );
+    when( factory.cacheName( anyString() ) ).thenAnswer( invocation ->
+      ServiceCacheFactory.CACHE_PREFIX + invocation.getArguments()[ 0 ] );
+  }
+
+  @Test
+  public void testAllStatistics() throws Exception {
+    String output = handle();
+    assertThat( output, containsString( "Cache: SERVICE_CACHE.first" ) );
+    assertThat( output, containsString( "Misses: 1" ) );
+    assertThat( output, containsString( "Cache: SERVICE_CACHE.second" ) );
+  }
+
+  @Test
+  public void testSelectedStatistics() throws Exception {
+    parameterMap.put( "name", "second" );
+    String output = handle();
+    assertThat( output, not( containsString( "SERVICE_CACHE.first" ) ) );
+    assertThat( output, containsString( "Cache: SERVICE_CACHE.second" ) );
+  }
+
+  private String handle() throws Exception {
+    servlet.handleRequest( request );
+    verify( request ).respond( 200 );
+
+    ArgumentCaptor<CarteRequestHandler.WriterResponse> responseCaptor =
+      ArgumentCaptor.forClass( CarteRequestHandler.WriterResponse.class );
+    verify( response ).with( anyString(), responseCaptor.capture() );
+    StringWriter output = new StringWriter();
+    responseCaptor.getValue().write( new PrintWriter( output ) );
+    return output.toString();
+  }
+}
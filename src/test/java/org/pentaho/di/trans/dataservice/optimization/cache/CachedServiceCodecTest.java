@@ -0,0 +1,159 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+public class CachedServiceCodecTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private RowMeta rowMeta;
+  private CachedService cachedService;
+
+  @Before
+  public void setUp() throws Exception {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "ID" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "NAME" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "UPDATED" ) );
+
+    List<RowMetaAndData> rows = new ArrayList<>();
+    for ( long i = 0; i < 100; i++ ) {
+      rows.add( new RowMetaAndData( rowMeta, i, i % 10 == 0 ? null : "name " + i, new Date( 1000L * i ) ) );
+    }
+    cachedService = CachedService.complete( rows );
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    for ( boolean compress : new boolean[] { false, true } ) {
+      CachedService decoded = CachedServiceCodec.decode( CachedServiceCodec.encode( cachedService, compress ) );
+
+      assertThat( decoded.isComplete(), is( true ) );
+      assertThat( decoded.getCreated(), is( cachedService.getCreated() ) );
+      assertThat( decoded.estimateBytes(), is( cachedService.estimateBytes() ) );
+      assertRowsEqual( decoded.getRowMetaAndData(), cachedService.getRowMetaAndData() );
+
+      // Metadata is decoded once and shared by every row
+      assertThat( decoded.getRowMetaAndData().get( 99 ).getRowMeta(),
+        sameInstance( decoded.getRowMetaAndData().get( 0 ).getRowMeta() ) );
+    }
+  }
+
+  @Test
+  public void testSpilledRoundTrip() throws Exception {
+    SpillFile.Writer writer = SpillFile.create( temporaryFolder.getRoot() );
+    for ( RowMetaAndData row : cachedService.getRowMetaAndData() ) {
+      writer.add( row );
+    }
+    CachedService spilled = CachedService.complete( writer.finish(), null );
+
+    byte[] encoded = CachedServiceCodec.encode( spilled, false );
+
+    // The copy holds its rows in memory, no segment file paths are shared
+    spilled.release();
+    CachedService decoded = CachedServiceCodec.decode( encoded );
+    assertFalse( decoded.getSpill().isPresent() );
+    assertThat( decoded.getRowCount(), is( 100L ) );
+    assertRowsEqual( decoded.getRowMetaAndData(), cachedService.getRowMetaAndData() );
+  }
+
+  @Test
+  public void testCompression() throws Exception {
+    assertThat( CachedServiceCodec.encode( cachedService, true ).length,
+      lessThan( CachedServiceCodec.encode( cachedService, false ).length ) );
+  }
+
+  @Test
+  public void testMixedMetadata() throws Exception {
+    RowMeta other = new RowMeta();
+    other.addValueMeta( new ValueMetaString( "OTHER" ) );
+    CachedService mixed = CachedService.complete( ImmutableList.of(
+      new RowMetaAndData( rowMeta, 1L, "a", null ),
+      new RowMetaAndData( other, "b" ),
+      new RowMetaAndData( rowMeta, 2L, "c", new Date( 0 ) )
+    ) );
+
+    CachedService decoded = CachedServiceCodec.decode( CachedServiceCodec.encode( mixed, false ) );
+    assertRowsEqual( decoded.getRowMetaAndData(), mixed.getRowMetaAndData() );
+  }
+
+  @Test( expected = InvalidObjectException.class )
+  public void testUnsupportedFormat() throws Exception {
+    CachedServiceCodec.decode( new byte[] { 99, 0 } );
+  }
+
+  @Test
+  public void testJavaSerialization() throws Exception {
+    CachedService.CacheKey key = ServiceCacheStatisticsTest.cacheKey( rowMeta, "SELECT * FROM service WHERE ID > 5" );
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try ( ObjectOutputStream out = new ObjectOutputStream( bytes ) ) {
+      out.writeObject( key );
+      out.writeObject( cachedService );
+    }
+    try ( ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) ) {
+      CachedService.CacheKey readKey = (CachedService.CacheKey) in.readObject();
+      assertThat( readKey, equalTo( key ) );
+      assertThat( readKey.subsumes( key ), is( true ) );
+
+      CachedService readService = (CachedService) in.readObject();
+      assertRowsEqual( readService.getRowMetaAndData(), cachedService.getRowMetaAndData() );
+    }
+  }
+
+  private static void assertRowsEqual( List<RowMetaAndData> actual, List<RowMetaAndData> expected ) throws Exception {
+    assertThat( actual.size(), is( expected.size() ) );
+    for ( int i = 0; i < expected.size(); i++ ) {
+      RowMetaAndData row = expected.get( i );
+      assertThat( actual.get( i ).getRowMeta().getFieldNames(), equalTo( row.getRowMeta().getFieldNames() ) );
+      assertThat( row.getRowMeta().compare( actual.get( i ).getData(), row.getData() ), is( 0 ) );
+    }
+  }
+}
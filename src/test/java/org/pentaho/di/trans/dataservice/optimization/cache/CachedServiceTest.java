@@ -41,8 +41,10 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.listeners.ContentChangedListener;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaAndData;
 import org.pentaho.di.core.row.value.ValueMetaInteger;
 import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.core.sql.SQL;
@@ -87,6 +89,7 @@ import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
 import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -157,6 +160,10 @@ public class CachedServiceTest {
 
     when( transMeta.getXML( anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(),
             anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean() ) ).thenReturn( "<transformation mock version=2/>" );
+    // Changes reach the cached fingerprint through a content changed listener
+    ArgumentCaptor<ContentChangedListener> listener = ArgumentCaptor.forClass( ContentChangedListener.class );
+    verify( transMeta, atLeastOnce() ).addContentChangedListener( listener.capture() );
+    listener.getValue().contentChanged( transMeta );
     otherVersion = cacheKey( BASE_QUERY );
 
     // Verifies order from most specific to general
@@ -230,6 +237,25 @@ public class CachedServiceTest {
     }
   }
 
+  @Test
+  public void testAppendPastWatermark() throws Exception {
+    CachedService cachedService = CachedService.complete( testData );
+    ValueMetaAndData lastSeen = cachedService.getWatermark( "A" ).get();
+    assertThat( lastSeen.getValueData(), equalTo( (Object) 12L ) );
+    assertFalse( cachedService.getWatermark( "MISSING" ).isPresent() );
+
+    List<RowMetaAndData> increment = ImmutableList.of(
+      new RowMetaAndData( rowMeta, "overlap", 12L, 0L ),
+      new RowMetaAndData( rowMeta, "new", 13L, 0L ),
+      new RowMetaAndData( rowMeta, "null", null, 0L )
+    );
+    CachedService appended = cachedService.append( increment, "A", lastSeen );
+    assertTrue( appended.isComplete() );
+    assertThat( appended.getRowMetaAndData().size(), is( testData.size() + 1 ) );
+    assertThat( appended.getRowMetaAndData().get( testData.size() ), sameInstance( increment.get( 1 ) ) );
+    assertThat( appended.getWatermark( "A" ).get().getValueData(), equalTo( (Object) 13L ) );
+  }
+
   @Test
   public void testObserve() throws Exception {
     DataServiceExecutor executor = dataServiceExecutor( BASE_QUERY );
@@ -0,0 +1,170 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CaptureBufferTest {
+
+  @Test
+  public void testConcurrentReaders() throws Exception {
+    final int rowCount = 5000;
+    final CaptureBuffer<Integer> buffer = new CaptureBuffer<>( 0 );
+    ExecutorService executorService = Executors.newFixedThreadPool( 4 );
+    try {
+      ImmutableList.Builder<Future<Long>> readers = ImmutableList.builder();
+      for ( int i = 0; i < 4; i++ ) {
+        readers.add( executorService.submit( new Callable<Long>() {
+          @Override public Long call() throws Exception {
+            long sum = 0;
+            for ( Iterator<Integer> rows = buffer.iterator(); rows.hasNext(); ) {
+              sum += rows.next();
+            }
+            return sum;
+          }
+        } ) );
+      }
+
+      for ( int i = 0; i < rowCount; i++ ) {
+        assertTrue( buffer.add( i ) );
+      }
+      buffer.complete();
+
+      long expected = (long) rowCount * ( rowCount - 1 ) / 2;
+      for ( Future<Long> reader : readers.build() ) {
+        assertThat( reader.get( 10, TimeUnit.SECONDS ), is( expected ) );
+      }
+      // Late readers replay from the start
+      assertThat( buffer.toList().size(), is( rowCount ) );
+      assertThat( buffer.iterator().next(), is( 0 ) );
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testReadersCompleteAfterRowsAreReleased() throws Exception {
+    final int rowCount = 5000;
+    final CaptureBuffer<Integer> buffer = new CaptureBuffer<>( 100 );
+    ExecutorService executorService = Executors.newFixedThreadPool( 2 );
+    try {
+      ImmutableList.Builder<Future<Long>> readers = ImmutableList.builder();
+      for ( int i = 0; i < 2; i++ ) {
+        final Iterator<Integer> rows = buffer.iterator();
+        readers.add( executorService.submit( new Callable<Long>() {
+          @Override public Long call() throws Exception {
+            long sum = 0;
+            while ( rows.hasNext() ) {
+              sum += rows.next();
+            }
+            return sum;
+          }
+        } ) );
+      }
+
+      for ( int i = 0; i < rowCount; i++ ) {
+        buffer.add( i );
+      }
+      buffer.complete();
+
+      long expected = (long) rowCount * ( rowCount - 1 ) / 2;
+      for ( Future<Long> reader : readers.build() ) {
+        assertThat( reader.get( 10, TimeUnit.SECONDS ), is( expected ) );
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testRowsAreNotAcceptedAfterClose() throws Exception {
+    CaptureBuffer<String> buffer = new CaptureBuffer<>( 0 );
+    assertTrue( buffer.add( "a" ) );
+    buffer.complete();
+    assertFalse( buffer.add( "b" ) );
+
+    List<String> rows = buffer.toList();
+    assertThat( rows, is( (List<String>) ImmutableList.of( "a" ) ) );
+  }
+
+  @Test
+  public void testLimitKeepsCurrentReaders() throws Exception {
+    CaptureBuffer<String> buffer = new CaptureBuffer<>( 2 );
+    Iterator<String> reader = buffer.iterator();
+    assertTrue( buffer.add( "a" ) );
+    assertTrue( buffer.add( "b" ) );
+    assertFalse( buffer.add( "c" ) );
+    assertThat( buffer.getState(), is( CaptureBuffer.State.OPEN ) );
+    assertFalse( buffer.isJoinable() );
+    try {
+      buffer.iterator();
+      fail( "Readers should not join a capture that no longer retains all rows" );
+    } catch ( IllegalStateException e ) {
+      // expected
+    }
+
+    buffer.complete();
+    assertThat( ImmutableList.copyOf( reader ), is( ImmutableList.of( "a", "b", "c" ) ) );
+    assertFalse( buffer.hasReaders() );
+  }
+
+  @Test
+  public void testRowsAreDroppedWithoutReaders() throws Exception {
+    CaptureBuffer<String> buffer = new CaptureBuffer<>( 1 );
+    assertTrue( buffer.add( "a" ) );
+    buffer.stopRetaining();
+    assertFalse( buffer.add( "b" ) );
+    assertThat( buffer.size(), is( 1 ) );
+  }
+
+  @Test
+  public void testAbandonFailsReaders() throws Exception {
+    CaptureBuffer<String> buffer = new CaptureBuffer<>( 0 );
+    Iterator<String> reader = buffer.iterator();
+    assertTrue( buffer.add( "a" ) );
+    buffer.abandon( new IllegalStateException( "failed" ) );
+    assertFalse( buffer.add( "b" ) );
+
+    try {
+      reader.hasNext();
+      fail( "Abandoned capture should fail readers" );
+    } catch ( IllegalStateException e ) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnStatisticsCollectorTest {
+
+  private RowMeta rowMeta;
+
+  @Before
+  public void setUp() throws Exception {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "count" ) );
+  }
+
+  @Test
+  public void testCollect() throws Exception {
+    List<RowMetaAndData> rows = new ArrayList<>();
+    for ( long i = 0; i < 100; i++ ) {
+      rows.add( new RowMetaAndData( rowMeta, i % 5 == 0 ? "common" : "value" + i, i % 4 == 0 ? null : i ) );
+    }
+
+    ImmutableMap<String, ColumnStatistics> statistics = ColumnStatisticsCollector.collect( rows );
+    assertThat( statistics.keySet(), contains( "name", "count" ) );
+
+    ColumnStatistics name = statistics.get( "name" );
+    assertThat( name.getRowCount(), is( 100L ) );
+    assertThat( name.getNullCount(), is( 0L ) );
+    assertThat( name.getMin().get().getValueData(), is( (Object) "common" ) );
+    assertThat( name.getMax().get().getValueData(), is( (Object) "value99" ) );
+    // Values in more than a ninth of the rows are always found, their counts are lower bounds
+    Object mostCommon = name.getFrequentValues().keySet().iterator().next();
+    assertThat( mostCommon, is( (Object) "common" ) );
+    assertTrue( name.getFrequentValues().get( mostCommon ) <= 20 );
+
+    ColumnStatistics count = statistics.get( "count" );
+    assertThat( count.getNullCount(), is( 25L ) );
+    assertThat( count.getNullFraction(), is( 0.25 ) );
+    assertThat( count.getMin().get().getValueData(), is( (Object) 1L ) );
+    assertThat( count.getMax().get().getValueData(), is( (Object) 99L ) );
+    assertThat( count.getValueMeta().getType(), is( ValueMetaInterface.TYPE_INTEGER ) );
+  }
+
+  @Test
+  public void testAllNull() throws Exception {
+    ColumnStatistics name = ColumnStatisticsCollector.collect( ImmutableList.of(
+      new RowMetaAndData( rowMeta, null, null ),
+      new RowMetaAndData( rowMeta, null, null )
+    ) ).get( "name" );
+
+    assertThat( name.getNullCount(), is( 2L ) );
+    assertFalse( name.getMin().isPresent() );
+    assertFalse( name.getMax().isPresent() );
+    assertThat( name.getDistinctCount(), is( 0L ) );
+    assertTrue( name.getFrequentValues().isEmpty() );
+  }
+
+  @Test
+  public void testBinaryStorage() throws Exception {
+    ValueMetaString storage = new ValueMetaString( "name" );
+    ValueMetaString binary = new ValueMetaString( "name" );
+    binary.setStorageType( ValueMetaInterface.STORAGE_TYPE_BINARY_STRING );
+    binary.setStorageMetadata( storage );
+    RowMeta lazyRowMeta = new RowMeta();
+    lazyRowMeta.addValueMeta( binary );
+
+    ColumnStatisticsCollector collector = new ColumnStatisticsCollector();
+    collector.add( lazyRowMeta, new Object[] { "b".getBytes( StandardCharsets.UTF_8 ) } );
+    collector.add( lazyRowMeta, new Object[] { "b".getBytes( StandardCharsets.UTF_8 ) } );
+    collector.add( lazyRowMeta, new Object[] { "a".getBytes( StandardCharsets.UTF_8 ) } );
+    ColumnStatistics name = collector.build().get( "name" );
+
+    // Values are kept in normal storage
+    assertThat( name.getValueMeta().getStorageType(), is( ValueMetaInterface.STORAGE_TYPE_NORMAL ) );
+    assertThat( name.getMin().get().getValueData(), is( (Object) "a" ) );
+    assertThat( name.getFrequentValues().keySet(), contains( (Object) "b", "a" ) );
+  }
+}
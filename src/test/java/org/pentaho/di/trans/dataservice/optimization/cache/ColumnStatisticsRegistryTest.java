@@ -0,0 +1,87 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.dataservice.DataServiceMeta;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ColumnStatisticsRegistryTest {
+
+  private ColumnStatisticsRegistry registry;
+  private ImmutableMap<String, ColumnStatistics> statistics;
+
+  @Before
+  public void setUp() throws Exception {
+    registry = new ColumnStatisticsRegistry();
+    RowMeta rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    statistics = ColumnStatisticsCollector.collect( ImmutableList.of( new RowMetaAndData( rowMeta, "a" ) ) );
+  }
+
+  @Test
+  public void testKeyedByServiceVersion() throws Exception {
+    DataServiceMeta dataService = dataService( "service", "<transformation version=1/>" );
+    assertFalse( registry.get( dataService ).isPresent() );
+
+    registry.put( dataService, statistics );
+    assertThat( registry.get( dataService ).get(), is( statistics ) );
+    assertThat( registry.get( dataService( "service", "<transformation version=1/>" ) ).get(), is( statistics ) );
+
+    // Other versions and services have their own statistics
+    assertFalse( registry.get( dataService( "service", "<transformation version=2/>" ) ).isPresent() );
+    assertFalse( registry.get( dataService( "other", "<transformation version=1/>" ) ).isPresent() );
+
+    registry.invalidate( "service" );
+    assertFalse( registry.get( dataService ).isPresent() );
+  }
+
+  @Test
+  public void testEmptyStatisticsIgnored() throws Exception {
+    DataServiceMeta dataService = dataService( "service", "<transformation version=1/>" );
+    registry.put( dataService, ImmutableMap.<String, ColumnStatistics>of() );
+    assertFalse( registry.get( dataService ).isPresent() );
+  }
+
+  private static DataServiceMeta dataService( String name, String xml ) throws Exception {
+    TransMeta transMeta = mock( TransMeta.class );
+    when( transMeta.getXML( anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(),
+      anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean() ) ).thenReturn( xml );
+    DataServiceMeta dataService = new DataServiceMeta( transMeta );
+    dataService.setName( name );
+    return dataService;
+  }
+}
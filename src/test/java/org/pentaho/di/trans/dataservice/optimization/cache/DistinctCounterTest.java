@@ -0,0 +1,68 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DistinctCounterTest {
+
+  @Test
+  public void testSmallCounts() throws Exception {
+    DistinctCounter counter = new DistinctCounter();
+    assertThat( counter.estimate(), is( 0L ) );
+
+    for ( int i = 0; i < 10; i++ ) {
+      counter.add( "a" );
+      counter.add( 1L );
+      counter.add( new Date( 0 ) );
+    }
+    assertThat( counter.estimate(), is( 3L ) );
+
+    // Equal numbers with a different scale are one value
+    counter.add( new BigDecimal( "1.0" ) );
+    counter.add( new BigDecimal( "1.00" ) );
+    assertThat( counter.estimate(), is( 4L ) );
+  }
+
+  @Test
+  public void testLargeCounts() throws Exception {
+    DistinctCounter counter = new DistinctCounter();
+    for ( long i = 0; i < 100; i++ ) {
+      counter.add( i );
+    }
+    assertThat( (double) counter.estimate(), closeTo( 100, 5 ) );
+
+    for ( long i = 0; i < 10000; i++ ) {
+      counter.add( i );
+      counter.add( i );
+    }
+    assertThat( (double) counter.estimate(), closeTo( 10000, 500 ) );
+  }
+}
@@ -0,0 +1,73 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class FrequencySketchTest {
+
+  @Test
+  public void testFrequency() throws Exception {
+    FrequencySketch sketch = new FrequencySketch( 256 );
+    assertThat( sketch.frequency( "a" ), is( 0 ) );
+
+    for ( int i = 0; i < 5; i++ ) {
+      sketch.increment( "a" );
+    }
+    sketch.increment( "b" );
+    assertThat( sketch.frequency( "a" ), greaterThanOrEqualTo( 5 ) );
+    assertThat( sketch.frequency( "b" ), greaterThanOrEqualTo( 1 ) );
+    assertThat( sketch.frequency( "b" ), lessThan( sketch.frequency( "a" ) ) );
+
+    // Counters saturate
+    for ( int i = 0; i < 100; i++ ) {
+      sketch.increment( "a" );
+    }
+    assertThat( sketch.frequency( "a" ), is( FrequencySketch.MAX_FREQUENCY ) );
+  }
+
+  @Test
+  public void testAging() throws Exception {
+    FrequencySketch sketch = new FrequencySketch( 16 );
+    for ( int i = 0; i < 8; i++ ) {
+      sketch.increment( "hot" );
+    }
+    int before = sketch.frequency( "hot" );
+
+    // Enough other accesses halve the old counts
+    for ( int i = 0; i < 160; i++ ) {
+      sketch.increment( "other" + i );
+    }
+    assertThat( sketch.frequency( "hot" ), lessThan( before ) );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testWidth() throws Exception {
+    new FrequencySketch( 100 );
+  }
+}
@@ -0,0 +1,115 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.sql.SQL;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class NormalizedPredicateTest {
+
+  private RowMeta rowMeta;
+
+  @Before
+  public void setUp() throws Exception {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "region" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "year" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "amount" ) );
+  }
+
+  @Test
+  public void testConjunctionIsFlattened() throws Exception {
+    NormalizedPredicate predicate = predicate( "region = 'EU' AND year = 2024 AND amount > 10" );
+    assertThat( predicate.getConjuncts(), hasSize( 3 ) );
+  }
+
+  @Test
+  public void testAdditionalConjunctIsSubsumed() throws Exception {
+    NormalizedPredicate cached = predicate( "region = 'EU'" );
+    assertTrue( cached.subsumes( predicate( "region = 'EU' AND year = 2024" ) ) );
+    assertTrue( cached.subsumes( predicate( "year = 2024 AND region = 'EU'" ) ) );
+    assertFalse( cached.subsumes( predicate( "region = 'US' AND year = 2024" ) ) );
+    assertFalse( predicate( "region = 'EU' AND year = 2024" ).subsumes( cached ) );
+  }
+
+  @Test
+  public void testRangeSubsumption() throws Exception {
+    NormalizedPredicate cached = predicate( "amount > 10" );
+    assertTrue( cached.subsumes( predicate( "amount > 100" ) ) );
+    assertTrue( cached.subsumes( predicate( "amount >= 11" ) ) );
+    assertTrue( cached.subsumes( predicate( "amount = 50" ) ) );
+    assertFalse( cached.subsumes( predicate( "amount >= 10" ) ) );
+    assertFalse( cached.subsumes( predicate( "amount < 100" ) ) );
+
+    cached = predicate( "amount <= 100" );
+    assertTrue( cached.subsumes( predicate( "amount < 100" ) ) );
+    assertTrue( cached.subsumes( predicate( "amount <= 100 AND amount > 5" ) ) );
+    assertFalse( cached.subsumes( predicate( "amount <= 101" ) ) );
+  }
+
+  @Test
+  public void testInListSubsumption() throws Exception {
+    NormalizedPredicate cached = predicate( "region IN ('EU', 'US', 'APAC')" );
+    assertTrue( cached.subsumes( predicate( "region IN ('EU', 'US')" ) ) );
+    assertTrue( cached.subsumes( predicate( "region = 'US'" ) ) );
+    assertFalse( cached.subsumes( predicate( "region IN ('EU', 'LATAM')" ) ) );
+  }
+
+  @Test
+  public void testInListEscapedSeparator() throws Exception {
+    NormalizedPredicate cached = predicate( "region IN ('EU;West', 'US')" );
+    assertTrue( cached.subsumes( predicate( "region = 'EU;West'" ) ) );
+    assertFalse( cached.subsumes( predicate( "region = 'West'" ) ) );
+    assertFalse( cached.subsumes( predicate( "region IN ('EU', 'US')" ) ) );
+  }
+
+  @Test
+  public void testOpaqueConditionsOnlyMatchThemselves() throws Exception {
+    NormalizedPredicate cached = predicate( "region = 'EU' OR year = 2024" );
+    assertTrue( cached.subsumes( predicate( "region = 'EU' OR year = 2024" ) ) );
+    assertTrue( cached.subsumes( predicate( "amount > 5 AND ( region = 'EU' OR year = 2024 )" ) ) );
+    assertFalse( cached.subsumes( predicate( "region = 'EU'" ) ) );
+  }
+
+  @Test
+  public void testAlwaysTrue() throws Exception {
+    assertTrue( NormalizedPredicate.alwaysTrue().subsumes( predicate( "region = 'EU'" ) ) );
+    assertFalse( predicate( "region = 'EU'" ).subsumes( NormalizedPredicate.alwaysTrue() ) );
+  }
+
+  private NormalizedPredicate predicate( String where ) throws KettleException {
+    SQL sql = new SQL( "SELECT * FROM service WHERE " + where );
+    sql.parse( rowMeta );
+    return NormalizedPredicate.create( sql.getWhereCondition().getCondition() );
+  }
+}
@@ -47,6 +47,7 @@ import static org.mockito.Mockito.when;
 public class ResetCacheServletTest {
   @Mock ServiceCacheFactory factory;
   @Mock Cache<CachedService.CacheKey, CachedService> cache;
+  @Mock QueryResultCache resultCache;
 
   @InjectMocks ResetCacheServlet servlet;
 
@@ -65,6 +66,7 @@ public class ResetCacheServletTest {
     when( factory.getCache( anyString() ) )
       .thenReturn( Optional.<Cache<CachedService.CacheKey, CachedService>>absent() );
     when( factory.getCache( "cache1" ) ).thenReturn( Optional.of( cache ) );
+    when( factory.getResultCache() ).thenReturn( resultCache );
   }
 
   @Test
@@ -74,6 +76,7 @@ public class ResetCacheServletTest {
     servlet.handleRequest( request );
 
     verify( cache ).clear();
+    verify( resultCache ).invalidate( "noneSuch" );
     verify( request ).respond( 200 );
   }
 
@@ -0,0 +1,199 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.pentaho.di.core.sql.SQL;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.dataservice.DataServiceExecutor;
+import org.pentaho.di.trans.dataservice.DataServiceMeta;
+import org.pentaho.di.trans.dataservice.clients.Query;
+import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
+import org.pentaho.di.trans.dataservice.resolvers.DataServiceResolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith( MockitoJUnitRunner.class )
+public class ResultCacheQueryServiceTest {
+  private static final String QUERY = "SELECT *   FROM service WHERE A = 'x  y'";
+
+  @Mock ServiceCacheFactory factory;
+  @Mock DataServiceResolver resolver;
+  @Mock DataServiceExecutor.Builder builder;
+  @Mock DataServiceExecutor executor;
+  @Mock TransMeta serviceTrans;
+
+  QueryResultCache resultCache;
+  ServiceCache serviceCache;
+  DataServiceMeta dataServiceMeta;
+  ResultCacheQueryService queryService;
+
+  @Before
+  public void setUp() throws Exception {
+    resultCache = new QueryResultCache( 1024 * 1024 );
+    when( factory.getResultCache() ).thenReturn( resultCache );
+    when( factory.getStatistics( "service" ) ).thenReturn(
+      new ServiceCacheStatistics( "service", () -> Optional.absent() ) );
+
+    serviceCache = mock( ServiceCache.class );
+    PushDownOptimizationMeta optimizationMeta = new PushDownOptimizationMeta();
+    optimizationMeta.setType( serviceCache );
+    dataServiceMeta = new DataServiceMeta( serviceTrans );
+    dataServiceMeta.setName( "service" );
+    dataServiceMeta.setPushDownOptimizationMeta( ImmutableList.of( optimizationMeta ) );
+    when( serviceTrans.getXML( anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(),
+      anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean() ) ).thenReturn( "<transformation/>" );
+
+    when( resolver.getDataService( "service" ) ).thenReturn( dataServiceMeta );
+    when( resolver.createBuilder( any( SQL.class ) ) ).thenReturn( builder );
+    when( builder.rowLimit( anyInt() ) ).thenReturn( builder );
+    when( builder.parameters( anyMapOf( String.class, String.class ) ) ).thenReturn( builder );
+    when( builder.metastore( any( org.pentaho.metastore.api.IMetaStore.class ) ) ).thenReturn( builder );
+    when( builder.build() ).thenReturn( executor );
+    when( executor.hasErrors() ).thenReturn( false );
+    when( executor.executeQuery( any( DataOutputStream.class ) ) ).then( new Answer<DataServiceExecutor>() {
+      @Override public DataServiceExecutor answer( InvocationOnMock invocation ) throws Throwable {
+        DataOutputStream dos = (DataOutputStream) invocation.getArguments()[ 0 ];
+        DataServiceExecutor.writeMetadata( dos, "service", "serviceTrans", "id-1", "genTrans", "id-2" );
+        dos.writeInt( 42 );
+        return executor;
+      }
+    } );
+
+    queryService = new ResultCacheQueryService( factory, resolver, null );
+  }
+
+  @Test
+  public void testRepeatQueryIsServedFromCache() throws Exception {
+    Map<String, String> parameters = ImmutableMap.of( "P", "1" );
+    byte[] first = write( queryService.prepareQuery( QUERY, 10, parameters ) );
+
+    Query cached = queryService.prepareQuery( "SELECT * FROM service  WHERE A = 'x  y' ", 10, parameters );
+    assertThat( cached.getTransList(), empty() );
+    byte[] second = write( cached );
+    verify( executor, times( 1 ) ).executeQuery( any( DataOutputStream.class ) );
+
+    // Same body, without the execution IDs
+    assertThat( ResultCacheQueryService.stripHeader( second ),
+      equalTo( ResultCacheQueryService.stripHeader( first ) ) );
+    assertThat( second, not( equalTo( first ) ) );
+    // No transformation ran, so none is named
+    DataInputStream header = new DataInputStream( new ByteArrayInputStream( second ) );
+    assertThat( header.readUTF(), equalTo( "service" ) );
+    for ( int i = 0; i < 4; i++ ) {
+      assertThat( header.readUTF(), equalTo( "" ) );
+    }
+    assertThat( factory.getStatistics( "service" ).getResultHits(), is( 1L ) );
+
+    // Different limits, parameters or literals are different results
+    write( queryService.prepareQuery( QUERY, 20, parameters ) );
+    write( queryService.prepareQuery( QUERY, 10, ImmutableMap.<String, String>of() ) );
+    write( queryService.prepareQuery( "SELECT * FROM service WHERE A = 'x y'", 10, parameters ) );
+    verify( executor, times( 4 ) ).executeQuery( any( DataOutputStream.class ) );
+  }
+
+  @Test
+  public void testFailedQueryIsNotCached() throws Exception {
+    when( executor.hasErrors() ).thenReturn( true );
+    write( queryService.prepareQuery( QUERY, 0, ImmutableMap.<String, String>of() ) );
+    write( queryService.prepareQuery( QUERY, 0, ImmutableMap.<String, String>of() ) );
+    verify( executor, times( 2 ) ).executeQuery( any( DataOutputStream.class ) );
+  }
+
+  @Test
+  public void testInvalidate() throws Exception {
+    write( queryService.prepareQuery( QUERY, 0, ImmutableMap.<String, String>of() ) );
+    resultCache.invalidate( "service" );
+    write( queryService.prepareQuery( QUERY, 0, ImmutableMap.<String, String>of() ) );
+    verify( executor, times( 2 ) ).executeQuery( any( DataOutputStream.class ) );
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    QueryResultCache.Key key = new QueryResultCache.Key( "service", 1, QUERY, ImmutableMap.<String, String>of(), 0 );
+    resultCache.put( key, new byte[] { 1 } );
+    long now = System.currentTimeMillis();
+    assertThat( resultCache.get( key, 0, now + 100000 ).isPresent(), is( true ) );
+    assertThat( resultCache.get( key, 60000, now ).isPresent(), is( true ) );
+    assertThat( resultCache.get( key, 60000, now + 60000 ).isPresent(), is( false ) );
+    assertThat( resultCache.size(), is( 0L ) );
+  }
+
+  @Test
+  public void testUncachedServices() throws Exception {
+    assertThat( queryService.prepareQuery( "SELECT * FROM unknown", 0, ImmutableMap.<String, String>of() ),
+      nullValue() );
+    assertThat( queryService.prepareQuery( "not sql", 0, ImmutableMap.<String, String>of() ), nullValue() );
+
+    dataServiceMeta.getPushDownOptimizationMeta().get( 0 ).setEnabled( false );
+    assertThat( queryService.prepareQuery( QUERY, 0, ImmutableMap.<String, String>of() ), nullValue() );
+
+    dataServiceMeta.getPushDownOptimizationMeta().get( 0 ).setEnabled( true );
+    assertThat( queryService.prepareQuery( QUERY, 0, ImmutableMap.<String, String>of() ), notNullValue() );
+
+    when( factory.getResultCache() ).thenReturn( new QueryResultCache( 0 ) );
+    assertThat( queryService.prepareQuery( QUERY, 0, ImmutableMap.<String, String>of() ), nullValue() );
+  }
+
+  @Test
+  public void testNormalize() throws Exception {
+    assertThat( QueryResultCache.normalize( "  SELECT\t*\n FROM  \"my  service\" WHERE A = '  '  " ),
+      equalTo( "SELECT * FROM \"my  service\" WHERE A = '  '" ) );
+  }
+
+  private static byte[] write( Query query ) throws Exception {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    query.writeTo( outputStream );
+    return outputStream.toByteArray();
+  }
+}
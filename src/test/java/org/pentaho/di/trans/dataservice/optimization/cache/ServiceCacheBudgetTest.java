@@ -0,0 +1,194 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+
+import javax.cache.Cache;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith( MockitoJUnitRunner.class )
+public class ServiceCacheBudgetTest {
+
+  @Mock Cache<CachedService.CacheKey, CachedService> smallCache;
+  @Mock Cache<CachedService.CacheKey, CachedService> largeCache;
+
+  RowMeta rowMeta;
+  CachedService.CacheKey key1, key2, key3;
+  ServiceCacheStatistics smallStatistics, largeStatistics;
+  FrequencySketch sketch = new FrequencySketch( 64 );
+
+  @Before
+  public void setUp() throws Exception {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "A" ) );
+    key1 = ServiceCacheStatisticsTest.cacheKey( rowMeta, "SELECT * FROM service WHERE A = 1" );
+    key2 = ServiceCacheStatisticsTest.cacheKey( rowMeta, "SELECT * FROM service WHERE A = 2" );
+    key3 = ServiceCacheStatisticsTest.cacheKey( rowMeta, "SELECT * FROM service WHERE A = 3" );
+
+    stubEntries( smallCache, entry( key1, cachedService( 10 ) ) );
+    stubEntries( largeCache, entry( key2, cachedService( 100 ) ), entry( key3, cachedService( 100 ) ) );
+
+    smallStatistics = new ServiceCacheStatistics( "small", () -> Optional.of( smallCache ) );
+    largeStatistics = new ServiceCacheStatistics( "large", () -> Optional.of( largeCache ) );
+  }
+
+  @Test
+  public void testWithinBudget() throws Exception {
+    ServiceCacheBudget budget = new ServiceCacheBudget( 0, 0, 0, sketch );
+    assertThat( budget.getMaxEntryBytes(), is( 0L ) );
+    assertThat( budget.enforce( ImmutableList.of( smallStatistics, largeStatistics ) ), is( 0 ) );
+
+    long total = bytes( 10 ) + 2 * bytes( 100 );
+    budget = new ServiceCacheBudget( 0, total, 0, sketch );
+    assertThat( budget.enforce( ImmutableList.of( smallStatistics, largeStatistics ) ), is( 0 ) );
+    verify( largeCache, never() ).remove( any( CachedService.CacheKey.class ) );
+  }
+
+  @Test
+  public void testServiceBudgetEvictsLeastUsed() throws Exception {
+    largeStatistics.recordHit( ServiceCacheStatistics.HIT_EXACT, key2, cachedService( 1 ) );
+    ServiceCacheBudget budget = new ServiceCacheBudget( bytes( 100 ), 0, 0, sketch );
+    assertThat( budget.getMaxEntryBytes(), is( bytes( 100 ) ) );
+
+    assertThat( budget.enforce( ImmutableList.of( smallStatistics, largeStatistics ) ), is( 1 ) );
+    verify( largeCache ).remove( key3 );
+    verify( largeCache, never() ).remove( key2 );
+    verify( smallCache, never() ).remove( any( CachedService.CacheKey.class ) );
+
+    // Evicted entries are forgotten, the cache is not read again
+    assertThat( largeStatistics.getCachedBytes(), is( bytes( 100 ) ) );
+    assertThat( budget.enforce( ImmutableList.of( smallStatistics, largeStatistics ) ), is( 0 ) );
+    verify( largeCache ).iterator();
+  }
+
+  @Test
+  public void testGlobalBudgetPrefersSmallEntries() throws Exception {
+    ServiceCacheBudget budget = new ServiceCacheBudget( 0, bytes( 10 ) + bytes( 100 ), 0, sketch );
+    assertThat( budget.enforce( ImmutableList.of( smallStatistics, largeStatistics ) ), is( 1 ) );
+    verify( smallCache, never() ).remove( any( CachedService.CacheKey.class ) );
+  }
+
+  @Test
+  public void testAdmission() throws Exception {
+    ImmutableList<ServiceCacheStatistics> all = ImmutableList.of( smallStatistics, largeStatistics );
+    CachedService.CacheKey newKey = ServiceCacheStatisticsTest.cacheKey( rowMeta, "SELECT * FROM service WHERE A = 4" );
+
+    // Always admitted without a budget, or with room to spare
+    assertThat( new ServiceCacheBudget( 0, 0, 0, sketch ).admits( largeStatistics, newKey, bytes( 100 ), 0, all ),
+      is( true ) );
+    ServiceCacheBudget budget = new ServiceCacheBudget( 0, bytes( 10 ) + 3 * bytes( 100 ), 0, sketch );
+    assertThat( budget.admits( largeStatistics, newKey, bytes( 100 ), 0, all ), is( true ) );
+    // Never admitted if larger than the budget
+    assertThat( budget.admits( largeStatistics, newKey, bytes( 400 ), 1000, all ), is( false ) );
+
+    // A full cache only admits results worth more than the entries they displace
+    budget = new ServiceCacheBudget( 0, bytes( 10 ) + 2 * bytes( 100 ), 0, sketch );
+    largeStatistics.recordCost( key2, 10 );
+    largeStatistics.recordCost( key3, 10 );
+    assertThat( budget.admits( largeStatistics, newKey, bytes( 100 ), 10, all ), is( false ) );
+
+    // An expensive result is worth keeping
+    assertThat( budget.admits( largeStatistics, newKey, bytes( 100 ), 1000, all ), is( true ) );
+
+    // So is a popular one
+    for ( int i = 0; i < 3; i++ ) {
+      sketch.increment( newKey.withoutOrder() );
+    }
+    assertThat( budget.admits( largeStatistics, newKey, bytes( 100 ), 10, all ), is( true ) );
+    verify( largeCache, never() ).remove( any( CachedService.CacheKey.class ) );
+  }
+
+  @Test
+  public void testEntryCount() throws Exception {
+    ImmutableList<ServiceCacheStatistics> all = ImmutableList.of( smallStatistics, largeStatistics );
+    CachedService.CacheKey newKey = ServiceCacheStatisticsTest.cacheKey( rowMeta, "SELECT * FROM service WHERE A = 4" );
+    largeStatistics.recordCost( key2, 1000 );
+    largeStatistics.recordCost( key3, 10 );
+    ServiceCacheBudget budget = new ServiceCacheBudget( 0, 0, 2, sketch );
+    assertThat( budget.getMaxEntryBytes(), is( 0L ) );
+
+    // A full cache only admits results worth more than the entry they displace
+    assertThat( budget.admits( largeStatistics, newKey, bytes( 100 ), 10, all ), is( false ) );
+    assertThat( budget.admits( largeStatistics, newKey, bytes( 100 ), 100, all ), is( true ) );
+    assertThat( budget.admits( smallStatistics, newKey, bytes( 100 ), 0, all ), is( true ) );
+
+    budget = new ServiceCacheBudget( 0, 0, 1, sketch );
+    assertThat( budget.enforce( all ), is( 1 ) );
+    verify( largeCache ).remove( key3 );
+    verify( smallCache, never() ).remove( any( CachedService.CacheKey.class ) );
+  }
+
+  @Test
+  public void testEvictsCheapEntriesFirst() throws Exception {
+    largeStatistics.recordCost( key2, 1000 );
+    ServiceCacheBudget budget = new ServiceCacheBudget( bytes( 100 ), 0, 0, sketch );
+    assertThat( budget.enforce( ImmutableList.of( smallStatistics, largeStatistics ) ), is( 1 ) );
+    verify( largeCache ).remove( key3 );
+  }
+
+  private CachedService cachedService( int rows ) {
+    List<RowMetaAndData> data = new ArrayList<>();
+    for ( long i = 0; i < rows; i++ ) {
+      data.add( new RowMetaAndData( rowMeta, i ) );
+    }
+    return CachedService.complete( data );
+  }
+
+  private static long bytes( int rows ) {
+    return rows * CachedService.estimateBytes( new Object[] { 0L } );
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private static Cache.Entry<CachedService.CacheKey, CachedService> entry( CachedService.CacheKey key,
+                                                                          CachedService value ) {
+    Cache.Entry<CachedService.CacheKey, CachedService> entry = mock( Cache.Entry.class );
+    when( entry.getKey() ).thenReturn( key );
+    when( entry.getValue() ).thenReturn( value );
+    return entry;
+  }
+
+  @SafeVarargs
+  private static void stubEntries( Cache<CachedService.CacheKey, CachedService> cache,
+                                   final Cache.Entry<CachedService.CacheKey, CachedService>... entries ) {
+    when( cache.iterator() ).thenAnswer( invocation -> ImmutableList.copyOf( entries ).iterator() );
+  }
+}
@@ -117,6 +117,25 @@ public class ServiceCacheFactoryTest {
     assertThat( serviceCacheFactory.getCache( serviceCache, DATA_SERVICE_NAME ), is( cache ) );
   }
 
+  @Test
+  public void testDefaultBudget() throws Exception {
+    System.clearProperty( ServiceCacheFactory.MAX_TOTAL_BYTES_PROPERTY );
+    System.clearProperty( ServiceCacheFactory.MAX_SERVICE_ENTRIES_PROPERTY );
+    // Admission applies without any configuration
+    ServiceCacheBudget budget = serviceCacheFactory.getBudget();
+    assertThat( budget.isUnbounded(), is( false ) );
+    assertThat( budget.getMaxEntryBytes(), is( ServiceCacheFactory.DEFAULT_MAX_TOTAL_BYTES ) );
+
+    try {
+      System.setProperty( ServiceCacheFactory.MAX_TOTAL_BYTES_PROPERTY, "0" );
+      System.setProperty( ServiceCacheFactory.MAX_SERVICE_ENTRIES_PROPERTY, "0" );
+      assertThat( serviceCacheFactory.getBudget().isUnbounded(), is( true ) );
+    } finally {
+      System.clearProperty( ServiceCacheFactory.MAX_TOTAL_BYTES_PROPERTY );
+      System.clearProperty( ServiceCacheFactory.MAX_SERVICE_ENTRIES_PROPERTY );
+    }
+  }
+
   private String cacheName() {
     return serviceCacheFactory.cacheName( DATA_SERVICE_NAME );
   }
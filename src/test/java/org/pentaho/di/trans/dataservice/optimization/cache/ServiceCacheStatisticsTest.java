@@ -0,0 +1,166 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.sql.SQL;
+import org.pentaho.di.trans.dataservice.DataServiceExecutor;
+
+import javax.cache.Cache;
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.collection.IsMapContaining.hasEntry;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith( MockitoJUnitRunner.class )
+public class ServiceCacheStatisticsTest {
+
+  @Mock Cache<CachedService.CacheKey, CachedService> cache;
+  @Mock Cache.Entry<CachedService.CacheKey, CachedService> entry;
+
+  ServiceCacheStatistics statistics;
+  CachedService cachedService;
+  CachedService.CacheKey key;
+
+  @Before
+  public void setUp() throws Exception {
+    RowMeta rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "ID" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "A" ) );
+    cachedService = CachedService.complete( ImmutableList.of(
+      new RowMetaAndData( rowMeta, "one", 1L ),
+      new RowMetaAndData( rowMeta, "two", 2L )
+    ) );
+    when( entry.getValue() ).thenReturn( cachedService );
+    when( cache.iterator() ).thenReturn( ImmutableList.of( entry ).iterator() );
+
+    statistics = new ServiceCacheStatistics( "service", () -> Optional.of( cache ) );
+    key = cacheKey( rowMeta, "SELECT * FROM service WHERE A = 1" );
+  }
+
+  static CachedService.CacheKey cacheKey( RowMeta rowMeta, String query ) throws Exception {
+    SQL sql = new SQL( query );
+    sql.parse( rowMeta );
+    DataServiceExecutor executor = mock( DataServiceExecutor.class, RETURNS_DEEP_STUBS );
+    when( executor.getSql() ).thenReturn( sql );
+    when( executor.getParameters() ).thenReturn( ImmutableMap.<String, String>of() );
+    when( executor.getService().getServiceTrans().getXML( anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(),
+      anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean() ) )
+      .thenReturn( "<transformation/>" );
+    return CachedService.CacheKey.create( executor );
+  }
+
+  @Test
+  public void testCounters() throws Exception {
+    statistics.recordHit( ServiceCacheStatistics.HIT_EXACT, key, cachedService );
+    statistics.recordHit( ServiceCacheStatistics.HIT_EXACT, key, cachedService );
+    statistics.recordHit( ServiceCacheStatistics.HIT_SUBSUMED, key.withoutCondition(), cachedService );
+    statistics.recordMiss();
+    statistics.recordSharedScan();
+    statistics.recordObserverAbort();
+    statistics.recordReplay( 500, TimeUnit.MILLISECONDS.toNanos( 250 ) );
+    statistics.recordReplay( 500, TimeUnit.MILLISECONDS.toNanos( 250 ) );
+
+    assertThat( statistics.getHits(), hasEntry( ServiceCacheStatistics.HIT_EXACT, 2L ) );
+    assertThat( statistics.getHits(), hasEntry( ServiceCacheStatistics.HIT_SUBSUMED, 1L ) );
+    assertThat( statistics.getEntryHits( key ), is( 2L ) );
+    assertThat( statistics.getPartialHits(), is( 0L ) );
+    assertThat( statistics.getMisses(), is( 1L ) );
+    assertThat( statistics.getSharedScans(), is( 1L ) );
+    assertThat( statistics.getObserverAborts(), is( 1L ) );
+    assertThat( statistics.getReplays(), is( 2L ) );
+    assertThat( statistics.getReplayedRows(), is( 1000L ) );
+    assertThat( statistics.getReplayRowsPerSecond(), is( 2000.0 ) );
+
+    statistics.reset();
+    assertThat( statistics.getHits().size(), is( 0 ) );
+    assertThat( statistics.getReplayedRows(), is( 0L ) );
+  }
+
+  @Test
+  public void testEntries() throws Exception {
+    when( entry.getKey() ).thenReturn( key );
+    assertThat( statistics.getEntryCount(), is( 1L ) );
+    assertThat( statistics.getEstimatedBytes(), greaterThan( 0L ) );
+
+    // Counts follow the listener without reading the cache again
+    statistics.recordEntry( key.withoutCondition(), 100 );
+    assertThat( statistics.getEntryCount(), is( 2L ) );
+    assertThat( statistics.getEstimatedBytes(), is( cachedService.estimateBytes() + 100 ) );
+    verify( cache ).iterator();
+  }
+
+  @Test
+  public void testEntrySizes() throws Exception {
+    when( entry.getKey() ).thenReturn( key );
+    long bytes = cachedService.estimateBytes();
+
+    // Entries cached before listening are measured once
+    assertThat( statistics.getEntrySizes(), hasEntry( key, bytes ) );
+    assertThat( statistics.getCachedBytes(), is( bytes ) );
+
+    statistics.recordEntry( key.withoutCondition(), 100 );
+    statistics.recordEntry( key, 50 );
+    assertThat( statistics.getEntrySizes().size(), is( 2 ) );
+    assertThat( statistics.getCachedBytes(), is( 150L ) );
+
+    statistics.forgetEntry( key );
+    statistics.forgetEntry( key );
+    assertThat( statistics.getCachedBytes(), is( 100L ) );
+    verify( cache ).iterator();
+  }
+
+  @Test
+  public void testEntrySizesWithoutListener() throws Exception {
+    when( entry.getKey() ).thenReturn( key );
+    doThrow( new UnsupportedOperationException() ).when( cache )
+      .registerCacheEntryListenerConfiguration( any( CacheEntryListenerConfiguration.class ) );
+
+    // Entries are read from the cache instead
+    assertThat( statistics.getEntrySizes(), hasEntry( key, cachedService.estimateBytes() ) );
+    when( cache.iterator() ).thenReturn( ImmutableList.<Cache.Entry<CachedService.CacheKey, CachedService>>of()
+      .iterator() );
+    assertThat( statistics.getCachedBytes(), is( 0L ) );
+  }
+}
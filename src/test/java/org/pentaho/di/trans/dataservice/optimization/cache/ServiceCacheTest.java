@@ -25,19 +25,25 @@ package org.pentaho.di.trans.dataservice.optimization.cache;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.MoreExecutors;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
 import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.core.sql.SQL;
 import org.pentaho.di.trans.Trans;
@@ -55,22 +61,37 @@ import javax.cache.configuration.CompleteConfiguration;
 import javax.cache.configuration.Factory;
 import javax.cache.expiry.Duration;
 import javax.cache.expiry.ExpiryPolicy;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import static org.hamcrest.collection.IsMapContaining.hasEntry;
 import static org.hamcrest.core.IsNot.not;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.ignoreStubs;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.same;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -100,6 +121,7 @@ public class ServiceCacheTest {
   RowMeta rowMeta;
   PushDownOptimizationMeta serviceCacheOpt;
   PushDownOptimizationMeta otherOpt;
+  ServiceCacheStatistics statistics;
 
   StepInterface serviceStep;
   private static final long DEFAULT_TTL = 3600l;
@@ -124,6 +146,16 @@ public class ServiceCacheTest {
     when( transMeta.getStepFields( SERVICE_STEP ) ).thenReturn( rowMeta );
 
     when( factory.getExecutorService() ).thenReturn( MoreExecutors.sameThreadExecutor() );
+    when( factory.getIncrementalBase( any( DataServiceExecutor.class ) ) )
+      .thenReturn( Optional.<Map.Entry<CachedService.CacheKey, CachedService>>absent() );
+    when( factory.getRefreshKey( any( DataServiceExecutor.class ) ) )
+      .thenReturn( Optional.<CachedService.CacheKey>absent() );
+    statistics = new ServiceCacheStatistics( "MOCK_SERVICE", () -> Optional.of( cache ) );
+    when( factory.getStatistics( "MOCK_SERVICE" ) ).thenReturn( statistics );
+    when( factory.getResultCache() ).thenReturn( new QueryResultCache( 0 ) );
+    when( factory.getColumnStatisticsRegistry() ).thenReturn( new ColumnStatisticsRegistry() );
+    when( factory.admit( anyString(), any( CachedService.CacheKey.class ), any( CachedService.class ), anyLong() ) )
+      .thenReturn( true );
 
     serviceCacheOpt =
       when( mock( PushDownOptimizationMeta.class ).getType() ).thenReturn( mock( ServiceCache.class ) ).getMock();
@@ -138,13 +170,20 @@ public class ServiceCacheTest {
     when( expiryPolicy.getExpiryForAccess() ).thenReturn( duration );
 
     when( duration.getDurationAmount() ).thenReturn( DEFAULT_TTL );
+    when( cache.iterator() ).thenAnswer( new Answer<Iterator<Cache.Entry<CachedService.CacheKey, CachedService>>>() {
+      @Override public Iterator<Cache.Entry<CachedService.CacheKey, CachedService>> answer(
+        InvocationOnMock invocation ) {
+        return Collections.emptyIterator();
+      }
+    } );
   }
 
   @Test
   public void testActivateObserve() throws Exception {
     DataServiceExecutor executor = dataServiceExecutor( "SELECT * FROM MOCK_SERVICE ORDER BY ID" );
     CachedService.CacheKey key = CachedService.CacheKey.create( executor );
-    CachedService cachedService = CachedService.complete( ImmutableList.<RowMetaAndData>of() );
+    CachedService cachedService =
+      CachedService.complete( ImmutableList.of( new RowMetaAndData( rowMeta, "a", 1L, 2L ) ) );
 
     ServiceObserver observer = mock( ServiceObserver.class );
     when( factory.createObserver( executor ) ).thenReturn( observer );
@@ -156,6 +195,11 @@ public class ServiceCacheTest {
 
     verify( cache ).putIfAbsent( key.withoutOrder(), cachedService );
     verifyNoMoreInteractions( ignoreStubs( cache ) );
+    assertThat( statistics.getMisses(), is( 1L ) );
+
+    // Complete service output describes the service
+    assertThat( factory.getColumnStatisticsRegistry().get( dataServiceMeta ).get().keySet(),
+      contains( "ID", "A", "B" ) );
   }
 
   @Test
@@ -173,6 +217,7 @@ public class ServiceCacheTest {
 
     assertThat( serviceCache.activate( executor, serviceStep ), is( false ) );
     assertTrue( runningServices.isEmpty() );
+    assertThat( statistics.getObserverAborts(), is( 1L ) );
   }
 
   @Test
@@ -250,6 +295,8 @@ public class ServiceCacheTest {
 
     assertThat( serviceCache.activate( executor, serviceStep ), is( true ) );
     verify( cachedServiceLoader ).replay( executor );
+    assertThat( statistics.getHits(), hasEntry( ServiceCacheStatistics.HIT_EXACT, 1L ) );
+    assertThat( statistics.getReplayedRows(), is( 2000L ) );
   }
 
   @Test
@@ -270,6 +317,31 @@ public class ServiceCacheTest {
     verify( cachedServiceLoader ).replay( executor );
   }
 
+  @Test
+  public void testReplaySubsumingCondition() throws Exception {
+    DataServiceExecutor cachedQuery = dataServiceExecutor( "SELECT * FROM MOCK_SERVICE WHERE A > 2" );
+    CachedService.CacheKey cachedKey = CachedService.CacheKey.create( cachedQuery );
+    DataServiceExecutor executor = dataServiceExecutor( "SELECT * FROM MOCK_SERVICE WHERE A > 10 AND B = 1" );
+    final CachedService cachedService = mock( CachedService.class );
+    when( cachedService.isComplete() ).thenReturn( true );
+
+    @SuppressWarnings( "unchecked" )
+    final Cache.Entry<CachedService.CacheKey, CachedService> entry = mock( Cache.Entry.class );
+    when( entry.getKey() ).thenReturn( cachedKey );
+    when( entry.getValue() ).thenReturn( cachedService );
+    when( cache.iterator() ).thenAnswer( new Answer<Iterator<Cache.Entry<CachedService.CacheKey, CachedService>>>() {
+      @Override public Iterator<Cache.Entry<CachedService.CacheKey, CachedService>> answer(
+        InvocationOnMock invocation ) {
+        return Iterators.singletonIterator( entry );
+      }
+    } );
+
+    assertThat( serviceCache.getAvailableCache( executor ), hasEntry( cachedKey, cachedService ) );
+    // A more selective cached condition can not answer a broader query
+    assertThat( serviceCache.getAvailableCache( dataServiceExecutor( "SELECT * FROM MOCK_SERVICE WHERE A > 1" ) )
+      .size(), is( 0 ) );
+  }
+
   @Test
   public void testReplayFromRunning() throws Exception {
 
@@ -291,6 +363,219 @@ public class ServiceCacheTest {
     verify( cachedServiceLoader ).replay( executor );
   }
 
+  @Test
+  public void testConcurrentQueriesShareServiceRun() throws Exception {
+    DataServiceExecutor leader = dataServiceExecutor( "SELECT * FROM MOCK_SERVICE WHERE A > 2 ORDER BY ID" );
+    DataServiceExecutor follower = dataServiceExecutor( "SELECT COUNT(*) FROM MOCK_SERVICE WHERE A > 5 AND B = 1" );
+    CachedServiceLoader cachedServiceLoader = mock( CachedServiceLoader.class );
+
+    Map<CachedService.CacheKey, ServiceObserver> runningServices = new HashMap<>();
+    when( factory.getRunningServices() ).thenReturn( runningServices );
+    ServiceObserver observer = new ServiceObserver( leader );
+    when( factory.createObserver( leader ) ).thenReturn( observer );
+    //noinspection unchecked
+    when( factory.createCachedServiceLoader( any( java.util.function.Supplier.class ) ) )
+      .thenReturn( cachedServiceLoader );
+    when( cachedServiceLoader.replay( follower ) ).thenReturn( Futures.immediateFuture( 10 ) );
+
+    assertThat( serviceCache.activate( leader, serviceStep ), is( false ) );
+    assertThat( runningServices, hasEntry( CachedService.CacheKey.create( leader ).withoutOrder(), observer ) );
+
+    assertThat( serviceCache.activate( follower, serviceStep ), is( true ) );
+    verify( cachedServiceLoader ).replay( follower );
+  }
+
+  @Test
+  public void testRefreshReplacesEntry() throws Exception {
+    DataServiceExecutor executor = dataServiceExecutor( "SELECT * FROM MOCK_SERVICE ORDER BY ID" );
+    CachedService.CacheKey key = CachedService.CacheKey.create( executor );
+    CachedService cachedService = CachedService.complete( ImmutableList.<RowMetaAndData>of() );
+    when( factory.isRefresh( executor ) ).thenReturn( true );
+
+    ServiceObserver observer = mock( ServiceObserver.class );
+    when( factory.createObserver( executor ) ).thenReturn( observer );
+    when( observer.install() ).thenReturn( Futures.immediateFuture( cachedService ) );
+
+    assertThat( serviceCache.activate( executor, serviceStep ), is( false ) );
+
+    verify( cache ).put( key.withoutOrder(), cachedService );
+    verifyNoMoreInteractions( ignoreStubs( cache ) );
+  }
+
+  @Test
+  public void testRefreshAhead() throws Exception {
+    DataServiceExecutor executor = dataServiceExecutor( "SELECT * FROM MOCK_SERVICE WHERE A = 2" );
+    CachedService.CacheKey key = CachedService.CacheKey.create( executor );
+    CachedService cachedService = mock( CachedService.class );
+    CachedServiceLoader cachedServiceLoader = mock( CachedServiceLoader.class );
+
+    when( cache.get( key ) ).thenReturn( cachedService );
+    when( cachedService.answersQuery( executor ) ).thenReturn( true );
+    when( factory.createCachedServiceLoader( cachedService ) ).thenReturn( cachedServiceLoader );
+    when( cachedServiceLoader.replay( executor ) ).thenReturn( Futures.immediateFuture( 2000 ) );
+
+    serviceCache.setTimeToLive( "60" );
+    serviceCache.setRefreshAhead( "10" );
+    when( duration.getDurationAmount() ).thenReturn( 60L );
+    long now = System.currentTimeMillis();
+    assertThat( serviceCache.isExpiring( now - 40000, now ), is( false ) );
+    assertThat( serviceCache.isExpiring( now - 55000, now ), is( true ) );
+
+    // An old entry is not refreshed while it keeps being read
+    when( cachedService.getCreated() ).thenReturn( now - 55000 );
+    statistics.recordAccess( key, now - 40000 );
+    assertThat( serviceCache.activate( executor, serviceStep ), is( true ) );
+    verify( factory, never() ).requestRefresh( anyString(), anyMapOf( String.class, String.class ),
+      any( CachedService.CacheKey.class ) );
+
+    // It is refreshed once left idle for most of its time to live, by a query for the entry's own key
+    statistics.recordAccess( key, now - 55000 );
+    assertThat( serviceCache.activate( executor, serviceStep ), is( true ) );
+    verify( factory ).requestRefresh( serviceCache.createRefreshQuery( executor, key ), executor.getParameters(),
+      key );
+  }
+
+  @Test
+  public void testCreateRefreshQuery() throws Exception {
+    DataServiceExecutor executor =
+      dataServiceExecutor( "SELECT ID FROM MOCK_SERVICE WHERE A = 2 ORDER BY ID LIMIT 5" );
+    CachedService.CacheKey key = serviceCache.createRootKey( executor );
+
+    // No LIMIT, the refresh must capture the complete service output
+    String query = serviceCache.createRefreshQuery( executor, key );
+    assertThat( query, startsWith( "SELECT * FROM \"MOCK_SERVICE\" WHERE " ) );
+    assertThat( query, containsString( "A = 2" ) );
+    assertThat( query, not( containsString( "LIMIT" ) ) );
+    assertThat( serviceCache.createRefreshQuery( executor, key.withoutOrder() ), equalTo( query ) );
+    new SQL( query ).parse( rowMeta );
+
+    // Entries cached for other conditions are refreshed unconditioned
+    assertThat( serviceCache.createRefreshQuery( executor, key.withoutCondition() ),
+      equalTo( "SELECT * FROM \"MOCK_SERVICE\"" ) );
+    CachedService.CacheKey subsuming =
+      serviceCache.createRootKey( dataServiceExecutor( "SELECT * FROM MOCK_SERVICE WHERE A > 0" ) );
+    assertThat( serviceCache.createRefreshQuery( executor, subsuming ),
+      equalTo( "SELECT * FROM \"MOCK_SERVICE\"" ) );
+  }
+
+  @Test
+  public void testRefreshReplacesRequestedEntry() throws Exception {
+    DataServiceExecutor executor = dataServiceExecutor( "SELECT * FROM MOCK_SERVICE" );
+    CachedService.CacheKey target =
+      serviceCache.createRootKey( dataServiceExecutor( "SELECT * FROM MOCK_SERVICE WHERE A > 0" ) );
+    when( factory.isRefresh( executor ) ).thenReturn( true );
+    when( factory.getRefreshKey( executor ) ).thenReturn( Optional.of( target ) );
+
+    CachedService cachedService = CachedService.complete( ImmutableList.<RowMetaAndData>of() );
+    ServiceObserver observer = mock( ServiceObserver.class );
+    when( factory.createObserver( executor ) ).thenReturn( observer );
+    when( observer.install() ).thenReturn( Futures.immediateFuture( cachedService ) );
+
+    assertThat( serviceCache.activate( executor, serviceStep ), is( false ) );
+    verify( cache ).put( target, cachedService );
+  }
+
+  @Test
+  public void testIncompleteRefreshKeepsCompleteEntry() throws Exception {
+    DataServiceExecutor executor = dataServiceExecutor( "SELECT * FROM MOCK_SERVICE" );
+    CachedService.CacheKey key = serviceCache.createRootKey( executor );
+    when( factory.isRefresh( executor ) ).thenReturn( true );
+    when( factory.getRefreshKey( executor ) ).thenReturn( Optional.of( key ) );
+    when( cache.get( key ) ).thenReturn( CachedService.complete( ImmutableList.<RowMetaAndData>of() ) );
+
+    CachedService truncated = mock( CachedService.class );
+    ServiceObserver observer = mock( ServiceObserver.class );
+    when( factory.createObserver( executor ) ).thenReturn( observer );
+    when( observer.install() ).thenReturn( Futures.immediateFuture( truncated ) );
+
+    assertThat( serviceCache.activate( executor, serviceStep ), is( false ) );
+    verify( cache, never() ).put( any( CachedService.CacheKey.class ), any( CachedService.class ) );
+    verify( truncated ).release();
+  }
+
+  @Test
+  public void testStoreByValueReleasesSpill() throws Exception {
+    DataServiceExecutor executor = dataServiceExecutor( "SELECT * FROM MOCK_SERVICE" );
+    when( config.isStoreByValue() ).thenReturn( true );
+    when( cache.putIfAbsent( any( CachedService.CacheKey.class ), any( CachedService.class ) ) ).thenReturn( true );
+
+    CachedService spilled = mock( CachedService.class );
+    when( spilled.isComplete() ).thenReturn( true );
+    ServiceObserver observer = mock( ServiceObserver.class );
+    when( factory.createObserver( executor ) ).thenReturn( observer );
+    when( observer.install() ).thenReturn( Futures.immediateFuture( spilled ) );
+
+    // The cache holds its own copy of the rows, spilled files are not referenced by any entry
+    assertThat( serviceCache.activate( executor, serviceStep ), is( false ) );
+    verify( cache ).putIfAbsent( serviceCache.createRootKey( executor ).withoutOrder(), spilled );
+    verify( spilled ).release();
+  }
+
+  @Test
+  public void testCreateIncrementalQuery() throws Exception {
+    DataServiceExecutor executor = dataServiceExecutor( "SELECT * FROM MOCK_SERVICE WHERE A = 2" );
+    CachedService cachedService = CachedService.complete( ImmutableList.of(
+      new RowMetaAndData( rowMeta, "a", 2L, 10L ),
+      new RowMetaAndData( rowMeta, "b", 2L, 30L ),
+      new RowMetaAndData( rowMeta, "c", 2L, 20L )
+    ) );
+
+    assertThat( serviceCache.createIncrementalQuery( executor, cachedService ).isPresent(), is( false ) );
+
+    serviceCache.setWatermarkField( "B" );
+    String query = serviceCache.createIncrementalQuery( executor, cachedService ).get();
+    assertThat( query, startsWith( "SELECT * FROM \"MOCK_SERVICE\" WHERE ( " ) );
+    assertThat( query, containsString( "A = 2" ) );
+    assertThat( query, endsWith( " ) AND \"B\" > 30" ) );
+
+    // The incremental query must still be a valid query against the service
+    new SQL( query ).parse( rowMeta );
+  }
+
+  @Test
+  public void testIncrementalQueryLiterals() throws Exception {
+    RowMeta numberMeta = new RowMeta();
+    numberMeta.addValueMeta( new ValueMetaNumber( "big \"amount\"" ) );
+    CachedService cachedService = CachedService.complete( ImmutableList.of(
+      new RowMetaAndData( numberMeta, 1.0E10 ),
+      new RowMetaAndData( numberMeta, 0.5 )
+    ) );
+
+    // Numbers are written without an exponent, quotes in identifiers are doubled
+    serviceCache.setWatermarkField( "big \"amount\"" );
+    assertThat( serviceCache.createIncrementalQuery( dataServiceExecutor( "SELECT * FROM MOCK_SERVICE" ),
+      cachedService ).get(), is( "SELECT * FROM \"MOCK_SERVICE\" WHERE \"big \"\"amount\"\"\" > 10000000000" ) );
+  }
+
+  @Test
+  public void testIncrementalRefreshAppends() throws Exception {
+    serviceCache.setWatermarkField( "B" );
+    DataServiceExecutor executor = dataServiceExecutor( "SELECT * FROM MOCK_SERVICE WHERE B > 2" );
+    CachedService.CacheKey key = CachedService.CacheKey.create( executor ).withoutCondition();
+    CachedService existing = CachedService.complete( ImmutableList.of(
+      new RowMetaAndData( rowMeta, "a", 1L, 1L ),
+      new RowMetaAndData( rowMeta, "b", 1L, 2L )
+    ) );
+    CachedService increment = CachedService.complete( ImmutableList.of(
+      new RowMetaAndData( rowMeta, "c", 1L, 3L )
+    ) );
+    when( factory.isRefresh( executor ) ).thenReturn( true );
+    when( factory.getIncrementalBase( executor ) )
+      .thenReturn( Optional.of( Maps.immutableEntry( key, existing ) ) );
+
+    ServiceObserver observer = mock( ServiceObserver.class );
+    when( factory.createObserver( executor ) ).thenReturn( observer );
+    when( observer.install() ).thenReturn( Futures.immediateFuture( increment ) );
+    when( cache.replace( same( key ), same( existing ), any( CachedService.class ) ) ).thenReturn( true );
+
+    assertThat( serviceCache.activate( executor, serviceStep ), is( false ) );
+
+    ArgumentCaptor<CachedService> updated = ArgumentCaptor.forClass( CachedService.class );
+    verify( cache ).replace( same( key ), same( existing ), updated.capture() );
+    assertThat( updated.getValue().getRowMetaAndData().size(), is( 3 ) );
+    assertThat( updated.getValue().isComplete(), is( true ) );
+  }
+
   @Test
   public void testTimeToLiveOverride() {
     assertThat( serviceCache.getTemplateOverrides(), not( hasEntry( CONFIG_TTL, "1010" ) ) );
@@ -299,6 +584,49 @@ public class ServiceCacheTest {
     assertThat( serviceCache.getTemplateOverrides(), hasEntry( CONFIG_TTL, "1010" ) );
   }
 
+  @Test
+  public void testEstimateCost() throws Exception {
+    DataServiceExecutor executor = dataServiceExecutor( "SELECT * FROM MOCK_SERVICE" );
+    assertThat( serviceCache.estimateCost( executor, serviceCacheOpt ).isPresent(), is( false ) );
+
+    CachedService cachedService = CachedService.complete( ImmutableList.of(
+      new RowMetaAndData( rowMeta, "a", 1L, 1L ),
+      new RowMetaAndData( rowMeta, "b", 1L, 2L )
+    ) );
+    when( cache.get( CachedService.CacheKey.create( executor ) ) ).thenReturn( cachedService );
+    // Default rate until a replay has been measured
+    assertThat( serviceCache.estimateCost( executor, serviceCacheOpt ).get(),
+      closeTo( 2000 / ServiceCache.DEFAULT_REPLAY_ROWS_PER_SECOND, 1e-9 ) );
+
+    statistics.recordReplay( 1000, TimeUnit.SECONDS.toNanos( 1 ) );
+    assertThat( serviceCache.estimateCost( executor, serviceCacheOpt ).get(), closeTo( 2.0, 1e-9 ) );
+
+    // Refresh queries never replay
+    when( factory.isRefresh( executor ) ).thenReturn( true );
+    assertThat( serviceCache.estimateCost( executor, serviceCacheOpt ).isPresent(), is( false ) );
+  }
+
+  @Test
+  public void testEstimateCostOfScannedRows() throws Exception {
+    List<RowMetaAndData> rows = new ArrayList<>();
+    for ( long i = 0; i < 2 * ZoneMap.BLOCK_ROWS; i++ ) {
+      rows.add( new RowMetaAndData( rowMeta, "a", 1L, i ) );
+    }
+    when( cache.get( any( CachedService.CacheKey.class ) ) ).thenReturn( CachedService.complete( rows ) );
+    statistics.recordReplay( 1000, TimeUnit.SECONDS.toNanos( 1 ) );
+
+    // Only blocks that may match are replayed
+    DataServiceExecutor executor = dataServiceExecutor( "SELECT * FROM MOCK_SERVICE WHERE B < 10" );
+    assertThat( serviceCache.estimateCost( executor, serviceCacheOpt ).get(),
+      closeTo( ZoneMap.BLOCK_ROWS, 1e-9 ) );
+
+    // A cache with a different time to live is not dropped by the estimate
+    serviceCache.setTimeToLive( "1010" );
+    assertThat( serviceCache.estimateCost( executor, serviceCacheOpt ).isPresent(), is( false ) );
+    verify( cache, never() ).clear();
+    verify( cache, never() ).close();
+  }
+
   @Test
   public void testTimeToLiveCacheInvalid() throws KettleException {
     DataServiceExecutor executor = dataServiceExecutor( "SELECT * FROM MOCK_SERVICE" );
@@ -0,0 +1,125 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.sql.SQL;
+import org.pentaho.di.trans.dataservice.DataServiceExecutor;
+import org.pentaho.di.trans.dataservice.DataServiceMeta;
+import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
+import org.pentaho.di.trans.dataservice.resolvers.DataServiceResolver;
+
+import java.util.Collections;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith( MockitoJUnitRunner.class )
+public class ServiceCacheWarmerTest {
+
+  @Mock ServiceCacheFactory factory;
+  @Mock DataServiceResolver resolver;
+  @Mock ScheduledExecutorService scheduler;
+  @Mock DataServiceExecutor.Builder builder;
+  @Mock DataServiceExecutor executor;
+
+  ServiceCache serviceCache;
+  ServiceCacheWarmer warmer;
+
+  @Before
+  public void setUp() throws Exception {
+    serviceCache = new ServiceCache( factory );
+    serviceCache.setWarmUpQueries( "SELECT * FROM service\n\n  SELECT * FROM service WHERE A = 1  " );
+    serviceCache.setWarmUpInterval( "300" );
+
+    PushDownOptimizationMeta optimizationMeta = new PushDownOptimizationMeta();
+    optimizationMeta.setType( serviceCache );
+    DataServiceMeta dataServiceMeta = new DataServiceMeta();
+    dataServiceMeta.setName( "service" );
+    dataServiceMeta.setPushDownOptimizationMeta( ImmutableList.of( optimizationMeta ) );
+
+    when( resolver.getDataServices( any( Function.class ) ) ).thenReturn( ImmutableList.of( dataServiceMeta ) );
+    when( resolver.createBuilder( any( SQL.class ) ) ).thenReturn( builder );
+    when( builder.parameters( anyMapOf( String.class, String.class ) ) ).thenReturn( builder );
+    when( builder.build() ).thenReturn( executor );
+    when( executor.executeQuery() ).thenReturn( executor );
+
+    warmer = new ServiceCacheWarmer( factory, resolver, scheduler );
+  }
+
+  @Test
+  public void testWarmUpSchedule() throws Exception {
+    warmer.warmUp( 0 );
+    verify( executor, times( 2 ) ).executeQuery();
+    verify( factory, times( 2 ) ).markRefresh( executor );
+    verify( factory, times( 2 ) ).unmarkRefresh( executor );
+
+    // Not due yet
+    warmer.warmUp( 299999 );
+    verify( executor, times( 2 ) ).executeQuery();
+
+    warmer.warmUp( 300000 );
+    verify( executor, times( 4 ) ).executeQuery();
+  }
+
+  @Test
+  public void testRefreshIsDeduplicated() throws Exception {
+    CachedService.CacheKey key = cacheKey();
+
+    warmer.refresh( "SELECT * FROM service", Collections.<String, String>emptyMap(), key );
+    warmer.refresh( "SELECT * FROM service", Collections.<String, String>emptyMap(), key );
+    verify( scheduler, times( 1 ) ).execute( any( Runnable.class ) );
+  }
+
+  @Test
+  public void testRefreshReplacesRequestedEntry() throws Exception {
+    CachedService.CacheKey key = cacheKey();
+    warmer.refresh( "SELECT * FROM service", Collections.<String, String>emptyMap(), key );
+
+    ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass( Runnable.class );
+    verify( scheduler ).execute( task.capture() );
+    task.getValue().run();
+    verify( factory ).markRefresh( executor );
+    verify( factory ).markReplacement( executor, key );
+    verify( factory ).unmarkRefresh( executor );
+  }
+
+  private static CachedService.CacheKey cacheKey() throws Exception {
+    RowMeta rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "A" ) );
+    return ServiceCacheStatisticsTest.cacheKey( rowMeta, "SELECT * FROM service WHERE A = 1" );
+  }
+}
@@ -22,19 +22,25 @@
 
 package org.pentaho.di.trans.dataservice.optimization.cache;
 
+import com.google.common.collect.ImmutableList;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Answers;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.trans.dataservice.DataServiceExecutor;
 import org.pentaho.di.trans.step.RowAdapter;
 import org.pentaho.di.trans.step.StepAdapter;
@@ -46,6 +52,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
@@ -56,6 +63,7 @@ import static org.mockito.Mockito.when;
 
 @RunWith( MockitoJUnitRunner.class )
 public class ServiceObserverTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
   @Mock( answer = Answers.RETURNS_DEEP_STUBS ) DataServiceExecutor executor;
   @Mock StepInterface stepInterface;
   @Mock RowMetaInterface rowMeta;
@@ -63,11 +71,12 @@ public class ServiceObserverTest {
 
   @Captor ArgumentCaptor<RowAdapter> rowAdapterCaptor;
   @Captor ArgumentCaptor<StepAdapter> stepAdapterCaptor;
-  @InjectMocks ServiceObserver observer;
+  ServiceObserver observer;
   Object[] row = new Object[0];
   final String STEPNAME = "My Stepname";
 
   @Before public void before() {
+    observer = new ServiceObserver( executor );
     when( executor.getService().getStepname() ).thenReturn( STEPNAME );
     when( executor.getServiceTrans().findRunThread( STEPNAME ) ).thenReturn( stepInterface );
   }
@@ -97,18 +106,16 @@ public class ServiceObserverTest {
     CountDownLatch firstRowLatch = new CountDownLatch( 1 );
     ServiceObserver serviceObserver = new ServiceObserver( executor ) {
       @Override public void run() {
-        rowMetaAndData.add( new RowMetaAndData() );
+        buffer.add( new RowMetaAndData() );
         firstRowLatch.countDown();
         try {
           delayRowsLatch.await();
-          rowMetaAndData.add( new RowMetaAndData() );
-          latch.countDown();
-          rowMetaAndData.add( new RowMetaAndData() );
-          latch.countDown();
+          buffer.add( new RowMetaAndData() );
+          buffer.add( new RowMetaAndData() );
         } catch ( InterruptedException e ) {
           throw new RuntimeException( e );
         }
-        isRunning = false;
+        buffer.complete();
       }
     };
     Executors.newSingleThreadExecutor().submit( serviceObserver );
@@ -116,7 +123,7 @@ public class ServiceObserverTest {
     Iterator<RowMetaAndData> rows = serviceObserver.rows();
     assertTrue( rows.hasNext() );
     rows.next();
-    Executors.newSingleThreadScheduledExecutor().schedule( delayRowsLatch::countDown, 1100, TimeUnit.MILLISECONDS );
+    Executors.newSingleThreadScheduledExecutor().schedule( delayRowsLatch::countDown, 100, TimeUnit.MILLISECONDS );
     assertTrue( rows.hasNext() );
     rows.next();
     assertTrue( rows.hasNext() );
@@ -125,6 +132,135 @@ public class ServiceObserverTest {
     delayRowsLatch.countDown();
   }
 
+  @Test
+  public void testCaptureLimitStopsCaching() throws Exception {
+    ServiceObserver limited = new ServiceObserver( executor, 1 );
+    limited.run();
+    verify( stepInterface ).addRowListener( rowAdapterCaptor.capture() );
+    verify( stepInterface ).addStepListener( stepAdapterCaptor.capture() );
+    when( rowMeta.cloneRow( row ) ).thenReturn( row );
+
+    Iterator<RowMetaAndData> rows = limited.rows();
+    rowAdapterCaptor.getValue().rowWrittenEvent( rowMeta, row );
+    rowAdapterCaptor.getValue().rowWrittenEvent( rowMeta, row );
+    assertFalse( limited.isJoinable() );
+    rowAdapterCaptor.getValue().rowWrittenEvent( rowMeta, row );
+    stepAdapterCaptor.getValue().stepFinished( null, null, stepInterface );
+
+    try {
+      limited.get();
+      fail( "Expected exception" );
+    } catch ( ExecutionException e ) {
+      assertThat( e.getCause(), instanceOf( KettleException.class ) );
+    }
+    // Queries sharing the capture still read the complete output
+    assertThat( ImmutableList.copyOf( rows ).size(), is( 3 ) );
+    try {
+      limited.rows();
+      fail( "Readers can not join once rows are no longer retained" );
+    } catch ( IllegalStateException e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCapturedBytes() throws Exception {
+    Object[] data = new Object[] { "value", 1L };
+    long rowBytes = CachedService.estimateBytes( data );
+    ServiceObserver limited = new ServiceObserver( executor, 0, rowBytes * 2 );
+    limited.run();
+    verify( stepInterface ).addRowListener( rowAdapterCaptor.capture() );
+    verify( stepInterface ).addStepListener( stepAdapterCaptor.capture() );
+    when( rowMeta.cloneRow( data ) ).thenReturn( data );
+
+    rowAdapterCaptor.getValue().rowWrittenEvent( rowMeta, data );
+    rowAdapterCaptor.getValue().rowWrittenEvent( rowMeta, data );
+    assertThat( limited.getCapturedBytes(), is( rowBytes * 2 ) );
+    assertTrue( limited.isJoinable() );
+
+    rowAdapterCaptor.getValue().rowWrittenEvent( rowMeta, data );
+    assertFalse( limited.isJoinable() );
+    try {
+      limited.get();
+      fail( "Expected exception" );
+    } catch ( ExecutionException e ) {
+      assertThat( e.getCause(), instanceOf( KettleException.class ) );
+    }
+  }
+
+  @Test
+  public void testSpillsLargeCapture() throws Exception {
+    RowMeta serviceFields = new RowMeta();
+    serviceFields.addValueMeta( new ValueMetaString( "name" ) );
+    serviceFields.addValueMeta( new ValueMetaInteger( "count" ) );
+    long rowBytes = CachedService.estimateBytes( new Object[] { "value", 1L } );
+    ServiceObserver spilling =
+      new ServiceObserver( executor, 0, rowBytes * 2, rowBytes * 2, temporaryFolder.getRoot() );
+    spilling.run();
+    verify( stepInterface ).addRowListener( rowAdapterCaptor.capture() );
+    verify( stepInterface ).addStepListener( stepAdapterCaptor.capture() );
+    Iterator<RowMetaAndData> reader = spilling.rows();
+
+    for ( long i = 0; i < 5; i++ ) {
+      rowAdapterCaptor.getValue().rowWrittenEvent( serviceFields, new Object[] { "value", i } );
+    }
+    // Queries can no longer join once rows are spilled, but the capture goes on
+    assertFalse( spilling.isJoinable() );
+    assertFalse( spilling.isDone() );
+    assertThat( spilling.getCapturedBytes(), is( rowBytes * 2 ) );
+    for ( long i = 0; i < 5; i++ ) {
+      assertThat( reader.next().getData()[ 1 ], is( (Object) i ) );
+    }
+
+    stepAdapterCaptor.getValue().stepFinished( null, null, stepInterface );
+    assertFalse( reader.hasNext() );
+    CachedService cachedService = spilling.get();
+    assertTrue( cachedService.isComplete() );
+    assertTrue( cachedService.getSpill().isPresent() );
+    assertThat( cachedService.getRowCount(), is( 5L ) );
+    assertThat( cachedService.getRowMetaAndData().get( 4 ).getData()[ 1 ], is( (Object) 4L ) );
+    assertThat( cachedService.getColumnStatistics().get( "count" ).getRowCount(), is( 5L ) );
+
+    cachedService.release();
+    assertThat( temporaryFolder.getRoot().list().length, is( 0 ) );
+  }
+
+  @Test
+  public void testCompleteServiceKeepsSize() throws Exception {
+    Object[] data = new Object[] { "value", 1L };
+    observer.run();
+    verify( stepInterface ).addRowListener( rowAdapterCaptor.capture() );
+    verify( stepInterface ).addStepListener( stepAdapterCaptor.capture() );
+    when( rowMeta.cloneRow( data ) ).thenReturn( data );
+
+    rowAdapterCaptor.getValue().rowWrittenEvent( rowMeta, data );
+    stepAdapterCaptor.getValue().stepFinished( null, null, stepInterface );
+    assertThat( observer.get().estimateBytes(), is( CachedService.estimateBytes( data ) ) );
+  }
+
+  @Test
+  public void testCapturesColumnStatistics() throws Exception {
+    RowMeta serviceFields = new RowMeta();
+    serviceFields.addValueMeta( new ValueMetaString( "name" ) );
+    serviceFields.addValueMeta( new ValueMetaInteger( "count" ) );
+    observer.run();
+    verify( stepInterface ).addRowListener( rowAdapterCaptor.capture() );
+    verify( stepInterface ).addStepListener( stepAdapterCaptor.capture() );
+
+    rowAdapterCaptor.getValue().rowWrittenEvent( serviceFields, new Object[] { "b", 2L } );
+    rowAdapterCaptor.getValue().rowWrittenEvent( serviceFields, new Object[] { "a", null } );
+    rowAdapterCaptor.getValue().rowWrittenEvent( serviceFields, new Object[] { "b", 5L } );
+    stepAdapterCaptor.getValue().stepFinished( null, null, stepInterface );
+
+    ColumnStatistics name = observer.get().getColumnStatistics().get( "name" );
+    assertThat( name.getRowCount(), is( 3L ) );
+    assertThat( name.getMin().get().getValueData(), is( (Object) "a" ) );
+    assertThat( name.getMax().get().getValueData(), is( (Object) "b" ) );
+    ColumnStatistics count = observer.get().getColumnStatistics().get( "count" );
+    assertThat( count.getNullCount(), is( 1L ) );
+    assertThat( count.getDistinctCount(), is( 2L ) );
+  }
+
   @Test
   public void cloneErrorIsPropogated()
     throws KettleValueException, ExecutionException, InterruptedException, KettleStepException {
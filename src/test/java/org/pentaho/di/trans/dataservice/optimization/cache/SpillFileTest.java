@@ -0,0 +1,134 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+public class SpillFileTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private RowMeta rowMeta;
+  private SpillFile spillFile;
+
+  @Before
+  public void setUp() throws Exception {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "ID" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "NAME" ) );
+
+    // Small segments, so that rows span several files
+    SpillFile.Writer writer = SpillFile.create( temporaryFolder.getRoot(), 256 );
+    for ( long i = 0; i < 100; i++ ) {
+      writer.add( new RowMetaAndData( rowMeta, i, i % 10 == 0 ? null : "name " + i ) );
+    }
+    assertThat( writer.getRowCount(), is( 100L ) );
+    spillFile = writer.finish();
+  }
+
+  @Test
+  public void testReadBack() throws Exception {
+    assertThat( spillFile.getRowCount(), is( 100L ) );
+    assertThat( spillFile.getDirectory().listFiles(), arrayWithSize( greaterThan( 1 ) ) );
+
+    List<RowMetaAndData> rows = ImmutableList.copyOf( spillFile.iterator() );
+    assertThat( rows.size(), is( 100 ) );
+    for ( int i = 0; i < rows.size(); i++ ) {
+      assertThat( rows.get( i ).getData()[ 0 ], is( (Object) (long) i ) );
+      assertThat( rows.get( i ).getData()[ 1 ], is( i % 10 == 0 ? null : (Object) ( "name " + i ) ) );
+    }
+
+    long bytes = 0;
+    for ( File segment : spillFile.getDirectory().listFiles() ) {
+      bytes += segment.length();
+    }
+    assertThat( spillFile.getBytes(), is( bytes ) );
+  }
+
+  @Test
+  public void testReadDeleted() throws Exception {
+    Iterator<RowMetaAndData> iterator = spillFile.iterator();
+    assertThat( iterator, instanceOf( Closeable.class ) );
+    spillFile.delete();
+    assertFalse( spillFile.getDirectory().exists() );
+
+    // Segments opened before the files were deleted can still be read
+    assertThat( ImmutableList.copyOf( iterator ).size(), is( 100 ) );
+  }
+
+  @Test
+  public void testDiscard() throws Exception {
+    SpillFile.Writer writer = SpillFile.create( temporaryFolder.getRoot() );
+    writer.add( new RowMetaAndData( rowMeta, 1L, "a" ) );
+    writer.discard();
+
+    File[] spills = temporaryFolder.getRoot().listFiles();
+    assertThat( spills, arrayWithSize( 1 ) );
+    assertThat( spills[ 0 ], equalTo( spillFile.getDirectory() ) );
+  }
+
+  @Test
+  public void testDeleteAll() throws Exception {
+    File other = temporaryFolder.newFile( "other.txt" );
+    SpillFile.create( temporaryFolder.getRoot() ).add( new RowMetaAndData( rowMeta, 1L, "a" ) );
+
+    // Only spill directories are deleted
+    SpillFile.deleteAll( temporaryFolder.getRoot() );
+    assertThat( temporaryFolder.getRoot().listFiles(), arrayWithSize( 1 ) );
+    assertThat( other.exists(), is( true ) );
+
+    SpillFile.deleteAll( new File( temporaryFolder.getRoot(), "missing" ) );
+  }
+
+  @Test
+  public void testEmpty() throws Exception {
+    SpillFile empty = SpillFile.create( temporaryFolder.getRoot() ).finish();
+    assertThat( empty.getRowCount(), is( 0L ) );
+    assertFalse( empty.iterator().hasNext() );
+    assertThat( empty.getDirectory().listFiles(), is( emptyArray() ) );
+    empty.delete();
+    assertFalse( empty.getDirectory().exists() );
+  }
+}
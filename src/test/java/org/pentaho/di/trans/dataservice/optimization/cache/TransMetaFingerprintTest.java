@@ -0,0 +1,112 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.pentaho.di.core.listeners.ContentChangedListener;
+import org.pentaho.di.repository.ObjectRevision;
+import org.pentaho.di.repository.Repository;
+import org.pentaho.di.repository.StringObjectId;
+import org.pentaho.di.trans.TransMeta;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith( MockitoJUnitRunner.class )
+public class TransMetaFingerprintTest {
+
+  @Mock TransMeta transMeta;
+  @Mock Repository repository;
+  @Mock ObjectRevision revision;
+
+  @Before
+  public void setUp() throws Exception {
+    stubXml( "<transformation version=1/>" );
+  }
+
+  @Test
+  public void testComputedOncePerTransMeta() throws Exception {
+    int fingerprint = TransMetaFingerprint.of( transMeta );
+    assertThat( TransMetaFingerprint.of( transMeta ), equalTo( fingerprint ) );
+    verifyXmlCalls( 1 );
+
+    // Until the transformation reports a change
+    stubXml( "<transformation version=2/>" );
+    ArgumentCaptor<ContentChangedListener> listener = ArgumentCaptor.forClass( ContentChangedListener.class );
+    verify( transMeta ).addContentChangedListener( listener.capture() );
+    listener.getValue().contentChanged( transMeta );
+
+    assertThat( TransMetaFingerprint.of( transMeta ), not( equalTo( fingerprint ) ) );
+    verifyXmlCalls( 2 );
+  }
+
+  @Test
+  public void testRepositoryRevision() throws Exception {
+    when( transMeta.getRepository() ).thenReturn( repository );
+    when( transMeta.getObjectId() ).thenReturn( new StringObjectId( "trans-id" ) );
+    when( transMeta.getObjectRevision() ).thenReturn( revision );
+    when( revision.getName() ).thenReturn( "1.0" );
+
+    int fingerprint = TransMetaFingerprint.of( transMeta );
+    verifyXmlCalls( 0 );
+
+    // Saved revisions are stable across loads
+    TransMeta reloaded = mock( TransMeta.class );
+    when( reloaded.getRepository() ).thenReturn( repository );
+    when( reloaded.getObjectId() ).thenReturn( new StringObjectId( "trans-id" ) );
+    when( reloaded.getObjectRevision() ).thenReturn( revision );
+    assertThat( TransMetaFingerprint.of( reloaded ), equalTo( fingerprint ) );
+
+    // Unsaved changes are not identified by the saved revision
+    TransMeta edited = mock( TransMeta.class );
+    when( edited.getRepository() ).thenReturn( repository );
+    when( edited.getObjectId() ).thenReturn( new StringObjectId( "trans-id" ) );
+    when( edited.getObjectRevision() ).thenReturn( revision );
+    when( edited.hasChanged() ).thenReturn( true );
+    when( edited.getXML( anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(),
+      anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean() ) ).thenReturn( "<transformation edited/>" );
+    assertThat( TransMetaFingerprint.of( edited ), not( equalTo( fingerprint ) ) );
+  }
+
+  private void stubXml( String xml ) throws Exception {
+    when( transMeta.getXML( anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(),
+      anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean() ) ).thenReturn( xml );
+  }
+
+  private void verifyXmlCalls( int count ) throws Exception {
+    verify( transMeta, count == 0 ? never() : times( count ) ).getXML( anyBoolean(), anyBoolean(), anyBoolean(),
+      anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean(), anyBoolean() );
+  }
+}
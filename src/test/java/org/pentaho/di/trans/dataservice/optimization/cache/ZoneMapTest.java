@@ -0,0 +1,109 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.cache;
+
+import com.google.common.collect.Iterators;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.sql.SQL;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ZoneMapTest {
+
+  private RowMeta rowMeta;
+  private List<RowMetaAndData> rows;
+  private ZoneMap zoneMap;
+
+  @Before
+  public void setUp() throws Exception {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "region" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "day" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "amount" ) );
+
+    // Clustered by day, amounts are missing for days 50 to 59
+    rows = new ArrayList<>();
+    for ( long day = 0; day < 100; day++ ) {
+      rows.add( new RowMetaAndData( rowMeta, day % 2 == 0 ? "EU" : "US", day, day / 10 == 5 ? null : day ) );
+    }
+    zoneMap = ZoneMap.build( rows, 10 );
+  }
+
+  @Test
+  public void testBlocks() throws Exception {
+    assertThat( zoneMap.getBlockCount(), is( 10 ) );
+    assertThat( ZoneMap.build( rows ).getBlockCount(), is( 1 ) );
+  }
+
+  @Test
+  public void testRangeSkipsBlocks() throws Exception {
+    Iterator<RowMetaAndData> scan = zoneMap.scan( predicate( "day >= 95" ) );
+    assertThat( scan.next().getData()[ 1 ], is( (Object) 90L ) );
+    assertThat( Iterators.size( scan ), is( 9 ) );
+
+    assertThat( count( "day = 42" ), is( 10 ) );
+    assertThat( count( "day < 10" ), is( 10 ) );
+    assertThat( count( "day > 200" ), is( 0 ) );
+    assertThat( count( "day >= 15 AND day <= 34" ), is( 30 ) );
+  }
+
+  @Test
+  public void testNulls() throws Exception {
+    assertThat( count( "amount IS NULL" ), is( 10 ) );
+    assertThat( count( "amount IS NOT NULL" ), is( 90 ) );
+    // Nulls are smaller than any value
+    assertThat( count( "amount < 0" ), is( 10 ) );
+  }
+
+  @Test
+  public void testUnsupportedConditionsReplayEverything() throws Exception {
+    assertThat( count( "day >= 95 OR day = 1" ), is( 100 ) );
+    assertThat( count( "region = 'EU'" ), is( 100 ) );
+    assertThat( Iterators.size( zoneMap.scan( NormalizedPredicate.alwaysTrue() ) ), is( 100 ) );
+  }
+
+  private int count( String where ) throws KettleException {
+    NormalizedPredicate predicate = predicate( where );
+    int count = Iterators.size( zoneMap.scan( predicate ) );
+    // Counted without scanning
+    assertThat( zoneMap.count( predicate ), is( (long) count ) );
+    return count;
+  }
+
+  private NormalizedPredicate predicate( String where ) throws KettleException {
+    SQL sql = new SQL( "SELECT * FROM service WHERE " + where );
+    sql.parse( rowMeta );
+    return NormalizedPredicate.create( sql.getWhereCondition().getCondition() );
+  }
+}
@@ -23,6 +23,7 @@
 package org.pentaho.di.trans.dataservice.optimization.mongod;
 
 import com.mongodb.util.JSON;
+import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationException;
 import org.pentaho.di.trans.dataservice.optimization.ValueMetaResolver;
 import org.junit.Before;
 import org.junit.Test;
@@ -31,6 +32,7 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleSQLException;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaAndData;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.sql.SQLCondition;
 import org.pentaho.di.core.sql.SQLFields;
@@ -39,6 +41,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -71,15 +74,117 @@ public class MongodbPredicateTest {
   }
 
   @Test
-  public void testNotCompoundExpressionThrows() throws KettleException {
-    // mongodb only supports $not on atomic conditions
+  public void testNotCompoundExpression() throws KettleException {
+    // $not only applies to atomic conditions, so negations are pushed down to them
+    assertJsonEquals( "{\"$nor\":[{\"sField1\":{\"$in\":[\"foo\",\"bar\",\"baz\"]}},{\"sField2\":\"baz\"}]}",
+      asFilter( condition( "NOT ( sField1  IN ('foo','bar','baz') or sField2 = 'baz')" ) ) );
+    assertJsonEquals( "{\"$or\":[{\"iField1\":{\"$not\":{\"$gt\":123}}},{\"sField1\":{\"$ne\":\"foo\"}}]}",
+      asFilter( condition( "NOT ( iField1 > 123 AND sField1 = 'foo' )" ) ) );
+    // double negation
+    assertJsonEquals( "{\"$and\":[{\"iField1\":{\"$gt\":123}},{\"sField1\":\"foo\"}]}",
+      asFilter( condition( "NOT ( NOT ( iField1 > 123 AND sField1 = 'foo' ) )" ) ) );
+  }
+
+  @Test
+  public void testMixedOperators() throws KettleException {
+    // Kettle evaluates from left to right: ( a AND b ) OR NOT c
+    Condition condition = new Condition();
+    condition.addCondition( atomic( Condition.OPERATOR_NONE, "sField1", Condition.FUNC_EQUAL, "a" ) );
+    condition.addCondition( atomic( Condition.OPERATOR_AND, "sField2", Condition.FUNC_EQUAL, "b" ) );
+    condition.addCondition( atomic( Condition.OPERATOR_OR_NOT, "iField1", Condition.FUNC_EQUAL, 1L ) );
+    assertJsonEquals( "{\"$or\":[{\"$and\":[{\"sField1\":\"a\"},{\"sField2\":\"b\"}]},"
+        + "{\"iField1\":{\"$ne\":1}}]}",
+      asFilter( condition ) );
+
+    // NOT ( ( a AND b ) OR NOT c ) == $nor [ a AND b, NOT c ]
+    condition.setNegated( true );
+    assertJsonEquals( "{\"$nor\":[{\"$and\":[{\"sField1\":\"a\"},{\"sField2\":\"b\"}]},"
+        + "{\"iField1\":{\"$ne\":1}}]}",
+      asFilter( condition ) );
+
+    Condition xor = new Condition();
+    xor.addCondition( atomic( Condition.OPERATOR_NONE, "sField1", Condition.FUNC_EQUAL, "a" ) );
+    xor.addCondition( atomic( Condition.OPERATOR_XOR, "sField2", Condition.FUNC_EQUAL, "b" ) );
     try {
-      asFilter( condition( "NOT ( sField1  IN ('foo','bar','baz') or sField2 = 'baz')" ) );
-    } catch ( Exception e ) {
-      assertTrue( e instanceof KettleException );
-      return;
+      asFilter( xor );
+      fail( "Expected exception." );
+    } catch ( PushDownOptimizationException e ) {
+      assertTrue( e.getMessage().contains( "Unsupported operator" ) );
+    }
+  }
+
+  @Test
+  public void testFlattenNesting() throws KettleException {
+    Condition nested = new Condition();
+    nested.addCondition( atomic( Condition.OPERATOR_NONE, "sField2", Condition.FUNC_EQUAL, "b" ) );
+    nested.addCondition( atomic( Condition.OPERATOR_AND, "sField3", Condition.FUNC_EQUAL, "c" ) );
+    nested.setOperator( Condition.OPERATOR_AND );
+    Condition condition = new Condition();
+    condition.addCondition( atomic( Condition.OPERATOR_NONE, "sField1", Condition.FUNC_EQUAL, "a" ) );
+    condition.addCondition( nested );
+    assertJsonEquals( "{\"$and\":[{\"sField1\":\"a\"},{\"sField2\":\"b\"},{\"sField3\":\"c\"}]}",
+      asFilter( condition ) );
+
+    // NOT ( a OR NOT ( b AND c ) ) == $nor [ a, NOT b, NOT c ]
+    nested.setNegated( true );
+    nested.setOperator( Condition.OPERATOR_OR );
+    condition.setNegated( true );
+    assertJsonEquals( "{\"$nor\":[{\"sField1\":\"a\"},{\"sField2\":{\"$ne\":\"b\"}},"
+        + "{\"sField3\":{\"$ne\":\"c\"}}]}",
+      asFilter( condition ) );
+  }
+
+  @Test
+  public void testNull() throws KettleException {
+    assertJsonEquals( "{\"sField1\":null}",
+      asFilter( atomic( Condition.OPERATOR_NONE, "sField1", Condition.FUNC_NULL, null ) ) );
+    assertJsonEquals( "{\"sField1\":{\"$exists\":true,\"$ne\":null}}",
+      asFilter( atomic( Condition.OPERATOR_NONE, "sField1", Condition.FUNC_NOT_NULL, null ) ) );
+
+    Condition notNull = atomic( Condition.OPERATOR_NONE, "sField1", Condition.FUNC_NULL, null );
+    notNull.setNegated( true );
+    assertJsonEquals( "{\"sField1\":{\"$exists\":true,\"$ne\":null}}", asFilter( notNull ) );
+  }
+
+  @Test
+  public void testStringMatching() throws KettleException {
+    assertJsonEquals( "{\"sField1\":{\"$regex\":\"^a\\\\.b\",\"$options\":\"\"}}",
+      asFilter( atomic( Condition.OPERATOR_NONE, "sField1", Condition.FUNC_STARTS_WITH, "a.b" ) ) );
+    assertJsonEquals( "{\"sField1\":{\"$regex\":\"a\\\\*b$\",\"$options\":\"\"}}",
+      asFilter( atomic( Condition.OPERATOR_NONE, "sField1", Condition.FUNC_ENDS_WITH, "a*b" ) ) );
+    assertJsonEquals( "{\"sField1\":{\"$regex\":\"a b\",\"$options\":\"\"}}",
+      asFilter( atomic( Condition.OPERATOR_NONE, "sField1", Condition.FUNC_CONTAINS, "a b" ) ) );
+    assertJsonEquals( "{\"sField1\":{\"$regex\":\"^(?:a|b)$\",\"$options\":\"\"}}",
+      asFilter( atomic( Condition.OPERATOR_NONE, "sField1", Condition.FUNC_REGEXP, "a|b" ) ) );
+
+    Condition notContains = atomic( Condition.OPERATOR_NONE, "sField1", Condition.FUNC_CONTAINS, "foo" );
+    notContains.setNegated( true );
+    assertJsonEquals( "{\"sField1\":{\"$not\":{\"$regex\":\"foo\",\"$options\":\"\"}}}",
+      asFilter( notContains ) );
+  }
+
+  @Test
+  public void testIsSupported() throws KettleException {
+    assertTrue( MongodbPredicate.isSupported(
+      atomic( Condition.OPERATOR_NONE, "sField1", Condition.FUNC_STARTS_WITH, "foo" ), resolver ) );
+    assertTrue( MongodbPredicate.isSupported(
+      atomic( Condition.OPERATOR_NONE, "iField1", Condition.FUNC_NOT_NULL, null ), resolver ) );
+    assertFalse( MongodbPredicate.isSupported(
+      atomic( Condition.OPERATOR_NONE, "iField1", Condition.FUNC_STARTS_WITH, "1" ), resolver ) );
+    assertFalse( MongodbPredicate.isSupported(
+      atomic( Condition.OPERATOR_NONE, "sField1", Condition.FUNC_REGEXP, "(foo" ), resolver ) );
+    assertFalse( MongodbPredicate.isSupported(
+      atomic( Condition.OPERATOR_NONE, "sField1", Condition.FUNC_TRUE, null ), resolver ) );
+    // Comparison with another field
+    assertFalse( MongodbPredicate.isSupported(
+      new Condition( "sField1", Condition.FUNC_EQUAL, "sField2", null ), resolver ) );
+
+    try {
+      asFilter( atomic( Condition.OPERATOR_NONE, "iField1", Condition.FUNC_CONTAINS, "1" ) );
+      fail( "Expected exception." );
+    } catch ( PushDownOptimizationException e ) {
+      assertTrue( e.getMessage().contains( "Unsupported condition" ) );
     }
-    fail( "Expected exception." );
   }
 
 
@@ -175,6 +280,11 @@ public class MongodbPredicateTest {
     return new MongodbPredicate( condition, resolver, fieldMappings ).asFilterCriteria();
   }
 
+  private Condition atomic( int operator, String field, int function, Object value ) {
+    return new Condition( operator, field, function, null,
+      value == null ? null : new ValueMetaAndData( "constant", value ) );
+  }
+
   private Condition condition( String sql ) throws KettleSQLException {
     return new SQLCondition( "service", sql,
       rowMeta, new SQLFields( "service", rowMeta, "sField1, sField2" ) ).getCondition();
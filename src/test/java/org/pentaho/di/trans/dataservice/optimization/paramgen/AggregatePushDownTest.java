@@ -0,0 +1,183 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.sql.SQL;
+import org.pentaho.di.core.sql.SQLCondition;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByMeta;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AggregatePushDownTest extends BasePushDownTest {
+  @Mock private TransMeta genTransMeta;
+  @Mock private SQL sql;
+
+  private AggregatePushDown aggregatePushDown;
+  private MemoryGroupByMeta groupBy;
+
+  @Override
+  void init() throws Exception {
+    aggregatePushDown = new AggregatePushDown( serviceProvider );
+    mapSalesFields( aggregatePushDown.getFieldMappings() );
+    when( sql.getRowMeta() ).thenReturn( serviceFields );
+
+    // SELECT region, SUM(amount), COUNT(*) ... GROUP BY region
+    groupBy = new MemoryGroupByMeta();
+    groupBy.allocate( 1, 2 );
+    groupBy.getGroupField()[ 0 ] = "region";
+    setAggregate( 0, "amount", MemoryGroupByMeta.TYPE_GROUP_SUM );
+    setAggregate( 1, "day", MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY );
+
+    StepMeta groupStep = mock( StepMeta.class );
+    when( groupStep.getStepMetaInterface() ).thenReturn( groupBy );
+    when( genTransMeta.getSteps() ).thenReturn( ImmutableList.of( mock( StepMeta.class ), groupStep ) );
+
+    when( executor.getGenTransMeta() ).thenReturn( genTransMeta );
+    when( executor.getSql() ).thenReturn( sql );
+  }
+
+  @Override
+  ValueMetaInterface createDayField() {
+    // Counted, so that the type of the pushed count can be checked
+    return new ValueMetaInteger( "day" );
+  }
+
+  private void setAggregate( int i, String subject, int type ) {
+    groupBy.getAggregateField()[ i ] = "agg" + i;
+    groupBy.getSubjectField()[ i ] = subject;
+    groupBy.getAggregateType()[ i ] = type;
+  }
+
+  @Test
+  public void testCreateAggregate() throws Exception {
+    Optional<SqlAggregate> aggregate = aggregatePushDown.createAggregate( sql, 0, groupBy );
+
+    assertTrue( aggregate.isPresent() );
+    assertThat( aggregate.get().getColumns(), contains( "DAY", "REGION", "AMOUNT" ) );
+    assertThat( aggregate.get().getGroupColumns(), contains( "REGION" ) );
+    assertThat( aggregate.get().getAggregates(), equalTo( ImmutableMap.of(
+      "AMOUNT", SqlAggregate.Function.SUM, "DAY", SqlAggregate.Function.COUNT_ROWS ) ) );
+    // Pushed aggregates are cast back to the types of the service fields
+    assertThat( aggregate.get().getType( "AMOUNT" ).getType(), is( ValueMetaInterface.TYPE_NUMBER ) );
+    assertThat( aggregate.get().getType( "DAY" ).getType(), is( ValueMetaInterface.TYPE_INTEGER ) );
+  }
+
+  @Test
+  public void testDetailRowsRequired() throws Exception {
+    // Service row limit applies to detail rows
+    assertFalse( aggregatePushDown.createAggregate( sql, 100, groupBy ).isPresent() );
+
+    // So does the WHERE clause
+    when( sql.getWhereCondition() ).thenReturn( mock( SQLCondition.class ) );
+    assertFalse( aggregatePushDown.createAggregate( sql, 0, groupBy ).isPresent() );
+  }
+
+  @Test
+  public void testUnsupportedAggregates() throws Exception {
+    // Integer averages may be truncated
+    setAggregate( 1, "day", MemoryGroupByMeta.TYPE_GROUP_AVERAGE );
+    assertFalse( aggregatePushDown.createAggregate( sql, 0, groupBy ).isPresent() );
+
+    // Counts can not replace strings
+    setAggregate( 1, "region", MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL );
+    assertFalse( aggregatePushDown.createAggregate( sql, 0, groupBy ).isPresent() );
+
+    // Nor numbers, which would change the type of the summed counts
+    groupBy.getGroupField()[ 0 ] = "day";
+    setAggregate( 1, "amount", MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY );
+    setAggregate( 0, "region", MemoryGroupByMeta.TYPE_GROUP_MAX );
+    assertFalse( aggregatePushDown.createAggregate( sql, 0, groupBy ).isPresent() );
+    groupBy.getGroupField()[ 0 ] = "region";
+    setAggregate( 0, "amount", MemoryGroupByMeta.TYPE_GROUP_SUM );
+
+    // A column can not hold two aggregates
+    setAggregate( 1, "amount", MemoryGroupByMeta.TYPE_GROUP_MAX );
+    assertFalse( aggregatePushDown.createAggregate( sql, 0, groupBy ).isPresent() );
+
+    setAggregate( 1, "amount", MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT );
+    assertFalse( aggregatePushDown.createAggregate( sql, 0, groupBy ).isPresent() );
+
+    // Every service field must be an input column
+    setAggregate( 1, "amount", MemoryGroupByMeta.TYPE_GROUP_SUM );
+    assertTrue( aggregatePushDown.createAggregate( sql, 0, groupBy ).isPresent() );
+    aggregatePushDown.getFieldMappings().remove( 0 );
+    assertFalse( aggregatePushDown.createAggregate( sql, 0, groupBy ).isPresent() );
+  }
+
+  @Test
+  public void testActivate() throws Exception {
+    when( service.pushDownAggregate( any( SqlAggregate.class ), same( stepInterface ) ) ).thenReturn( true );
+
+    assertTrue( aggregatePushDown.activate( executor, stepInterface ) );
+
+    verify( service ).pushDownAggregate( any( SqlAggregate.class ), same( stepInterface ) );
+    // Counts read from the source are summed
+    assertThat( groupBy.getAggregateType()[ 0 ], is( MemoryGroupByMeta.TYPE_GROUP_SUM ) );
+    assertThat( groupBy.getAggregateType()[ 1 ], is( MemoryGroupByMeta.TYPE_GROUP_SUM ) );
+  }
+
+  @Test
+  public void testActivateRejected() throws Exception {
+    when( service.pushDownAggregate( any( SqlAggregate.class ), same( stepInterface ) ) ).thenReturn( false );
+
+    assertFalse( aggregatePushDown.activate( executor, stepInterface ) );
+    assertThat( groupBy.getAggregateType()[ 1 ], is( MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY ) );
+  }
+
+  @Test
+  public void testActivateCached() throws Exception {
+    when( dataService.isServiceOutputCaptured() ).thenReturn( true );
+
+    assertFalse( aggregatePushDown.activate( executor, stepInterface ) );
+    verify( service, never() ).pushDownAggregate( any( SqlAggregate.class ), any( StepInterface.class ) );
+  }
+
+  @Test
+  public void testNoGrouping() throws Exception {
+    when( genTransMeta.getSteps() ).thenReturn( ImmutableList.of( mock( StepMeta.class ) ) );
+
+    assertFalse( aggregatePushDown.activate( executor, stepInterface ) );
+    verify( service, never() ).pushDownAggregate( any( SqlAggregate.class ), any( StepInterface.class ) );
+  }
+}
@@ -40,6 +40,11 @@ import org.pentaho.di.trans.dataservice.DataServiceMeta;
 import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
 import org.pentaho.di.trans.dataservice.optimization.PushDownType;
 import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.filterrows.FilterRowsMeta;
+import org.pentaho.di.trans.steps.selectvalues.SelectValuesMeta;
+import org.pentaho.di.trans.steps.tableinput.TableInputMeta;
 import org.pentaho.metaverse.api.ChangeType;
 import org.pentaho.metaverse.api.ILineageClient;
 import org.pentaho.metaverse.api.StepFieldOperations;
@@ -162,10 +167,128 @@ public class AutoParameterGenerationServiceTest {
     assertThat( service.apply( dataService ), empty() );
   }
 
+  @Test
+  public void testRowPreserving() throws Exception {
+    StepMeta input = mockStep( "Input", new TableInputMeta() );
+    StepMeta select = mockStep( "Select", new SelectValuesMeta() );
+    StepMeta serviceStep = mockStep( SERVICE_STEP, new DummyTransMeta() );
+    when( transMeta.findStep( SERVICE_STEP ) ).thenReturn( serviceStep );
+    when( transMeta.findNrPrevSteps( serviceStep ) ).thenReturn( 1 );
+    when( transMeta.findPrevStep( serviceStep, 0 ) ).thenReturn( select );
+    when( transMeta.findNrNextSteps( select ) ).thenReturn( 1 );
+    when( transMeta.findNrPrevSteps( select ) ).thenReturn( 1 );
+    when( transMeta.findPrevStep( select, 0 ) ).thenReturn( input );
+    when( transMeta.findNrNextSteps( input ) ).thenReturn( 1 );
+
+    assertThat( AutoParameterGenerationService.isRowPreserving( transMeta, "Input", SERVICE_STEP ), is( true ) );
+    assertThat( AutoParameterGenerationService.isRowPreserving( transMeta, SERVICE_STEP, SERVICE_STEP ), is( true ) );
+    assertThat( AutoParameterGenerationService.isRowPreserving( transMeta, "Other Input", SERVICE_STEP ), is( false ) );
+
+    // Rows are copied to another step
+    when( transMeta.findNrNextSteps( input ) ).thenReturn( 2 );
+    assertThat( AutoParameterGenerationService.isRowPreserving( transMeta, "Input", SERVICE_STEP ), is( false ) );
+
+    // Rows are filtered
+    when( transMeta.findNrNextSteps( input ) ).thenReturn( 1 );
+    when( select.getStepMetaInterface() ).thenReturn( new FilterRowsMeta() );
+    assertThat( AutoParameterGenerationService.isRowPreserving( transMeta, "Input", SERVICE_STEP ), is( false ) );
+  }
+
+  @Test
+  public void testApplyAggregate() throws Exception {
+    Map<String, Set<List<StepFieldOperations>>> operationPaths = mockPassThrough();
+    AggregatePushDown aggregatePushDown = new AggregatePushDown( serviceProvider );
+    when( serviceProvider.createAggregatePushDown() ).thenReturn( aggregatePushDown );
+    ProjectionPushDown projectionPushDown = new ProjectionPushDown( serviceProvider );
+    when( serviceProvider.createProjectionPushDown() ).thenReturn( projectionPushDown );
+
+    List<PushDownOptimizationMeta> optimizationMetaList = service.apply( dataService );
+    assertThat( optimizationMetaList, contains(
+      hasProperty( "type", is( parameterGeneration ) ),
+      allOf(
+        hasProperty( "stepName", equalTo( "Input" ) ),
+        hasProperty( "type", is( aggregatePushDown ) )
+      ),
+      allOf(
+        hasProperty( "stepName", equalTo( "Input" ) ),
+        hasProperty( "type", is( projectionPushDown ) )
+      )
+    ) );
+    verify( parameterGeneration ).setRowLimitPushDown( true );
+    assertThat( aggregatePushDown.getFieldMappings(), hasSize( SERVICE_FIELDS.length ) );
+    assertThat( projectionPushDown.getFieldMappings(), hasSize( SERVICE_FIELDS.length ) );
+
+    // Renamed or calculated fields can not be aggregated or projected at the source
+    operationPaths.remove( SERVICE_FIELDS[ 0 ] );
+    assertThat( service.apply( dataService ), hasSize( 1 ) );
+  }
+
+  @Test
+  public void testApplyOrder() throws Exception {
+    mockPassThrough();
+    when( transMeta.findStep( "Input" ).getCopies() ).thenReturn( 1 );
+    when( transMeta.findStep( SERVICE_STEP ).getCopies() ).thenReturn( 1 );
+    when( serviceProvider.createAggregatePushDown() ).thenReturn( new AggregatePushDown( serviceProvider ) );
+    when( serviceProvider.createProjectionPushDown() ).thenReturn( new ProjectionPushDown( serviceProvider ) );
+    OrderPushDown orderPushDown = new OrderPushDown( serviceProvider );
+    when( serviceProvider.createOrderPushDown() ).thenReturn( orderPushDown );
+
+    List<PushDownOptimizationMeta> optimizationMetaList = service.apply( dataService );
+    assertThat( optimizationMetaList, hasSize( 4 ) );
+    assertThat( optimizationMetaList.get( 3 ), allOf(
+      hasProperty( "stepName", equalTo( "Input" ) ),
+      hasProperty( "type", is( orderPushDown ) )
+    ) );
+    assertThat( orderPushDown.getFieldMappings(), hasSize( SERVICE_FIELDS.length ) );
+    assertThat( AutoParameterGenerationService.isOrderPreserving( transMeta, "Input", SERVICE_STEP ), is( true ) );
+
+    // Copies of the input step interleave their rows
+    when( transMeta.findStep( "Input" ).getCopies() ).thenReturn( 2 );
+    assertThat( AutoParameterGenerationService.isOrderPreserving( transMeta, "Input", SERVICE_STEP ), is( false ) );
+  }
+
+  /**
+   * Service step that outputs every field of an input step unchanged
+   */
+  private Map<String, Set<List<StepFieldOperations>>> mockPassThrough() throws Exception {
+    Map<String, Set<List<StepFieldOperations>>> operationPaths = Maps.newHashMap();
+    for ( String field : SERVICE_FIELDS ) {
+      List<StepFieldOperations> lineage = Lists.newArrayList(
+        new StepFieldOperations( "Input", field.toUpperCase(), null ),
+        new StepFieldOperations( SERVICE_STEP, field, null )
+      );
+      operationPaths.put( field, ImmutableSet.of( lineage ) );
+    }
+    when( lineageClient.getOperationPaths(
+        same( transMeta ), eq( SERVICE_STEP ),
+        eq( ImmutableList.copyOf( SERVICE_FIELDS ) ) )
+    ).thenReturn( operationPaths );
+
+    StepMeta input = mockStep( "Input", new TableInputMeta() );
+    StepMeta serviceStep = mockStep( SERVICE_STEP, new DummyTransMeta() );
+    when( transMeta.findStep( "Input" ) ).thenReturn( input );
+    when( transMeta.findStep( SERVICE_STEP ) ).thenReturn( serviceStep );
+    when( transMeta.findNrPrevSteps( serviceStep ) ).thenReturn( 1 );
+    when( transMeta.findPrevStep( serviceStep, 0 ) ).thenReturn( input );
+    when( transMeta.findNrNextSteps( input ) ).thenReturn( 1 );
+    when( serviceProvider.supportsStep( input ) ).thenReturn( true );
+    return operationPaths;
+  }
+
+  private static StepMeta mockStep( String name, StepMetaInterface stepMetaInterface ) {
+    StepMeta stepMeta = mock( StepMeta.class );
+    when( stepMeta.getName() ).thenReturn( name );
+    when( stepMeta.getStepMetaInterface() ).thenReturn( stepMetaInterface );
+    return stepMeta;
+  }
+
   @Test
   public void testProvidedOptimizationTypes() throws Exception {
     Set<Class<? extends PushDownType>> expected = Sets.newHashSet();
     expected.add( ParameterGeneration.class );
+    expected.add( AggregatePushDown.class );
+    expected.add( OrderPushDown.class );
+    expected.add( ProjectionPushDown.class );
 
     assertThat( service.getProvidedOptimizationTypes(), equalTo( expected ) );
   }
@@ -0,0 +1,99 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import org.junit.Before;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.dataservice.DataServiceExecutor;
+import org.pentaho.di.trans.dataservice.DataServiceMeta;
+import org.pentaho.di.trans.dataservice.optimization.SourceTargetFields;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+
+import java.util.List;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Sales service whose day, region and amount fields are read from the DAY, REGION and AMOUNT columns of an input step
+ */
+@RunWith( MockitoJUnitRunner.class )
+public abstract class BasePushDownTest {
+
+  @Mock
+  ParameterGenerationFactory serviceProvider;
+
+  @Mock
+  ParameterGenerationService service;
+
+  @Mock
+  DataServiceExecutor executor;
+
+  @Mock
+  DataServiceMeta dataService;
+
+  @Mock
+  StepInterface stepInterface;
+
+  @Mock
+  StepMeta stepMeta;
+
+  RowMeta serviceFields;
+
+  @Before
+  public void before() throws Exception {
+    serviceFields = new RowMeta();
+    serviceFields.addValueMeta( createDayField() );
+    serviceFields.addValueMeta( new ValueMetaString( "region" ) );
+    serviceFields.addValueMeta( new ValueMetaNumber( "amount" ) );
+
+    when( executor.getService() ).thenReturn( dataService );
+    when( stepInterface.getStepMeta() ).thenReturn( stepMeta );
+    when( serviceProvider.getService( stepMeta ) ).thenReturn( service );
+    init();
+  }
+
+  void init() throws Exception {
+    // no-op.  Overridden by child classes to do test setup.
+  }
+
+  ValueMetaInterface createDayField() {
+    return new ValueMetaDate( "day" );
+  }
+
+  /**
+   * Maps the day, region and amount service fields to their input columns
+   */
+  static void mapSalesFields( List<SourceTargetFields> fieldMappings ) {
+    fieldMappings.add( new SourceTargetFields( "day", "DAY" ) );
+    fieldMappings.add( new SourceTargetFields( "region", "REGION" ) );
+    fieldMappings.add( new SourceTargetFields( "amount", "AMOUNT" ) );
+  }
+}
@@ -22,11 +22,14 @@
 
 package org.pentaho.di.trans.dataservice.optimization.paramgen;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import org.pentaho.di.trans.dataservice.optimization.OptimizationImpactInfo;
 import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationException;
 import org.pentaho.di.trans.dataservice.optimization.mongod.MongodbPredicate;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.pentaho.di.core.Condition;
@@ -34,6 +37,9 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.mongodbinput.MongoDbInput;
+import org.pentaho.di.trans.steps.mongodbinput.MongoDbInputMeta;
+import org.pentaho.mongo.wrapper.field.MongoField;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -42,9 +48,13 @@ import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.StringStartsWith.startsWith;
 import static org.hamcrest.core.StringContains.containsString;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -157,6 +167,55 @@ public class MongodbInputParameterGenerationTest extends MongodbInputParameterGe
       equalTo( TEST_JSON_QUERY ) );
   }
 
+  @Test
+  public void testPushDownPipeline() throws Exception {
+    MongoDbInput mongoDbInput = mock( MongoDbInput.class );
+    StepMeta stepMeta = mock( StepMeta.class );
+    MongoDbInputMeta meta = mock( MongoDbInputMeta.class );
+    when( mongoDbInput.getStepMeta() ).thenReturn( stepMeta );
+    when( stepMeta.getTypeId() ).thenReturn( "MongoDbInput" );
+    when( stepMeta.getStepMetaInterface() ).thenReturn( meta );
+    when( mongoDbInput.getExtensionDataMap() ).thenReturn( new HashMap<String, Object>() );
+    when( meta.getJsonQuery() ).thenReturn( "{region: ${paramName}}" );
+    MongoField day = mongoField( "day", "$.sale.day" );
+    MongoField tags = mongoField( "tags", "$.tags[*]" );
+    when( meta.getMongoFields() ).thenReturn( Lists.newArrayList( day, tags ) );
+    SqlOrder order = new SqlOrder( ImmutableMap.of( "day", true ) );
+    assertTrue( supportsOrder( order, stepMeta ) );
+    // Orderings that can not be pushed down are refused before the generated transformation drops its sort
+    assertFalse( supportsOrder( new SqlOrder( ImmutableMap.of( "day", true, "tags", false ) ), stepMeta ) );
+    assertFalse( supportsOrder( new SqlOrder( ImmutableMap.of( "region", true ) ), stepMeta ) );
+
+    assertTrue( pushDownRowLimit( 10, mongoDbInput ) );
+    assertTrue( pushDownRowLimit( 5, mongoDbInput ) );
+
+    verify( meta, times( 2 ) ).setQueryIsPipeline( true );
+    ArgumentCaptor<String> pipeline = ArgumentCaptor.forClass( String.class );
+    verify( meta, times( 2 ) ).setJsonQuery( pipeline.capture() );
+    // The step's query is kept as a $match stage, with its variables
+    assertThat( pipeline.getValue(), startsWith( "[{ \"$match\" : {region: ${paramName}} }, " ) );
+    assertThat( pipeline.getValue(), containsString( "\"$limit\" : 5" ) );
+    assertThat( pipeline.getValue(), not( containsString( "\"$limit\" : 10" ) ) );
+
+    // Queries run for each input row have no pipeline
+    when( meta.getExecuteForEachIncomingRow() ).thenReturn( true );
+    assertFalse( supportsOrder( order, stepMeta ) );
+    mongoDbInput.getExtensionDataMap().clear();
+    try {
+      pushDownRowLimit( 10, mongoDbInput );
+      fail( "Should have thrown exception" );
+    } catch ( PushDownOptimizationException e ) {
+      assertThat( e.getMessage(), containsString( "each input row" ) );
+    }
+  }
+
+  private static MongoField mongoField( String name, String path ) {
+    MongoField mongoField = mock( MongoField.class );
+    when( mongoField.getName() ).thenReturn( name );
+    when( mongoField.getPath() ).thenReturn( path );
+    return mongoField;
+  }
+
   @Override
   protected MongodbPredicate getMongodbPredicate( Condition condition, Map<String, String> fieldMappings ) {
     return mongodbPredicate;
@@ -0,0 +1,131 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.collect.ImmutableMap;
+import com.mongodb.util.JSON;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class MongodbPipelineTest {
+  private static final String MATCH = "{ \"$match\" : { \"region\" : \"East\" } }";
+  private static final Map<String, ValueMetaInterface> TYPES = ImmutableMap.<String, ValueMetaInterface>of(
+    "region", new ValueMetaString( "region" ),
+    "city", new ValueMetaString( "city" ),
+    "amount", new ValueMetaNumber( "amount" ) );
+
+  private MongodbPipeline pipeline;
+
+  @Before
+  public void setUp() throws Exception {
+    Map<String, String> fieldPaths = ImmutableMap.of(
+      "region", "$.region",
+      "city", "$.address.city",
+      "amount", "$.amount",
+      "tags", "$.tags[0]" );
+    pipeline = new MongodbPipeline( MATCH, fieldPaths );
+  }
+
+  @Test
+  public void testAsStages() throws Exception {
+    assertEquals( "{ \"$match\" : { } }", MongodbPipeline.asStages( "", null, false ) );
+    assertEquals( "{ \"$match\" : {a: 1} }, { \"$project\" : {a: 1} }",
+      MongodbPipeline.asStages( "{a: 1}", "{a: 1}", false ) );
+    assertEquals( "{$match: {a: 1}}, {$limit: 5}",
+      MongodbPipeline.asStages( "[{$match: {a: 1}}, {$limit: 5}]", "", true ) );
+  }
+
+  @Test
+  public void testStageOrder() throws Exception {
+    assertJsonEquals( "[" + MATCH + "]", pipeline.toJson() );
+
+    // Stages are ordered by kind, not by the order they are pushed down
+    pipeline.setOrder( new SqlOrder( ImmutableMap.of( "amount", false, "city", true ) ) );
+    pipeline.setRowLimit( 10 );
+    pipeline.setProjection( new SqlProjection( Arrays.asList( "region", "city", "amount" ),
+      Collections.singleton( "region" ), TYPES ) );
+
+    assertJsonEquals( "[" + MATCH + ", "
+        + "{ \"$project\" : { \"address.city\" : 1, \"amount\" : 1, \"_id\" : 0 } }, "
+        + "{ \"$limit\" : 10 }, "
+        + "{ \"$sort\" : { \"amount\" : -1, \"address.city\" : 1 } }]",
+      pipeline.toJson() );
+  }
+
+  @Test
+  public void testAggregate() throws Exception {
+    pipeline.setAggregate( new SqlAggregate( Arrays.asList( "region", "city", "amount" ), Arrays.asList( "region" ),
+      ImmutableMap.of( "amount", SqlAggregate.Function.SUM ), TYPES ) );
+
+    String sum = "{ \"$sum\" : \"$amount\" }";
+    String countAmount = "{ \"$sum\" : { \"$cond\" : [ { \"$gt\" : [ \"$amount\", null ] }, 1, 0 ] } }";
+    assertJsonEquals( "[" + MATCH + ", "
+        + "{ \"$group\" : { \"_id\" : { \"f0\" : \"$region\" }, "
+        + "\"f1\" : { \"$min\" : \"$address.city\" }, \"f2\" : " + sum + ", \"f2_n\" : " + countAmount + " } }, "
+        + "{ \"$project\" : { \"region\" : \"$_id.f0\", \"address.city\" : \"$f1\", "
+        + "\"amount\" : { \"$cond\" : [ { \"$gt\" : [ \"$f2_n\", 0 ] }, \"$f2\", null ] }, \"_id\" : 0 } }]",
+      pipeline.toJson() );
+
+    // Without group columns, all documents form a single group
+    pipeline.setAggregate( new SqlAggregate( Arrays.asList( "region", "amount" ), Collections.<String>emptyList(),
+      ImmutableMap.of( "region", SqlAggregate.Function.COUNT, "amount", SqlAggregate.Function.COUNT_ROWS ),
+      TYPES ) );
+    assertJsonEquals( "[" + MATCH + ", "
+        + "{ \"$group\" : { \"_id\" : null, \"f0\" : { \"$sum\" : { \"$cond\" : "
+        + "[ { \"$gt\" : [ \"$region\", null ] }, 1, 0 ] } }, \"f1\" : { \"$sum\" : 1 } } }, "
+        + "{ \"$project\" : { \"region\" : \"$f0\", \"amount\" : \"$f1\", \"_id\" : 0 } }]",
+      pipeline.toJson() );
+  }
+
+  @Test( expected = PushDownOptimizationException.class )
+  public void testArrayPath() throws Exception {
+    pipeline.setOrder( new SqlOrder( ImmutableMap.of( "tags", true ) ) );
+  }
+
+  @Test( expected = PushDownOptimizationException.class )
+  public void testUnmappedField() throws Exception {
+    pipeline.setProjection( new SqlProjection( Arrays.asList( "region", "unknown" ),
+      Collections.singleton( "region" ), TYPES ) );
+  }
+
+  @Test( expected = PushDownOptimizationException.class )
+  public void testOverlappingPaths() throws Exception {
+    new MongodbPipeline( MATCH, ImmutableMap.of( "address", "$.address", "city", "$.address.city" ) )
+      .setProjection( new SqlProjection( Arrays.asList( "address", "city" ), Collections.<String>emptySet(),
+        TYPES ) );
+  }
+
+  private static void assertJsonEquals( String expected, String actual ) {
+    assertEquals( JSON.parse( expected ), JSON.parse( actual ) );
+  }
+}
@@ -0,0 +1,184 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.sql.SQL;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationException;
+import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OrderPushDownTest extends BasePushDownTest {
+  private static final String INPUT_STEP = "Input";
+  private static final String SERVICE_STEP = "Output";
+
+  @Mock private TransMeta serviceTransMeta;
+  @Mock private Trans serviceTrans;
+  @Mock private LogChannelInterface logChannel;
+
+  private OrderPushDown orderPushDown;
+  private PushDownOptimizationMeta meta;
+
+  @Override
+  void init() throws Exception {
+    orderPushDown = new OrderPushDown( serviceProvider );
+    mapSalesFields( orderPushDown.getFieldMappings() );
+    meta = new PushDownOptimizationMeta();
+    meta.setStepName( INPUT_STEP );
+    meta.setType( orderPushDown );
+
+    serviceFields.addValueMeta( new ValueMetaNumber( "tax" ) );
+
+    // Input step feeds the service step through a single copy of each step
+    StepMeta serviceStep = mock( StepMeta.class );
+    when( serviceStep.getName() ).thenReturn( SERVICE_STEP );
+    when( serviceStep.getStepMetaInterface() ).thenReturn( new DummyTransMeta() );
+    when( serviceStep.getCopies() ).thenReturn( 1 );
+    when( stepMeta.getName() ).thenReturn( INPUT_STEP );
+    when( stepMeta.getCopies() ).thenReturn( 1 );
+    when( serviceTransMeta.findStep( INPUT_STEP ) ).thenReturn( stepMeta );
+    when( serviceTransMeta.findStep( SERVICE_STEP ) ).thenReturn( serviceStep );
+    when( serviceTransMeta.findNrPrevSteps( serviceStep ) ).thenReturn( 1 );
+    when( serviceTransMeta.findPrevStep( serviceStep, 0 ) ).thenReturn( stepMeta );
+    when( serviceTransMeta.findNrNextSteps( stepMeta ) ).thenReturn( 1 );
+    when( dataService.getStepname() ).thenReturn( SERVICE_STEP );
+
+    when( service.supportsOrder( any( SqlOrder.class ), same( stepMeta ) ) ).thenReturn( true );
+
+    when( executor.getServiceTrans() ).thenReturn( serviceTrans );
+    when( serviceTrans.getTransMeta() ).thenReturn( serviceTransMeta );
+    when( executor.isPresorted() ).thenReturn( true );
+    when( stepInterface.getStepname() ).thenReturn( INPUT_STEP );
+    when( stepInterface.getLogChannel() ).thenReturn( logChannel );
+  }
+
+  private SQL parse( String query ) throws Exception {
+    SQL sql = new SQL( query );
+    sql.parse( serviceFields );
+    return sql;
+  }
+
+  @Test
+  public void testCreateOrder() throws Exception {
+    Optional<SqlOrder> order = orderPushDown.createOrder(
+      parse( "SELECT * FROM sales WHERE region = 'East' ORDER BY day DESC, amount, day" ) );
+
+    assertTrue( order.isPresent() );
+    assertThat( order.get().getColumns(), equalTo( ImmutableMap.of( "DAY", false, "AMOUNT", true ) ) );
+
+    // Select aliases resolve to service fields
+    order = orderPushDown.createOrder( parse( "SELECT amount AS total FROM sales ORDER BY total" ) );
+    assertTrue( order.isPresent() );
+    assertThat( order.get().getColumns(), equalTo( ImmutableMap.of( "AMOUNT", true ) ) );
+  }
+
+  @Test
+  public void testSortRequired() throws Exception {
+    // Strings may be collated differently
+    assertFalse( orderPushDown.createOrder( parse( "SELECT * FROM sales ORDER BY region" ) ).isPresent() );
+
+    // Fields without an input column
+    assertFalse( orderPushDown.createOrder( parse( "SELECT * FROM sales ORDER BY tax" ) ).isPresent() );
+
+    // Groups are not output in the order they were read
+    assertFalse( orderPushDown.createOrder(
+      parse( "SELECT day, SUM(amount) FROM sales GROUP BY day ORDER BY day" ) ).isPresent() );
+
+    // Nothing to order
+    assertFalse( orderPushDown.createOrder( parse( "SELECT * FROM sales" ) ).isPresent() );
+  }
+
+  @Test
+  public void testProvidesOrder() throws Exception {
+    SQL sql = parse( "SELECT * FROM sales ORDER BY day" );
+    assertTrue( orderPushDown.providesOrder( sql, dataService, serviceTransMeta, meta ) );
+
+    when( service.supportsOrder( any( SqlOrder.class ), same( stepMeta ) ) ).thenReturn( false );
+    assertFalse( orderPushDown.providesOrder( sql, dataService, serviceTransMeta, meta ) );
+
+    // Copies of the input step interleave their rows
+    when( service.supportsOrder( any( SqlOrder.class ), same( stepMeta ) ) ).thenReturn( true );
+    when( stepMeta.getCopies() ).thenReturn( 2 );
+    assertFalse( orderPushDown.providesOrder( sql, dataService, serviceTransMeta, meta ) );
+
+    // Cached output is replayed in the order it was captured
+    when( stepMeta.getCopies() ).thenReturn( 1 );
+    when( dataService.isServiceOutputCaptured() ).thenReturn( true );
+    assertFalse( orderPushDown.providesOrder( sql, dataService, serviceTransMeta, meta ) );
+  }
+
+  @Test
+  public void testActivate() throws Exception {
+    when( executor.getSql() ).thenReturn( parse( "SELECT * FROM sales ORDER BY amount DESC" ) );
+    when( service.pushDownOrder( any( SqlOrder.class ), same( stepInterface ) ) ).thenReturn( true );
+
+    assertTrue( orderPushDown.activate( executor, stepInterface ) );
+    verify( service ).pushDownOrder( any( SqlOrder.class ), same( stepInterface ) );
+    verify( stepInterface, never() ).stopAll();
+  }
+
+  @Test
+  public void testActivateSorted() throws Exception {
+    // The generated transformation sorts rows itself
+    when( executor.isPresorted() ).thenReturn( false );
+    when( executor.getSql() ).thenReturn( parse( "SELECT * FROM sales ORDER BY amount DESC" ) );
+
+    assertFalse( orderPushDown.activate( executor, stepInterface ) );
+    verify( service, never() ).pushDownOrder( any( SqlOrder.class ), any( StepInterface.class ) );
+  }
+
+  @Test
+  public void testActivateFailed() throws Exception {
+    when( executor.getSql() ).thenReturn( parse( "SELECT * FROM sales ORDER BY amount DESC" ) );
+    when( service.pushDownOrder( any( SqlOrder.class ), same( stepInterface ) ) )
+      .thenThrow( new PushDownOptimizationException( "Failed to verify database connection" ) );
+
+    // Unsorted rows must not reach the client
+    assertFalse( orderPushDown.activate( executor, stepInterface ) );
+    verify( logChannel ).logError( anyString(), any( Throwable.class ) );
+    verify( stepInterface ).setErrors( anyLong() );
+    verify( stepInterface ).stopAll();
+  }
+}
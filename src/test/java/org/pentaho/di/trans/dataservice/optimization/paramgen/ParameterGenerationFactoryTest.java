@@ -22,6 +22,7 @@
 
 package org.pentaho.di.trans.dataservice.optimization.paramgen;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import org.junit.Before;
 import org.junit.Test;
@@ -35,6 +36,7 @@ import org.pentaho.di.trans.dataservice.optimization.paramgen.ui.SourceTargetAda
 import org.pentaho.di.trans.dataservice.ui.model.DataServiceModel;
 import org.pentaho.di.trans.step.StepMeta;
 
+import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isA;
 import static org.hamcrest.Matchers.nullValue;
@@ -79,4 +81,18 @@ public class ParameterGenerationFactoryTest {
     assertThat( serviceFactory.supportsStep( stepMeta ), is( true ) );
     assertThat( provider.getService( stepMeta ), is( service ) );
   }
+
+  @Test
+  public void testLatency() throws Exception {
+    assertThat( provider.getLatency( "service", "step" ), is( Optional.<Double>absent() ) );
+
+    provider.recordLatency( "service", "step", 100 );
+    assertThat( provider.getLatency( "service", "step" ).get(), closeTo( 100, 0.001 ) );
+
+    provider.recordLatency( "service", "step", 200 );
+    assertThat( provider.getLatency( "service", "step" ).get(), closeTo( 130, 0.001 ) );
+
+    assertThat( provider.getLatency( "service", "other step" ), is( Optional.<Double>absent() ) );
+    assertThat( provider.getLatency( "other service", "step" ), is( Optional.<Double>absent() ) );
+  }
 }
@@ -22,10 +22,13 @@
 
 package org.pentaho.di.trans.dataservice.optimization.paramgen;
 
+import com.google.common.base.Optional;
+import org.hamcrest.Matcher;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.pentaho.di.core.Condition;
@@ -35,7 +38,10 @@ import org.pentaho.di.core.parameters.DuplicateParamException;
 import org.pentaho.di.core.row.ValueMetaAndData;
 import org.pentaho.di.core.sql.SQL;
 import org.pentaho.di.core.sql.SQLCondition;
+import org.pentaho.di.core.sql.SQLFields;
+import org.pentaho.di.core.sql.SQLLimit;
 import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransListener;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.dataservice.DataServiceExecutor;
 import org.pentaho.di.trans.dataservice.DataServiceMeta;
@@ -53,12 +59,16 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.same;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -99,6 +109,10 @@ public class ParameterGenerationTest {
     when( stepInterface.getStepMeta() ).thenReturn( stepMeta );
     when( serviceProvider.getService( stepMeta ) ).thenReturn( service );
     when( service.getParameterDefault() ).thenReturn( EXPECTED_DEFAULT );
+    when( service.supportsCondition( any( Condition.class ), same( stepMeta ) ) ).thenReturn( true );
+    when( executor.getServiceTrans() ).thenReturn( trans );
+    when( executor.getServiceName() ).thenReturn( DATA_SERVICE_NAME );
+    when( stepInterface.getStepname() ).thenReturn( OPT_STEP );
   }
 
 
@@ -201,6 +215,42 @@ public class ParameterGenerationTest {
     assertEquals( "C_value", verify.getCondition( 1 ).getCondition( 1 ).getRightExactString() );
   }
 
+  @Test
+  public void testUnsupportedConditions() throws Exception {
+    // ( A & B & C ), B is not supported by the step
+    Condition condition = newCondition( "A_src", "A_value" );
+    condition.addCondition( newCondition( AND, "B_src", "B_value" ) );
+    condition.addCondition( newCondition( AND, "C_src", "C_value" ) );
+    SQL query = mockSql( condition );
+    when( query.getSelectFields() ).thenReturn( mock( SQLFields.class ) );
+    when( query.getGroupFields() ).thenReturn( mock( SQLFields.class ) );
+    when( executor.getSql() ).thenReturn( query );
+    when( executor.getRowLimit() ).thenReturn( 10 );
+    when( executor.getService() ).thenReturn( mock( DataServiceMeta.class ) );
+    when( service.supportsCondition( argThat( hasLeftValue( "B_tgt" ) ), same( stepMeta ) ) ).thenReturn( false );
+    paramGen.setRowLimitPushDown( true );
+
+    assertTrue( paramGen.activate( executor, stepInterface ) );
+
+    ArgumentCaptor<Condition> pushDownCaptor = ArgumentCaptor.forClass( Condition.class );
+    verify( service ).pushDown( pushDownCaptor.capture(), same( paramGen ), same( stepInterface ) );
+    Condition verify = pushDownCaptor.getValue();
+    assertEquals( 2, verify.nrConditions() );
+    assertEquals( "A_tgt", verify.getCondition( 0 ).getLeftValuename() );
+    assertEquals( "C_tgt", verify.getCondition( 1 ).getLeftValuename() );
+
+    // Rows are filtered after the service, a limit can not be pushed down
+    verify( service, never() ).pushDownRowLimit( anyInt(), any( StepInterface.class ) );
+  }
+
+  private static Matcher<Condition> hasLeftValue( final String leftValue ) {
+    return new ArgumentMatcher<Condition>() {
+      @Override public boolean matches( Object argument ) {
+        return argument instanceof Condition && leftValue.equals( ( (Condition) argument ).getLeftValuename() );
+      }
+    };
+  }
+
   @Test
   public void testConditionMapping() throws Exception {
     Condition condition, verify;
@@ -352,6 +402,90 @@ public class ParameterGenerationTest {
     assertTrue( verify.isNegated() );
   }
 
+  @Test
+  public void testLatencyTracking() throws Exception {
+    when( executor.getSql() ).thenReturn( mockSql( newCondition( "A_src" ) ) );
+    assertTrue( paramGen.activate( executor, stepInterface ) );
+
+    ArgumentCaptor<TransListener> listenerCaptor = ArgumentCaptor.forClass( TransListener.class );
+    verify( trans ).addTransListener( listenerCaptor.capture() );
+    TransListener listener = listenerCaptor.getValue();
+
+    // Stopped runs are not recorded
+    when( trans.isStopped() ).thenReturn( true );
+    listener.transFinished( trans );
+    verify( serviceProvider, never() ).recordLatency( anyString(), anyString(), anyLong() );
+
+    when( trans.isStopped() ).thenReturn( false );
+    listener.transFinished( trans );
+    verify( serviceProvider ).recordLatency( eq( DATA_SERVICE_NAME ), eq( OPT_STEP ), anyLong() );
+  }
+
+  @Test
+  public void testRowLimitPushDown() throws Exception {
+    SQL query = mockSql( newCondition( "A_src", "A_value" ) );
+    when( query.getSelectFields() ).thenReturn( mock( SQLFields.class ) );
+    when( query.getGroupFields() ).thenReturn( mock( SQLFields.class ) );
+    SQLLimit limitValues = mock( SQLLimit.class );
+    when( limitValues.getLimit() ).thenReturn( 5 );
+    when( limitValues.getOffset() ).thenReturn( 10 );
+    when( query.getLimitValues() ).thenReturn( limitValues );
+    when( executor.getSql() ).thenReturn( query );
+    when( executor.getRowLimit() ).thenReturn( 100 );
+    when( service.pushDownRowLimit( anyInt(), same( stepInterface ) ) ).thenReturn( true );
+    DataServiceMeta dataService = mock( DataServiceMeta.class );
+    when( executor.getService() ).thenReturn( dataService );
+
+    // Disabled unless every row of the input step reaches the service
+    assertEquals( 0, paramGen.getPushDownRowLimit( executor, true ) );
+
+    paramGen.setRowLimitPushDown( true );
+    assertEquals( 15, paramGen.getPushDownRowLimit( executor, true ) );
+    // WHERE clause is applied after the service, any number of rows may be needed
+    assertEquals( 0, paramGen.getPushDownRowLimit( executor, false ) );
+
+    // Service row limit applies before the WHERE clause
+    when( executor.getServiceRowLimit() ).thenReturn( 50 );
+    assertEquals( 50, paramGen.getPushDownRowLimit( executor, false ) );
+    assertEquals( 15, paramGen.getPushDownRowLimit( executor, true ) );
+
+    // Unmapped fields are filtered after the service
+    when( query.getWhereCondition().getCondition() ).thenReturn( newCondition( "D_src", "D_value" ) );
+    assertEquals( 50, paramGen.getPushDownRowLimit( executor, true ) );
+
+    // Ordered queries need all rows
+    when( query.getWhereCondition().getCondition() ).thenReturn( newCondition( "A_src", "A_value" ) );
+    when( query.getOrderFields() ).thenReturn( mock( SQLFields.class ) );
+    assertEquals( 50, paramGen.getPushDownRowLimit( executor, true ) );
+
+    assertTrue( paramGen.activate( executor, stepInterface ) );
+    verify( service ).pushDownRowLimit( 50, stepInterface );
+    // Limited runs are not timed
+    verify( trans, never() ).addTransListener( any( TransListener.class ) );
+
+    // Service caches need the complete output
+    when( dataService.isServiceOutputCaptured() ).thenReturn( true );
+    assertEquals( 0, paramGen.getPushDownRowLimit( executor, true ) );
+  }
+
+  @Test
+  public void testEstimateCost() throws Exception {
+    PushDownOptimizationMeta meta = new PushDownOptimizationMeta();
+    meta.setStepName( OPT_STEP );
+    when( serviceProvider.getLatency( DATA_SERVICE_NAME, OPT_STEP ) ).thenReturn( Optional.of( 12.5 ) );
+
+    // Query can not be pushed down
+    when( executor.getSql() ).thenReturn( mock( SQL.class ) );
+    assertFalse( paramGen.estimateCost( executor, meta ).isPresent() );
+
+    when( executor.getSql() ).thenReturn( mockSql( newCondition( "A_src" ) ) );
+    assertEquals( Optional.of( 12.5 ), paramGen.estimateCost( executor, meta ) );
+
+    // No runs observed yet
+    when( serviceProvider.getLatency( DATA_SERVICE_NAME, OPT_STEP ) ).thenReturn( Optional.<Double>absent() );
+    assertFalse( paramGen.estimateCost( executor, meta ).isPresent() );
+  }
+
   @Test
   public void testPreview() throws KettleValueException, PushDownOptimizationException {
     Condition condition = newCondition( "A_src", "A_value" );
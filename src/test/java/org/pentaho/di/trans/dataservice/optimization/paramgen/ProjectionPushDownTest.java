@@ -0,0 +1,118 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.base.Optional;
+import org.junit.Test;
+import org.pentaho.di.core.row.value.ValueMetaBinary;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.sql.SQL;
+import org.pentaho.di.trans.step.StepInterface;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProjectionPushDownTest extends BasePushDownTest {
+  private ProjectionPushDown projectionPushDown;
+
+  @Override
+  void init() throws Exception {
+    projectionPushDown = new ProjectionPushDown( serviceProvider );
+    mapSalesFields( projectionPushDown.getFieldMappings() );
+    projectionPushDown.createFieldMapping( "notes", "NOTES" );
+    projectionPushDown.createFieldMapping( "receipt", "RECEIPT" );
+
+    serviceFields.addValueMeta( new ValueMetaString( "notes" ) );
+    serviceFields.addValueMeta( new ValueMetaBinary( "receipt" ) );
+  }
+
+  private Optional<SqlProjection> createProjection( String query ) throws Exception {
+    SQL sql = new SQL( query );
+    sql.parse( serviceFields );
+    return projectionPushDown.createProjection( sql );
+  }
+
+  @Test
+  public void testCreateProjection() throws Exception {
+    Optional<SqlProjection> projection =
+      createProjection( "SELECT region, SUM(amount) FROM sales GROUP BY region" );
+
+    assertTrue( projection.isPresent() );
+    assertThat( projection.get().getColumns(), contains( "DAY", "REGION", "AMOUNT", "NOTES", "RECEIPT" ) );
+    assertThat( projection.get().getUnusedColumns(), contains( "DAY", "NOTES", "RECEIPT" ) );
+
+    projection = createProjection( "SELECT region FROM sales WHERE notes = 'refund'" );
+    assertTrue( projection.isPresent() );
+    assertThat( projection.get().getUnusedColumns(), contains( "DAY", "AMOUNT", "RECEIPT" ) );
+
+    projection = createProjection( "SELECT COUNT(*) FROM sales" );
+    assertTrue( projection.isPresent() );
+    assertThat( projection.get().getUnusedColumns(), containsInAnyOrder( "REGION", "AMOUNT", "NOTES", "RECEIPT" ) );
+
+    projection = createProjection( "SELECT notes, IIF( amount > 100, 'large', 'small' ) AS size FROM sales" );
+    assertTrue( projection.isPresent() );
+    assertThat( projection.get().getUnusedColumns(), containsInAnyOrder( "DAY", "REGION", "RECEIPT" ) );
+  }
+
+  @Test
+  public void testAllColumnsRequired() throws Exception {
+    assertFalse( createProjection( "SELECT * FROM sales" ).isPresent() );
+
+    // Having conditions name aggregates rather than fields
+    assertFalse( createProjection( "SELECT region FROM sales GROUP BY region HAVING SUM(amount) > 100" ).isPresent() );
+
+    // Every service field must be an input column
+    projectionPushDown.getFieldMappings().remove( 0 );
+    assertFalse( createProjection( "SELECT region FROM sales" ).isPresent() );
+  }
+
+  @Test
+  public void testActivate() throws Exception {
+    SQL sql = new SQL( "SELECT region FROM sales" );
+    sql.parse( serviceFields );
+    when( executor.getSql() ).thenReturn( sql );
+    when( service.pushDownProjection( any( SqlProjection.class ), same( stepInterface ) ) ).thenReturn( true );
+
+    assertTrue( projectionPushDown.activate( executor, stepInterface ) );
+    verify( service ).pushDownProjection( any( SqlProjection.class ), same( stepInterface ) );
+  }
+
+  @Test
+  public void testActivateCached() throws Exception {
+    SQL sql = new SQL( "SELECT region FROM sales" );
+    sql.parse( serviceFields );
+    when( executor.getSql() ).thenReturn( sql );
+    when( dataService.isServiceOutputCaptured() ).thenReturn( true );
+
+    assertFalse( projectionPushDown.activate( executor, stepInterface ) );
+    verify( service, never() ).pushDownProjection( any( SqlProjection.class ), any( StepInterface.class ) );
+  }
+}
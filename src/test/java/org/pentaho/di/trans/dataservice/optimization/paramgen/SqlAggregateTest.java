@@ -0,0 +1,159 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.H2DatabaseMeta;
+import org.pentaho.di.core.database.MSSQLServerDatabaseMeta;
+import org.pentaho.di.core.database.MySQLDatabaseMeta;
+import org.pentaho.di.core.database.OracleDatabaseMeta;
+import org.pentaho.di.core.database.PostgreSQLDatabaseMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+
+@RunWith( MockitoJUnitRunner.class )
+public class SqlAggregateTest {
+  private static final String QUERY = "SELECT * FROM sales ORDER BY day";
+  private static final Map<String, ValueMetaInterface> TYPES = ImmutableMap.<String, ValueMetaInterface>of(
+    "region", new ValueMetaString( "region" ),
+    "day", new ValueMetaInteger( "day" ),
+    "amount", new ValueMetaNumber( "amount" ),
+    "sale id", new ValueMetaInteger( "sale id" ) );
+
+  @Mock private DatabaseMeta databaseMeta;
+
+  @Before
+  public void setUp() throws Exception {
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new OracleDatabaseMeta() );
+    when( databaseMeta.quoteField( anyString() ) ).thenAnswer( new Answer<String>() {
+      @Override public String answer( InvocationOnMock invocation ) throws Throwable {
+        String field = (String) invocation.getArguments()[ 0 ];
+        return field.contains( " " ) ? "\"" + field + "\"" : field;
+      }
+    } );
+    when( databaseMeta.getFieldDefinition( any( ValueMetaInterface.class ), anyString(), anyString(), anyBoolean(),
+      anyBoolean(), anyBoolean() ) ).thenAnswer( new Answer<String>() {
+        @Override public String answer( InvocationOnMock invocation ) throws Throwable {
+          ValueMetaInterface valueMeta = (ValueMetaInterface) invocation.getArguments()[ 0 ];
+          return valueMeta.isInteger() ? "NUMBER(" + valueMeta.getLength() + ")" : "NUMBER";
+        }
+      } );
+  }
+
+  @Test
+  public void testGroupBy() throws Exception {
+    SqlAggregate aggregate = new SqlAggregate( ImmutableList.of( "region", "day", "amount", "sale id" ),
+      ImmutableList.of( "region" ),
+      ImmutableMap.of( "amount", SqlAggregate.Function.SUM, "sale id", SqlAggregate.Function.COUNT_ROWS ), TYPES );
+
+    assertEquals( "SELECT region, MIN(day) AS day, CAST(SUM(amount) AS NUMBER) AS amount, "
+        + "CAST(COUNT(*) AS NUMBER(18)) AS \"sale id\" "
+        + "FROM ( " + QUERY + " ) DATA_SERVICE_AGGREGATE GROUP BY region",
+      aggregate.apply( databaseMeta, QUERY + " ;" ) );
+  }
+
+  @Test
+  public void testWithoutGroups() throws Exception {
+    SqlAggregate aggregate = new SqlAggregate( ImmutableList.of( "region", "amount" ),
+      ImmutableList.<String>of(), ImmutableMap.of( "amount", SqlAggregate.Function.AVG ), TYPES );
+
+    assertEquals( "SELECT MIN(region) AS region, CAST(AVG(amount) AS NUMBER) AS amount "
+        + "FROM ( " + QUERY + " ) DATA_SERVICE_AGGREGATE",
+      aggregate.apply( databaseMeta, QUERY ) );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testUnknownColumn() throws Exception {
+    new SqlAggregate( ImmutableList.of( "region" ), ImmutableList.of( "day" ),
+      ImmutableMap.<String, SqlAggregate.Function>of(), TYPES );
+  }
+
+  @Test
+  public void testCollation() throws Exception {
+    SqlAggregate groupByString = new SqlAggregate( ImmutableList.of( "region", "amount" ),
+      ImmutableList.of( "region" ), ImmutableMap.of( "amount", SqlAggregate.Function.SUM ), TYPES );
+    SqlAggregate maxString = new SqlAggregate( ImmutableList.of( "region", "amount" ),
+      ImmutableList.of( "amount" ), ImmutableMap.of( "region", SqlAggregate.Function.MAX ), TYPES );
+    SqlAggregate minOfUnusedString = new SqlAggregate( ImmutableList.of( "region", "day", "amount" ),
+      ImmutableList.of( "day" ), ImmutableMap.of( "amount", SqlAggregate.Function.SUM ), TYPES );
+
+    // Collation may ignore case
+    assertFalse( groupByString.isReproducible( databaseMeta ) );
+    assertFalse( maxString.isReproducible( databaseMeta ) );
+    assertTrue( minOfUnusedString.isReproducible( databaseMeta ) );
+
+    // Strings are only equal if their characters are
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new PostgreSQLDatabaseMeta() );
+    assertTrue( groupByString.isReproducible( databaseMeta ) );
+    assertFalse( maxString.isReproducible( databaseMeta ) );
+
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new H2DatabaseMeta() );
+    assertTrue( groupByString.isReproducible( databaseMeta ) );
+    assertTrue( maxString.isReproducible( databaseMeta ) );
+  }
+
+  @Test
+  public void testCastType() throws Exception {
+    assertEquals( "NUMBER(18)", SqlAggregate.castType( databaseMeta, new ValueMetaInteger( "day" ) ) );
+    assertEquals( "NUMBER", SqlAggregate.castType( databaseMeta, new ValueMetaNumber( "amount" ) ) );
+    assertEquals( null, SqlAggregate.castType( databaseMeta, new ValueMetaString( "region" ) ) );
+
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new MySQLDatabaseMeta() );
+    assertEquals( "SIGNED", SqlAggregate.castType( databaseMeta, new ValueMetaInteger( "day" ) ) );
+    assertEquals( null, SqlAggregate.castType( databaseMeta, new ValueMetaNumber( "amount" ) ) );
+
+    SqlAggregate sum = new SqlAggregate( ImmutableList.of( "day", "amount" ), ImmutableList.of( "day" ),
+      ImmutableMap.of( "amount", SqlAggregate.Function.SUM ), TYPES );
+    assertFalse( sum.isReproducible( databaseMeta ) );
+  }
+
+  @Test
+  public void testSupported() throws Exception {
+    assertTrue( SqlAggregate.isSupported( databaseMeta, QUERY ) );
+
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new MSSQLServerDatabaseMeta() );
+    assertFalse( SqlAggregate.isSupported( databaseMeta, QUERY ) );
+    assertTrue( SqlAggregate.isSupported( databaseMeta, "SELECT * FROM sales" ) );
+  }
+}
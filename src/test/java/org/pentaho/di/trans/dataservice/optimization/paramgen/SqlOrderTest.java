@@ -0,0 +1,101 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.GenericDatabaseMeta;
+import org.pentaho.di.core.database.MSSQLServerDatabaseMeta;
+import org.pentaho.di.core.database.MySQLDatabaseMeta;
+import org.pentaho.di.core.database.OracleDatabaseMeta;
+import org.pentaho.di.core.database.PostgreSQLDatabaseMeta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+
+@RunWith( MockitoJUnitRunner.class )
+public class SqlOrderTest {
+  private static final String QUERY = "SELECT * FROM sales";
+
+  @Mock private DatabaseMeta databaseMeta;
+
+  private SqlOrder order;
+
+  @Before
+  public void setUp() throws Exception {
+    when( databaseMeta.quoteField( anyString() ) ).thenAnswer( new Answer<String>() {
+      @Override public String answer( InvocationOnMock invocation ) throws Throwable {
+        String field = (String) invocation.getArguments()[ 0 ];
+        return field.contains( " " ) ? "\"" + field + "\"" : field;
+      }
+    } );
+    order = new SqlOrder( ImmutableMap.of( "sale day", true, "amount", false ) );
+  }
+
+  @Test
+  public void testNullsFirst() throws Exception {
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new MySQLDatabaseMeta() );
+
+    assertEquals( "SELECT * FROM ( " + QUERY + " ) DATA_SERVICE_ORDER ORDER BY \"sale day\" ASC, amount DESC",
+      order.apply( databaseMeta, QUERY + ";" ) );
+  }
+
+  @Test
+  public void testExplicitNulls() throws Exception {
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new OracleDatabaseMeta() );
+
+    assertEquals( "SELECT * FROM ( " + QUERY + " ) DATA_SERVICE_ORDER "
+        + "ORDER BY \"sale day\" ASC NULLS FIRST, amount DESC NULLS LAST",
+      order.apply( databaseMeta, QUERY ) );
+  }
+
+  @Test
+  public void testSupported() throws Exception {
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new PostgreSQLDatabaseMeta() );
+    assertTrue( SqlOrder.isSupported( databaseMeta, QUERY ) );
+
+    // SQL Server rejects ORDER BY in a derived table
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new MSSQLServerDatabaseMeta() );
+    assertTrue( SqlOrder.isSupported( databaseMeta, QUERY ) );
+    assertFalse( SqlOrder.isSupported( databaseMeta, QUERY + " ORDER BY amount" ) );
+
+    // Null ordering is unknown
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new GenericDatabaseMeta() );
+    assertFalse( SqlOrder.isSupported( databaseMeta, QUERY ) );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testNoColumns() throws Exception {
+    new SqlOrder( ImmutableMap.<String, Boolean>of() );
+  }
+}
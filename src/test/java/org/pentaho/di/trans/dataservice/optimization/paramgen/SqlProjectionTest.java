@@ -0,0 +1,127 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.MSSQLServerDatabaseMeta;
+import org.pentaho.di.core.database.OracleDatabaseMeta;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+
+@RunWith( MockitoJUnitRunner.class )
+public class SqlProjectionTest {
+  private static final String QUERY = "SELECT * FROM sales";
+  private static final Map<String, ValueMetaInterface> TYPES = ImmutableMap.<String, ValueMetaInterface>of(
+    "sale notes", new ValueMetaString( "notes" ),
+    "amount", new ValueMetaNumber( "amount" ) );
+
+  @Mock private DatabaseMeta databaseMeta;
+
+  @Before
+  public void setUp() throws Exception {
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new OracleDatabaseMeta() );
+    when( databaseMeta.quoteField( anyString() ) ).thenAnswer( new Answer<String>() {
+      @Override public String answer( InvocationOnMock invocation ) throws Throwable {
+        String field = (String) invocation.getArguments()[ 0 ];
+        return field.contains( " " ) ? "\"" + field + "\"" : field;
+      }
+    } );
+  }
+
+  @Test
+  public void testApply() throws Exception {
+    SqlProjection projection = new SqlProjection( ImmutableList.of( "region", "sale notes", "amount" ),
+      ImmutableList.of( "region" ), TYPES );
+
+    // The select list of a plain query is replaced
+    assertEquals( "SELECT \"sale notes\", amount FROM sales WHERE amount > 100",
+      projection.apply( databaseMeta, QUERY + " WHERE amount > 100;" ) );
+
+    String query = "SELECT * FROM sales UNION ALL SELECT * FROM returns";
+    assertEquals( "SELECT \"sale notes\", amount FROM ( " + query + " ) DATA_SERVICE_PROJECTION",
+      projection.apply( databaseMeta, query ) );
+    query = "SELECT region, notes AS \"sale notes\", amount FROM sales";
+    assertEquals( "SELECT \"sale notes\", amount FROM ( " + query + " ) DATA_SERVICE_PROJECTION",
+      projection.apply( databaseMeta, query ) );
+  }
+
+  @Test
+  public void testRestore() throws Exception {
+    SqlProjection projection = new SqlProjection( ImmutableList.of( "region", "sale notes", "amount" ),
+      ImmutableList.of( "sale notes" ), TYPES );
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "region" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "amount" ) );
+
+    RowMetaInterface restored = projection.restoreRowMeta( rowMeta );
+    assertArrayEquals( new String[] { "region", "sale notes", "amount" }, restored.getFieldNames() );
+    // Unused columns take the type of their service field, read columns the type reported by the database
+    assertEquals( ValueMetaInterface.TYPE_STRING, restored.getValueMeta( 1 ).getType() );
+    assertEquals( ValueMetaInterface.TYPE_INTEGER, restored.getValueMeta( 2 ).getType() );
+
+    assertArrayEquals( new Object[] { "East", null, 100L }, projection.restoreRow( new Object[] { "East", 100L } ) );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testUnknownColumn() throws Exception {
+    new SqlProjection( ImmutableList.of( "region" ), ImmutableList.of( "amount" ), TYPES );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testMissingType() throws Exception {
+    new SqlProjection( ImmutableList.of( "region" ), ImmutableList.of( "region" ), TYPES );
+  }
+
+  @Test
+  public void testSupported() throws Exception {
+    assertTrue( SqlProjection.isSupported( databaseMeta, QUERY + " ORDER BY region" ) );
+
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new MSSQLServerDatabaseMeta() );
+    assertFalse( SqlProjection.isSupported( databaseMeta, "SELECT DISTINCT * FROM sales ORDER BY region" ) );
+    assertTrue( SqlProjection.isSupported( databaseMeta, "SELECT DISTINCT * FROM sales" ) );
+    // Only the select list is replaced
+    assertTrue( SqlProjection.isSupported( databaseMeta, QUERY + " ORDER BY region" ) );
+  }
+}
@@ -0,0 +1,102 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2026 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.dataservice.optimization.paramgen;
+
+import com.google.common.base.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.pentaho.di.core.database.DB2DatabaseMeta;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.GenericDatabaseMeta;
+import org.pentaho.di.core.database.MSSQLServerDatabaseMeta;
+import org.pentaho.di.core.database.MySQLDatabaseMeta;
+import org.pentaho.di.core.database.OracleDatabaseMeta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.when;
+
+@RunWith( MockitoJUnitRunner.class )
+public class SqlRowLimitTest {
+  private static final String QUERY = "SELECT * FROM employee WHERE grade = ?";
+
+  @Mock private DatabaseMeta databaseMeta;
+
+  @Before
+  public void setUp() throws Exception {
+    when( databaseMeta.getLimitClause( anyInt() ) ).thenReturn( "" );
+  }
+
+  @Test
+  public void testOracle() throws Exception {
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new OracleDatabaseMeta() );
+
+    assertTrue( SqlRowLimit.isSupported( databaseMeta ) );
+    assertEquals( Optional.of( "SELECT * FROM ( " + QUERY + " ) WHERE ROWNUM <= 10" ),
+      SqlRowLimit.limit( databaseMeta, QUERY + ";", 10 ) );
+  }
+
+  @Test
+  public void testSqlServer() throws Exception {
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new MSSQLServerDatabaseMeta() );
+
+    assertTrue( SqlRowLimit.isSupported( databaseMeta ) );
+    assertEquals( Optional.of( "SELECT TOP 10 * FROM ( " + QUERY + " ) DATA_SERVICE_LIMIT" ),
+      SqlRowLimit.limit( databaseMeta, QUERY, 10 ) );
+    // Ordered derived tables are rejected
+    assertFalse( SqlRowLimit.limit( databaseMeta, QUERY + " order  by name", 10 ).isPresent() );
+  }
+
+  @Test
+  public void testFetchFirst() throws Exception {
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new DB2DatabaseMeta() );
+
+    assertTrue( SqlRowLimit.isSupported( databaseMeta ) );
+    assertEquals( Optional.of( "SELECT * FROM ( " + QUERY + " ) DATA_SERVICE_LIMIT FETCH FIRST 10 ROWS ONLY" ),
+      SqlRowLimit.limit( databaseMeta, QUERY, 10 ) );
+  }
+
+  @Test
+  public void testLimitClause() throws Exception {
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new MySQLDatabaseMeta() );
+    when( databaseMeta.getLimitClause( 10 ) ).thenReturn( " LIMIT 10" );
+    when( databaseMeta.getLimitClause( 1 ) ).thenReturn( " LIMIT 1" );
+
+    assertTrue( SqlRowLimit.isSupported( databaseMeta ) );
+    assertEquals( Optional.of( "SELECT * FROM ( " + QUERY + " ) DATA_SERVICE_LIMIT LIMIT 10" ),
+      SqlRowLimit.limit( databaseMeta, QUERY, 10 ) );
+  }
+
+  @Test
+  public void testUnsupported() throws Exception {
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new GenericDatabaseMeta() );
+
+    assertFalse( SqlRowLimit.isSupported( databaseMeta ) );
+    assertFalse( SqlRowLimit.limit( databaseMeta, QUERY, 10 ).isPresent() );
+  }
+}
@@ -22,6 +22,8 @@
 
 package org.pentaho.di.trans.dataservice.optimization.paramgen;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.pentaho.di.trans.dataservice.optimization.OptimizationImpactInfo;
 import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationException;
 import org.pentaho.di.trans.dataservice.optimization.ValueMetaResolver;
@@ -38,6 +40,10 @@ import org.pentaho.di.core.Condition;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.GenericDatabaseMeta;
+import org.pentaho.di.core.database.MSSQLServerDatabaseMeta;
+import org.pentaho.di.core.database.OracleDatabaseMeta;
+import org.pentaho.di.core.database.PostgreSQLDatabaseMeta;
 import org.pentaho.di.core.database.map.DatabaseConnectionMap;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleValueException;
@@ -46,6 +52,8 @@ import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.ValueMeta;
 import org.pentaho.di.core.row.ValueMetaAndData;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
 import org.pentaho.di.core.variables.Variables;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
@@ -66,11 +74,15 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.junit.matchers.JUnitMatchers.containsString;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
@@ -172,6 +184,8 @@ public class TableInputParameterGenerationTest {
     final List<String> fragmentIds = varCaptor.getAllValues();
     assertThat( fragmentIds.size(), is( 1 ) );
     assertTrue( databaseWrapper.pushDownMap.keySet().containsAll( fragmentIds ) );
+    // Fragment IDs do not vary between executions
+    assertThat( fragmentIds.get( 0 ), equalTo( "/*" + DatabaseWrapper.FRAGMENT_PREFIX + "0*/1=1" ) );
 
     // Update original query with variable values
     Variables variables = new Variables();
@@ -199,6 +213,159 @@ public class TableInputParameterGenerationTest {
   }
 
 
+  @Test
+  public void testPushDownWithQueryParameters() throws Exception {
+    ParameterGeneration employeeFilterParamGen = factory.createPushDown();
+    employeeFilterParamGen.setParameterName( "EMPLOYEE_FILTER" );
+    service.pushDown( newCondition( "Employee.Grade", "G7" ), employeeFilterParamGen, stepInterface );
+    DatabaseWrapper databaseWrapper = (DatabaseWrapper) data.db;
+    String fragmentId = databaseWrapper.pushDownMap.keySet().iterator().next();
+
+    // Parameters from a previous step, placeholders in literals and comments are not parameters
+    String runtimeQuery = "SELECT * FROM Employee WHERE DepartmentId = ? AND " + fragmentId
+      + " AND Title <> '?' /* ? */ AND ManagerId = ?";
+    RowMeta rowMeta = new RowMeta();
+    ValueMetaInterface departmentMeta = new ValueMeta( "DepartmentId", ValueMetaInterface.TYPE_INTEGER );
+    ValueMetaInterface managerMeta = new ValueMeta( "ManagerId", ValueMetaInterface.TYPE_INTEGER );
+    rowMeta.addValueMeta( departmentMeta );
+    rowMeta.addValueMeta( managerMeta );
+    // Rows may be larger than their meta
+    List<Object> values = new LinkedList<Object>( Arrays.<Object>asList( 10L, 20L, null ) );
+
+    String resultQuery = databaseWrapper.injectRuntime( databaseWrapper.pushDownMap, runtimeQuery, rowMeta, values );
+
+    assertThat( resultQuery, equalTo( "SELECT * FROM Employee WHERE DepartmentId = ? AND Employee.Grade = ?"
+      + " AND Title <> '?' /* ? */ AND ManagerId = ?" ) );
+    assertThat( rowMeta.getValueMetaList(),
+      equalTo( Arrays.asList( departmentMeta, resolvedValueMeta, managerMeta ) ) );
+    assertThat( values, equalTo( Arrays.<Object>asList( 10L, "G7", 20L ) ) );
+
+    // Queries with unmatched placeholders are left unchanged
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( departmentMeta );
+    values = new LinkedList<Object>( Arrays.<Object>asList( 10L ) );
+    runtimeQuery = "SELECT * FROM Employee WHERE " + fragmentId;
+    resultQuery = databaseWrapper.injectRuntime( databaseWrapper.pushDownMap, runtimeQuery, rowMeta, values );
+    assertThat( resultQuery, equalTo( runtimeQuery ) );
+    assertThat( rowMeta.getValueMetaList(), equalTo( Arrays.asList( departmentMeta ) ) );
+    assertThat( values, equalTo( Arrays.<Object>asList( 10L ) ) );
+  }
+
+  @Test
+  public void testPushDownRowLimit() throws Exception {
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new OracleDatabaseMeta() );
+
+    assertTrue( service.pushDownRowLimit( 10, stepInterface ) );
+
+    // Verify that the database for this step is now 'wrapped'
+    assertThat( data.db, is( instanceOf( DatabaseWrapper.class ) ) );
+    DatabaseWrapper databaseWrapper = (DatabaseWrapper) data.db;
+    assertThat( databaseWrapper.getRowLimit(), is( 10 ) );
+    assertThat( databaseWrapper.limitRows( "SELECT * FROM Employee" ),
+      equalTo( "SELECT * FROM ( SELECT * FROM Employee ) WHERE ROWNUM <= 10" ) );
+
+    // Databases without a limit syntax are read in full
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new GenericDatabaseMeta() );
+    when( databaseMeta.getLimitClause( anyInt() ) ).thenReturn( "" );
+    assertFalse( service.pushDownRowLimit( 5, stepInterface ) );
+    assertThat( databaseWrapper.getRowLimit(), is( 10 ) );
+  }
+
+  @Test
+  public void testPushDownAggregate() throws Exception {
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new OracleDatabaseMeta() );
+    when( stepInterface.getStepMeta() ).thenReturn( mock( StepMeta.class ) );
+    TableInputMeta tableInputMeta = mock( TableInputMeta.class );
+    when( tableInputMeta.getSQL() ).thenReturn( "SELECT * FROM Employee" );
+    when( stepInterface.getStepMeta().getStepMetaInterface() ).thenReturn( tableInputMeta );
+    when( stepInterface.getStepname() ).thenReturn( "testStepName" );
+    when( databaseMeta.getFieldDefinition( any( ValueMetaInterface.class ), anyString(), anyString(), anyBoolean(),
+      anyBoolean(), anyBoolean() ) ).thenReturn( "NUMBER" );
+    SqlAggregate aggregate = new SqlAggregate( Arrays.asList( "Grade", "Salary" ), Arrays.asList( "Grade" ),
+      Collections.singletonMap( "Salary", SqlAggregate.Function.SUM ),
+      ImmutableMap.<String, ValueMetaInterface>of( "Grade", new ValueMetaInteger( "Grade" ),
+        "Salary", new ValueMetaNumber( "Salary" ) ) );
+    String expectedQuery = "SELECT Grade, CAST(SUM(Salary) AS NUMBER) AS Salary "
+      + "FROM ( SELECT * FROM Employee ) DATA_SERVICE_AGGREGATE GROUP BY Grade";
+
+    OptimizationImpactInfo impact = service.previewAggregate( aggregate, stepInterface );
+    assertThat( impact.getQueryAfterOptimization(), equalTo( expectedQuery ) );
+    assertTrue( impact.isModified() );
+
+    assertTrue( service.pushDownAggregate( aggregate, stepInterface ) );
+
+    // Verify that the database for this step is now 'wrapped'
+    assertThat( data.db, is( instanceOf( DatabaseWrapper.class ) ) );
+    DatabaseWrapper databaseWrapper = (DatabaseWrapper) data.db;
+    assertThat( databaseWrapper.aggregateRows( "SELECT * FROM Employee" ), equalTo( expectedQuery ) );
+
+    // Ordered derived tables are rejected by SQL Server
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new MSSQLServerDatabaseMeta() );
+    when( tableInputMeta.getSQL() ).thenReturn( "SELECT * FROM Employee ORDER BY Grade" );
+    databaseWrapper.setAggregate( null );
+    assertFalse( service.pushDownAggregate( aggregate, stepInterface ) );
+    assertThat( databaseWrapper.getAggregate(), is( nullValue() ) );
+  }
+
+  @Test
+  public void testPushDownProjection() throws Exception {
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new OracleDatabaseMeta() );
+    when( stepInterface.getStepMeta() ).thenReturn( mock( StepMeta.class ) );
+    TableInputMeta tableInputMeta = mock( TableInputMeta.class );
+    when( tableInputMeta.getSQL() ).thenReturn( "SELECT * FROM Employee" );
+    when( stepInterface.getStepMeta().getStepMetaInterface() ).thenReturn( tableInputMeta );
+    when( stepInterface.getStepname() ).thenReturn( "testStepName" );
+    SqlProjection projection = new SqlProjection( Arrays.asList( "Grade", "Salary" ), Arrays.asList( "Salary" ),
+      ImmutableMap.<String, ValueMetaInterface>of( "Salary", new ValueMetaNumber( "salary" ) ) );
+    String expectedQuery = "SELECT Grade FROM Employee";
+
+    OptimizationImpactInfo impact = service.previewProjection( projection, stepInterface );
+    assertThat( impact.getQueryAfterOptimization(), equalTo( expectedQuery ) );
+    assertTrue( impact.isModified() );
+
+    assertTrue( service.pushDownProjection( projection, stepInterface ) );
+
+    assertThat( data.db, is( instanceOf( DatabaseWrapper.class ) ) );
+    DatabaseWrapper databaseWrapper = (DatabaseWrapper) data.db;
+    assertThat( databaseWrapper.projectColumns( "SELECT * FROM Employee" ), equalTo( expectedQuery ) );
+    assertThat( databaseWrapper.projectColumns( "SELECT DISTINCT * FROM Employee" ),
+      equalTo( "SELECT Grade FROM ( SELECT DISTINCT * FROM Employee ) DATA_SERVICE_PROJECTION" ) );
+  }
+
+  @Test
+  public void testPushDownOrder() throws Exception {
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new OracleDatabaseMeta() );
+    StepMeta stepMeta = mock( StepMeta.class );
+    when( stepInterface.getStepMeta() ).thenReturn( stepMeta );
+    TableInputMeta tableInputMeta = mock( TableInputMeta.class );
+    when( tableInputMeta.getSQL() ).thenReturn( "SELECT * FROM Employee" );
+    when( tableInputMeta.getDatabaseMeta() ).thenReturn( databaseMeta );
+    when( stepMeta.getStepMetaInterface() ).thenReturn( tableInputMeta );
+    when( stepInterface.getStepname() ).thenReturn( "testStepName" );
+    SqlOrder order = new SqlOrder( Collections.singletonMap( "Salary", false ) );
+    String expectedQuery =
+      "SELECT * FROM ( SELECT * FROM Employee ) DATA_SERVICE_ORDER ORDER BY Salary DESC NULLS LAST";
+
+    assertTrue( service.supportsOrder( order, stepMeta ) );
+    OptimizationImpactInfo impact = service.previewOrder( order, stepInterface );
+    assertThat( impact.getQueryAfterOptimization(), equalTo( expectedQuery ) );
+    assertTrue( impact.isModified() );
+
+    assertTrue( service.pushDownOrder( order, stepInterface ) );
+
+    // Verify that the database for this step is now 'wrapped'
+    assertThat( data.db, is( instanceOf( DatabaseWrapper.class ) ) );
+    DatabaseWrapper databaseWrapper = (DatabaseWrapper) data.db;
+    assertThat( databaseWrapper.orderRows( "SELECT * FROM Employee" ), equalTo( expectedQuery ) );
+
+    // Each execution of the query would only be ordered on its own
+    when( tableInputMeta.isExecuteEachInputRow() ).thenReturn( true );
+    databaseWrapper.setOrder( null );
+    assertFalse( service.supportsOrder( order, stepMeta ) );
+    assertFalse( service.pushDownOrder( order, stepInterface ) );
+    assertThat( databaseWrapper.getOrder(), is( nullValue() ) );
+  }
+
   @Test
   public void testPreview() throws KettleValueException, PushDownOptimizationException {
     ParameterGeneration param = factory.createPushDown();
@@ -233,8 +400,9 @@ public class TableInputParameterGenerationTest {
     testFunctionType( Condition.FUNC_LARGER, "field_name > ?", 123 );
     testFunctionType( Condition.FUNC_LARGER_EQUAL, "field_name >= ?", 123 );
 
-    testInListCondition( "value1;value2;value3", new String[] { "value1", "value2", "value3" },
-      "field_name  IN  (?,?,?)" );
+    // Padded to a power of two with the last value
+    testInListCondition( "value1;value2;value3", new String[] { "value1", "value2", "value3", "value3" },
+      "field_name  IN  (?,?,?,?)" );
     testInListCondition( "value1;value2;value3;val ue4",
       new String[]{ "value1", "value2", "value3", "val ue4" }, "field_name  IN  (?,?,?,?)" );
     testFunctionType( Condition.FUNC_LARGER_EQUAL, "field_name >= ?", 123 );
@@ -257,6 +425,110 @@ public class TableInputParameterGenerationTest {
     }
   }
 
+  @Test
+  public void testConvertStringMatch() throws Exception {
+    ValueMetaInterface stringMeta = new ValueMeta( "field_name", ValueMetaInterface.TYPE_STRING );
+    when( resolver.getValueMeta( "field_name" ) ).thenReturn( stringMeta );
+
+    // Wildcards in values are matched literally
+    testStringMatch( Condition.FUNC_CONTAINS, "50%_off!", "%50!%!_off!!%" );
+    testStringMatch( Condition.FUNC_ENDS_WITH, "Inc.", "%Inc." );
+    // Brackets are only wildcards in SQL Server and Sybase, Oracle rejects escaping them
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new OracleDatabaseMeta() );
+    testStringMatch( Condition.FUNC_STARTS_WITH, "[A]", "[A]%" );
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new MSSQLServerDatabaseMeta() );
+    testStringMatch( Condition.FUNC_STARTS_WITH, "[A]", "![A]%" );
+
+    StepMeta stepMeta = mock( StepMeta.class );
+    assertTrue( service.supportsCondition( newMatchCondition( Condition.FUNC_CONTAINS, "x" ), stepMeta ) );
+    assertFalse( service.supportsCondition( newMatchCondition( Condition.FUNC_TRUE, "x" ), stepMeta ) );
+
+    // Only string fields are matched as text
+    when( resolver.getValueMeta( "field_name" ) ).thenReturn( resolvedValueMeta );
+    assertFalse( service.supportsCondition( newMatchCondition( Condition.FUNC_CONTAINS, "x" ), stepMeta ) );
+    try {
+      service.convertAtomicCondition( newMatchCondition( Condition.FUNC_CONTAINS, "x" ), new RowMeta(),
+        new LinkedList<Object>() );
+      fail( "Should have thrown exception" );
+    } catch ( PushDownOptimizationException e ) {
+      assertThat( e.getMessage(), notNullValue() );
+    }
+  }
+
+  @Test
+  public void testConvertRegex() throws Exception {
+    ValueMetaInterface stringMeta = new ValueMeta( "field_name", ValueMetaInterface.TYPE_STRING );
+    when( resolver.getValueMeta( "field_name" ) ).thenReturn( stringMeta );
+    StepMeta stepMeta = mock( StepMeta.class );
+    TableInputMeta tableInputMeta = mock( TableInputMeta.class );
+    when( stepMeta.getStepMetaInterface() ).thenReturn( tableInputMeta );
+    when( tableInputMeta.getDatabaseMeta() ).thenReturn( databaseMeta );
+    Condition condition = newMatchCondition( Condition.FUNC_REGEXP, "A.*" );
+
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new PostgreSQLDatabaseMeta() );
+    assertTrue( service.supportsCondition( condition, stepMeta ) );
+    RowMeta paramsMeta = new RowMeta();
+    List<Object> params = new LinkedList<Object>();
+    assertThat( service.convertAtomicCondition( condition, paramsMeta, params ), equalTo( "field_name ~ ?" ) );
+    // Anchored to match the whole value
+    assertThat( params, equalTo( Arrays.<Object>asList( "^(A.*)$" ) ) );
+    assertThat( paramsMeta.getValueMetaList(), equalTo( Arrays.asList( stringMeta ) ) );
+
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new OracleDatabaseMeta() );
+    assertThat( service.convertAtomicCondition( condition, new RowMeta(), new LinkedList<Object>() ),
+      equalTo( "REGEXP_LIKE( field_name, ? )" ) );
+
+    // Expressions that are not portable stay in Kettle
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new PostgreSQLDatabaseMeta() );
+    Condition javaOnly = newMatchCondition( Condition.FUNC_REGEXP, "(?i)a\\d+" );
+    assertFalse( service.supportsCondition( javaOnly, stepMeta ) );
+    try {
+      service.convertAtomicCondition( javaOnly, new RowMeta(), new LinkedList<Object>() );
+      fail( "Should have thrown exception" );
+    } catch ( PushDownOptimizationException e ) {
+      assertTrue( e.getMessage().contains( "REGEXP" ) );
+    }
+
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new MSSQLServerDatabaseMeta() );
+    assertFalse( service.supportsCondition( condition, stepMeta ) );
+  }
+
+  @Test
+  public void testPortableRegex() throws Exception {
+    assertTrue( TableInputParameterGeneration.isPortableRegex( "A.*" ) );
+    assertTrue( TableInputParameterGeneration.isPortableRegex( "(ab|c[a-z^]+)x{2,3}\\.$" ) );
+    assertTrue( TableInputParameterGeneration.isPortableRegex( "[^0-9]?" ) );
+
+    // Invalid in Java
+    assertFalse( TableInputParameterGeneration.isPortableRegex( "(a" ) );
+    // Escaped classes and back references
+    assertFalse( TableInputParameterGeneration.isPortableRegex( "\\d+" ) );
+    assertFalse( TableInputParameterGeneration.isPortableRegex( "(a)\\1" ) );
+    // Flags, non-capturing groups and look-around
+    assertFalse( TableInputParameterGeneration.isPortableRegex( "(?i)a" ) );
+    assertFalse( TableInputParameterGeneration.isPortableRegex( "(?:a)b" ) );
+    // Lazy and possessive quantifiers
+    assertFalse( TableInputParameterGeneration.isPortableRegex( "a*?" ) );
+    assertFalse( TableInputParameterGeneration.isPortableRegex( "a{2}+" ) );
+    // Bracket expressions that differ between Java and POSIX
+    assertFalse( TableInputParameterGeneration.isPortableRegex( "[\\]]" ) );
+    assertFalse( TableInputParameterGeneration.isPortableRegex( "[[:alpha:]]" ) );
+    assertFalse( TableInputParameterGeneration.isPortableRegex( "[a-z&&[^c]]" ) );
+  }
+
+  private void testStringMatch( int function, String value, String expectedPattern ) throws Exception {
+    RowMeta paramsMeta = new RowMeta();
+    List<Object> params = new LinkedList<Object>();
+    assertThat( service.convertAtomicCondition( newMatchCondition( function, value ), paramsMeta, params ),
+      equalTo( "field_name LIKE ? ESCAPE '!'" ) );
+    assertThat( params, equalTo( Arrays.<Object>asList( expectedPattern ) ) );
+    assertThat( paramsMeta.size(), is( 1 ) );
+  }
+
+  private static Condition newMatchCondition( int function, String value ) throws KettleValueException {
+    return new Condition( "field_name", function, null, new ValueMetaAndData( "mock_value", value ) );
+  }
+
   @SuppressWarnings( "unchecked" )
   protected void testInListCondition( String valueData, String[] inListExpectedValues, String expectedSql )
     throws KettleValueException, PushDownOptimizationException {
@@ -265,13 +537,24 @@ public class TableInputParameterGenerationTest {
     RowMeta inListParamsMeta = mock( RowMeta.class );
     List<Object> inListParams = mock( List.class );
     assertThat( service.convertAtomicCondition( inListCondition, inListParamsMeta, inListParams ), equalTo( expectedSql ) );
-    for ( String inListValue : inListExpectedValues ) {
-      verify( inListParams ).add( inListValue );
+    for ( String inListValue : ImmutableSet.copyOf( inListExpectedValues ) ) {
+      verify( inListParams, times( Collections.frequency( Arrays.asList( inListExpectedValues ), inListValue ) ) )
+        .add( inListValue );
     }
     verify( inListParamsMeta, times( inListExpectedValues.length ) ).addValueMeta( resolvedValueMeta );
     verifyNoMoreInteractions( inListParams, inListParamsMeta );
   }
 
+  @Test
+  public void testPaddedLength() throws Exception {
+    assertThat( TableInputParameterGeneration.getPaddedLength( 0 ), is( 0 ) );
+    assertThat( TableInputParameterGeneration.getPaddedLength( 1 ), is( 1 ) );
+    assertThat( TableInputParameterGeneration.getPaddedLength( 2 ), is( 2 ) );
+    assertThat( TableInputParameterGeneration.getPaddedLength( 5 ), is( 8 ) );
+    assertThat( TableInputParameterGeneration.getPaddedLength( 512 ), is( 512 ) );
+    assertThat( TableInputParameterGeneration.getPaddedLength( 513 ), is( 513 ) );
+  }
+
   @SuppressWarnings( "unchecked" )
   private void testFunctionType( int function, String expected, Object value ) throws Exception {
     ValueMetaAndData right_exact = new ValueMetaAndData( "mock_value", value );
@@ -35,6 +35,8 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 import org.pentaho.di.trans.dataservice.optimization.PushDownOptimizationMeta;
 import org.pentaho.di.trans.dataservice.optimization.SourceTargetFields;
+import org.pentaho.di.trans.dataservice.optimization.paramgen.AggregatePushDown;
+import org.pentaho.di.trans.dataservice.optimization.paramgen.OrderPushDown;
 import org.pentaho.di.trans.dataservice.optimization.paramgen.ParameterGeneration;
 import org.pentaho.di.trans.dataservice.optimization.paramgen.ParameterGenerationFactory;
 import org.pentaho.di.trans.dataservice.ui.model.DataServiceModel;
@@ -89,6 +91,12 @@ public class ParameterGenerationModelTest {
           return ImmutableList.copyOf( optimizations );
         }
       } );
+    when( dialogModel.getPushDownOptimizations() )
+      .then( new Answer<List<PushDownOptimizationMeta>>() {
+        @Override public List<PushDownOptimizationMeta> answer( InvocationOnMock invocation ) throws Throwable {
+          return ImmutableList.copyOf( optimizations );
+        }
+      } );
 
     when( factory.createSourceTargetAdapter( any( SourceTargetFields.class ) ) )
       .then( new Answer<SourceTargetAdapter>() {
@@ -233,4 +241,28 @@ public class ParameterGenerationModelTest {
     assertThat( parameterGeneration.getFieldMappings().get( 1 ).getSourceFieldName(), is( "secondSource" ) );
     assertThat( parameterGeneration.getFieldMappings().get( 1 ).getTargetFieldName(), is( "secondTarget" ) );
   }
+
+  @Test
+  public void testQueryPushDownEnabled() throws Exception {
+    createParameterGeneration( "parameter" );
+    assertThat( model.isQueryPushDownFound(), is( false ) );
+    assertThat( model.isQueryPushDownEnabled(), is( false ) );
+
+    PushDownOptimizationMeta aggregate = new PushDownOptimizationMeta();
+    aggregate.setType( new AggregatePushDown( factory ) );
+    optimizations.add( aggregate );
+    PushDownOptimizationMeta order = new PushDownOptimizationMeta();
+    order.setType( new OrderPushDown( factory ) );
+    optimizations.add( order );
+
+    assertThat( model.getQueryPushDowns(), is( ImmutableList.of( aggregate, order ) ) );
+    assertThat( model.isQueryPushDownFound(), is( true ) );
+    assertThat( model.isQueryPushDownEnabled(), is( true ) );
+
+    model.setQueryPushDownEnabled( false );
+    assertThat( aggregate.isEnabled(), is( false ) );
+    assertThat( order.isEnabled(), is( false ) );
+    assertThat( optimizations.get( 0 ).isEnabled(), is( true ) );
+    verify( changeSupport ).firePropertyChange( "queryPushDownEnabled", true, false );
+  }
 }